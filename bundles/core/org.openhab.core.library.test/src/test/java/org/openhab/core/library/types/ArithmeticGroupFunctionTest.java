@@ -10,6 +10,7 @@ package org.openhab.core.library.types;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.Assert;
 
@@ -17,6 +18,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.items.DimmerItem;
 import org.openhab.core.library.items.SwitchItem;
@@ -205,6 +207,48 @@ public class ArithmeticGroupFunctionTest {
 		Assert.assertEquals(new DecimalType("234.95"), state);
 	}
 	
+	@Test
+	public void testIncrementalAggregates() {
+		GroupFunction[] functions = {
+			new ArithmeticGroupFunction.And(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.Or(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.NAnd(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.NOr(OpenClosedType.OPEN, OpenClosedType.CLOSED),
+			new ArithmeticGroupFunction.Avg(),
+			new ArithmeticGroupFunction.Sum(),
+			new ArithmeticGroupFunction.Min(),
+			new ArithmeticGroupFunction.Max(),
+			new ArithmeticGroupFunction.Count(new StringType("1.*")),
+			new GroupFunction.Equality()
+		};
+		State[] states = { OpenClosedType.OPEN, OpenClosedType.CLOSED, UnDefType.UNDEF, 
+				new DecimalType("1.50"), new DecimalType("2"), new DecimalType("-0.25"), new DecimalType("10.125") };
+		Random random = new Random(42);
+		
+		for (GroupFunction function : functions) {
+			GroupItem group = new GroupItem("Group", null, function);
+			List<Item> members = new ArrayList<Item>();
+			for (int i = 0; i < 20; i++) {
+				TestItem member = new TestItem("TestItem" + i, OpenClosedType.OPEN);
+				members.add(member);
+				group.addMember(member);
+			}
+			// members which are contained twice are counted twice
+			group.addMember(members.get(0));
+			
+			for (int i = 0; i < 500; i++) {
+				Item member = members.get(random.nextInt(members.size()));
+				((GenericItem) member).setState(states[random.nextInt(states.length)]);
+				State expected = function.calculate(group.getMembers());
+				Assert.assertEquals(function.getClass().getSimpleName(), expected.toString(), group.getState().toString());
+			}
+			
+			group.removeMember(members.get(5));
+			((GenericItem) members.get(1)).setState(new DecimalType("3"));
+			Assert.assertEquals(function.calculate(group.getMembers()).toString(), group.getState().toString());
+		}
+	}
+	
 	class TestItem extends GenericItem {
 
 		public TestItem(String name, State state) {
@@ -11,17 +11,21 @@ package org.openhab.core.library.types;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.openhab.core.items.AbstractGroupAggregate;
 import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.IncrementalGroupFunction;
 import org.openhab.core.items.Item;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 
 /**
  * This interface is only a container for functions that require the core type library
- * for its calculations.
+ * for its calculations. All functions can be maintained incrementally by a group, see
+ * {@link IncrementalGroupFunction}.
  * 
  * @author Kai Kreuzer
  * @since 0.7.0
@@ -40,7 +44,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class And implements GroupFunction {
+	static class And implements IncrementalGroupFunction {
 		
 		protected final State activeState;
 		protected final State passiveState;
@@ -102,6 +106,22 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return count;
 			
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new MatchCountAggregate() {
+				@Override
+				protected Boolean getContribution(Item item) {
+					return activeState.equals(item.getStateAs(activeState.getClass()));
+				}
+
+				public State getState() {
+					return total > 0 && count == total ? activeState : passiveState;
+				}
+			};
+		}
 	}
 
 	/**
@@ -115,7 +135,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Or implements GroupFunction {
+	static class Or implements IncrementalGroupFunction {
 
 		protected final State activeState;
 		protected final State passiveState;
@@ -169,6 +189,22 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 			return count;
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new MatchCountAggregate() {
+				@Override
+				protected Boolean getContribution(Item item) {
+					return activeState.equals(item.getStateAs(activeState.getClass()));
+				}
+
+				public State getState() {
+					return count > 0 ? activeState : passiveState;
+				}
+			};
+		}
 	}
 	
 	/**
@@ -192,6 +228,14 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				result.equals(activeState) ? passiveState : activeState;
 			return notResult;
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		@Override
+		public Aggregate createAggregate() {
+			return new NegatedAggregate(super.createAggregate(), activeState, passiveState);
+		}
 		
 	}
 
@@ -216,6 +260,14 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				result.equals(activeState) ? passiveState : activeState;
 			return notResult;
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		@Override
+		public Aggregate createAggregate() {
+			return new NegatedAggregate(super.createAggregate(), activeState, passiveState);
+		}
 		
 	}
 	
@@ -226,7 +278,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Avg implements GroupFunction {
+	static class Avg implements IncrementalGroupFunction {
 		
 		public Avg() {}
 
@@ -251,6 +303,21 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				return UnDefType.UNDEF;
 			}
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new DecimalSumAggregate() {
+				public State getState() {
+					if(count>0) {
+						return new DecimalType(getSum().divide(new BigDecimal(count), RoundingMode.HALF_UP));
+					} else {
+						return UnDefType.UNDEF;
+					}
+				}
+			};
+		}
 		
 		/**
 		 * @{inheritDoc
@@ -276,7 +343,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 1.7.0
 	 *
 	 */
-	static class Count implements GroupFunction {
+	static class Count implements IncrementalGroupFunction {
 		
 		protected final Pattern pattern;
 		
@@ -304,6 +371,22 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return new DecimalType(count);
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new MatchCountAggregate() {
+				@Override
+				protected Boolean getContribution(Item item) {
+					return pattern.matcher(item.getState().toString()).matches();
+				}
+
+				public State getState() {
+					return new DecimalType(count);
+				}
+			};
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -324,7 +407,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 1.1.0
 	 *
 	 */
-	static class Sum implements GroupFunction {
+	static class Sum implements IncrementalGroupFunction {
 		
 		public Sum() {}
 
@@ -343,6 +426,17 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 			return new DecimalType(sum);
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new DecimalSumAggregate() {
+				public State getState() {
+					return new DecimalType(getSum());
+				}
+			};
+		}
 		
 		/**
 		 * @{inheritDoc
@@ -364,7 +458,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Min implements GroupFunction {
+	static class Min implements IncrementalGroupFunction {
 		
 		public Min() {}
 
@@ -389,6 +483,17 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return UnDefType.UNDEF;
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new DecimalRangeAggregate() {
+				public State getState() {
+					return values.isEmpty() ? UnDefType.UNDEF : new DecimalType(values.firstKey());
+				}
+			};
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -409,7 +514,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Max implements GroupFunction {
+	static class Max implements IncrementalGroupFunction {
 		
 		public Max() {}
 
@@ -434,6 +539,17 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return UnDefType.UNDEF;
 		}
 
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new DecimalRangeAggregate() {
+				public State getState() {
+					return values.isEmpty() ? UnDefType.UNDEF : new DecimalType(values.lastKey());
+				}
+			};
+		}
+
 		/**
 		 * @{inheritDoc
 		 */
@@ -446,6 +562,175 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 		}
 	}
+
+	/**
+	 * Counts the members which match a condition.
+	 * 
+	 * @author openHAB.org
+	 * @since 1.7.0
+	 */
+	static abstract class MatchCountAggregate extends AbstractGroupAggregate<Boolean> {
+		
+		/** the number of matching members */
+		protected int count = 0;
+		
+		/** the number of all members */
+		protected int total = 0;
+
+		@Override
+		protected void add(Boolean matches) {
+			total++;
+			if(matches) {
+				count++;
+			}
+		}
+
+		@Override
+		protected void remove(Boolean matches) {
+			total--;
+			if(matches) {
+				count--;
+			}
+		}
+
+		@Override
+		protected void clear() {
+			count = 0;
+			total = 0;
+		}
+	}
 	
+	/**
+	 * Negates the state of another aggregate, i.e. it returns the passive state
+	 * if the other one returns the active state and vice versa.
+	 * 
+	 * @author openHAB.org
+	 * @since 1.7.0
+	 */
+	static class NegatedAggregate implements IncrementalGroupFunction.Aggregate {
+		
+		private final IncrementalGroupFunction.Aggregate aggregate;
+		private final State activeState;
+		private final State passiveState;
+		
+		public NegatedAggregate(IncrementalGroupFunction.Aggregate aggregate, State activeState, State passiveState) {
+			this.aggregate = aggregate;
+			this.activeState = activeState;
+			this.passiveState = passiveState;
+		}
+
+		public void reset(List<Item> items) {
+			aggregate.reset(items);
+		}
+
+		public void update(Item item) {
+			aggregate.update(item);
+		}
+
+		public State getState() {
+			return aggregate.getState().equals(activeState) ? passiveState : activeState;
+		}
+	}
+	
+	/**
+	 * Keeps the sum and the number of all member states of decimal type.
+	 * 
+	 * @author openHAB.org
+	 * @since 1.7.0
+	 */
+	static abstract class DecimalSumAggregate extends AbstractGroupAggregate<BigDecimal> {
+		
+		/** the number of members with a decimal state */
+		protected int count = 0;
+		
+		private BigDecimal sum = BigDecimal.ZERO;
+		
+		/** the number of values per scale, to determine the scale of the sum */
+		private final TreeMap<Integer, Integer> scales = new TreeMap<Integer, Integer>();
+
+		@Override
+		protected BigDecimal getContribution(Item item) {
+			DecimalType itemState = (DecimalType) item.getStateAs(DecimalType.class);
+			return itemState != null ? itemState.toBigDecimal() : null;
+		}
+
+		@Override
+		protected void add(BigDecimal value) {
+			count++;
+			sum = sum.add(value);
+			Integer scaleCount = scales.get(value.scale());
+			scales.put(value.scale(), scaleCount == null ? 1 : scaleCount + 1);
+		}
+
+		@Override
+		protected void remove(BigDecimal value) {
+			count--;
+			sum = sum.subtract(value);
+			Integer scaleCount = scales.get(value.scale());
+			if(scaleCount == null || scaleCount <= 1) {
+				scales.remove(value.scale());
+			} else {
+				scales.put(value.scale(), scaleCount - 1);
+			}
+		}
+
+		@Override
+		protected void clear() {
+			count = 0;
+			sum = BigDecimal.ZERO;
+			scales.clear();
+		}
+		
+		/**
+		 * Returns the sum with the scale a full calculation would lead to, i.e. the 
+		 * largest scale of the current values, as removed values must not have any 
+		 * influence on the result. 
+		 * 
+		 * @return the sum of all decimal states
+		 */
+		protected BigDecimal getSum() {
+			int scale = scales.isEmpty() ? 0 : Math.max(0, scales.lastKey());
+			return sum.setScale(scale, RoundingMode.HALF_UP);
+		}
+	}
+	
+	/**
+	 * Keeps all member states of decimal type in sorted order.
+	 * 
+	 * @author openHAB.org
+	 * @since 1.7.0
+	 */
+	static abstract class DecimalRangeAggregate extends AbstractGroupAggregate<BigDecimal> {
+		
+		/** the number of members per distinct value */
+		protected final TreeMap<BigDecimal, Integer> values = new TreeMap<BigDecimal, Integer>();
+
+		@Override
+		protected BigDecimal getContribution(Item item) {
+			DecimalType itemState = (DecimalType) item.getStateAs(DecimalType.class);
+			return itemState != null ? itemState.toBigDecimal() : null;
+		}
+
+		@Override
+		protected void add(BigDecimal value) {
+			Integer count = values.get(value);
+			values.put(value, count == null ? 1 : count + 1);
+		}
+
+		@Override
+		protected void remove(BigDecimal value) {
+			Integer count = values.get(value);
+			if(count == null || count <= 1) {
+				values.remove(value);
+			} else {
+				values.put(value, count - 1);
+			}
+		}
+
+		@Override
+		protected void clear() {
+			values.clear();
+		}
+	}
 	
 }
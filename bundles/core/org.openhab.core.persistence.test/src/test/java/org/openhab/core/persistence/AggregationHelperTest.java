@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class AggregationHelperTest {
+
+	private static final long MINUTE = 60 * 1000;
+
+	@Test
+	public void testAggregate() {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		items.add(createItem(0, new DecimalType(4)));
+		items.add(createItem(1, new DecimalType(2)));
+		items.add(createItem(2, new StringType("foo")));
+		items.add(createItem(3, new DecimalType(6)));
+		items.add(createItem(4, new DecimalType(2)));
+		// the order must not matter
+		Collections.reverse(items);
+
+		assertEquals(new DecimalType(5), AggregationHelper.aggregate("Test", items, Aggregation.COUNT).getState());
+		assertEquals(new DecimalType(14), AggregationHelper.aggregate("Test", items, Aggregation.SUM).getState());
+		assertEquals(new DecimalType(3.5), AggregationHelper.aggregate("Test", items, Aggregation.AVG).getState());
+		// the average tells how many numeric states it has been calculated from
+		HistoricItem average = AggregationHelper.aggregate("Test", items, Aggregation.AVG);
+		assertEquals(4, ((AggregatedHistoricItem) average).getCount());
+
+		HistoricItem min = AggregationHelper.aggregate("Test", items, Aggregation.MIN);
+		assertEquals(new DecimalType(2), min.getState());
+		assertEquals(new Date(MINUTE), min.getTimestamp());
+		assertEquals(new DecimalType(6), AggregationHelper.aggregate("Test", items, Aggregation.MAX).getState());
+
+		assertEquals(new Date(0), AggregationHelper.aggregate("Test", items, Aggregation.FIRST).getTimestamp());
+		assertEquals(new Date(4 * MINUTE), AggregationHelper.aggregate("Test", items, Aggregation.LAST).getTimestamp());
+	}
+
+	@Test
+	public void testAggregateWithoutStates() {
+		List<HistoricItem> items = Collections.emptyList();
+		assertEquals(DecimalType.ZERO, AggregationHelper.aggregate("Test", items, Aggregation.COUNT).getState());
+		assertNull(AggregationHelper.aggregate("Test", items, Aggregation.AVG));
+		assertNull(AggregationHelper.aggregate("Test", items, Aggregation.MAX));
+	}
+
+	@Test
+	public void testAggregateIntervals() {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		for (int i = 0; i < 10; i++) {
+			items.add(createItem(i, new DecimalType(i)));
+		}
+		List<HistoricItem> result = AggregationHelper.aggregate("Test", items, Aggregation.MAX, MINUTE, 3 * MINUTE);
+		assertEquals(4, result.size());
+		assertEquals(new DecimalType(0), result.get(0).getState());
+		assertEquals(new Date(-2 * MINUTE), result.get(0).getTimestamp());
+		assertEquals(new DecimalType(3), result.get(1).getState());
+		assertEquals(new Date(MINUTE), result.get(1).getTimestamp());
+		assertEquals(new DecimalType(9), result.get(3).getState());
+	}
+
+	@Test
+	public void testTimeWeightedAverage() {
+		HistoricItem initial = createItem(-5, new DecimalType(10));
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		items.add(createItem(1, new DecimalType(20)));
+		items.add(createItem(3, new DecimalType(40)));
+		// 10 for 1 minute, 20 for 2 minutes and 40 for 1 minute
+		DecimalType average = AggregationHelper.timeWeightedAverage(initial, items, new Date(0), new Date(4 * MINUTE));
+		assertEquals(22.5, average.doubleValue(), 0.0001);
+
+		// without an initial state, the period starts with the first state
+		average = AggregationHelper.timeWeightedAverage(null, items, new Date(0), new Date(4 * MINUTE));
+		assertEquals(80.0 / 3, average.doubleValue(), 0.0001);
+
+		assertNull(AggregationHelper.timeWeightedAverage(null, new ArrayList<HistoricItem>(), new Date(0), new Date(MINUTE)));
+	}
+
+	private static HistoricItem createItem(final int minute, final State state) {
+		return new HistoricItem() {
+			public Date getTimestamp() {
+				return new Date(minute * MINUTE);
+			}
+
+			public State getState() {
+				return state;
+			}
+
+			public String getName() {
+				return "Test";
+			}
+		};
+	}
+
+}
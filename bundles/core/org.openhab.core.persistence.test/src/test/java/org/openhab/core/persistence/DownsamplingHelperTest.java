@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class DownsamplingHelperTest {
+
+	private static final long MINUTE = 60 * 1000;
+
+	@Test
+	public void testMinMax() {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		int[] values = { 5, 9, 1, 4, 7, 7, 2, 3 };
+		for (int i = 0; i < values.length; i++) {
+			items.add(createItem(i, new DecimalType(values[i])));
+		}
+		items.add(createItem(8, new StringType("foo")));
+
+		// two buckets of four minutes each
+		List<HistoricItem> result = DownsamplingHelper.minMax(items, new Date(0), new Date(8 * MINUTE), 2);
+		assertEquals(7, result.size());
+		// first, max, min and last of the first bucket
+		assertSame(items.get(0), result.get(0));
+		assertSame(items.get(1), result.get(1));
+		assertSame(items.get(2), result.get(2));
+		assertSame(items.get(3), result.get(3));
+		// first (which is the max), min and last of the second bucket
+		assertSame(items.get(4), result.get(4));
+		assertSame(items.get(6), result.get(5));
+		assertSame(items.get(7), result.get(6));
+	}
+
+	@Test
+	public void testLargestTriangleThreeBuckets() {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		for (int i = 0; i < 100; i++) {
+			items.add(createItem(i, new DecimalType(i == 42 ? 1000 : i % 2)));
+		}
+
+		List<HistoricItem> result = DownsamplingHelper.largestTriangleThreeBuckets(items, 10);
+		assertEquals(10, result.size());
+		assertSame(items.get(0), result.get(0));
+		assertSame(items.get(99), result.get(9));
+		// the peak must be kept
+		assertTrue(result.contains(items.get(42)));
+		for (int i = 1; i < result.size(); i++) {
+			assertTrue(result.get(i).getTimestamp().after(result.get(i - 1).getTimestamp()));
+		}
+
+		// small series are not downsampled at all
+		assertEquals(100, DownsamplingHelper.largestTriangleThreeBuckets(items, 100).size());
+	}
+
+	private static HistoricItem createItem(final int minute, final State state) {
+		return new HistoricItem() {
+			public Date getTimestamp() {
+				return new Date(minute * MINUTE);
+			}
+
+			public State getState() {
+				return state;
+			}
+
+			public String getName() {
+				return "Test";
+			}
+		};
+	}
+
+}
@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.internal.PersistenceWriter.OverflowPolicy;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class PersistenceWriterTest {
+
+	@Test
+	public void testStatesAreWrittenInBatches() throws InterruptedException {
+		TestBatchService service = new TestBatchService(null);
+		PersistenceWriter writer = new PersistenceWriter(service, 100, 10, 0, OverflowPolicy.DROP_OLDEST);
+		TestItem item = new TestItem("Test");
+		for (int i = 0; i < 25; i++) {
+			item.setState(new DecimalType(i));
+			writer.store(item, null);
+		}
+		writer.start();
+		writer.shutdown();
+
+		assertEquals(25, service.entries.size());
+		assertEquals(25, writer.getWrittenCount());
+		assertTrue(service.batchSizes.size() >= 3);
+		for (int size : service.batchSizes) {
+			assertTrue(size <= 10);
+		}
+		// the state at the time of queuing is persisted, not the current one
+		for (int i = 0; i < 25; i++) {
+			assertEquals(new DecimalType(i), service.entries.get(i).getState());
+		}
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		TestBatchService service = new TestBatchService(release);
+		PersistenceWriter writer = new PersistenceWriter(service, 5, 1, 0, OverflowPolicy.DROP_OLDEST);
+		TestItem item = new TestItem("Test");
+		for (int i = 0; i < 8; i++) {
+			item.setState(new DecimalType(i));
+			writer.store(item, "alias");
+		}
+		assertEquals(3, writer.getDroppedCount());
+		assertEquals(5, writer.getQueueDepth());
+		writer.start();
+		release.countDown();
+		writer.shutdown();
+
+		assertEquals(5, service.entries.size());
+		assertEquals(new DecimalType(3), service.entries.get(0).getState());
+		assertEquals("alias", service.entries.get(0).getName());
+	}
+
+	@Test
+	public void testDropNewest() {
+		TestBatchService service = new TestBatchService(null);
+		PersistenceWriter writer = new PersistenceWriter(service, 5, 1, 0, OverflowPolicy.DROP_NEWEST);
+		TestItem item = new TestItem("Test");
+		for (int i = 0; i < 8; i++) {
+			item.setState(new DecimalType(i));
+			writer.store(item, null);
+		}
+		writer.start();
+		writer.shutdown();
+
+		assertEquals(3, writer.getDroppedCount());
+		assertEquals(5, service.entries.size());
+		assertEquals(new DecimalType(4), service.entries.get(4).getState());
+	}
+
+	@Test
+	public void testNonBatchServiceStoresQueuedStates() {
+		TestService service = new TestService();
+		PersistenceWriter writer = new PersistenceWriter(service, 100, 10, 0, OverflowPolicy.DROP_OLDEST);
+		TestItem item = new TestItem("Test");
+		item.getGroupNames().add("Group");
+		for (int i = 0; i < 25; i++) {
+			item.setState(new DecimalType(i));
+			writer.store(item, "alias");
+		}
+		writer.start();
+		writer.shutdown();
+
+		assertEquals(25, service.states.size());
+		for (int i = 0; i < 25; i++) {
+			assertEquals(new DecimalType(i), service.states.get(i));
+			Item storedItem = service.items.get(i);
+			// the service gets a copy of the item with the queued state
+			assertTrue(storedItem instanceof TestItem);
+			assertFalse(storedItem == item);
+			assertEquals("Test", storedItem.getName());
+			assertEquals(Collections.singletonList("Group"), storedItem.getGroupNames());
+			assertEquals(new DecimalType(i), storedItem.getStateAs(DecimalType.class));
+		}
+		assertEquals("alias", service.aliases.get(0));
+		assertEquals(new DecimalType(24), item.getState());
+	}
+
+	@Test
+	public void testNonBatchServiceStoresQueuedStatesOfOtherItems() {
+		TestService service = new TestService();
+		PersistenceWriter writer = new PersistenceWriter(service, 100, 10, 0, OverflowPolicy.DROP_OLDEST);
+		ForeignItem item = new ForeignItem();
+		for (int i = 0; i < 5; i++) {
+			item.state = new DecimalType(i);
+			writer.store(item, null);
+		}
+		writer.start();
+		writer.shutdown();
+
+		assertEquals(5, service.states.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(new DecimalType(i), service.states.get(i));
+			assertEquals(new DecimalType(i), service.items.get(i).getStateAs(DecimalType.class));
+			assertSame(item.getGroupNames(), service.items.get(i).getGroupNames());
+		}
+	}
+
+	@Test
+	public void testNonBatchServiceConvertsQueuedGroupStates() {
+		TestService service = new TestService();
+		PersistenceWriter writer = new PersistenceWriter(service, 100, 10, 0, OverflowPolicy.DROP_OLDEST);
+		GroupItem group = new GroupItem("Group", null, new CountingFunction());
+		for (int i = 0; i < 3; i++) {
+			TestItem member = new TestItem("Member" + i);
+			member.setState(i < 2 ? OnOffType.ON : OnOffType.OFF);
+			group.addMember(member);
+		}
+		group.setState(OnOffType.ON);
+		writer.store(group, null);
+		writer.start();
+		writer.shutdown();
+
+		Item storedItem = service.items.get(0);
+		assertTrue(storedItem instanceof GroupItem);
+		assertEquals(OnOffType.ON, storedItem.getState());
+		assertEquals(OnOffType.ON, storedItem.getStateAs(OnOffType.class));
+		// other types are converted by the function of the group, which knows the members
+		assertEquals(new DecimalType(2), storedItem.getStateAs(DecimalType.class));
+	}
+
+	/**
+	 * A group function like OR, which returns the number of active members as a decimal.
+	 */
+	private static class CountingFunction implements GroupFunction {
+
+		@Override
+		public State calculate(List<Item> items) {
+			return count(items) > 0 ? OnOffType.ON : OnOffType.OFF;
+		}
+
+		@Override
+		public State getStateAs(List<Item> items, Class<? extends State> stateClass) {
+			if (stateClass == DecimalType.class) {
+				return new DecimalType(count(items));
+			} else if (stateClass == OnOffType.class) {
+				return calculate(items);
+			} else {
+				return null;
+			}
+		}
+
+		private int count(List<Item> items) {
+			int count = 0;
+			for (Item item : items) {
+				if (OnOffType.ON.equals(item.getState())) {
+					count++;
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * A service which reads the state from the item like most persistence services do.
+	 */
+	private static class TestService implements PersistenceService {
+
+		final List<Item> items = new ArrayList<Item>();
+		final List<State> states = new ArrayList<State>();
+		final List<String> aliases = new ArrayList<String>();
+
+		@Override
+		public String getName() {
+			return "test";
+		}
+
+		@Override
+		public void store(Item item) {
+			store(item, null);
+		}
+
+		@Override
+		public synchronized void store(Item item, String alias) {
+			items.add(item);
+			states.add(item.getState());
+			aliases.add(alias);
+		}
+	}
+
+	private static class TestBatchService implements BatchPersistenceService {
+
+		private final CountDownLatch release;
+
+		final List<PersistenceEntry> entries = Collections.synchronizedList(new ArrayList<PersistenceEntry>());
+		final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+		TestBatchService(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public String getName() {
+			return "test";
+		}
+
+		@Override
+		public void store(Item item) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void store(Item item, String alias) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void store(List<PersistenceEntry> entries) {
+			if (release != null) {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			batchSizes.add(entries.size());
+			this.entries.addAll(entries);
+		}
+	}
+
+	public static class TestItem extends GenericItem {
+
+		public TestItem(String name) {
+			super(name);
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+	}
+
+	/**
+	 * An item which does not extend {@link GenericItem}.
+	 */
+	private static class ForeignItem implements Item {
+
+		private final List<String> groupNames = new ArrayList<String>();
+
+		volatile State state;
+
+		@Override
+		public State getState() {
+			return state;
+		}
+
+		@Override
+		public State getStateAs(Class<? extends State> typeClass) {
+			return typeClass.isInstance(state) ? state : null;
+		}
+
+		@Override
+		public String getName() {
+			return "Foreign";
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+
+		@Override
+		public List<String> getGroupNames() {
+			return groupNames;
+		}
+	}
+
+}
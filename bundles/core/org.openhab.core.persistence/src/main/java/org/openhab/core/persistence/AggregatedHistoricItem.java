@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.Date;
+
+import org.openhab.core.types.State;
+
+/**
+ * A calculated state, which is not persisted as such, together with the number of
+ * persisted states it has been calculated from. The count allows to combine the
+ * result with further values, e.g. to include the current state into an average.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class AggregatedHistoricItem implements HistoricItem {
+
+	private final String name;
+	private final State state;
+	private final Date timestamp;
+	private final long count;
+
+	/**
+	 * @param name the name of the aggregated item
+	 * @param state the calculated state
+	 * @param timestamp the timestamp of the calculated state
+	 * @param count the number of states the state has been calculated from, for
+	 * 		{@link Aggregation#AVG} and {@link Aggregation#SUM} only the numeric ones
+	 */
+	public AggregatedHistoricItem(String name, State state, Date timestamp, long count) {
+		this.name = name;
+		this.state = state;
+		this.timestamp = timestamp;
+		this.count = count;
+	}
+
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of states the state has been calculated from
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return name + "=" + state + " (" + timestamp + ", " + count + " state(s))";
+	}
+
+}
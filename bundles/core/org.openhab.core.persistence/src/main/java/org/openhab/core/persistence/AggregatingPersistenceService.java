@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+/**
+ * A queryable persistence service which is able to calculate aggregations
+ * by itself, e.g. through the query language of the underlying database, so that
+ * the persisted states do not have to be transferred to openHAB.
+ *
+ * <p>Implementors which cannot calculate an aggregation natively for certain items
+ * can use {@link AggregationHelper} on the result of {@link #query(FilterCriteria)}.
+ * Only the item name and the begin and end dates of the filter criteria are
+ * regarded.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface AggregatingPersistenceService extends QueryablePersistenceService {
+
+	/**
+	 * Calculates an aggregation over all states matching the given filter criteria.
+	 * For {@link Aggregation#MIN}, {@link Aggregation#MAX}, {@link Aggregation#FIRST}
+	 * and {@link Aggregation#LAST}, the result is the matching persisted state; for the
+	 * other aggregations, it is an {@link AggregatedHistoricItem} with a
+	 * {@link org.openhab.core.library.types.DecimalType}, the timestamp of the most recent
+	 * state and the number of states it has been calculated from.
+	 *
+	 * @param filter the filter to apply
+	 * @param aggregation the aggregation to calculate
+	 * @return the aggregated state, <code>null</code> if there are no matching states
+	 * 		(except for {@link Aggregation#COUNT}, which is 0 then)
+	 */
+	HistoricItem aggregate(FilterCriteria filter, Aggregation aggregation);
+
+	/**
+	 * Divides the time range of the given filter criteria into intervals of the given
+	 * length, starting at the begin date of the filter or at 1970-01-01 if it has none,
+	 * and calculates the aggregation for each interval which contains any states.
+	 * The resulting states carry the start of their interval as their timestamp.
+	 *
+	 * @param filter the filter to apply
+	 * @param aggregation the aggregation to calculate for each interval
+	 * @param interval the length of the intervals in milliseconds
+	 * @return the aggregated states in ascending order
+	 */
+	Iterable<HistoricItem> aggregate(FilterCriteria filter, Aggregation aggregation, long interval);
+
+}
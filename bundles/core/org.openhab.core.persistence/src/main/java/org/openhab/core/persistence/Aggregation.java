@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+/**
+ * The aggregations which can be calculated over the persisted states of an item.
+ * {@link #MIN}, {@link #MAX}, {@link #AVG} and {@link #SUM} only regard numeric
+ * states, {@link #COUNT}, {@link #FIRST} and {@link #LAST} regard all states.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public enum Aggregation {
+	/** the number of persisted states */
+	COUNT,
+	/** the state with the smallest value */
+	MIN,
+	/** the state with the largest value */
+	MAX,
+	/** the arithmetic mean of all values */
+	AVG,
+	/** the sum of all values */
+	SUM,
+	/** the oldest state */
+	FIRST,
+	/** the most recent state */
+	LAST
+}
@@ -0,0 +1,239 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
+
+/**
+ * Calculates {@link Aggregation}s over persisted states. If the persistence service
+ * is an {@link AggregatingPersistenceService}, the calculation is delegated to it,
+ * otherwise the states are queried and aggregated in a single pass without keeping
+ * them in memory.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class AggregationHelper {
+
+	private AggregationHelper() {
+	}
+
+	/**
+	 * Calculates an aggregation over all states matching the given filter criteria.
+	 *
+	 * @param service the service to query
+	 * @param filter the filter to apply, ordering and paging are ignored
+	 * @param aggregation the aggregation to calculate
+	 * @return the aggregated state, <code>null</code> if there are no matching states
+	 * @see AggregatingPersistenceService#aggregate(FilterCriteria, Aggregation)
+	 */
+	public static HistoricItem aggregate(QueryablePersistenceService service, FilterCriteria filter, Aggregation aggregation) {
+		if (service instanceof AggregatingPersistenceService) {
+			return ((AggregatingPersistenceService) service).aggregate(filter, aggregation);
+		} else {
+			return aggregate(filter.getItemName(), service.query(filter), aggregation);
+		}
+	}
+
+	/**
+	 * Calculates an aggregation for each interval of the given length.
+	 *
+	 * @param service the service to query
+	 * @param filter the filter to apply, ordering and paging are ignored
+	 * @param aggregation the aggregation to calculate for each interval
+	 * @param interval the length of the intervals in milliseconds
+	 * @return the aggregated states in ascending order
+	 * @see AggregatingPersistenceService#aggregate(FilterCriteria, Aggregation, long)
+	 */
+	public static Iterable<HistoricItem> aggregate(QueryablePersistenceService service, FilterCriteria filter, Aggregation aggregation, long interval) {
+		if (service instanceof AggregatingPersistenceService) {
+			return ((AggregatingPersistenceService) service).aggregate(filter, aggregation, interval);
+		} else {
+			long origin = filter.getBeginDate() != null ? filter.getBeginDate().getTime() : 0;
+			return aggregate(filter.getItemName(), service.query(filter), aggregation, origin, interval);
+		}
+	}
+
+	/**
+	 * Calculates an aggregation over the given states.
+	 *
+	 * @param name the name to use for the resulting historic item
+	 * @param items the states to aggregate, in any order
+	 * @param aggregation the aggregation to calculate
+	 * @return the aggregated state, <code>null</code> if there are no (numeric) states
+	 * 		(except for {@link Aggregation#COUNT}, which is 0 then)
+	 */
+	public static HistoricItem aggregate(String name, Iterable<HistoricItem> items, Aggregation aggregation) {
+		Accumulator accumulator = new Accumulator();
+		for (HistoricItem item : items) {
+			accumulator.add(item);
+		}
+		return accumulator.getResult(name, aggregation, accumulator.lastTimestamp());
+	}
+
+	/**
+	 * Calculates an aggregation over the given states for each interval of the given length.
+	 *
+	 * @param name the name to use for the resulting historic items
+	 * @param items the states to aggregate, in any order
+	 * @param aggregation the aggregation to calculate for each interval
+	 * @param origin the start of the first interval in milliseconds since the epoch
+	 * @param interval the length of the intervals in milliseconds
+	 * @return the aggregated states for all intervals which contain states, in ascending order
+	 */
+	public static List<HistoricItem> aggregate(String name, Iterable<HistoricItem> items, Aggregation aggregation, long origin, long interval) {
+		if (interval <= 0) {
+			throw new IllegalArgumentException("The interval must be positive.");
+		}
+		TreeMap<Long, Accumulator> buckets = new TreeMap<Long, Accumulator>();
+		for (HistoricItem item : items) {
+			long bucket = (long) Math.floor((item.getTimestamp().getTime() - origin) / (double) interval);
+			Accumulator accumulator = buckets.get(bucket);
+			if (accumulator == null) {
+				accumulator = new Accumulator();
+				buckets.put(bucket, accumulator);
+			}
+			accumulator.add(item);
+		}
+		List<HistoricItem> result = new ArrayList<HistoricItem>(buckets.size());
+		for (Entry<Long, Accumulator> entry : buckets.entrySet()) {
+			Date start = new Date(origin + entry.getKey() * interval);
+			Accumulator accumulator = entry.getValue();
+			HistoricItem aggregated = accumulator.getResult(name, aggregation, start);
+			if (aggregated != null) {
+				result.add(new AggregatedHistoricItem(name, aggregated.getState(), start, accumulator.getCount(aggregation)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Calculates the time-weighted average of the given states, i.e. each value is weighted
+	 * with the time it has been valid for. A value is valid until the next state, the
+	 * last one until the end of the period. Non-numeric states are ignored.
+	 *
+	 * @param initial the state at the beginning of the period, may be <code>null</code>
+	 * @param items the states within the period in ascending order
+	 * @param begin the beginning of the period
+	 * @param end the end of the period
+	 * @return the time-weighted average, <code>null</code> if there are no numeric states
+	 */
+	public static DecimalType timeWeightedAverage(HistoricItem initial, Iterable<HistoricItem> items, Date begin, Date end) {
+		Double value = initial != null ? toDouble(initial.getState()) : null;
+		long validFrom = begin.getTime();
+		double weightedSum = 0;
+		long duration = 0;
+		for (HistoricItem item : items) {
+			Double nextValue = toDouble(item.getState());
+			if (nextValue == null) {
+				continue;
+			}
+			long timestamp = Math.max(item.getTimestamp().getTime(), begin.getTime());
+			if (value != null) {
+				weightedSum += value * (timestamp - validFrom);
+				duration += timestamp - validFrom;
+			}
+			value = nextValue;
+			validFrom = timestamp;
+		}
+		if (value == null) {
+			return null;
+		}
+		if (end.getTime() > validFrom) {
+			weightedSum += value * (end.getTime() - validFrom);
+			duration += end.getTime() - validFrom;
+		}
+		return new DecimalType(duration > 0 ? weightedSum / duration : value);
+	}
+
+	private static Double toDouble(State state) {
+		return state instanceof DecimalType ? ((DecimalType) state).doubleValue() : null;
+	}
+
+	/**
+	 * Collects everything needed for calculating any aggregation in a single pass.
+	 */
+	private static class Accumulator {
+		long count = 0;
+		long numericCount = 0;
+		double sum = 0;
+		HistoricItem min;
+		HistoricItem max;
+		HistoricItem first;
+		HistoricItem last;
+
+		void add(HistoricItem item) {
+			count++;
+			if (first == null || item.getTimestamp().before(first.getTimestamp())) {
+				first = item;
+			}
+			if (last == null || !item.getTimestamp().before(last.getTimestamp())) {
+				last = item;
+			}
+			if (item.getState() instanceof DecimalType) {
+				DecimalType value = (DecimalType) item.getState();
+				numericCount++;
+				sum += value.doubleValue();
+				// on equal values, the older state wins
+				if (min == null || value.compareTo((DecimalType) min.getState()) < 0
+						|| (value.compareTo((DecimalType) min.getState()) == 0 && item.getTimestamp().before(min.getTimestamp()))) {
+					min = item;
+				}
+				if (max == null || value.compareTo((DecimalType) max.getState()) > 0
+						|| (value.compareTo((DecimalType) max.getState()) == 0 && item.getTimestamp().before(max.getTimestamp()))) {
+					max = item;
+				}
+			}
+		}
+
+		long getCount(Aggregation aggregation) {
+			switch (aggregation) {
+				case COUNT:
+				case FIRST:
+				case LAST:
+					return count;
+				default:
+					return numericCount;
+			}
+		}
+
+		Date lastTimestamp() {
+			return last != null ? last.getTimestamp() : new Date();
+		}
+
+		HistoricItem getResult(String name, Aggregation aggregation, Date timestamp) {
+			switch (aggregation) {
+				case COUNT:
+					return new AggregatedHistoricItem(name, new DecimalType(count), timestamp, count);
+				case MIN:
+					return min;
+				case MAX:
+					return max;
+				case AVG:
+					return numericCount > 0 ? new AggregatedHistoricItem(name, new DecimalType(sum / numericCount), timestamp, numericCount) : null;
+				case SUM:
+					return numericCount > 0 ? new AggregatedHistoricItem(name, new DecimalType(sum), timestamp, numericCount) : null;
+				case FIRST:
+					return first;
+				case LAST:
+					return last;
+				default:
+					throw new IllegalArgumentException("Unknown aggregation " + aggregation);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.List;
+
+/**
+ * A persistence service which is able to store several states in one go,
+ * e.g. with a bulk insert. The persistence manager queues all states to persist
+ * for a service and hands them over in batches, if the service implements this
+ * interface.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface BatchPersistenceService extends PersistenceService {
+
+	/**
+	 * Stores the given entries. In contrast to {@link #store(org.openhab.core.items.Item, String)},
+	 * implementors must use the state and timestamp of the entries and not the current
+	 * state of the items.
+	 * 
+	 * @param entries the states to persist in the order of their updates
+	 */
+	void store(List<PersistenceEntry> entries);
+
+}
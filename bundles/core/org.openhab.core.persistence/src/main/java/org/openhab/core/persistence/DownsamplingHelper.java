@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.types.State;
+
+/**
+ * Reduces persisted states to the number of points which can actually be displayed,
+ * e.g. by a chart, so that rendering does not depend on the amount of persisted data,
+ * but on the resolution of the output. The downsampled states are a subset of the
+ * original states, no new states are calculated.
+ *
+ * <p>Only numeric states are downsampled, i.e. {@link DecimalType}s and the binary
+ * {@link OnOffType}s and {@link OpenClosedType}s, all other states are skipped.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class DownsamplingHelper {
+
+	private DownsamplingHelper() {
+	}
+
+	/**
+	 * Downsamples states by dividing the period into the given number of buckets, e.g. one
+	 * per pixel of a chart, and keeping the first, the minimum, the maximum and the last
+	 * state of each bucket. As all extremes are kept, a line chart of the downsampled
+	 * states looks the same as a chart of all states. The states are processed in a single
+	 * pass without keeping them in memory.
+	 *
+	 * @param items the states to downsample in ascending order
+	 * @param begin the beginning of the period, earlier states are added to the first bucket
+	 * @param end the end of the period, later states are added to the last bucket
+	 * @param buckets the number of buckets, e.g. the width of the chart in pixels
+	 * @return at most four states per bucket in ascending order
+	 */
+	public static List<HistoricItem> minMax(Iterable<HistoricItem> items, Date begin, Date end, int buckets) {
+		if (buckets <= 0) {
+			throw new IllegalArgumentException("The number of buckets must be positive.");
+		}
+		long period = Math.max(end.getTime() - begin.getTime(), 1);
+		List<HistoricItem> result = new ArrayList<HistoricItem>();
+		Bucket bucket = null;
+		for (HistoricItem item : items) {
+			Double value = toDouble(item.getState());
+			if (value == null) {
+				continue;
+			}
+			long offset = item.getTimestamp().getTime() - begin.getTime();
+			int index = (int) Math.max(0, Math.min(buckets - 1, offset * buckets / period));
+			if (bucket == null || bucket.index != index) {
+				if (bucket != null) {
+					bucket.addTo(result);
+				}
+				bucket = new Bucket(index);
+			}
+			bucket.add(item, value);
+		}
+		if (bucket != null) {
+			bucket.addTo(result);
+		}
+		return result;
+	}
+
+	/**
+	 * Downsamples states with the Largest-Triangle-Three-Buckets algorithm of Sveinn Steinarsson.
+	 * The first and the last state are always kept, the other states are divided into buckets
+	 * of equal size and from each bucket the state is kept, which forms the largest triangle
+	 * with the state kept from the previous bucket and the average of the next bucket. This
+	 * keeps the visual shape of the data with a single state per bucket.
+	 *
+	 * @param items the states to downsample in ascending order
+	 * @param threshold the maximum number of states to return, at least 3
+	 * @return the downsampled states in ascending order, all states if there are not more
+	 * 		than <code>threshold</code>
+	 */
+	public static List<HistoricItem> largestTriangleThreeBuckets(Iterable<HistoricItem> items, int threshold) {
+		if (threshold < 3) {
+			throw new IllegalArgumentException("The threshold must be at least 3.");
+		}
+		List<HistoricItem> numericItems = new ArrayList<HistoricItem>();
+		for (HistoricItem item : items) {
+			if (toDouble(item.getState()) != null) {
+				numericItems.add(item);
+			}
+		}
+		int size = numericItems.size();
+		if (size <= threshold) {
+			return numericItems;
+		}
+
+		long[] x = new long[size];
+		double[] y = new double[size];
+		for (int i = 0; i < size; i++) {
+			HistoricItem item = numericItems.get(i);
+			x[i] = item.getTimestamp().getTime();
+			y[i] = toDouble(item.getState());
+		}
+
+		List<HistoricItem> result = new ArrayList<HistoricItem>(threshold);
+		result.add(numericItems.get(0));
+
+		// the first and the last state are not part of any bucket
+		double bucketSize = (double) (size - 2) / (threshold - 2);
+		int selected = 0;
+		for (int bucket = 0; bucket < threshold - 2; bucket++) {
+			int from = (int) Math.floor(bucket * bucketSize) + 1;
+			int to = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+
+			// the average of the next bucket, which is the last state for the last bucket
+			int nextFrom = to;
+			int nextTo = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, size);
+			if (bucket == threshold - 3) {
+				nextFrom = size - 1;
+				nextTo = size;
+			}
+			double avgX = 0;
+			double avgY = 0;
+			for (int i = nextFrom; i < nextTo; i++) {
+				avgX += x[i];
+				avgY += y[i];
+			}
+			avgX /= nextTo - nextFrom;
+			avgY /= nextTo - nextFrom;
+
+			// the state of this bucket with the largest triangle
+			double maxArea = -1;
+			int next = from;
+			for (int i = from; i < to; i++) {
+				double area = Math.abs((x[selected] - avgX) * (y[i] - y[selected])
+						- (x[selected] - x[i]) * (avgY - y[selected]));
+				if (area > maxArea) {
+					maxArea = area;
+					next = i;
+				}
+			}
+			result.add(numericItems.get(next));
+			selected = next;
+		}
+
+		result.add(numericItems.get(size - 1));
+		return result;
+	}
+
+	private static Double toDouble(State state) {
+		if (state instanceof DecimalType) {
+			return ((DecimalType) state).doubleValue();
+		} else if (state instanceof OnOffType) {
+			return state == OnOffType.ON ? 1d : 0d;
+		} else if (state instanceof OpenClosedType) {
+			return state == OpenClosedType.OPEN ? 1d : 0d;
+		}
+		return null;
+	}
+
+	/**
+	 * The first, minimum, maximum and last state of a bucket.
+	 */
+	private static class Bucket {
+		final int index;
+		HistoricItem first;
+		HistoricItem min;
+		HistoricItem max;
+		HistoricItem last;
+		double minValue;
+		double maxValue;
+
+		Bucket(int index) {
+			this.index = index;
+		}
+
+		void add(HistoricItem item, double value) {
+			if (first == null) {
+				first = item;
+				min = item;
+				max = item;
+				minValue = value;
+				maxValue = value;
+			} else if (value < minValue) {
+				min = item;
+				minValue = value;
+			} else if (value > maxValue) {
+				max = item;
+				maxValue = value;
+			}
+			last = item;
+		}
+
+		void addTo(List<HistoricItem> result) {
+			result.add(first);
+			// add the extremes in the order of their occurrence
+			HistoricItem earlier = min.getTimestamp().after(max.getTimestamp()) ? max : min;
+			HistoricItem later = earlier == min ? max : min;
+			if (earlier != first) {
+				result.add(earlier);
+			}
+			if (later != first && later != earlier) {
+				result.add(later);
+			}
+			if (last != first && last != earlier && last != later) {
+				result.add(last);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.Date;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+
+/**
+ * A single state of an item which is to be persisted. It keeps the state and
+ * the time of the update, so that it can be stored later on, even if the item
+ * has already changed its state in the meantime.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class PersistenceEntry {
+
+	private final Item item;
+	private final String alias;
+	private final State state;
+	private final Date timestamp;
+	
+	public PersistenceEntry(Item item, String alias, State state, Date timestamp) {
+		this.item = item;
+		this.alias = alias;
+		this.state = state;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return the item whose state should be persisted
+	 */
+	public Item getItem() {
+		return item;
+	}
+
+	/**
+	 * @return the alias under which the state should be persisted or <code>null</code>, if there is none
+	 */
+	public String getAlias() {
+		return alias;
+	}
+
+	/**
+	 * @return the alias, if there is one, or the item name otherwise
+	 */
+	public String getName() {
+		return alias != null ? alias : item.getName();
+	}
+
+	/**
+	 * @return the state of the item at the time of the update
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the time of the update
+	 */
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + " -> " + state + " (" + timestamp + ")";
+	}
+
+}
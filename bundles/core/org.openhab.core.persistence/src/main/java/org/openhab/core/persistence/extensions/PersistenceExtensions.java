@@ -19,6 +19,9 @@ import java.util.Map;
 import org.joda.time.base.AbstractInstant;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatedHistoricItem;
+import org.openhab.core.persistence.Aggregation;
+import org.openhab.core.persistence.AggregationHelper;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
@@ -161,7 +164,7 @@ public class PersistenceExtensions implements ManagedService {
 	static public Boolean changedSince(Item item, AbstractInstant timestamp, String serviceName) {
 		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
 		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem itemThen = historicState(item, timestamp);
+		HistoricItem itemThen = historicState(item, timestamp, serviceName);
 		if(itemThen == null) {
 			// Can't get the state at the start time
 			// If we've got results more recent that this, it must have changed
@@ -205,7 +208,7 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return true, if item state was updated
 	 */
 	static public Boolean updatedSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		Iterable<HistoricItem> result = getStatesSince(item, timestamp, serviceName, 1);
 		if(result.iterator().hasNext()) {
 			return true;
 		} else {
@@ -241,40 +244,15 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return a historic item with the maximum state value since the given point in time
 	 */
 	static public HistoricItem maximumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem maximumHistoricItem = null;
+		HistoricItem maximumHistoricItem = aggregateSince(item, timestamp, serviceName, Aggregation.MAX);
 		DecimalType maximum = (DecimalType) item.getStateAs(DecimalType.class);
-		while(it.hasNext()) {
-			HistoricItem historicItem = it.next();
-			State state = historicItem.getState();
-			if (state instanceof DecimalType) {
-				DecimalType value = (DecimalType) state;
-				if(maximum==null || value.compareTo(maximum)>0) {
-					maximum = value;
-					maximumHistoricItem = historicItem;
-				}
-			}
-		}
-		if(maximumHistoricItem==null && maximum!=null) {
+		if(maximumHistoricItem!=null && (maximum==null || ((DecimalType) maximumHistoricItem.getState()).compareTo(maximum)>0)) {
+			return maximumHistoricItem;
+		} else if(maximum!=null) {
 			// the maximum state is the current one, so construct a historic item on the fly
-			final DecimalType state = maximum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentHistoricItem(item, maximum);
 		} else {
-			return maximumHistoricItem;
+			return null;
 		}
 	} 
 
@@ -306,43 +284,42 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the historic item with the minimum state value since the given point in time
 	 */
 	static public HistoricItem minimumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem minimumHistoricItem = null;
+		HistoricItem minimumHistoricItem = aggregateSince(item, timestamp, serviceName, Aggregation.MIN);
 		DecimalType minimum = (DecimalType) item.getStateAs(DecimalType.class);
-		while(it.hasNext()) {
-			HistoricItem historicItem = it.next();
-			State state = historicItem.getState();
-			if (state instanceof DecimalType) {
-				DecimalType value = (DecimalType) state;
-				if(minimum==null || value.compareTo(minimum)<0) {
-					minimum = value;
-					minimumHistoricItem = historicItem;
-				}
-			}
-		}
-		if(minimumHistoricItem==null && minimum!=null) {
+		if(minimumHistoricItem!=null && (minimum==null || ((DecimalType) minimumHistoricItem.getState()).compareTo(minimum)<0)) {
+			return minimumHistoricItem;
+		} else if(minimum!=null) {
 			// the minimal state is the current one, so construct a historic item on the fly
-			final DecimalType state = minimum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentHistoricItem(item, minimum);
 		} else {
-			return minimumHistoricItem;
+			return null;
 		}
 	} 
 	
+	/**
+	 * Creates a historic item for the current state of the given <code>item</code>.
+	 * 
+	 * @param item the item to create the historic item for
+	 * @param state the current state of the item
+	 * @return a historic item with the given state and the current time
+	 */
+	static private HistoricItem createCurrentHistoricItem(final Item item, final State state) {
+		return new HistoricItem() {
+			
+			public Date getTimestamp() {
+				return Calendar.getInstance().getTime();
+			}
+			
+			public State getState() {
+				return state;
+			}
+			
+			public String getName() {
+				return item.getName();
+			}
+		};
+	}
+	
 	/**
 	 * Gets the average value of the state of a given <code>item</code> since a certain point in time. 
 	 * The default persistence service is used. 
@@ -369,22 +346,28 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the average state value since the given point in time
 	 */
 	static public DecimalType averageSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		
 		DecimalType value = (DecimalType) item.getStateAs(DecimalType.class);
 		if (value == null) {
 			value = DecimalType.ZERO;
 		}
 		
+		// the current state counts as one of the values
 		double average = value.doubleValue();
-		int quantity = 1;
-		while(it.hasNext()) {
-			State state = it.next().getState();
-			if (state instanceof DecimalType) {
-				value = (DecimalType) state;
-				average += value.doubleValue();
-				quantity++;
+		long quantity = 1;
+		HistoricItem persistedAverage = aggregateSince(item, timestamp, serviceName, Aggregation.AVG);
+		if (persistedAverage instanceof AggregatedHistoricItem) {
+			// the persisted average is weighted with the number of numeric states it has been calculated from
+			long count = ((AggregatedHistoricItem) persistedAverage).getCount();
+			average += ((DecimalType) persistedAverage.getState()).doubleValue() * count;
+			quantity += count;
+		} else if (persistedAverage != null) {
+			// the service does not tell the number of states, so we have to count them ourselves
+			for (HistoricItem historicItem : getAllStatesSince(item, timestamp, serviceName)) {
+				State state = historicItem.getState();
+				if (state instanceof DecimalType) {
+					average += ((DecimalType) state).doubleValue();
+					quantity++;
+				}
 			}
 		}
 		average /= quantity;
@@ -392,6 +375,44 @@ public class PersistenceExtensions implements ManagedService {
 		return new DecimalType(average);
 	}
 	
+	/**
+	 * Gets the time-weighted average value of the state of a given <code>item</code> since a certain point in time,
+	 * i.e. every value is weighted with the time it has been valid for.
+	 * The default persistence service is used. 
+	 * 
+	 * @param item the item to get the average state value for
+	 * @param the point in time to start the check 
+	 * @return the time-weighted average state value since the given point in time
+	 */
+	static public DecimalType timeWeightedAverageSince(Item item, AbstractInstant timestamp) {
+		if(isDefaultServiceAvailable()) {
+			return timeWeightedAverageSince(item, timestamp, defaultService);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the time-weighted average value of the state of a given <code>item</code> since a certain point in time,
+	 * i.e. every value is weighted with the time it has been valid for.
+	 * The {@link PersistenceService} identified by the <code>serviceName</code> is used. 
+	 * 
+	 * @param item the item to get the average state value for
+	 * @param the point in time to start the check 
+	 * @param serviceName the name of the {@link PersistenceService} to use
+	 * @return the time-weighted average state value since the given point in time
+	 */
+	static public DecimalType timeWeightedAverageSince(Item item, AbstractInstant timestamp, String serviceName) {
+		HistoricItem itemThen = historicState(item, timestamp, serviceName);
+		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		DecimalType average = AggregationHelper.timeWeightedAverage(itemThen, result, timestamp.toDate(), new Date());
+		if (average == null) {
+			// nothing has been persisted, so the current state is the only value we know
+			average = (DecimalType) item.getStateAs(DecimalType.class);
+		}
+		return average;
+	}
+	
 	/**
 	 * Query for the last update timestamp of a given <code>item</code>.
 	 * The default persistence service is used.
@@ -589,6 +610,10 @@ public class PersistenceExtensions implements ManagedService {
 	}
 
 	static private Iterable<HistoricItem> getAllStatesSince(Item item, AbstractInstant timestamp, String serviceName) {
+		return getStatesSince(item, timestamp, serviceName, Integer.MAX_VALUE);
+	}
+	
+	static private Iterable<HistoricItem> getStatesSince(Item item, AbstractInstant timestamp, String serviceName, int pageSize) {
 		PersistenceService service = services.get(serviceName);
 		if (service instanceof QueryablePersistenceService) {
 			QueryablePersistenceService qService = (QueryablePersistenceService) service;
@@ -596,6 +621,7 @@ public class PersistenceExtensions implements ManagedService {
 			filter.setBeginDate(timestamp.toDate());
 			filter.setItemName(item.getName());
 			filter.setOrdering(Ordering.ASCENDING);
+			filter.setPageSize(pageSize);
 			return qService.query(filter);
 		} else {
 			logger.warn("There is no queryable persistence service registered with the name '{}'", serviceName);
@@ -603,6 +629,30 @@ public class PersistenceExtensions implements ManagedService {
 		}
 	}
 	
+	/**
+	 * Calculates an aggregation of the states of the given <code>item</code> since a certain point in time.
+	 * If the persistence service supports it, the aggregation is calculated by the service itself.
+	 * 
+	 * @param item the item to aggregate the states of
+	 * @param timestamp the point in time to start the aggregation
+	 * @param serviceName the name of the {@link PersistenceService} to use
+	 * @param aggregation the aggregation to calculate
+	 * @return the aggregated state or <code>null</code>, if there are no states
+	 */
+	static private HistoricItem aggregateSince(Item item, AbstractInstant timestamp, String serviceName, Aggregation aggregation) {
+		PersistenceService service = services.get(serviceName);
+		if (service instanceof QueryablePersistenceService) {
+			FilterCriteria filter = new FilterCriteria();
+			filter.setBeginDate(timestamp.toDate());
+			filter.setItemName(item.getName());
+			filter.setOrdering(Ordering.ASCENDING);
+			return AggregationHelper.aggregate((QueryablePersistenceService) service, filter, aggregation);
+		} else {
+			logger.warn("There is no queryable persistence service registered with the name '{}'", serviceName);
+			return null;
+		}
+	}
+	
 	/**
 	 * Returns <code>true</code>, if a default service is configured and returns <code>false</code> and logs a warning otherwise.
 	 * @return true, if a default service is available
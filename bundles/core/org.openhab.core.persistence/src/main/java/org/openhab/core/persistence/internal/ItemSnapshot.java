@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import java.lang.reflect.Constructor;
+import java.util.List;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * Creates items which carry the state of an item at the time it has been queued.
+ * Persistence services which only accept an item read its state when they store it,
+ * so they are given such a snapshot instead of the item itself, whose state might
+ * have changed meanwhile.
+ * <p>
+ * If possible, the snapshot is a new item of the same class, so that the services
+ * can still check the item type and convert the state with {@link Item#getStateAs(Class)}.
+ * The state of a group is converted by the group function of the group itself, as the 
+ * snapshot has no members. Otherwise it is a read-only view of the item with the captured state.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class ItemSnapshot {
+
+	private ItemSnapshot() {
+	}
+
+	/**
+	 * Returns an item with the name, type and groups of the given item and the given state.
+	 *
+	 * @param item the item to copy
+	 * @param state the state of the item at the time it has been queued
+	 * @return the snapshot of the item
+	 */
+	static Item of(Item item, State state) {
+		GenericItem copy = null;
+		if (item instanceof GroupItem) {
+			copy = new GroupSnapshot((GroupItem) item);
+		} else if (item instanceof GenericItem) {
+			copy = newInstance(item);
+		}
+		if (copy == null) {
+			return new StateView(item, state);
+		}
+		copy.getGroupNames().addAll(item.getGroupNames());
+		copy.setState(state);
+		return copy;
+	}
+
+	private static GenericItem newInstance(Item item) {
+		try {
+			Constructor<? extends Item> constructor = item.getClass().getConstructor(String.class);
+			return (GenericItem) constructor.newInstance(item.getName());
+		} catch (Exception e) {
+			// the item class cannot be instantiated by its name
+			return null;
+		}
+	}
+
+	/**
+	 * A copy of a group without members. A state of another type than the captured one
+	 * cannot be calculated from the captured state, e.g. the number of active members of an
+	 * OR group, so the conversion is left to the group function of the original group.
+	 */
+	private static class GroupSnapshot extends GroupItem {
+
+		private final GroupItem item;
+
+		GroupSnapshot(GroupItem item) {
+			super(item.getName(), item.getBaseItem());
+			this.item = item;
+		}
+
+		@Override
+		public State getStateAs(Class<? extends State> typeClass) {
+			State state = getState();
+			if (typeClass != null && typeClass.isInstance(state)) {
+				return state;
+			} else {
+				return item.getStateAs(typeClass);
+			}
+		}
+	}
+
+	/**
+	 * A read-only view of an item, which returns the captured state instead of the current one.
+	 */
+	private static class StateView implements Item {
+
+		private final Item item;
+
+		private final State state;
+
+		StateView(Item item, State state) {
+			this.item = item;
+			this.state = state;
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public State getStateAs(Class<? extends State> typeClass) {
+			if (typeClass != null && typeClass.isInstance(state)) {
+				return state;
+			} else {
+				return null;
+			}
+		}
+
+		public String getName() {
+			return item.getName();
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return item.getAcceptedDataTypes();
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return item.getAcceptedCommandTypes();
+		}
+
+		public List<String> getGroupNames() {
+			return item.getGroupNames();
+		}
+
+		@Override
+		public String toString() {
+			return getName() + " (State=" + state + ")";
+		}
+	}
+
+}
@@ -12,17 +12,21 @@ import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.ecore.EObject;
 import org.openhab.core.events.AbstractEventSubscriber;
 import org.openhab.core.items.GenericItem;
@@ -37,6 +41,7 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.PersistentStateRestorer;
 import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.persistence.internal.PersistenceWriter.OverflowPolicy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.openhab.model.core.EventType;
@@ -50,6 +55,8 @@ import org.openhab.model.persistence.persistence.PersistenceConfiguration;
 import org.openhab.model.persistence.persistence.PersistenceModel;
 import org.openhab.model.persistence.persistence.Strategy;
 import org.openhab.model.persistence.scoping.GlobalStrategies;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.Job;
 import org.quartz.JobDetail;
@@ -65,12 +72,14 @@ import org.slf4j.LoggerFactory;
 /**
  * This class is the central part of the persistence management and delegation. It reads the persistence
  * models, schedules timers and manages the invocation of {@link PersistenceService}s upon events.
+ * The states to persist are queued and written by a {@link PersistenceWriter} for each service,
+ * so that the event handling is not blocked by slow services.
  * 
  * @author Kai Kreuzer
  * @since 1.0.0
  *
  */
-public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener, PersistentStateRestorer {
+public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener, PersistentStateRestorer, ManagedService {
 	
 	private static final Logger logger = LoggerFactory.getLogger(PersistenceManager.class);
 
@@ -83,7 +92,16 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 
 	private ItemRegistry itemRegistry;
 
-	/*default */ Map<String, PersistenceService> persistenceServices = new HashMap<String, PersistenceService>();
+	/*default */ Map<String, PersistenceService> persistenceServices = new ConcurrentHashMap<String, PersistenceService>();
+	
+	/** the writers, which asynchronously store the states for each persistence service */
+	private Map<String, PersistenceWriter> persistenceWriters = new ConcurrentHashMap<String, PersistenceWriter>();
+	
+	// the configuration of the persistence writers
+	private int queueSize = PersistenceWriter.DEFAULT_QUEUE_SIZE;
+	private int batchSize = PersistenceWriter.DEFAULT_BATCH_SIZE;
+	private long flushInterval = PersistenceWriter.DEFAULT_FLUSH_INTERVAL;
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
 	
 	/** keeps a list of configurations for each persistence service */
 	protected Map<String, List<PersistenceConfiguration>> persistenceConfigurations = new ConcurrentHashMap<String, List<PersistenceConfiguration>>();
@@ -92,6 +110,14 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	protected Map<String, List<Strategy>> defaultStrategies = 
 			Collections.synchronizedMap(new HashMap<String, List<Strategy>>());
 	
+	/** 
+	 * keeps the persistence routes for each item name, so that the configurations do not
+	 * have to be evaluated on every state update; items without routes are not contained
+	 */
+	private volatile Map<String, List<PersistenceRoute>> persistenceRoutes = new ConcurrentHashMap<String, List<PersistenceRoute>>();
+	
+	private final Object routesLock = new Object();
+	
 	
 	public PersistenceManager() {
 		PersistenceManager.instance = this;
@@ -111,6 +137,69 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 	
 	public void deactivate() {
+		for(PersistenceWriter writer : persistenceWriters.values()) {
+			writer.shutdown();
+		}
+		persistenceWriters.clear();
+	}
+	
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		if (config != null) {
+			String queueSizeString = (String) config.get("queuesize");
+			if (StringUtils.isNotBlank(queueSizeString)) {
+				queueSize = (int) parsePositiveLong("queuesize", queueSizeString);
+			}
+			String batchSizeString = (String) config.get("batchsize");
+			if (StringUtils.isNotBlank(batchSizeString)) {
+				batchSize = (int) parsePositiveLong("batchsize", batchSizeString);
+			}
+			String flushIntervalString = (String) config.get("flushinterval");
+			if (StringUtils.isNotBlank(flushIntervalString)) {
+				flushInterval = "0".equals(flushIntervalString.trim()) ? 0 : parsePositiveLong("flushinterval", flushIntervalString);
+			}
+			String overflowString = (String) config.get("overflow");
+			if (StringUtils.isNotBlank(overflowString)) {
+				try {
+					overflowPolicy = OverflowPolicy.fromString(overflowString);
+				} catch (IllegalArgumentException e) {
+					throw new ConfigurationException("overflow", e.getMessage());
+				}
+			}
+			// recreate the writers with the new configuration
+			for(PersistenceService service : persistenceServices.values()) {
+				startWriter(service);
+			}
+		}
+	}
+	
+	private long parsePositiveLong(String key, String value) throws ConfigurationException {
+		try {
+			long longValue = Long.parseLong(value.trim());
+			if (longValue > 0) {
+				return longValue;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new ConfigurationException(key, "Invalid value '" + value + "', a positive integer is expected");
+	}
+	
+	private synchronized void startWriter(PersistenceService persistenceService) {
+		PersistenceWriter writer = new PersistenceWriter(persistenceService, queueSize, batchSize, flushInterval, overflowPolicy);
+		writer.start();
+		PersistenceWriter oldWriter = persistenceWriters.put(persistenceService.getName(), writer);
+		if (oldWriter != null) {
+			oldWriter.shutdown();
+		}
+	}
+	
+	private synchronized void stopWriter(PersistenceService persistenceService) {
+		PersistenceWriter writer = persistenceWriters.get(persistenceService.getName());
+		if (writer != null && writer.getService() == persistenceService) {
+			persistenceWriters.remove(persistenceService.getName());
+			writer.shutdown();
+		}
 	}
 	
 	
@@ -141,11 +230,13 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	public void unsetItemRegistry(ItemRegistry itemRegistry) {
 		itemRegistry.removeItemRegistryChangeListener(this);
 		this.itemRegistry = null;
+		rebuildRoutes();
 	}
 
 	public void addPersistenceService(PersistenceService persistenceService) {
 		logger.debug("Initializing {} persistence service.", persistenceService.getName());
 		persistenceServices.put(persistenceService.getName(), persistenceService);
+		startWriter(persistenceService);
 		stopEventHandling(persistenceService.getName());
 		startEventHandling(persistenceService.getName());
 	}
@@ -153,6 +244,26 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	public void removePersistenceService(PersistenceService persistenceService) {
 		stopEventHandling(persistenceService.getName());
 		persistenceServices.remove(persistenceService.getName());
+		stopWriter(persistenceService);
+	}
+	
+	/**
+	 * Queues the current state of the given item for persistence by the given service.
+	 * 
+	 * @param serviceName the name of the persistence service
+	 * @param item the item to persist
+	 * @param alias the alias to persist the item with, may be <code>null</code>
+	 */
+	/*default */ void store(String serviceName, Item item, String alias) {
+		PersistenceWriter writer = persistenceWriters.get(serviceName);
+		if (writer != null) {
+			writer.store(item, alias);
+		} else {
+			PersistenceService service = persistenceServices.get(serviceName);
+			if (service != null) {
+				service.store(item, alias);
+			}
+		}
 	}
 	
 	
@@ -179,8 +290,9 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	private void startEventHandling(String modelName) {
 		PersistenceModel model = (PersistenceModel) modelRepository.getModel(modelName + ".persist");
 		if(model!=null) {
-			persistenceConfigurations.put(modelName, model.getConfigs());
 			defaultStrategies.put(modelName, model.getDefaults());
+			persistenceConfigurations.put(modelName, model.getConfigs());
+			rebuildRoutes();
 			initializeItems(model, modelName);
 			createTimers(modelName);
 		}
@@ -192,7 +304,9 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @param modelName the name of the persistence model without file extension
 	 */
 	private void stopEventHandling(String modelName) {
-		persistenceConfigurations.remove(modelName);
+		if(persistenceConfigurations.remove(modelName)!=null) {
+			rebuildRoutes();
+		}
 		defaultStrategies.remove(modelName);
 		removeTimers(modelName);
 	}
@@ -230,17 +344,11 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @param onlyChanges true, if it has the change strategy, false otherwise
 	 */
 	private void handleStateEvent(Item item, boolean onlyChanges) {
-		synchronized (persistenceConfigurations) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				if(persistenceServices.containsKey(serviceName)) {				
-					for(PersistenceConfiguration config : entry.getValue()) {
-						if(hasStrategy(serviceName, config, onlyChanges ? GlobalStrategies.CHANGE : GlobalStrategies.UPDATE)) {
-							if(appliesToItem(config, item)) {
-								persistenceServices.get(serviceName).store(item, config.getAlias());
-							}
-						}
-					}
+		List<PersistenceRoute> routes = persistenceRoutes.get(item.getName());
+		if(routes!=null) {
+			for(PersistenceRoute route : routes) {
+				if((onlyChanges ? route.onChange : route.onUpdate) && persistenceServices.containsKey(route.serviceName)) {
+					store(route.serviceName, item, route.alias);
 				}
 			}
 		}
@@ -275,6 +383,10 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @return true, if the configuration applies to the item
 	 */
 	protected boolean appliesToItem(PersistenceConfiguration config, Item item) {
+		return appliesToItem(config, item, getAllGroupNames(item));
+	}
+
+	private boolean appliesToItem(PersistenceConfiguration config, Item item, Set<String> groupNames) {
 		for(EObject itemCfg : config.getItems()) {
 			if (itemCfg instanceof AllConfig) {
 				return true;
@@ -287,19 +399,108 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 			}
 			if (itemCfg instanceof GroupConfig) {
 				GroupConfig groupItemCfg = (GroupConfig) itemCfg;
-				String groupName = groupItemCfg.getGroup();
+				if(groupNames.contains(groupItemCfg.getGroup())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines the names of all groups the given item is a (direct or indirect) member of.
+	 * As {@link GroupItem#getAllMembers()} only contains non-group items, the result is
+	 * empty for group items.
+	 * 
+	 * @param item the item to get the groups for
+	 * @return the names of all groups of the item
+	 */
+	private Set<String> getAllGroupNames(Item item) {
+		if(item instanceof GroupItem || itemRegistry==null) {
+			return Collections.emptySet();
+		}
+		Set<String> groupNames = new HashSet<String>();
+		LinkedList<String> pending = new LinkedList<String>(item.getGroupNames());
+		while(!pending.isEmpty()) {
+			String groupName = pending.removeFirst();
+			if(!groupNames.contains(groupName)) {
 				try {
-					Item gItem = itemRegistry.getItem(groupName);
-					if (gItem instanceof GroupItem) {
-						GroupItem groupItem = (GroupItem) gItem;
-						if(groupItem.getAllMembers().contains(item)) {
-							return true;
-						}
+					Item groupItem = itemRegistry.getItem(groupName);
+					if(groupItem instanceof GroupItem) {
+						groupNames.add(groupName);
+						pending.addAll(groupItem.getGroupNames());
 					}
-				} catch (Exception e) {}
+				} catch (ItemNotFoundException e) {
+					// the group does not exist (yet), so the item is not a member of it
+				}
+			}
+		}
+		return groupNames;
+	}
+
+	/**
+	 * Determines the persistence configurations which apply to the given item.
+	 * 
+	 * @param item the item to determine the routes for
+	 * @return the routes for the item, an empty list if it is not persisted at all
+	 */
+	private List<PersistenceRoute> computeRoutes(Item item) {
+		Set<String> groupNames = getAllGroupNames(item);
+		List<PersistenceRoute> routes = new ArrayList<PersistenceRoute>();
+		for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
+			String serviceName = entry.getKey();
+			for(PersistenceConfiguration config : entry.getValue()) {
+				if(appliesToItem(config, item, groupNames)) {
+					routes.add(new PersistenceRoute(serviceName, config.getAlias(), 
+							hasStrategy(serviceName, config, GlobalStrategies.CHANGE),
+							hasStrategy(serviceName, config, GlobalStrategies.UPDATE),
+							hasStrategy(serviceName, config, GlobalStrategies.RESTORE)));
+				}
+			}
+		}
+		return routes;
+	}
+	
+	/**
+	 * Recalculates the persistence routes of all items. This is necessary whenever the
+	 * persistence configurations or the group structure change.
+	 */
+	private void rebuildRoutes() {
+		synchronized (routesLock) {
+			Map<String, List<PersistenceRoute>> routes = new ConcurrentHashMap<String, List<PersistenceRoute>>();
+			if(itemRegistry!=null && !persistenceConfigurations.isEmpty()) {
+				for(Item item : itemRegistry.getItems()) {
+					List<PersistenceRoute> itemRoutes = computeRoutes(item);
+					if(!itemRoutes.isEmpty()) {
+						routes.put(item.getName(), Collections.unmodifiableList(itemRoutes));
+					}
+				}
+			}
+			persistenceRoutes = routes;
+			logger.debug("Calculated persistence routes for {} items.", routes.size());
+		}
+	}
+	
+	/**
+	 * Recalculates the persistence routes after an item has been added or removed.
+	 * As group items change the routes of their members, they cause a full recalculation.
+	 * 
+	 * @param item the item that has been added or removed
+	 * @param removed true, if the item has been removed
+	 */
+	private void updateRoutes(Item item, boolean removed) {
+		synchronized (routesLock) {
+			if(item instanceof GroupItem) {
+				rebuildRoutes();
+			} else {
+				List<PersistenceRoute> itemRoutes = removed ? null : computeRoutes(item);
+				if(itemRoutes==null || itemRoutes.isEmpty()) {
+					persistenceRoutes.remove(item.getName());
+				} else {
+					persistenceRoutes.put(item.getName(), Collections.unmodifiableList(itemRoutes));
+				}
 			}
 		}
-		return false;
 	}
 
 	/**
@@ -346,12 +547,18 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 
 	public void allItemsChanged(Collection<String> oldItemNames) {
+		rebuildRoutes();
 		for(Item item : itemRegistry.getItems()) {
-			itemAdded(item);
+			registerItem(item);
 		}
 	}
 
 	public void itemAdded(Item item) {
+		updateRoutes(item, false);
+		registerItem(item);
+	}
+	
+	private void registerItem(Item item) {
 		initialize(item);
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
@@ -370,39 +577,40 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	protected void initialize(Item item) {
 		// get the last persisted state from the persistence service if no state is yet set
 		if(item.getState().equals(UnDefType.NULL) && item instanceof GenericItem) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				for(PersistenceConfiguration config : entry.getValue()) {
-					if(hasStrategy(serviceName, config, GlobalStrategies.RESTORE)) {
-						if(appliesToItem(config, item)) {
-							PersistenceService service = persistenceServices.get(serviceName);
-							if(service instanceof QueryablePersistenceService) {
-								QueryablePersistenceService queryService = (QueryablePersistenceService) service;
-								FilterCriteria filter = new FilterCriteria().setItemName(item.getName()).setPageSize(1);
-								Iterable<HistoricItem> result = queryService.query(filter);
-								Iterator<HistoricItem> it = result.iterator();
-								if(it.hasNext()) {
-									HistoricItem historicItem = it.next();
-									GenericItem genericItem = (GenericItem) item;
-									genericItem.removeStateChangeListener(this);
-									genericItem.setState(historicItem.getState());
-									genericItem.addStateChangeListener(this);
-									logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
-											new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
-											item.getName(), historicItem.getState().toString() } );
-									return;
-								}
-							} else if(service!=null) {
-								logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", serviceName);
-							}
+			List<PersistenceRoute> routes = persistenceRoutes.get(item.getName());
+			if(routes==null) {
+				return;
+			}
+			for(PersistenceRoute route : routes) {
+				if(route.onRestore) {
+					String serviceName = route.serviceName;
+					PersistenceService service = persistenceServices.get(serviceName);
+					if(service instanceof QueryablePersistenceService) {
+						QueryablePersistenceService queryService = (QueryablePersistenceService) service;
+						FilterCriteria filter = new FilterCriteria().setItemName(item.getName()).setPageSize(1);
+						Iterable<HistoricItem> result = queryService.query(filter);
+						Iterator<HistoricItem> it = result.iterator();
+						if(it.hasNext()) {
+							HistoricItem historicItem = it.next();
+							GenericItem genericItem = (GenericItem) item;
+							genericItem.removeStateChangeListener(this);
+							genericItem.setState(historicItem.getState());
+							genericItem.addStateChangeListener(this);
+							logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
+									new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
+									item.getName(), historicItem.getState().toString() } );
+							return;
 						}
+					} else if(service!=null) {
+						logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", serviceName);
 					}
 				}
-			}	
+			}
 		}		
 	}
 
 	public void itemRemoved(Item item) {
+		updateRoutes(item, true);
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
@@ -471,6 +679,25 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 			logger.warn("Failed to delete cron jobs of group '{}'", persistModelName);
 		}
 	}
-		
+
+	/**
+	 * Describes that an item has to be persisted by a service with a certain alias,
+	 * together with the strategies, which have been resolved from the configuration.
+	 */
+	private static class PersistenceRoute {
+		final String serviceName;
+		final String alias;
+		final boolean onChange;
+		final boolean onUpdate;
+		final boolean onRestore;
+
+		PersistenceRoute(String serviceName, String alias, boolean onChange, boolean onUpdate, boolean onRestore) {
+			this.serviceName = serviceName;
+			this.alias = alias;
+			this.onChange = onChange;
+			this.onUpdate = onUpdate;
+			this.onRestore = onRestore;
+		}
+	}
 
 }
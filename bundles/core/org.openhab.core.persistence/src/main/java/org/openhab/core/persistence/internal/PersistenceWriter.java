@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This thread writes the states of the items to a single {@link PersistenceService}.
+ * States are put into a bounded queue by the event handling threads and are written
+ * by this thread, so that a slow persistence service does not block the system.
+ * If the service is a {@link BatchPersistenceService}, the queued states are handed
+ * over in batches of up to <code>batchSize</code> entries.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class PersistenceWriter extends Thread {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistenceWriter.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 0;
+
+	/** the time in milliseconds to wait for the queue to be written on shutdown */
+	private static final long SHUTDOWN_TIMEOUT = 5000;
+
+	/** the number of dropped states after which another warning is logged */
+	private static final long DROP_WARNING_INTERVAL = 1000;
+
+	/**
+	 * Defines what happens with a new state if the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** the oldest queued state is dropped */
+		DROP_OLDEST,
+		/** the new state is dropped */
+		DROP_NEWEST,
+		/** the caller is blocked until there is space in the queue */
+		BLOCK;
+
+		public static OverflowPolicy fromString(String value) {
+			for (OverflowPolicy policy : values()) {
+				if (policy.name().replace("_", "").equalsIgnoreCase(value.trim().replace("_", ""))) {
+					return policy;
+				}
+			}
+			throw new IllegalArgumentException("Unknown overflow policy '" + value + "'");
+		}
+	}
+
+	private final PersistenceService service;
+
+	private final BlockingQueue<QueuedEntry> queue;
+
+	private final int batchSize;
+
+	private final long flushInterval;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private volatile boolean running = true;
+
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+	private final AtomicLong maxLatency = new AtomicLong();
+
+	/**
+	 * Creates a new writer for the given service.
+	 *
+	 * @param service the service to write to
+	 * @param queueSize the maximum number of states to queue
+	 * @param batchSize the maximum number of states to write at once
+	 * @param flushInterval the time in milliseconds to wait for a batch to fill up,
+	 * 		0 to write all queued states immediately
+	 * @param overflowPolicy what to do if the queue is full
+	 */
+	public PersistenceWriter(PersistenceService service, int queueSize, int batchSize, long flushInterval, OverflowPolicy overflowPolicy) {
+		super("PersistenceWriter-" + service.getName());
+		setDaemon(true);
+		this.service = service;
+		this.queue = new ArrayBlockingQueue<QueuedEntry>(queueSize);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public PersistenceService getService() {
+		return service;
+	}
+
+	/**
+	 * Queues the current state of the given item for persistence.
+	 *
+	 * @param item the item to persist
+	 * @param alias the alias to persist the item with, may be <code>null</code>
+	 */
+	public void store(Item item, String alias) {
+		QueuedEntry entry = new QueuedEntry(new PersistenceEntry(item, alias, item.getState(), new Date()));
+		if (!queue.offer(entry)) {
+			switch (overflowPolicy) {
+				case DROP_NEWEST:
+					drop(entry);
+					return;
+				case DROP_OLDEST:
+					while (!queue.offer(entry)) {
+						QueuedEntry oldest = queue.poll();
+						if (oldest != null) {
+							drop(oldest);
+						}
+					}
+					break;
+				case BLOCK:
+					try {
+						queue.put(entry);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						drop(entry);
+						return;
+					}
+					break;
+			}
+		}
+		queued.incrementAndGet();
+	}
+
+	private void drop(QueuedEntry entry) {
+		long count = dropped.incrementAndGet();
+		if (count % DROP_WARNING_INTERVAL == 1) {
+			logger.warn("The queue of persistence service '{}' is full, {} state(s) have been dropped so far (latest: {}).",
+				new Object[] { service.getName(), count, entry.entry });
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running || !queue.isEmpty()) {
+			try {
+				List<QueuedEntry> batch = nextBatch();
+				if (!batch.isEmpty()) {
+					write(batch);
+				}
+			} catch (InterruptedException e) {
+				// we have been interrupted on shutdown, stop immediately
+				break;
+			}
+		}
+		logger.debug("Persistence writer for '{}' stopped: {}", service.getName(), getStatistics());
+	}
+
+	private List<QueuedEntry> nextBatch() throws InterruptedException {
+		List<QueuedEntry> batch = new ArrayList<QueuedEntry>();
+		QueuedEntry first = queue.poll(1, TimeUnit.SECONDS);
+		if (first == null) {
+			return batch;
+		}
+		batch.add(first);
+		if (flushInterval > 0) {
+			// wait for the batch to fill up, but not longer than the flush interval
+			long deadline = System.currentTimeMillis() + flushInterval;
+			while (batch.size() < batchSize && running) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					break;
+				}
+				QueuedEntry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+				if (next == null) {
+					break;
+				}
+				batch.add(next);
+				queue.drainTo(batch, batchSize - batch.size());
+			}
+		} else {
+			queue.drainTo(batch, batchSize - 1);
+		}
+		return batch;
+	}
+
+	private void write(List<QueuedEntry> batch) {
+		long startTime = System.currentTimeMillis();
+		if (service instanceof BatchPersistenceService) {
+			List<PersistenceEntry> entries = new ArrayList<PersistenceEntry>(batch.size());
+			for (QueuedEntry queuedEntry : batch) {
+				entries.add(queuedEntry.entry);
+			}
+			try {
+				((BatchPersistenceService) service).store(entries);
+				written.addAndGet(batch.size());
+			} catch (RuntimeException e) {
+				failed.addAndGet(batch.size());
+				logger.error("Persistence service '{}' failed to store {} state(s)", new Object[] { service.getName(), batch.size(), e });
+			}
+		} else {
+			for (QueuedEntry queuedEntry : batch) {
+				PersistenceEntry entry = queuedEntry.entry;
+				try {
+					// the service reads the state from the item, so it gets the queued state in a snapshot
+					service.store(ItemSnapshot.of(entry.getItem(), entry.getState()), entry.getAlias());
+					written.incrementAndGet();
+				} catch (RuntimeException e) {
+					failed.incrementAndGet();
+					logger.error("Persistence service '{}' failed to store item '{}'", new Object[] { service.getName(), entry.getItem().getName(), e });
+				}
+			}
+		}
+		long now = System.nanoTime();
+		for (QueuedEntry queuedEntry : batch) {
+			recordLatency(now - queuedEntry.queuedAt);
+		}
+		logger.trace("Storing {} state(s) with persistence service '{}' took {}ms",
+				new Object[] { batch.size(), service.getName(), System.currentTimeMillis() - startTime });
+	}
+
+	private void recordLatency(long latency) {
+		totalLatency.addAndGet(latency);
+		long max = maxLatency.get();
+		while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+			max = maxLatency.get();
+		}
+	}
+
+	/**
+	 * Stops the writer after all queued states have been written. If this takes
+	 * too long, the remaining states are discarded.
+	 */
+	public void shutdown() {
+		running = false;
+		try {
+			join(SHUTDOWN_TIMEOUT);
+			if (isAlive()) {
+				logger.warn("Persistence service '{}' did not store all queued states in time, discarding {} state(s).",
+					service.getName(), queue.size());
+				interrupt();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** @return the number of states currently waiting to be written */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/** @return the number of states which have been queued so far */
+	public long getQueuedCount() {
+		return queued.get();
+	}
+
+	/** @return the number of states which have been dropped because of a full queue */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/** @return the number of states which have been written successfully */
+	public long getWrittenCount() {
+		return written.get();
+	}
+
+	/** @return the number of states which the service failed to store */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/** @return the average time in milliseconds between queuing and writing a state */
+	public double getAverageLatency() {
+		long count = written.get() + failed.get();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatency.get()) / 1000.0 / count;
+	}
+
+	/** @return the longest time in milliseconds between queuing and writing a state */
+	public double getMaxLatency() {
+		return TimeUnit.NANOSECONDS.toMicros(maxLatency.get()) / 1000.0;
+	}
+
+	public String getStatistics() {
+		return String.format("queued=%d, written=%d, failed=%d, dropped=%d, pending=%d, latency=%.1fms (max %.1fms)",
+				getQueuedCount(), getWrittenCount(), getFailedCount(), getDroppedCount(), getQueueDepth(),
+				getAverageLatency(), getMaxLatency());
+	}
+
+
+	/**
+	 * A queued state together with the time it has been queued.
+	 */
+	private static class QueuedEntry {
+		final PersistenceEntry entry;
+		final long queuedAt;
+
+		QueuedEntry(PersistenceEntry entry) {
+			this.entry = entry;
+			this.queuedAt = System.nanoTime();
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.scriptengine;
+
+import org.eclipse.xtext.xbase.interpreter.IEvaluationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class executes a script with a given context and logs any execution errors.
+ * In contrast to the {@link ScriptExecutionThread}, it does not need a thread of its
+ * own, so that it can be passed to any executor. While the script is running, the
+ * executing thread carries the name of the task. Errors are logged under the category
+ * of the {@link ScriptExecutionThread}, so that existing logging configurations still apply.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ *
+ */
+@SuppressWarnings("restriction")
+public class ScriptExecutionTask implements Runnable {
+
+	static private final Logger logger = LoggerFactory.getLogger(ScriptExecutionThread.class);
+
+	private final String name;
+	private final Script script;
+	private final IEvaluationContext context;
+
+	// the script evaluation result
+	private volatile Object result = null;
+	
+	public ScriptExecutionTask(String name, Script script, IEvaluationContext context) {
+		this.name = name;
+		this.script = script;
+		this.context = context;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public void run() {
+		Thread thread = Thread.currentThread();
+		String threadName = thread.getName();
+		thread.setName(name);
+		try {
+			result = script.execute(context);
+		} catch (ScriptExecutionException e) {
+			String msg = e.getCause().getMessage();
+			if (msg==null) {
+				logger.error("Error during the execution of rule '{}'", name, e.getCause());
+			} else {
+				logger.error("Error during the execution of rule '{}': {}", new String[] { name, msg });
+			}
+		} finally {
+			thread.setName(threadName);
+		}
+	}
+
+	/**
+	 * Returns the script evaluation result (or null, if the script has not been executed yet)
+	 * 
+	 * @return the script evaluation result
+	 */
+	public Object getResult() {
+		return result;
+	}
+}
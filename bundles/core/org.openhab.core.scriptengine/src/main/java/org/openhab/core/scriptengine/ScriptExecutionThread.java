@@ -9,12 +9,11 @@
 package org.openhab.core.scriptengine;
 
 import org.eclipse.xtext.xbase.interpreter.IEvaluationContext;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * This class can be used to execute scripts in a separate thread, so that the execution
- * of the caller thread is not blocked.
+ * of the caller thread is not blocked. The execution itself is done by a 
+ * {@link ScriptExecutionTask}.
  * 
  * @author Kai Kreuzer
  * @since 0.9.1
@@ -23,33 +22,17 @@ import org.slf4j.LoggerFactory;
 @SuppressWarnings("restriction")
 public class ScriptExecutionThread extends Thread {
 
-	static private final Logger logger = LoggerFactory.getLogger(ScriptExecutionThread.class);
-
-	private Script script;
-	private IEvaluationContext context;
-
-	// the script evaluation result
-	private Object result = null;
+	private final ScriptExecutionTask task;
 	
 	public ScriptExecutionThread(String name, Script script, IEvaluationContext context) {
 		setName(name);
-		this.script = script;
-		this.context = context;
+		this.task = new ScriptExecutionTask(name, script, context);
 	}
 	
 	@Override
 	public void run() {
 		super.run();
-		try {
-			result = script.execute(context);
-		} catch (ScriptExecutionException e) {
-			String msg = e.getCause().getMessage();
-			if (msg==null) {
-				logger.error("Error during the execution of rule '{}'", getName(), e.getCause());
-			} else {
-				logger.error("Error during the execution of rule '{}': {}", new String[] { getName(), msg });
-			}
-		}
+		task.run();
 	}
 
 	/**
@@ -58,6 +41,6 @@ public class ScriptExecutionThread extends Thread {
 	 * @return the script evaluation result
 	 */
 	public Object getResult() {
-		return result;
+		return task.getResult();
 	}
 }
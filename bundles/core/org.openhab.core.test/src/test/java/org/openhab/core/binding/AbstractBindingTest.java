@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.binding;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class AbstractBindingTest {
+
+	private TestBinding binding;
+
+	private TestBindingProvider provider;
+
+	@Before
+	public void setup() {
+		binding = new TestBinding();
+		provider = new TestBindingProvider();
+		provider.itemNames.add("Bound");
+		binding.addBindingProvider(provider);
+	}
+
+	@Test
+	public void testFilterEvents() {
+		binding.handleEvent(createUpdateEvent("Bound"));
+		binding.handleEvent(createUpdateEvent("Other"));
+
+		assertEquals(1, binding.updates.size());
+		assertEquals("Bound", binding.updates.get(0));
+		assertEquals(1, binding.getDeliveredEventCount());
+		assertEquals(1, binding.getFilteredEventCount());
+	}
+
+	@Test
+	public void testEventWithoutItem() {
+		Hashtable<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("state", UnDefType.UNDEF);
+		binding.handleEvent(new Event("openhab/update/Bound", properties));
+
+		assertEquals(0, binding.updates.size());
+		assertEquals(1, binding.getFilteredEventCount());
+	}
+
+	@Test
+	public void testBindingChanges() {
+		provider.itemNames.add("Other");
+		provider.notifyListeners("Other");
+		binding.handleEvent(createUpdateEvent("Other"));
+		assertEquals(1, binding.updates.size());
+
+		provider.itemNames.clear();
+		provider.notifyListeners(null);
+		binding.handleEvent(createUpdateEvent("Bound"));
+		binding.handleEvent(createUpdateEvent("Other"));
+		assertEquals(1, binding.updates.size());
+
+		binding.removeBindingProvider(provider);
+		provider.itemNames.add("Bound");
+		provider.notifyListeners("Bound");
+		binding.handleEvent(createUpdateEvent("Bound"));
+		assertEquals(1, binding.updates.size());
+	}
+
+	@Test
+	public void testOverriddenReceiveMethods() {
+		TestBinding allEventsBinding = new TestBinding() {
+			@Override
+			public void receiveUpdate(String itemName, State newState) {
+				updates.add(itemName);
+			}
+		};
+		allEventsBinding.addBindingProvider(provider);
+
+		assertTrue(binding.isFilteringEvents());
+		assertFalse(allEventsBinding.isFilteringEvents());
+		allEventsBinding.handleEvent(createUpdateEvent("Other"));
+		assertEquals(1, allEventsBinding.updates.size());
+	}
+
+	private static Event createUpdateEvent(String itemName) {
+		Hashtable<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("item", itemName);
+		properties.put("state", UnDefType.UNDEF);
+		return new Event("openhab/update/" + itemName, properties);
+	}
+
+	static class TestBinding extends AbstractBinding<BindingProvider> {
+
+		final List<String> updates = new ArrayList<String>();
+
+		@Override
+		protected void internalReceiveUpdate(String itemName, State newState) {
+			updates.add(itemName);
+		}
+
+		@Override
+		protected void internalReceiveCommand(String itemName, Command command) {
+		}
+
+	}
+
+	static class TestBindingProvider implements BindingProvider {
+
+		final Set<BindingChangeListener> listeners = new CopyOnWriteArraySet<BindingChangeListener>();
+
+		final Collection<String> itemNames = new CopyOnWriteArraySet<String>();
+
+		public void addBindingChangeListener(BindingChangeListener listener) {
+			listeners.add(listener);
+		}
+
+		public void removeBindingChangeListener(BindingChangeListener listener) {
+			listeners.remove(listener);
+		}
+
+		public boolean providesBindingFor(String itemName) {
+			return itemNames.contains(itemName);
+		}
+
+		public boolean providesBinding() {
+			return !itemNames.isEmpty();
+		}
+
+		public Collection<String> getItemNames() {
+			return new ArrayList<String>(itemNames);
+		}
+
+		/**
+		 * Notifies the listeners about a changed item, or about all items, if none is given.
+		 */
+		void notifyListeners(String itemName) {
+			for (BindingChangeListener listener : listeners) {
+				if (itemName != null) {
+					listener.bindingChanged(this, itemName);
+				} else {
+					listener.allBindingsChanged(this);
+				}
+			}
+		}
+
+	}
+
+}
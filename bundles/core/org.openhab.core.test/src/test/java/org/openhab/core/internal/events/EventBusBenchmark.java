@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.events;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openhab.core.events.EventSubscriber;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * A simple benchmark for the {@link org.openhab.core.events.EventBus}, which fans out
+ * state updates to 20 subscribers. It first measures the maximum throughput and then
+ * the delivery latency at a constant rate of 100,000 events per second. It is not
+ * executed as part of the test suite, but has to be started manually through its
+ * main method.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class EventBusBenchmark {
+
+	private static final int SUBSCRIBERS = 20;
+
+	private static final int EVENTS = 500000;
+
+	private static final int RATE = 100000;
+
+	private static final int ITERATIONS = 3;
+
+	public static void main(String[] args) throws InterruptedException {
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			run("throughput", 0);
+		}
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			run("latency at " + RATE + "/s", RATE);
+		}
+	}
+
+	private static void run(String name, int rate) throws InterruptedException {
+		EventPublisherImpl publisher = new EventPublisherImpl();
+		CountDownLatch done = new CountDownLatch(SUBSCRIBERS);
+		LatencySubscriber[] subscribers = new LatencySubscriber[SUBSCRIBERS];
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			subscribers[i] = new LatencySubscriber(done);
+			publisher.subscribe(subscribers[i]);
+		}
+
+		long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			if (interval > 0) {
+				long due = start + i * interval;
+				while (System.nanoTime() < due) {
+					LockSupport.parkNanos(1000);
+				}
+			}
+			publisher.postUpdate("Item" + (i % 100), new TimestampState(System.nanoTime()));
+		}
+		done.await();
+		long duration = System.nanoTime() - start;
+		publisher.deactivate();
+
+		long[] latencies = new long[EVENTS * SUBSCRIBERS];
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			System.arraycopy(subscribers[i].latencies, 0, latencies, i * EVENTS, EVENTS);
+		}
+		Arrays.sort(latencies);
+		System.out.println(String.format("%-22s %10.0f events/s %12.0f deliveries/s   latency p50 %7.1fus p99 %8.1fus max %9.1fus",
+				name, EVENTS * 1e9 / duration, (double) EVENTS * SUBSCRIBERS * 1e9 / duration,
+				percentile(latencies, 0.5), percentile(latencies, 0.99), latencies[latencies.length - 1] / 1000.0));
+	}
+
+	private static double percentile(long[] sorted, double percentile) {
+		return sorted[(int) (percentile * (sorted.length - 1))] / 1000.0;
+	}
+
+	/**
+	 * Records the time between publishing and receiving each update.
+	 */
+	private static class LatencySubscriber implements EventSubscriber {
+		final long[] latencies = new long[EVENTS];
+		final CountDownLatch done;
+		int count = 0;
+
+		LatencySubscriber(CountDownLatch done) {
+			this.done = done;
+		}
+
+		public void receiveCommand(String itemName, Command command) {
+		}
+
+		public void receiveUpdate(String itemName, State newState) {
+			latencies[count++] = System.nanoTime() - ((TimestampState) newState).timestamp;
+			if (count == EVENTS) {
+				done.countDown();
+			}
+		}
+	}
+
+	private static class TimestampState implements State {
+		final long timestamp;
+
+		TimestampState(long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+		public String format(String pattern) {
+			return String.valueOf(timestamp);
+		}
+	}
+
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Hashtable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.events.AbstractEventSubscriber;
+import org.openhab.core.events.EventSubscriber;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class EventPublisherImplTest {
+
+	private EventPublisherImpl publisher;
+
+	@Before
+	public void setUp() {
+		publisher = new EventPublisherImpl();
+	}
+
+	@After
+	public void tearDown() {
+		publisher.deactivate();
+	}
+
+	@Test
+	public void testSubscribeToItem() throws InterruptedException {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, "A", EventType.COMMAND);
+
+		publisher.postUpdate("A", UnDefType.NULL);
+		publisher.postCommand("B", new TestCommand("1"));
+		publisher.sendCommand("A", new TestCommand("2"));
+		publisher.postCommand("A", new TestCommand("3"));
+
+		assertEquals("command A=2", subscriber.next());
+		assertEquals("command A=3", subscriber.next());
+		assertNull(subscriber.events.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSubscribeToAllItems() throws InterruptedException {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		publisher.subscribe(subscriber, "A");
+		publisher.subscribe(subscriber, EventType.UPDATE);
+
+		// the item subscription only adds the commands of A, every event is delivered once
+		publisher.postUpdate("A", UnDefType.NULL);
+		publisher.postUpdate("B", UnDefType.UNDEF);
+		publisher.postCommand("A", new TestCommand("1"));
+		publisher.postCommand("B", new TestCommand("2"));
+
+		assertEquals("update A=Uninitialized", subscriber.next());
+		assertEquals("update B=Undefined", subscriber.next());
+		assertEquals("command A=1", subscriber.next());
+		assertNull(subscriber.events.poll(100, TimeUnit.MILLISECONDS));
+
+		publisher.unsubscribe(subscriber, "A");
+		publisher.postCommand("A", new TestCommand("3"));
+		publisher.postUpdate("A", UnDefType.UNDEF);
+		assertEquals("update A=Undefined", subscriber.next());
+
+		publisher.unsubscribe(subscriber);
+		publisher.postUpdate("A", UnDefType.NULL);
+		assertNull(subscriber.events.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testEventAdminBridge() throws InterruptedException {
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		final AbstractEventSubscriber handler = new AbstractEventSubscriber() {
+			@Override
+			public void receiveCommand(String itemName, Command command) {
+				subscriber.receiveCommand(itemName, command);
+			}
+
+			@Override
+			public void receiveUpdate(String itemName, State newState) {
+				subscriber.receiveUpdate(itemName, newState);
+			}
+		};
+		publisher.setEventAdmin(new EventAdmin() {
+			public void sendEvent(Event event) {
+				handler.handleEvent(event);
+			}
+
+			public void postEvent(Event event) {
+				handler.handleEvent(event);
+			}
+		});
+
+		publisher.sendCommand("A/B", new TestCommand("1"));
+		publisher.postUpdate("A", UnDefType.NULL);
+		handler.handleEvent(new Event("openhab/commands/A", new Hashtable<String, Object>()));
+		handler.handleEvent(new Event("openhab/update", new Hashtable<String, Object>()));
+
+		assertEquals("command A/B=1", subscriber.next());
+		assertEquals("update A=Uninitialized", subscriber.next());
+		assertNull(subscriber.events.poll(100, TimeUnit.MILLISECONDS));
+	}
+
+	/**
+	 * Records all received events as strings.
+	 */
+	static class RecordingSubscriber implements EventSubscriber {
+		final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+		public void receiveCommand(String itemName, Command command) {
+			events.add("command " + itemName + "=" + command);
+		}
+
+		public void receiveUpdate(String itemName, State newState) {
+			events.add("update " + itemName + "=" + newState);
+		}
+
+		String next() throws InterruptedException {
+			return events.poll(1, TimeUnit.SECONDS);
+		}
+	}
+
+	static class TestCommand implements Command {
+		private final String value;
+
+		TestCommand(String value) {
+			this.value = value;
+		}
+
+		public String format(String pattern) {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItem;
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItemProvider;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.ItemNotFoundException;
+
+/**
+ * A simple micro benchmark for the {@link ItemRegistryImpl}, which measures
+ * item lookups, full reloads of an item provider and pattern searches for
+ * models of different sizes. It is not executed as part of the test suite,
+ * but has to be started manually through its main method.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class ItemRegistryImplBenchmark {
+	
+	private static final int[] MODEL_SIZES = { 1000, 10000, 50000 };
+	
+	private static final int ITEMS_PER_GROUP = 50;
+	
+	private static final int WARMUP_ITERATIONS = 3;
+	
+	private static final int MEASUREMENT_ITERATIONS = 5;
+	
+	public static void main(String[] args) throws Exception {
+		for (int size : MODEL_SIZES) {
+			TestItemProvider provider = createProvider(size);
+			ItemRegistryImpl registry = new ItemRegistryImpl();
+			registry.addItemProvider(provider);
+			
+			System.out.println("Model with " + size + " items:");
+			report("  getItem(name)", benchmarkLookup(registry, size), size);
+			report("  allItemsChanged", benchmarkReload(registry, provider, size), 1);
+			report("  getItems(pattern)", benchmarkPattern(registry), 1);
+		}
+	}
+	
+	private static TestItemProvider createProvider(int size) {
+		TestItemProvider provider = new TestItemProvider();
+		for (int i = 0; i < size; i++) {
+			if (i % ITEMS_PER_GROUP == 0) {
+				provider.items.add(new GroupItem("Group" + (i / ITEMS_PER_GROUP)));
+			}
+			provider.items.add(new TestItem("Item" + i, "Group" + (i / ITEMS_PER_GROUP)));
+		}
+		return provider;
+	}
+
+	private static long benchmarkLookup(ItemRegistryImpl registry, int size) throws ItemNotFoundException {
+		long best = Long.MAX_VALUE;
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < size; i++) {
+				registry.getItem("Item" + i);
+			}
+			best = measured(iteration, best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	private static long benchmarkReload(ItemRegistryImpl registry, TestItemProvider provider, int size) {
+		long best = Long.MAX_VALUE;
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+			// a reload always comes with new item instances
+			provider.items.clear();
+			provider.items.addAll(createProvider(size).items);
+			long start = System.nanoTime();
+			registry.allItemsChanged(provider, null);
+			best = measured(iteration, best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	private static long benchmarkPattern(ItemRegistryImpl registry) {
+		long best = Long.MAX_VALUE;
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			registry.getItems("Item1*");
+			best = measured(iteration, best, System.nanoTime() - start);
+		}
+		return best;
+	}
+	
+	private static long measured(int iteration, long best, long duration) {
+		return iteration < WARMUP_ITERATIONS ? best : Math.min(best, duration);
+	}
+
+	private static void report(String name, long nanos, int operations) {
+		System.out.println(String.format("%-22s %12.1f ns/op %14.0f ops/s", 
+			name, (double) nanos / operations, operations * 1e9 / nanos));
+	}
+
+}
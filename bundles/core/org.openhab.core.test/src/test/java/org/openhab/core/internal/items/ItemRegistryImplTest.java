@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemProvider;
+import org.openhab.core.items.ItemsChangeListener;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class ItemRegistryImplTest {
+
+	private ItemRegistryImpl registry;
+	
+	private TestItemProvider provider;
+	
+	@Before
+	public void setup() {
+		registry = new ItemRegistryImpl();
+		provider = new TestItemProvider();
+	}
+	
+	@Test
+	public void testGetItem() throws ItemNotFoundException {
+		TestItem item = new TestItem("Light1");
+		provider.items.add(item);
+		registry.addItemProvider(provider);
+		
+		assertSame(item, registry.getItem("Light1"));
+	}
+
+	@Test(expected=ItemNotFoundException.class)
+	public void testGetUnknownItem() throws ItemNotFoundException {
+		registry.addItemProvider(provider);
+		registry.getItem("Unknown");
+	}
+	
+	@Test(expected=ItemNotFoundException.class)
+	public void testGetRemovedItem() throws ItemNotFoundException {
+		TestItem item = new TestItem("Light1");
+		provider.items.add(item);
+		registry.addItemProvider(provider);
+		
+		provider.items.remove(item);
+		registry.itemRemoved(provider, item);
+		registry.getItem("Light1");
+	}
+	
+	@Test
+	public void testGroupMembersIndependentOfOrder() throws ItemNotFoundException {
+		GroupItem group1 = new GroupItem("Group1");
+		GroupItem group2 = new GroupItem("Group2");
+		TestItem item1 = new TestItem("Light1", "Group1", "Group2");
+		TestItem item2 = new TestItem("Light2", "Group1");
+		provider.items.add(item1);
+		provider.items.add(group1);
+		provider.items.add(item2);
+		provider.items.add(group2);
+		registry.addItemProvider(provider);
+		
+		assertEquals(2, group1.getMembers().size());
+		assertTrue(group1.getMembers().contains(item1));
+		assertTrue(group1.getMembers().contains(item2));
+		assertEquals(1, group2.getMembers().size());
+		assertTrue(group2.getMembers().contains(item1));
+	}
+	
+	@Test
+	public void testAllItemsChangedReplacesItems() throws ItemNotFoundException {
+		provider.items.add(new TestItem("Light1", "Group1"));
+		provider.items.add(new GroupItem("Group1"));
+		registry.addItemProvider(provider);
+		
+		provider.items.clear();
+		TestItem newItem = new TestItem("Light1", "Group1");
+		GroupItem newGroup = new GroupItem("Group1");
+		provider.items.add(newGroup);
+		provider.items.add(newItem);
+		registry.allItemsChanged(provider, null);
+		
+		assertSame(newItem, registry.getItem("Light1"));
+		assertSame(newGroup, registry.getItem("Group1"));
+		assertEquals(1, newGroup.getMembers().size());
+		assertSame(newItem, newGroup.getMembers().get(0));
+		assertEquals(2, registry.getItems().size());
+	}
+	
+	@Test
+	public void testShadowedItemBecomesVisible() throws ItemNotFoundException {
+		TestItemProvider otherProvider = new TestItemProvider();
+		GroupItem group = new GroupItem("Group1");
+		TestItem item = new TestItem("Light1", "Group1");
+		TestItem otherItem = new TestItem("Light1", "Group1");
+		provider.items.add(item);
+		provider.items.add(group);
+		otherProvider.items.add(otherItem);
+		registry.addItemProvider(provider);
+		registry.addItemProvider(otherProvider);
+		
+		// the first registered item wins
+		assertSame(item, registry.getItem("Light1"));
+		assertEquals(1, group.getMembers().size());
+		assertSame(item, group.getMembers().get(0));
+		
+		provider.items.remove(item);
+		registry.itemRemoved(provider, item);
+		assertSame(otherItem, registry.getItem("Light1"));
+		assertEquals(1, group.getMembers().size());
+		assertSame(otherItem, group.getMembers().get(0));
+	}
+	
+	@Test
+	public void testGetItemsByPattern() {
+		provider.items.add(new TestItem("Light_GF_Kitchen"));
+		provider.items.add(new TestItem("Light_FF_Bath"));
+		provider.items.add(new TestItem("Heating_GF_Kitchen"));
+		registry.addItemProvider(provider);
+		
+		assertEquals(2, registry.getItems("Light*").size());
+		assertEquals(2, registry.getItems("*_GF_*").size());
+		assertEquals(1, registry.getItems("Light_FF_Bath").size());
+		assertEquals(0, registry.getItems("Light").size());
+	}
+	
+	
+	static class TestItemProvider implements ItemProvider {
+		
+		final List<Item> items = new ArrayList<Item>();
+
+		public Collection<Item> getItems() {
+			return new ArrayList<Item>(items);
+		}
+
+		public void addItemChangeListener(ItemsChangeListener listener) {
+		}
+
+		public void removeItemChangeListener(ItemsChangeListener listener) {
+		}
+		
+	}
+	
+	static class TestItem extends GenericItem {
+
+		public TestItem(String name, String... groupNames) {
+			super(name);
+			for (String groupName : groupNames) {
+				this.groupNames.add(groupName);
+			}
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItemProvider;
+import org.openhab.core.internal.items.ItemUpdaterTest.NumberItem;
+import org.openhab.core.internal.items.ItemUpdaterTest.NumberType;
+import org.openhab.core.internal.items.ItemUpdaterTest.PercentType;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * A simple micro benchmark for the {@link ItemUpdater}, which measures the state updates
+ * per second with the cached acceptance check and with the former reflective check, which
+ * instantiated each accepted data type for every update that was not an exact match. It is
+ * not executed as part of the test suite, but has to be started manually through its main
+ * method.
+ * 
+ * <p>The items accept a data type with a more expensive default constructor before the
+ * number type, just like the <code>DateTimeType</code> of the library.</p>
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class ItemUpdaterBenchmark {
+
+	private static final int ITEMS = 100;
+
+	private static final int UPDATES = 1000000;
+
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	public static void main(String[] args) {
+		TestItemProvider provider = new TestItemProvider();
+		for (int i = 0; i < ITEMS; i++) {
+			provider.items.add(new TimeOrNumberItem("Item" + i));
+		}
+		ItemRegistryImpl registry = new ItemRegistryImpl();
+		registry.addItemProvider(provider);
+
+		String[] names = new String[ITEMS];
+		for (int i = 0; i < ITEMS; i++) {
+			names[i] = "Item" + i;
+		}
+		State[] exactStates = { new NumberType(1), new NumberType(2) };
+		State[] subClassStates = { new PercentType(1), new PercentType(2) };
+
+		ItemUpdater cached = new ItemUpdater();
+		cached.setItemRegistry(registry);
+		ItemUpdater reflective = new ReflectiveItemUpdater();
+		reflective.setItemRegistry(registry);
+
+		report("exact type, reflective", benchmark(reflective, names, exactStates));
+		report("exact type, cached", benchmark(cached, names, exactStates));
+		report("sub type, reflective", benchmark(reflective, names, subClassStates));
+		report("sub type, cached", benchmark(cached, names, subClassStates));
+	}
+
+	private static long benchmark(ItemUpdater updater, String[] names, State[] states) {
+		long best = Long.MAX_VALUE;
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < UPDATES; i++) {
+				// alternate the states, so that change notifications are sent as well
+				updater.receiveUpdate(names[i % names.length], states[(i / names.length) & 1]);
+			}
+			long duration = System.nanoTime() - start;
+			if (iteration >= WARMUP_ITERATIONS) {
+				best = Math.min(best, duration);
+			}
+		}
+		return best;
+	}
+
+	private static void report(String name, long nanos) {
+		System.out.println(String.format("%-24s %10.1f ns/update %14.0f updates/s",
+				name, (double) nanos / UPDATES, UPDATES * 1e9 / nanos));
+	}
+
+	private static class TimeOrNumberItem extends NumberItem {
+
+		private static List<Class<? extends State>> acceptedDataTypes = new ArrayList<Class<? extends State>>();
+
+		static {
+			acceptedDataTypes.add(TimeType.class);
+			acceptedDataTypes.add(NumberType.class);
+			acceptedDataTypes.add(UnDefType.class);
+		}
+
+		public TimeOrNumberItem(String name) {
+			super(name);
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return acceptedDataTypes;
+		}
+
+	}
+
+	private static class TimeType implements State {
+
+		private final Calendar calendar;
+
+		public TimeType() {
+			calendar = Calendar.getInstance();
+		}
+
+		public String format(String pattern) {
+			return String.format(pattern, calendar);
+		}
+
+	}
+
+	/**
+	 * The acceptance check of the {@link ItemUpdater} before the decisions were cached.
+	 */
+	private static class ReflectiveItemUpdater extends ItemUpdater {
+
+		@Override
+		public void receiveUpdate(String itemName, State newStatus) {
+			try {
+				GenericItem item = (GenericItem) itemRegistry.getItem(itemName);
+				boolean isAccepted = false;
+				if (item.getAcceptedDataTypes().contains(newStatus.getClass())) {
+					isAccepted = true;
+				} else {
+					for (Class<? extends State> state : item.getAcceptedDataTypes()) {
+						try {
+							if (!state.isEnum() && state.newInstance().getClass().isAssignableFrom(newStatus.getClass())) {
+								isAccepted = true;
+								break;
+							}
+						} catch (InstantiationException e) {
+						} catch (IllegalAccessException e) {
+						}
+					}
+				}
+				if (isAccepted) {
+					item.setState(newStatus);
+				}
+			} catch (ItemNotFoundException e) {
+			}
+		}
+
+	}
+
+}
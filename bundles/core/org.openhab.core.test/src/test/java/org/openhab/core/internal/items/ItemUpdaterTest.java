@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItemProvider;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class ItemUpdaterTest {
+
+	private ItemUpdater updater;
+
+	private ItemRegistryImpl registry;
+
+	private TestItemProvider provider;
+
+	@Before
+	public void setup() {
+		provider = new TestItemProvider();
+		registry = new ItemRegistryImpl();
+		updater = new ItemUpdater();
+		updater.setItemRegistry(registry);
+	}
+
+	@Test
+	public void testAcceptedTypes() {
+		NumberItem item = new NumberItem("Number");
+		provider.items.add(item);
+		registry.addItemProvider(provider);
+
+		updater.receiveUpdate("Number", UnDefType.UNDEF);
+		assertSame(UnDefType.UNDEF, item.getState());
+
+		// a sub class of an accepted type is accepted as well, also when it is cached already
+		for (int i = 0; i < 2; i++) {
+			updater.receiveUpdate("Number", new NumberType(i));
+			assertEquals(new NumberType(i), item.getState());
+			updater.receiveUpdate("Number", new PercentType(i));
+			assertEquals(new PercentType(i), item.getState());
+		}
+
+		updater.receiveUpdate("Number", new TextType());
+		assertEquals(new PercentType(1), item.getState());
+	}
+
+	@Test
+	public void testGroupWithBaseItem() {
+		GroupItem group = new GroupItem("Group", new NumberItem("Base"));
+		provider.items.add(group);
+		registry.addItemProvider(provider);
+
+		updater.receiveUpdate("Group", new PercentType(1));
+		assertEquals(new PercentType(1), group.getState());
+		updater.receiveUpdate("Group", new TextType());
+		assertEquals(new PercentType(1), group.getState());
+	}
+
+	static class NumberItem extends GenericItem {
+
+		private static List<Class<? extends State>> acceptedDataTypes = new ArrayList<Class<? extends State>>();
+
+		static {
+			acceptedDataTypes.add(NumberType.class);
+			acceptedDataTypes.add(UnDefType.class);
+		}
+
+		public NumberItem(String name) {
+			super(name);
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return acceptedDataTypes;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return new ArrayList<Class<? extends Command>>();
+		}
+
+	}
+
+	static class NumberType implements State {
+
+		final int value;
+
+		public NumberType() {
+			this(0);
+		}
+
+		public NumberType(int value) {
+			this.value = value;
+		}
+
+		public String format(String pattern) {
+			return String.valueOf(value);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj != null && obj.getClass() == getClass() && ((NumberType) obj).value == value;
+		}
+
+		@Override
+		public int hashCode() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName() + "(" + value + ")";
+		}
+
+	}
+
+	static class PercentType extends NumberType {
+
+		public PercentType() {
+		}
+
+		public PercentType(int value) {
+			super(value);
+		}
+
+	}
+
+	static class TextType implements State {
+
+		public String format(String pattern) {
+			return "";
+		}
+
+	}
+
+}
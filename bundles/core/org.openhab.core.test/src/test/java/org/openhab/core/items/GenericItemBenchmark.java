@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import org.openhab.core.items.GenericItemTest.CountingListener;
+import org.openhab.core.items.GenericItemTest.TestItem;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * A simple micro benchmark for the state updates of a {@link GenericItem}, which
+ * measures the updates per second for different numbers of listeners. It is not
+ * executed as part of the test suite, but has to be started manually through its
+ * main method.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class GenericItemBenchmark {
+
+	private static final int[] LISTENER_COUNTS = { 1, 10, 100 };
+
+	private static final int UPDATES = 1000000;
+
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	public static void main(String[] args) {
+		for (int count : LISTENER_COUNTS) {
+			TestItem item = new TestItem("Test");
+			for (int i = 0; i < count; i++) {
+				item.addStateChangeListener(new CountingListener());
+			}
+			long best = Long.MAX_VALUE;
+			for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < UPDATES; i++) {
+					// alternate the states, so that change notifications are sent as well
+					State state = (i & 1) == 0 ? UnDefType.UNDEF : UnDefType.NULL;
+					item.setState(state);
+				}
+				long duration = System.nanoTime() - start;
+				if (iteration >= WARMUP_ITERATIONS) {
+					best = Math.min(best, duration);
+				}
+			}
+			System.out.println(String.format("%3d listener(s): %12.1f ns/update %14.0f updates/s",
+					count, (double) best / UPDATES, UPDATES * 1e9 / best));
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class GenericItemTest {
+
+	private TestItem item;
+
+	@Before
+	public void setup() {
+		item = new TestItem("Test");
+	}
+
+	@Test
+	public void testListenersAreNotifiedOnce() {
+		CountingListener listener = new CountingListener();
+		item.addStateChangeListener(listener);
+		item.addStateChangeListener(listener);
+
+		item.setState(UnDefType.UNDEF);
+		item.setState(UnDefType.UNDEF);
+		assertEquals(2, listener.updates);
+		assertEquals(1, listener.changes);
+
+		item.removeStateChangeListener(listener);
+		item.setState(UnDefType.NULL);
+		assertEquals(2, listener.updates);
+	}
+
+	@Test
+	public void testListenerRemovedDuringNotification() {
+		final CountingListener second = new CountingListener();
+		StateChangeListener first = new CountingListener() {
+			@Override
+			public void stateUpdated(Item item, State state) {
+				super.stateUpdated(item, state);
+				((GenericItem) item).removeStateChangeListener(this);
+				((GenericItem) item).removeStateChangeListener(second);
+			}
+		};
+		item.addStateChangeListener(first);
+		item.addStateChangeListener(second);
+
+		// the notification in progress is not affected by the removal
+		item.setState(UnDefType.UNDEF);
+		assertEquals(1, second.updates);
+		item.setState(UnDefType.NULL);
+		assertEquals(1, second.updates);
+	}
+
+	@Test
+	public void testWeakListener() {
+		CountingListener listener = new CountingListener();
+		item.addWeakStateChangeListener(listener);
+		item.addStateChangeListener(listener);
+
+		item.setState(UnDefType.UNDEF);
+		assertEquals(1, listener.updates);
+
+		item.removeStateChangeListener(listener);
+		item.setState(UnDefType.NULL);
+		assertEquals(1, listener.updates);
+	}
+
+	static class CountingListener implements StateChangeListener {
+		int updates = 0;
+		int changes = 0;
+
+		public void stateChanged(Item item, State oldState, State newState) {
+			changes++;
+		}
+
+		public void stateUpdated(Item item, State state) {
+			updates++;
+		}
+	}
+
+	static class TestItem extends GenericItem {
+
+		public TestItem(String name) {
+			super(name);
+		}
+
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+	}
+
+}
@@ -11,6 +11,9 @@ package org.openhab.core.items;
 import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.Assert;
 
@@ -18,6 +21,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
 
 
 /**
@@ -54,6 +58,45 @@ public class GroupItemTest {
 	}
 	
 	
+	@Test
+	public void testCoalescingWindow() {
+		// the window never ends by itself, the test publishes the state instead
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+		GroupItem group = new GroupItem("group");
+		group.setCoalescingExecutor(executor);
+		group.setCoalescingWindow(TimeUnit.HOURS.toMillis(1));
+		for (int i = 0; i < 10; i++) {
+			group.addMember(new TestItem("member" + i));
+		}
+		final AtomicInteger updates = new AtomicInteger();
+		group.addStateChangeListener(new StateChangeListener() {
+			public void stateUpdated(Item item, State state) {
+				updates.incrementAndGet();
+			}
+
+			public void stateChanged(Item item, State oldState, State newState) {
+			}
+		});
+		
+		// every member sends an update and a change notification
+		for (Item member : group.getMembers()) {
+			((GenericItem) member).setState(UnDefType.UNDEF);
+		}
+		Assert.assertEquals(0, updates.get());
+		Assert.assertEquals(1, executor.getQueue().size());
+		
+		// end the window now
+		for (Runnable publication : executor.getQueue().toArray(new Runnable[0])) {
+			executor.remove(publication);
+			publication.run();
+		}
+		executor.shutdownNow();
+		Assert.assertEquals(1, updates.get());
+		Assert.assertEquals(UnDefType.UNDEF, group.getState());
+		Assert.assertEquals(1, group.getEmittedUpdateCount());
+		Assert.assertEquals(19, group.getCoalescedUpdateCount());
+	}
+	
 	class TestItem extends GenericItem {
 
 		public TestItem(String name) {
@@ -0,0 +1,210 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.service.PollingScheduler.PollingTask;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class PollingSchedulerTest {
+
+	private PollingScheduler scheduler;
+
+	@Before
+	public void setUp() {
+		scheduler = new PollingScheduler();
+	}
+
+	@After
+	public void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void testFixedRate() throws InterruptedException {
+		final AtomicReference<PollingTask> task = new AtomicReference<PollingTask>();
+		final AtomicInteger executions = new AtomicInteger();
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		final CountDownLatch afterCancel = new CountDownLatch(1);
+		task.set(scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				if (cancelled.getCount() == 0) {
+					afterCancel.countDown();
+				} else if (executions.incrementAndGet() >= 5 && task.get() != null) {
+					// no other execution can be in progress while this one is running
+					task.get().cancel(false);
+					cancelled.countDown();
+				}
+			}
+		}, 10, 0));
+		assertTrue(cancelled.await(2, TimeUnit.SECONDS));
+		assertTrue(task.get().getExecutionCount() >= 5);
+		assertEquals(0, task.get().getOverrunCount());
+		assertTrue(task.get().isCancelled());
+		assertFalse(scheduler.getTasks().contains(task.get()));
+
+		// 10 more executions would have been due in the meantime
+		assertFalse(afterCancel.await(100, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSkipIfStillRunning() throws InterruptedException {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch first = new CountDownLatch(1);
+		final CountDownLatch second = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		PollingTask task = scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+				first.countDown();
+				second.countDown();
+				awaitUninterruptibly(release);
+				running.decrementAndGet();
+			}
+		}, 10, 0);
+		assertTrue(first.await(2, TimeUnit.SECONDS));
+
+		// 10 more executions would have been due while the first one is blocked
+		assertFalse(second.await(100, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(second.await(2, TimeUnit.SECONDS));
+		task.cancel(false);
+
+		assertEquals(1, maxRunning.get());
+		assertTrue(task.getOverrunCount() > 0);
+		assertTrue(task.getMaxDuration() >= 100);
+	}
+
+	@Test
+	public void testTimedOutTaskIsNotStartedAgainWhileRunning() throws InterruptedException {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final CountDownLatch second = new CountDownLatch(2);
+		final CountDownLatch release = new CountDownLatch(1);
+		PollingTask task = scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				maxRunning.set(Math.max(maxRunning.get(), running.incrementAndGet()));
+				second.countDown();
+				// like a blocking socket read, which does not react to the interrupt
+				while (true) {
+					try {
+						release.await();
+						break;
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+					}
+				}
+				running.decrementAndGet();
+			}
+		}, 10, 20);
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+
+		// the interrupted execution still occupies its thread, so no other one is started
+		assertTrue(task.isExecuting());
+		assertFalse(second.await(100, TimeUnit.MILLISECONDS));
+		release.countDown();
+		assertTrue(second.await(2, TimeUnit.SECONDS));
+		task.cancel(false);
+
+		assertEquals(1, maxRunning.get());
+		assertTrue(task.getTimeoutCount() >= 1);
+		assertTrue(task.getOverrunCount() > 0);
+	}
+
+	@Test
+	public void testTimeout() throws InterruptedException {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		PollingTask task = scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+			}
+		}, 1000, 20);
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+		assertEquals(1, task.getTimeoutCount());
+	}
+
+	@Test
+	public void testInterruptStartsNextExecution() throws InterruptedException {
+		final CountDownLatch first = new CountDownLatch(1);
+		final CountDownLatch second = new CountDownLatch(2);
+		PollingTask task = scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				first.countDown();
+				second.countDown();
+			}
+		}, 60000, 0);
+		assertTrue(first.await(2, TimeUnit.SECONDS));
+
+		// the next execution would only be due in a minute, it is started immediately or,
+		// if the first one has not returned yet, as soon as it has returned
+		task.interrupt();
+		assertTrue(second.await(2, TimeUnit.SECONDS));
+		assertFalse(task.isCancelled());
+		assertTrue(scheduler.getTasks().contains(task));
+	}
+
+	@Test
+	public void testInterruptRunningExecution() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch restarted = new CountDownLatch(2);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		PollingTask task = scheduler.schedule("Test", new Runnable() {
+			public void run() {
+				started.countDown();
+				restarted.countDown();
+				if (interrupted.getCount() == 0) {
+					return;
+				}
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+			}
+		}, 60000, 0);
+		assertTrue(started.await(2, TimeUnit.SECONDS));
+
+		task.interrupt();
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+		// the next execution is started as soon as the interrupted one has returned
+		assertTrue(restarted.await(2, TimeUnit.SECONDS));
+		assertFalse(task.isCancelled());
+	}
+
+	private static void awaitUninterruptibly(CountDownLatch latch) {
+		while (true) {
+			try {
+				latch.await();
+				return;
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.transform.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.config.core.ConfigConstants;
+import org.openhab.core.transform.TransformationException;
+import org.openhab.core.transform.internal.service.JavaScriptTransformationService;
+
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class JavaScriptTransformationServiceTest {
+
+	private static final String COUNTING_SCRIPT =
+		"var calls = (typeof calls === 'undefined') ? 1 : calls + 1; input + calls";
+
+	private JavaScriptTransformationService processor;
+
+	private File configFolder;
+
+	@Before
+	public void init() throws IOException {
+		configFolder = new File(System.getProperty("java.io.tmpdir"), "javascript-transformation-test");
+		File transformFolder = new File(configFolder, TransformationActivator.TRANSFORM_FOLDER_NAME);
+		FileUtils.writeStringToFile(new File(transformFolder, "counting.js"), COUNTING_SCRIPT);
+		System.setProperty(ConfigConstants.CONFIG_DIR_PROG_ARGUMENT, configFolder.getPath());
+
+		processor = new JavaScriptTransformationService();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		System.clearProperty(ConfigConstants.CONFIG_DIR_PROG_ARGUMENT);
+		FileUtils.deleteDirectory(configFolder);
+	}
+
+	@Test
+	public void testTransform() throws TransformationException {
+
+		// method under test
+		String transformedResponse = processor.transform("counting.js", "OPEN");
+
+		// Asserts
+		Assert.assertEquals("OPEN1", transformedResponse);
+	}
+
+	@Test
+	public void testTransform_variablesDoNotLeak() throws TransformationException {
+
+		// method under test
+		processor.transform("counting.js", "OPEN");
+		String transformedResponse = processor.transform("counting.js", "CLOSED");
+
+		// Asserts
+		Assert.assertEquals("CLOSED1", transformedResponse);
+	}
+
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.transform.internal;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openhab.config.core.ConfigConstants;
+import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.service.JavaScriptTransformationService;
+import org.openhab.core.transform.internal.service.MapTransformationService;
+import org.openhab.core.transform.internal.service.RegExTransformationService;
+import org.openhab.core.transform.internal.service.XPathTransformationService;
+import org.openhab.core.transform.internal.service.XsltTransformationService;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * A simple micro benchmark for the transformation services, which measures the
+ * transformations per second with the cached artifacts and with the former implementation,
+ * which compiled the expression or read and compiled the file on every call. It is not
+ * executed as part of the test suite, but has to be started manually through its main method.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class TransformationBenchmark extends AbstractTransformationServiceTest {
+
+	private static final int WARMUP_ITERATIONS = 3;
+
+	private static final int MEASUREMENT_ITERATIONS = 5;
+
+	private static final String REGEX = ".*?<current_conditions>.*?<temp_c data=\"(.*?)\".*";
+
+	private static final String XPATH = "/*[name()='xml_api_reply']/*[name()='weather']/*[name()='current_conditions']/*[name()='temp_c']/@data";
+
+	private static final String XSLT = "<?xml version=\"1.0\"?>"
+			+ "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">"
+			+ "<xsl:output method=\"text\"/><xsl:template match=\"/\">"
+			+ "<xsl:value-of select=\"//current_conditions/temp_c/@data\"/>"
+			+ "</xsl:template></xsl:stylesheet>";
+
+	private static final String MAP = "CLOSED=closed\nOPEN=open\nON=on\nOFF=off\n";
+
+	private static final String JAVASCRIPT = "var result = input.toLowerCase(); result";
+
+	/**
+	 * A single transformation call.
+	 */
+	private interface Transformation {
+		String transform() throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		new TransformationBenchmark().run();
+	}
+
+	private void run() throws Exception {
+		File configFolder = new File(System.getProperty("java.io.tmpdir"), "transformation-benchmark");
+		final File transformFolder = new File(configFolder, TransformationActivator.TRANSFORM_FOLDER_NAME);
+		FileUtils.writeStringToFile(new File(transformFolder, "benchmark.xsl"), XSLT);
+		FileUtils.writeStringToFile(new File(transformFolder, "benchmark.map"), MAP);
+		FileUtils.writeStringToFile(new File(transformFolder, "benchmark.js"), JAVASCRIPT);
+		System.setProperty(ConfigConstants.CONFIG_DIR_PROG_ARGUMENT, configFolder.getPath());
+
+		try {
+			final TransformationService regex = new RegExTransformationService();
+			compare("RegEx", 100000, new Transformation() {
+				public String transform() throws Exception {
+					String result = source;
+					Matcher matcher = Pattern.compile("^" + REGEX + "$", Pattern.DOTALL).matcher(source.trim());
+					if (matcher.matches()) {
+						matcher.reset();
+						while (matcher.find()) {
+							result = matcher.group(1);
+						}
+					}
+					return result;
+				}
+			}, new Transformation() {
+				public String transform() throws Exception {
+					return regex.transform(REGEX, source);
+				}
+			});
+
+			final TransformationService xpath = new XPathTransformationService();
+			compare("XPath", 10000, new Transformation() {
+				public String transform() throws Exception {
+					DocumentBuilderFactory domFactory = DocumentBuilderFactory.newInstance();
+					domFactory.setNamespaceAware(true);
+					Document doc = domFactory.newDocumentBuilder().parse(new InputSource(new StringReader(source)));
+					return (String) XPathFactory.newInstance().newXPath().compile(XPATH).evaluate(doc, XPathConstants.STRING);
+				}
+			}, new Transformation() {
+				public String transform() throws Exception {
+					return xpath.transform(XPATH, source);
+				}
+			});
+
+			final TransformationService xslt = new XsltTransformationService();
+			compare("XSLT", 2000, new Transformation() {
+				public String transform() throws Exception {
+					StringWriter out = new StringWriter();
+					TransformerFactory.newInstance().newTransformer(new StreamSource(new File(transformFolder, "benchmark.xsl")))
+						.transform(new StreamSource(new StringReader(source)), new StreamResult(out));
+					return out.toString();
+				}
+			}, new Transformation() {
+				public String transform() throws Exception {
+					return xslt.transform("benchmark.xsl", source);
+				}
+			});
+
+			final TransformationService map = new MapTransformationService();
+			compare("Map", 100000, new Transformation() {
+				public String transform() throws Exception {
+					Properties properties = new Properties();
+					FileReader reader = new FileReader(new File(transformFolder, "benchmark.map"));
+					try {
+						properties.load(reader);
+					} finally {
+						IOUtils.closeQuietly(reader);
+					}
+					return properties.getProperty("OPEN");
+				}
+			}, new Transformation() {
+				public String transform() throws Exception {
+					return map.transform("benchmark.map", "OPEN");
+				}
+			});
+
+			if (new ScriptEngineManager().getEngineByName("javascript") == null) {
+				System.out.println("JavaScript           skipped, as there is no script engine available");
+				return;
+			}
+			final TransformationService javaScript = new JavaScriptTransformationService();
+			compare("JavaScript", 1000, new Transformation() {
+				public String transform() throws Exception {
+					FileReader reader = new FileReader(new File(transformFolder, "benchmark.js"));
+					try {
+						ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+						engine.put("input", "OPEN");
+						return String.valueOf(engine.eval(reader));
+					} finally {
+						IOUtils.closeQuietly(reader);
+					}
+				}
+			}, new Transformation() {
+				public String transform() throws Exception {
+					return javaScript.transform("benchmark.js", "OPEN");
+				}
+			});
+		} finally {
+			FileUtils.deleteQuietly(configFolder);
+		}
+	}
+
+	private static void compare(String name, int calls, Transformation uncached, Transformation cached) throws Exception {
+		if (!uncached.transform().equals(cached.transform())) {
+			throw new IllegalStateException(name + " transformations have different results");
+		}
+		report(name + ", uncached", calls, benchmark(uncached, calls));
+		report(name + ", cached", calls, benchmark(cached, calls));
+	}
+
+	private static long benchmark(Transformation transformation, int calls) throws Exception {
+		long best = Long.MAX_VALUE;
+		for (int iteration = 0; iteration < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; iteration++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < calls; i++) {
+				transformation.transform();
+			}
+			long duration = System.nanoTime() - start;
+			if (iteration >= WARMUP_ITERATIONS) {
+				best = Math.min(best, duration);
+			}
+		}
+		return best;
+	}
+
+	private static void report(String name, int calls, long nanos) {
+		System.out.println(String.format("%-20s %12.1f us/call %12.0f calls/s",
+				name, nanos / 1000.0 / calls, calls * 1e9 / nanos));
+	}
+
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.transform.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.transform.TransformationException;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class TransformationCacheTest {
+
+	private int loads;
+
+	private TransformationCache<String> cache;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		loads = 0;
+		cache = new TransformationCache<String>("Test", new TransformationCache.Loader<String>() {
+			public String load(String key) throws TransformationException {
+				loads++;
+				File keyFile = new File(key);
+				if (!keyFile.exists()) {
+					return key;
+				}
+				try {
+					return FileUtils.readFileToString(keyFile);
+				} catch (IOException e) {
+					throw new TransformationException("cannot read file", e);
+				}
+			}
+		}, 2);
+		file = File.createTempFile("transformation", ".map");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testExpressionIsLoadedOnce() throws TransformationException {
+		String first = cache.get("a");
+		assertSame(first, cache.get("a"));
+		assertEquals(1, loads);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsRemoved() throws TransformationException {
+		cache.get("a");
+		cache.get("b");
+		cache.get("a");
+		cache.get("c");
+		assertEquals(2, cache.size());
+		assertEquals(3, loads);
+
+		// "b" has been removed, "a" is still cached
+		cache.get("a");
+		assertEquals(3, loads);
+		cache.get("b");
+		assertEquals(4, loads);
+	}
+
+	@Test
+	public void testChangedFileIsLoadedAgain() throws Exception {
+		FileUtils.writeStringToFile(file, "first");
+		assertEquals("first", cache.getFromFile(file.getPath()));
+		assertEquals("first", cache.getFromFile(file.getPath()));
+		assertEquals(1, loads);
+
+		FileUtils.writeStringToFile(file, "second content");
+		assertEquals("second content", cache.getFromFile(file.getPath()));
+		assertEquals(2, loads);
+	}
+
+}
@@ -30,11 +30,15 @@ public final class TransformationActivator implements BundleActivator {
 	
 	private static BundleContext context;
 	
+	private static TransformationServiceTracker transformationServiceTracker;
+	
 	/**
 	 * Called whenever the OSGi framework starts our bundle
 	 */
 	public void start(BundleContext bc) throws Exception {
 		context = bc;
+		transformationServiceTracker = new TransformationServiceTracker(bc);
+		transformationServiceTracker.open();
 		logger.debug("Transformation Service has been started.");
 	}
 
@@ -42,6 +46,8 @@ public final class TransformationActivator implements BundleActivator {
 	 * Called whenever the OSGi framework stops our bundle
 	 */
 	public void stop(BundleContext bc) throws Exception {
+		transformationServiceTracker.close();
+		transformationServiceTracker = null;
 		context = null;
 		logger.debug("Transformation Service has been stopped.");
 	}
@@ -54,4 +60,12 @@ public final class TransformationActivator implements BundleActivator {
 		return context;
 	}	
 	
+	/**
+	 * Returns the tracker of all transformation services
+	 * @return the tracker or <code>null</code>, if this bundle is not started
+	 */
+	public static TransformationServiceTracker getTransformationServiceTracker() {
+		return transformationServiceTracker;
+	}
+	
 }
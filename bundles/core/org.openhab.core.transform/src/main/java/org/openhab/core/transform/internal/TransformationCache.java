@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.transform.internal;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openhab.core.transform.TransformationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the compiled artifacts of transformations, e.g. compiled patterns, expressions,
+ * stylesheets or scripts, so that they do not have to be compiled again on every call.
+ * The artifacts are either compiled from an expression or loaded from a file. Artifacts
+ * of files are loaded again as soon as the last modification time or the size of the
+ * file changes.
+ *
+ * <p>The number of cached artifacts is limited, if it is exceeded, the least recently
+ * used artifacts are removed first. The artifacts are shared by all threads, so they
+ * must either be thread-safe or be synchronized by their users.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ *
+ * @param <T> the type of the cached artifacts
+ */
+public class TransformationCache<T> {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransformationCache.class);
+
+	/** the default maximum number of cached artifacts */
+	public static final int DEFAULT_SIZE = 100;
+
+	/**
+	 * Creates the artifact of an expression or a file.
+	 *
+	 * @param <T> the type of the artifacts
+	 */
+	public interface Loader<T> {
+
+		/**
+		 * @param key the expression or the path of the file to create the artifact for
+		 * @return the created artifact, never <code>null</code>
+		 * @throws TransformationException if the artifact cannot be created
+		 */
+		T load(String key) throws TransformationException;
+	}
+
+	private final String name;
+
+	private final Loader<T> loader;
+
+	private final Map<String, CacheEntry<T>> entries;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @param name the name of the cache, which is used for logging
+	 * @param loader the loader to create the artifacts
+	 * @param maxSize the maximum number of cached artifacts
+	 */
+	public TransformationCache(String name, Loader<T> loader, final int maxSize) {
+		this.name = name;
+		this.loader = loader;
+		this.entries = new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the artifact of an expression, which is compiled if it is not cached yet.
+	 *
+	 * @param expression the expression
+	 * @return the artifact of the expression
+	 * @throws TransformationException if the artifact cannot be created
+	 */
+	public T get(String expression) throws TransformationException {
+		return get(expression, null);
+	}
+
+	/**
+	 * Returns the artifact of a file, which is loaded if it is not cached yet or the
+	 * file has changed since it has been cached.
+	 *
+	 * @param path the path of the file
+	 * @return the artifact of the file
+	 * @throws TransformationException if the artifact cannot be created
+	 */
+	public T getFromFile(String path) throws TransformationException {
+		return get(path, new File(path));
+	}
+
+	private T get(String key, File file) throws TransformationException {
+		long lastModified = file != null ? file.lastModified() : 0;
+		long length = file != null ? file.length() : 0;
+		synchronized (entries) {
+			CacheEntry<T> entry = entries.get(key);
+			if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+				hits++;
+				return entry.artifact;
+			}
+			misses++;
+		}
+
+		// the artifact is created without holding the lock, as this might take some time
+		if (file != null) {
+			logger.debug("Loading '{}' into the {} cache", key, name);
+		}
+		T artifact = loader.load(key);
+		synchronized (entries) {
+			entries.put(key, new CacheEntry<T>(artifact, lastModified, length));
+		}
+		return artifact;
+	}
+
+	/**
+	 * Removes all artifacts from the cache.
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	/**
+	 * @return the number of cached artifacts
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return the number of requests which have been served from the cache
+	 */
+	public long getHitCount() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return the number of requests which required to create the artifact
+	 */
+	public long getMissCount() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	private static class CacheEntry<T> {
+		final T artifact;
+		final long lastModified;
+		final long length;
+
+		CacheEntry(T artifact, long lastModified, long length) {
+			this.artifact = artifact;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+}
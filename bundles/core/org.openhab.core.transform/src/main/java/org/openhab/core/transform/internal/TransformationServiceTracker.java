@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.transform.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openhab.core.transform.TransformationService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks all registered {@link TransformationService}s and keeps them by their
+ * transformation type, so that looking up the service of a type does not require
+ * a query of the service registry. If several services are registered for the same
+ * type, the one with the highest ranking is used.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class TransformationServiceTracker extends ServiceTracker<TransformationService, TransformationService> {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransformationServiceTracker.class);
+
+	/** the service property which contains the transformation type of a service */
+	public static final String TRANSFORMATION_TYPE_PROPERTY = "openhab.transform";
+
+	/* all tracked services by their references */
+	private final Map<ServiceReference<TransformationService>, TransformationService> trackedServices =
+			new HashMap<ServiceReference<TransformationService>, TransformationService>();
+
+	/* the services to use by their transformation types, which is replaced on every change */
+	private volatile Map<String, TransformationService> servicesByType = Collections.emptyMap();
+
+	public TransformationServiceTracker(BundleContext context) {
+		super(context, TransformationService.class, null);
+	}
+
+	/**
+	 * Returns the service which provides a transformation type.
+	 *
+	 * @param transformationType the transformation type, e.g. REGEX, XSLT, etc.
+	 * @return the service or <code>null</code>, if there is none for this type
+	 */
+	public TransformationService getTransformationService(String transformationType) {
+		return servicesByType.get(transformationType);
+	}
+
+	@Override
+	public TransformationService addingService(ServiceReference<TransformationService> reference) {
+		TransformationService service = super.addingService(reference);
+		if (service != null) {
+			synchronized (trackedServices) {
+				trackedServices.put(reference, service);
+				updateServicesByType();
+			}
+		}
+		return service;
+	}
+
+	@Override
+	public void modifiedService(ServiceReference<TransformationService> reference, TransformationService service) {
+		// the transformation type or the ranking might have changed
+		synchronized (trackedServices) {
+			updateServicesByType();
+		}
+	}
+
+	@Override
+	public void removedService(ServiceReference<TransformationService> reference, TransformationService service) {
+		synchronized (trackedServices) {
+			trackedServices.remove(reference);
+			updateServicesByType();
+		}
+		super.removedService(reference, service);
+	}
+
+	private void updateServicesByType() {
+		Map<String, ServiceReference<TransformationService>> references = new HashMap<String, ServiceReference<TransformationService>>();
+		for (ServiceReference<TransformationService> reference : trackedServices.keySet()) {
+			Object type = reference.getProperty(TRANSFORMATION_TYPE_PROPERTY);
+			if (type == null) {
+				continue;
+			}
+			ServiceReference<TransformationService> current = references.get(type.toString());
+			if (current == null || reference.compareTo(current) > 0) {
+				references.put(type.toString(), reference);
+			}
+		}
+
+		Map<String, TransformationService> services = new HashMap<String, TransformationService>();
+		for (Map.Entry<String, ServiceReference<TransformationService>> entry : references.entrySet()) {
+			services.put(entry.getKey(), trackedServices.get(entry.getValue()));
+		}
+		servicesByType = services;
+		logger.debug("Available transformation services: {}", services.keySet());
+	}
+
+}
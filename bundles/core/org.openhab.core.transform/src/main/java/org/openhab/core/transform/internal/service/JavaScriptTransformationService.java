@@ -9,20 +9,22 @@
 package org.openhab.core.transform.internal.service;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.IOException;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.FileUtils;
 import org.openhab.config.core.ConfigDispatcher;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
 import org.openhab.core.transform.internal.TransformationActivator;
+import org.openhab.core.transform.internal.TransformationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +32,11 @@ import org.slf4j.LoggerFactory;
  * The implementation of {@link TransformationService} which transforms the
  * input by Java Script.
  * 
+ * The scripts are compiled once and only compiled again if their files change.
+ * Each script has its own script engine, whose executions are serialized. Every
+ * execution gets its own bindings, so that the variables of one execution are not
+ * visible to the next one.
+ * 
  * @author Pauli Anttila
  * @since 1.3.0
  */
@@ -37,6 +44,42 @@ public class JavaScriptTransformationService implements TransformationService {
 
 	static final Logger logger = 
 		LoggerFactory.getLogger(JavaScriptTransformationService.class);
+
+	private static final TransformationCache<CompiledScript> scripts = new TransformationCache<CompiledScript>("JavaScript",
+		new TransformationCache.Loader<CompiledScript>() {
+			public CompiledScript load(String path) throws TransformationException {
+				final String script;
+				try {
+					script = FileUtils.readFileToString(new File(path));
+				} catch (IOException e) {
+					throw new TransformationException("An error occured while loading script.", e);
+				}
+
+				final ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
+				if (engine == null) {
+					throw new TransformationException("There is no script engine for Java Script available.");
+				}
+				if (engine instanceof Compilable) {
+					try {
+						return ((Compilable) engine).compile(script);
+					} catch (ScriptException e) {
+						throw new TransformationException("An error occured while compiling script.", e);
+					}
+				}
+				// the engine cannot compile scripts, so the script is evaluated on each execution
+				return new CompiledScript() {
+					@Override
+					public Object eval(ScriptContext context) throws ScriptException {
+						return engine.eval(script, context);
+					}
+
+					@Override
+					public ScriptEngine getEngine() {
+						return engine;
+					}
+				};
+			}
+		}, TransformationCache.DEFAULT_SIZE);
 	
 	/**
 	 * Transforms the input <code>source</code> by Java Script. It expects the
@@ -60,32 +103,24 @@ public class JavaScriptTransformationService implements TransformationService {
 
 		logger.debug("about to transform '{}' by the Java Script '{}'", source, filename);
 
-		Reader reader;
-
-		try {
-			String path = ConfigDispatcher.getConfigFolder() 
-				+ File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME
-				+ File.separator + filename;
-			reader = new InputStreamReader(new FileInputStream(path));
-		} catch (FileNotFoundException e) {
-			throw new TransformationException("An error occured while loading script.", e);
-		}
-
-		ScriptEngineManager manager = new ScriptEngineManager();
-		
-		ScriptEngine engine = manager.getEngineByName("javascript");
-		engine.put("input", source);
+		String path = ConfigDispatcher.getConfigFolder() 
+			+ File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME
+			+ File.separator + filename;
+		CompiledScript script = scripts.getFromFile(path);
 
 		Object result = null;
 
 		long startTime = System.currentTimeMillis();
 
-		try {
-			result = engine.eval(reader);
-		} catch (ScriptException e) {
-			throw new TransformationException("An error occured while executing script.", e);
-		} finally {
-			IOUtils.closeQuietly(reader);
+		// script engines are not necessarily thread-safe
+		synchronized (script) {
+			try {
+				Bindings bindings = script.getEngine().createBindings();
+				bindings.put("input", source);
+				result = script.eval(bindings);
+			} catch (ScriptException e) {
+				throw new TransformationException("An error occured while executing script.", e);
+			}
 		}
 
 		logger.trace("JavaScript execution elapsed {} ms", System.currentTimeMillis() - startTime);
@@ -15,6 +15,7 @@ import java.util.Properties;
 import org.apache.commons.io.IOUtils;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.TransformationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +23,9 @@ import org.slf4j.LoggerFactory;
  * <p>
  * The implementation of {@link TransformationService} which simply maps strings to other strings
  * </p>
+ * <p>
+ * The mappings are cached and only read again if their files change.
+ * </p>
  * 
  * @author Kai Kreuzer
  * @author Gaël L'hopital
@@ -31,6 +35,25 @@ public class MapTransformationService extends LocalizableTransformationService i
 
 	static final Logger logger = LoggerFactory.getLogger(MapTransformationService.class);
 
+	private static final TransformationCache<Properties> mappings = new TransformationCache<Properties>("Map",
+		new TransformationCache.Loader<Properties>() {
+			public Properties load(String path) throws TransformationException {
+				Reader reader = null;
+				try {
+					Properties properties = new Properties();
+					reader = new FileReader(path);
+					properties.load(reader);
+					return properties;
+				} catch (IOException e) {
+					String message = "opening file '" + path + "' throws exception";
+					logger.error(message, e);
+					throw new TransformationException(message, e);
+				} finally {
+					IOUtils.closeQuietly(reader);
+				}
+			}
+		}, TransformationCache.DEFAULT_SIZE);
+
 	/**
 	 * <p>
 	 * Transforms the input <code>source</code> by mapping it to another string. It expects the mappings to be read from a file which
@@ -53,26 +76,15 @@ public class MapTransformationService extends LocalizableTransformationService i
 			throw new TransformationException("the given parameters 'filename' and 'source' must not be null");
 		}
 		
-		String path = getLocalizedProposedFilename(filename);					
-		Reader reader = null;
-		try {						
-			Properties properties = new Properties();
-			reader = new FileReader(path);
-			properties.load(reader);
-			String target = properties.getProperty(source);
-			if (target!=null) {
-				logger.debug("transformation resulted in '{}'", target);
-				return target;
-			} else {
-				logger.warn("Could not find a mapping for '{}' in the file '{}'.", source, filename);
-				return "";
-			}
-		} catch (IOException e) {
-			String message = "opening file '" + filename + "' throws exception";
-			logger.error(message, e);
-			throw new TransformationException(message, e);
-		} finally {
-			IOUtils.closeQuietly(reader);
+		String path = getLocalizedProposedFilename(filename);
+		Properties properties = mappings.getFromFile(path);
+		String target = properties.getProperty(source);
+		if (target!=null) {
+			logger.debug("transformation resulted in '{}'", target);
+			return target;
+		} else {
+			logger.warn("Could not find a mapping for '{}' in the file '{}'.", source, filename);
+			return "";
 		}
 	}
 
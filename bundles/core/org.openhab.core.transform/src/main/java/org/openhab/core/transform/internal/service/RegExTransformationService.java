@@ -13,6 +13,7 @@ import java.util.regex.Pattern;
 
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.TransformationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +23,8 @@ import org.slf4j.LoggerFactory;
  * </p>
  * <p>
  * <b>Note:</b> the given Regular Expression must contain exactly one group!
+ * <p>
+ * The compiled patterns are cached, so that each Regular Expression is compiled only once.
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @since 0.7.0
@@ -30,6 +33,13 @@ public class RegExTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(RegExTransformationService.class);
 
+	private static final TransformationCache<Pattern> patterns = new TransformationCache<Pattern>("RegEx",
+		new TransformationCache.Loader<Pattern>() {
+			public Pattern load(String regExpression) {
+				return Pattern.compile("^" + regExpression + "$", Pattern.DOTALL);
+			}
+		}, TransformationCache.DEFAULT_SIZE);
+
 	/**
 	 * @{inheritDoc
 	 */
@@ -43,7 +53,7 @@ public class RegExTransformationService implements TransformationService {
 
 		String result = source;
 
-		Matcher matcher = Pattern.compile("^" + regExpression + "$", Pattern.DOTALL).matcher(source.trim());
+		Matcher matcher = patterns.get(regExpression).matcher(source.trim());
 		if (!matcher.matches()) {
 			logger.debug("the given regex '^{}$' doesn't match the given content '{}' -> couldn't compute transformation", regExpression, source);
 			return result;
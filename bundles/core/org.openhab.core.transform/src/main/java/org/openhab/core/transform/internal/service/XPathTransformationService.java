@@ -15,10 +15,12 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
+import org.openhab.core.transform.internal.TransformationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -28,6 +30,9 @@ import org.xml.sax.InputSource;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by XPath Expressions.
  * </p>
+ * <p>
+ * The compiled expressions are cached, so that each XPath Expression is compiled only once.
+ * </p>
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @since 0.7.0
@@ -36,6 +41,18 @@ public class XPathTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(XPathTransformationService.class);
 
+	private static final TransformationCache<XPathExpression> expressions = new TransformationCache<XPathExpression>("XPath",
+		new TransformationCache.Loader<XPathExpression>() {
+			public XPathExpression load(String xpathExpression) throws TransformationException {
+				try {
+					XPath xpath = XPathFactory.newInstance().newXPath();
+					return xpath.compile(xpathExpression);
+				} catch (XPathExpressionException e) {
+					throw new TransformationException("transformation throws exceptions", e);
+				}
+			}
+		}, TransformationCache.DEFAULT_SIZE);
+
 	/**
 	 * @{inheritDoc
 	 */
@@ -61,14 +78,19 @@ public class XPathTransformationService implements TransformationService {
 
 			Document doc = builder.parse(inputSource);
 
-			XPath xpath = XPathFactory.newInstance().newXPath();
-			XPathExpression expr = xpath.compile(xpathExpression);
+			XPathExpression expr = expressions.get(xpathExpression);
 
-			String transformationResult = (String) expr.evaluate(doc, XPathConstants.STRING);
+			String transformationResult;
+			// compiled expressions are not thread-safe
+			synchronized (expr) {
+				transformationResult = (String) expr.evaluate(doc, XPathConstants.STRING);
+			}
 
 			logger.debug("transformation resulted in '{}'", transformationResult);
 
 			return transformationResult;
+		} catch (TransformationException e) {
+			throw e;
 		} catch (Exception e) {
 			throw new TransformationException("transformation throws exceptions", e);
 		} finally {
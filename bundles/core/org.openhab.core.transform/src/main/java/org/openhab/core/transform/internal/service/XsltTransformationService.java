@@ -12,7 +12,7 @@ import java.io.File;
 import java.io.StringReader;
 import java.io.StringWriter;
 
-import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
@@ -22,6 +22,7 @@ import org.openhab.config.core.ConfigDispatcher;
 import org.openhab.core.transform.TransformationException;
 import org.openhab.core.transform.TransformationService;
 import org.openhab.core.transform.internal.TransformationActivator;
+import org.openhab.core.transform.internal.TransformationCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +30,9 @@ import org.slf4j.LoggerFactory;
  * <p>
  * The implementation of {@link TransformationService} which transforms the input by XSLT.
  * </p>
+ * <p>
+ * The compiled stylesheets are cached and only compiled again if their files change.
+ * </p>
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @since 0.7.0
@@ -37,6 +41,18 @@ public class XsltTransformationService implements TransformationService {
 
 	static final Logger logger = LoggerFactory.getLogger(XsltTransformationService.class);
 
+	private static final TransformationCache<Templates> stylesheets = new TransformationCache<Templates>("XSLT",
+		new TransformationCache.Loader<Templates>() {
+			public Templates load(String path) throws TransformationException {
+				try {
+					return TransformerFactory.newInstance().newTemplates(new StreamSource(new File(path)));
+				} catch (Exception e) {
+					logger.error("transformation throws exception", e);
+					throw new TransformationException("transformation throws exception", e);
+				}
+			}
+		}, TransformationCache.DEFAULT_SIZE);
+
 	/**
 	 * <p>
 	 * Transforms the input <code>source</code> by XSLT. It expects the transformation rule to be read from a file which
@@ -59,19 +75,10 @@ public class XsltTransformationService implements TransformationService {
 			throw new TransformationException("the given parameters 'filename' and 'source' must not be null");
 		}
 
-		Source xsl = null;
-
-		try {
-			String path = ConfigDispatcher.getConfigFolder() + File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME + File.separator + filename;
-			xsl = new StreamSource(new File(path));
-		} catch (Exception e) {
-			String message = "opening file '" + filename + "' throws exception";
-
-			logger.error(message, e);
-			throw new TransformationException(message, e);
-		}
+		String path = ConfigDispatcher.getConfigFolder() + File.separator + TransformationActivator.TRANSFORM_FOLDER_NAME + File.separator + filename;
+		Templates xsl = stylesheets.getFromFile(path);
 
-		logger.debug("about to transform '{}' by the function '{}'", source, xsl);
+		logger.debug("about to transform '{}' by the function '{}'", source, filename);
 
 		StringReader xml = new StringReader(source);
 		StringWriter out = new StringWriter();
@@ -79,7 +86,7 @@ public class XsltTransformationService implements TransformationService {
 		Transformer transformer;
 
 		try {
-			transformer = TransformerFactory.newInstance().newTransformer(xsl);
+			transformer = xsl.newTransformer();
 			transformer.transform(new StreamSource(xml), new StreamResult(out));
 		} catch (Exception e) {
 			logger.error("transformation throws exception", e);
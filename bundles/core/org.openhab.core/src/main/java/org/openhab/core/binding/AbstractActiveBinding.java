@@ -127,6 +127,17 @@ public abstract class AbstractActiveBinding<P extends BindingProvider> extends A
 	 */
 	protected abstract String getName();
 	
+	/**
+	 * Returns the time after which a call of the execute method is interrupted.
+	 * Bindings which might block in the execute method, e.g. because of network
+	 * connections without a timeout, should override it.
+	 * 
+	 * @return the timeout in milliseconds, 0 for no timeout
+	 */
+	protected long getExecutionTimeout() {
+		return 0;
+	}
+	
 	
 	/** private inner class, which delegates method calls to the outer binding instance */
 	private class BindingActiveService extends AbstractActiveService {
@@ -166,6 +177,11 @@ public abstract class AbstractActiveBinding<P extends BindingProvider> extends A
 			return AbstractActiveBinding.this.getName();
 		}
 
+		@Override
+		protected long getExecutionTimeout() {
+			return AbstractActiveBinding.this.getExecutionTimeout();
+		}
+
 	}
 	
 }
\ No newline at end of file
@@ -8,18 +8,33 @@
  */
 package org.openhab.core.binding;
 
+import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openhab.core.events.AbstractEventSubscriber;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.osgi.service.event.Event;
 
 
 /**
  * Base class for bindings which send events.
  * 
+ * <p>The names of all items, for which any of the providers provides a binding, are kept
+ * in an index, which is built from {@link BindingProvider#getItemNames()} and updated on
+ * every {@link BindingChangeListener} notification. As every binding receives all events
+ * of the event bus, the events of other items are discarded by a single lookup in this
+ * index, before the event is even decoded. Bindings which override 
+ * {@link #receiveCommand(String, Command)} or {@link #receiveUpdate(String, State)} 
+ * still receive all events.</p>
+ * 
  * @author Thomas.Eichstaedt-Engelen
  * @author Kai Kreuzer
  * @since 1.0.0
@@ -32,6 +47,28 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	
 	protected EventPublisher eventPublisher = null;
 	
+	/** the names of all items, for which any of the providers provides a binding */
+	private final Set<String> boundItems = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	
+	/** keeps the index up to date, independent of the overridden listener methods */
+	private final BindingChangeListener indexUpdater = new BindingChangeListener() {
+		public void bindingChanged(BindingProvider provider, String itemName) {
+			updateIndex(itemName);
+		}
+		
+		public void allBindingsChanged(BindingProvider provider) {
+			rebuildIndex();
+		}
+	};
+	
+	/** whether events can be discarded if the item is not bound, see {@link #isFilteringEvents()} */
+	private final boolean filteringEvents = !overrides("receiveCommand", String.class, Command.class) 
+			&& !overrides("receiveUpdate", String.class, State.class);
+	
+	private final AtomicLong deliveredEvents = new AtomicLong();
+	
+	private final AtomicLong filteredEvents = new AtomicLong();
+	
 	
 	public void setEventPublisher(EventPublisher eventPublisher) {
 		this.eventPublisher = eventPublisher;
@@ -55,6 +92,8 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	 */
 	public void addBindingProvider(P provider) {
 		this.providers.add(provider);
+		provider.addBindingChangeListener(indexUpdater);
+		rebuildIndex();
         provider.addBindingChangeListener(this);
         allBindingsChanged(provider);
     }
@@ -68,6 +107,8 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	public void removeBindingProvider(P provider) {
 		this.providers.remove(provider);
 		provider.removeBindingChangeListener(this);
+		provider.removeBindingChangeListener(indexUpdater);
+		rebuildIndex();
 	}
 	
 	
@@ -84,6 +125,21 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 		return false;
 	}
 	
+	/**
+	 * Discards the events of all items which are not bound to this binding, before
+	 * they are decoded by {@link AbstractEventSubscriber#handleEvent(Event)}.
+	 */
+	@Override
+	public void handleEvent(Event event) {
+		// the index is backed by a ConcurrentHashMap, which does not accept null keys
+		Object itemName = event.getProperty("item");
+		if (filteringEvents && (itemName == null || !boundItems.contains(itemName))) {
+			filteredEvents.incrementAndGet();
+			return;
+		}
+		super.handleEvent(event);
+	}
+	
 	/**
 	 * @{inheritDoc}
 	 */
@@ -91,8 +147,10 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	public void receiveCommand(String itemName, Command command) {
 		// does any provider contain a binding config?
 		if (!providesBindingFor(itemName)) {
+			filteredEvents.incrementAndGet();
 			return;
 		}
+		deliveredEvents.incrementAndGet();
 		internalReceiveCommand(itemName, command);
 	}
 	
@@ -112,8 +170,10 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	public void receiveUpdate(String itemName, State newState) {
 		// does any provider contain a binding config?
 		if (!providesBindingFor(itemName)) {
+			filteredEvents.incrementAndGet();
 			return;
 		}
+		deliveredEvents.incrementAndGet();
 		internalReceiveUpdate(itemName, newState);
 	}
 	
@@ -135,12 +195,75 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	 *         otherwise
 	 */
 	protected boolean providesBindingFor(String itemName) {
+		return itemName != null && boundItems.contains(itemName);
+	}
+	
+	/**
+	 * Updates the index entry of a single item, which might have been added to or
+	 * removed from any of the providers.
+	 */
+	private void updateIndex(String itemName) {
 		for (P provider : providers) {
 			if (provider.providesBindingFor(itemName)) {
-				return true;
+				boundItems.add(itemName);
+				return;
 			}
 		}
-		return false;
+		boundItems.remove(itemName);
+	}
+	
+	/**
+	 * Rebuilds the whole index from the item names of all providers. Items are added
+	 * before the stale ones are removed, so that the events of items, which are
+	 * bound before and after, are never discarded.
+	 */
+	private void rebuildIndex() {
+		Set<String> itemNames = new HashSet<String>();
+		for (P provider : providers) {
+			Collection<String> providerItemNames = provider.getItemNames();
+			if (providerItemNames != null) {
+				itemNames.addAll(providerItemNames);
+			}
+		}
+		boundItems.addAll(itemNames);
+		boundItems.retainAll(itemNames);
+	}
+	
+	/**
+	 * Bindings which override {@link #receiveCommand(String, Command)} or 
+	 * {@link #receiveUpdate(String, State)} might handle items which are not bound
+	 * through their providers, so their events are not filtered by the index.
+	 * 
+	 * @return <code>true</code>, if the events of items, which are not bound to
+	 * this binding, are discarded
+	 */
+	public boolean isFilteringEvents() {
+		return filteringEvents;
+	}
+	
+	/**
+	 * @return the number of events, which have been passed on to 
+	 * <code>internalReceiveCommand()</code> or <code>internalReceiveUpdate()</code>
+	 */
+	public long getDeliveredEventCount() {
+		return deliveredEvents.get();
+	}
+	
+	/**
+	 * @return the number of events, which have been discarded, because the item 
+	 * is not bound to this binding
+	 */
+	public long getFilteredEventCount() {
+		return filteredEvents.get();
+	}
+	
+	private boolean overrides(String methodName, Class<?>... parameterTypes) {
+		try {
+			Method method = getClass().getMethod(methodName, parameterTypes);
+			return method.getDeclaringClass() != AbstractBinding.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
 	}
 	
 	/**
@@ -19,30 +19,38 @@ import org.osgi.service.event.EventHandler;
 
 abstract public class AbstractEventSubscriber implements EventSubscriber, EventHandler {
 	
+	private static final String TOPIC_START = TOPIC_PREFIX + TOPIC_SEPERATOR;
+	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void handleEvent(Event event) {  
 		String itemName = (String) event.getProperty("item");
 		
+		// the topic has the form openhab/<operation>/<item>, which is checked without 
+		// splitting it up as this method is called for every event on the bus
 		String topic = event.getTopic();
-		String[] topicParts = topic.split(TOPIC_SEPERATOR);
-		
-		if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
+		int operationEnd = topic.indexOf(TOPIC_SEPERATOR, TOPIC_START.length());
+		if(!topic.startsWith(TOPIC_START) || operationEnd < 0) {
 			return; // we have received an event with an invalid topic
 		}
-		String operation = topicParts[1];
 		
-		if(operation.equals(EventType.UPDATE.toString())) {
+		if(isOperation(topic, operationEnd, EventType.UPDATE)) {
 			State newState = (State) event.getProperty("state");
 			if(newState!=null) receiveUpdate(itemName, newState);
 		}
-		if(operation.equals(EventType.COMMAND.toString())) {
+		if(isOperation(topic, operationEnd, EventType.COMMAND)) {
 			Command command = (Command) event.getProperty("command");
 			if(command!=null) receiveCommand(itemName, command);
 		}
 	}
 	
+	private static boolean isOperation(String topic, int operationEnd, EventType type) {
+		String operation = type.toString();
+		return operationEnd - TOPIC_START.length() == operation.length()
+				&& topic.startsWith(operation, TOPIC_START.length());
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
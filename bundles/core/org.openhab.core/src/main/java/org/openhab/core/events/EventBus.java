@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.events;
+
+import org.openhab.core.types.EventType;
+
+/**
+ * The event bus delivers the commands and state updates, which are published through
+ * the {@link EventPublisher}, directly to {@link EventSubscriber}s. In contrast to an
+ * OSGi event handler, a subscriber does not have to parse event topics and properties,
+ * and it only receives the events of the items it has subscribed to.
+ *
+ * <p>Each subscriber has its own queue and thread, through which it receives the events
+ * in the order they have been published. Hence a slow subscriber does not delay the
+ * others, but events are always delivered asynchronously, even if they are sent with
+ * {@link EventPublisher#sendCommand(String, org.openhab.core.types.Command)}. If the
+ * queue of a subscriber is full, the publisher waits until there is space again.</p>
+ *
+ * <p>All events are still sent through the OSGi EventAdmin as well, so that event
+ * handlers subscribing to the topics defined in {@link EventConstants} keep working.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface EventBus {
+
+	/**
+	 * Subscribes to the events of all items.
+	 *
+	 * @param subscriber the subscriber to deliver the events to
+	 * @param types the types of events to deliver, all types if none are given
+	 */
+	public void subscribe(EventSubscriber subscriber, EventType... types);
+
+	/**
+	 * Subscribes to the events of a single item. A subscriber can subscribe to as many
+	 * items as it likes, it still receives every event only once.
+	 *
+	 * @param subscriber the subscriber to deliver the events to
+	 * @param itemName the name of the item to subscribe to
+	 * @param types the types of events to deliver, all types if none are given
+	 */
+	public void subscribe(EventSubscriber subscriber, String itemName, EventType... types);
+
+	/**
+	 * Removes the subscription to the events of a single item. A subscription to the
+	 * events of all items is not affected.
+	 *
+	 * @param subscriber the subscriber to unsubscribe
+	 * @param itemName the name of the item to unsubscribe from
+	 */
+	public void unsubscribe(EventSubscriber subscriber, String itemName);
+
+	/**
+	 * Removes all subscriptions of the given subscriber. Events which have not been
+	 * delivered yet are discarded.
+	 *
+	 * @param subscriber the subscriber to unsubscribe
+	 */
+	public void unsubscribe(EventSubscriber subscriber);
+
+}
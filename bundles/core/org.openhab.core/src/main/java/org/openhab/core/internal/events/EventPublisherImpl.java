@@ -11,13 +11,24 @@ package org.openhab.core.internal.events;
 import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
 import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
+import org.openhab.core.events.EventBus;
 import org.openhab.core.events.EventPublisher;
+import org.openhab.core.events.EventSubscriber;
+import org.openhab.core.internal.events.SubscriberQueue.ItemEvent;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
+import org.openhab.core.types.Type;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.slf4j.Logger;
@@ -27,17 +38,41 @@ import org.slf4j.LoggerFactory;
  * This is the main implementation of the {@link EventPublisher} interface.
  * Through it, openHAB events can be sent to the OSGi EventAdmin service
  * in order to broadcast them.
+ * Additionally, it implements the {@link EventBus}, which delivers the events
+ * directly to the subscribers of the respective items.
  * 
  * @author Kai Kreuzer
  *
  */
-public class EventPublisherImpl implements EventPublisher {
+public class EventPublisherImpl implements EventPublisher, EventBus {
 
 	private static final Logger logger = 
 		LoggerFactory.getLogger(EventPublisherImpl.class);
 		
+	private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+	
 	private EventAdmin eventAdmin;
 	
+	/** the queues of all subscribers of the event bus */
+	private final Map<EventSubscriber, SubscriberQueue> subscriberQueues = new IdentityHashMap<EventSubscriber, SubscriberQueue>();
+	
+	/** the subscriptions to the events of all items, rebuilt on every change */
+	private volatile Subscription[] globalSubscriptions = NO_SUBSCRIPTIONS;
+
+	/** the subscriptions to the events of single items, rebuilt on every change */
+	private volatile Map<String, Subscription[]> itemSubscriptions = Collections.emptyMap();
+	
+	
+	public void deactivate() {
+		synchronized (subscriberQueues) {
+			for (SubscriberQueue queue : subscriberQueues.values()) {
+				queue.shutdown();
+			}
+			subscriberQueues.clear();
+			rebuildSubscriptions();
+		}
+	}
+	
 	
 	public void setEventAdmin(EventAdmin eventAdmin) {
 		this.eventAdmin = eventAdmin;
@@ -53,6 +88,7 @@ public class EventPublisherImpl implements EventPublisher {
 	 */
 	public void sendCommand(String itemName, Command command) {
 		if (command != null) {
+			dispatch(EventType.COMMAND, itemName, command);
 			if(eventAdmin!=null) eventAdmin.sendEvent(createCommandEvent(itemName, command));
 		} else {
 			logger.warn("given command is NULL, couldn't send command to '{}'", itemName);
@@ -64,6 +100,7 @@ public class EventPublisherImpl implements EventPublisher {
 	 */
 	public void postCommand(String itemName, Command command) {
 		if (command != null) {
+			dispatch(EventType.COMMAND, itemName, command);
 			if(eventAdmin!=null) eventAdmin.postEvent(createCommandEvent(itemName, command));
 		} else {
 			logger.warn("given command is NULL, couldn't post command to '{}'", itemName);
@@ -75,6 +112,7 @@ public class EventPublisherImpl implements EventPublisher {
 	 */
 	public void postUpdate(String itemName, State newState) {
 		if (newState != null) {
+			dispatch(EventType.UPDATE, itemName, newState);
 			if(eventAdmin!=null) eventAdmin.postEvent(createUpdateEvent(itemName, newState));
 		} else {
 			logger.warn("given new state is NULL, couldn't post update for '{}'", itemName);
@@ -98,6 +136,154 @@ public class EventPublisherImpl implements EventPublisher {
 	private String createTopic(EventType type, String itemName) {
 		return TOPIC_PREFIX + TOPIC_SEPERATOR + type + TOPIC_SEPERATOR + itemName;
 	}
-	
-	
+
+	/**
+	 * Hands the event over to the queues of all subscribers of the event bus, which
+	 * have subscribed to this type of events for the given item or for all items.
+	 */
+	private void dispatch(EventType type, String itemName, Type payload) {
+		int mask = mask(type);
+		ItemEvent event = null;
+		Subscription[] subscriptions = itemSubscriptions.get(itemName);
+		if (subscriptions != null) {
+			event = deliver(subscriptions, mask, event, type, itemName, payload);
+		}
+		deliver(globalSubscriptions, mask, event, type, itemName, payload);
+	}
+
+	private ItemEvent deliver(Subscription[] subscriptions, int mask, ItemEvent event, EventType type, String itemName, Type payload) {
+		for (Subscription subscription : subscriptions) {
+			if ((subscription.types & mask) != 0) {
+				if (event == null) {
+					event = new ItemEvent(type, itemName, payload);
+				}
+				subscription.queue.post(event);
+			}
+		}
+		return event;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void subscribe(EventSubscriber subscriber, EventType... types) {
+		synchronized (subscriberQueues) {
+			getQueue(subscriber).globalTypes |= mask(types);
+			rebuildSubscriptions();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void subscribe(EventSubscriber subscriber, String itemName, EventType... types) {
+		synchronized (subscriberQueues) {
+			SubscriberQueue queue = getQueue(subscriber);
+			Integer current = queue.itemTypes.get(itemName);
+			queue.itemTypes.put(itemName, (current != null ? current : 0) | mask(types));
+			rebuildSubscriptions();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void unsubscribe(EventSubscriber subscriber, String itemName) {
+		synchronized (subscriberQueues) {
+			SubscriberQueue queue = subscriberQueues.get(subscriber);
+			if (queue != null && queue.itemTypes.remove(itemName) != null) {
+				if (queue.globalTypes == 0 && queue.itemTypes.isEmpty()) {
+					subscriberQueues.remove(subscriber);
+					queue.shutdown();
+				}
+				rebuildSubscriptions();
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void unsubscribe(EventSubscriber subscriber) {
+		synchronized (subscriberQueues) {
+			SubscriberQueue queue = subscriberQueues.remove(subscriber);
+			if (queue != null) {
+				queue.shutdown();
+				rebuildSubscriptions();
+			}
+		}
+	}
+
+	private SubscriberQueue getQueue(EventSubscriber subscriber) {
+		SubscriberQueue queue = subscriberQueues.get(subscriber);
+		if (queue == null) {
+			queue = new SubscriberQueue(subscriber, SubscriberQueue.DEFAULT_QUEUE_SIZE);
+			subscriberQueues.put(subscriber, queue);
+			queue.start();
+		}
+		return queue;
+	}
+
+	/**
+	 * Rebuilds the subscription lookup tables, which are read without locking
+	 * when events are published. Subscriptions of single items, which are already
+	 * covered by a subscription to all items, are left out, so that every event is
+	 * delivered only once to each subscriber. Must be called while holding the lock
+	 * on {@link #subscriberQueues}.
+	 */
+	private void rebuildSubscriptions() {
+		List<Subscription> global = new ArrayList<Subscription>();
+		Map<String, List<Subscription>> items = new HashMap<String, List<Subscription>>();
+		for (SubscriberQueue queue : subscriberQueues.values()) {
+			if (queue.globalTypes != 0) {
+				global.add(new Subscription(queue, queue.globalTypes));
+			}
+			for (Entry<String, Integer> entry : queue.itemTypes.entrySet()) {
+				int types = entry.getValue() & ~queue.globalTypes;
+				if (types != 0) {
+					List<Subscription> subscriptions = items.get(entry.getKey());
+					if (subscriptions == null) {
+						subscriptions = new ArrayList<Subscription>();
+						items.put(entry.getKey(), subscriptions);
+					}
+					subscriptions.add(new Subscription(queue, types));
+				}
+			}
+		}
+		Map<String, Subscription[]> itemSubscriptions = new HashMap<String, Subscription[]>(items.size() * 2);
+		for (Entry<String, List<Subscription>> entry : items.entrySet()) {
+			itemSubscriptions.put(entry.getKey(), entry.getValue().toArray(NO_SUBSCRIPTIONS));
+		}
+		this.globalSubscriptions = global.toArray(NO_SUBSCRIPTIONS);
+		this.itemSubscriptions = itemSubscriptions;
+	}
+
+	private static int mask(EventType type) {
+		return 1 << type.ordinal();
+	}
+
+	private static int mask(EventType... types) {
+		if (types.length == 0) {
+			return mask(EventType.values());
+		}
+		int mask = 0;
+		for (EventType type : types) {
+			mask |= mask(type);
+		}
+		return mask;
+	}
+
+	/**
+	 * The types of events a subscriber receives through a lookup table entry.
+	 */
+	private static class Subscription {
+		final SubscriberQueue queue;
+		final int types;
+
+		Subscription(SubscriberQueue queue, int types) {
+			this.queue = queue;
+			this.types = types;
+		}
+	}
+
 }
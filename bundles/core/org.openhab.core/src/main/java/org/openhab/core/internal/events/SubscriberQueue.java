@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.events;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.core.events.EventSubscriber;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This thread delivers the events of the event bus to a single {@link EventSubscriber}.
+ * The events are put into a bounded queue by the publishing threads and are handed
+ * over to the subscriber in the same order.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class SubscriberQueue extends Thread {
+
+	private static final Logger logger = LoggerFactory.getLogger(SubscriberQueue.class);
+
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	/** the maximum number of events which are taken from the queue at once */
+	private static final int BATCH_SIZE = 100;
+
+	/** the number of dropped events after which another warning is logged */
+	private static final long DROP_WARNING_INTERVAL = 1000;
+
+	private final EventSubscriber subscriber;
+
+	private final BlockingQueue<ItemEvent> queue;
+
+	private volatile boolean running = true;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	/** the event types the subscriber has subscribed to for all items, guarded by the event bus */
+	int globalTypes = 0;
+
+	/** the event types the subscriber has subscribed to per item name, guarded by the event bus */
+	final Map<String, Integer> itemTypes = new HashMap<String, Integer>();
+
+	public SubscriberQueue(EventSubscriber subscriber, int queueSize) {
+		super("EventSubscriber-" + subscriber.getClass().getSimpleName());
+		setDaemon(true);
+		this.subscriber = subscriber;
+		this.queue = new ArrayBlockingQueue<ItemEvent>(queueSize);
+	}
+
+	public EventSubscriber getSubscriber() {
+		return subscriber;
+	}
+
+	/**
+	 * Queues an event for the subscriber. If the queue is full, the caller is blocked
+	 * until there is space again, unless it is the thread of this queue itself.
+	 *
+	 * @param event the event to deliver
+	 */
+	void post(ItemEvent event) {
+		if (!running || queue.offer(event)) {
+			return;
+		}
+		if (Thread.currentThread() == this) {
+			// the subscriber publishes an event to itself, waiting would dead-lock
+			drop(event);
+			return;
+		}
+		try {
+			queue.put(event);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			drop(event);
+		}
+	}
+
+	private void drop(ItemEvent event) {
+		long count = dropped.incrementAndGet();
+		if (count % DROP_WARNING_INTERVAL == 1) {
+			logger.warn("The event queue of '{}' is full, {} event(s) have been dropped so far (latest: {}).",
+				new Object[] { subscriber, count, event });
+		}
+	}
+
+	@Override
+	public void run() {
+		List<ItemEvent> events = new ArrayList<ItemEvent>(BATCH_SIZE);
+		while (running) {
+			try {
+				ItemEvent event = queue.poll(1, TimeUnit.SECONDS);
+				if (event == null) {
+					continue;
+				}
+				// take all waiting events at once, so that the queue is locked less often
+				events.add(event);
+				queue.drainTo(events, BATCH_SIZE - 1);
+				for (int i = 0; i < events.size() && running; i++) {
+					deliver(events.get(i));
+				}
+				events.clear();
+			} catch (InterruptedException e) {
+				// we have been interrupted on shutdown
+				break;
+			}
+		}
+		queue.clear();
+	}
+
+	private void deliver(ItemEvent event) {
+		try {
+			if (event.type == EventType.COMMAND) {
+				subscriber.receiveCommand(event.itemName, (Command) event.payload);
+			} else {
+				subscriber.receiveUpdate(event.itemName, (org.openhab.core.types.State) event.payload);
+			}
+		} catch (RuntimeException e) {
+			logger.error("Subscriber '{}' failed to process {}", new Object[] { subscriber, event, e });
+		}
+	}
+
+	/**
+	 * Stops the delivery of events, the queued events are discarded.
+	 */
+	public void shutdown() {
+		running = false;
+		if (Thread.currentThread() != this) {
+			interrupt();
+		}
+	}
+
+	/** @return the number of events currently waiting to be delivered */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	/** @return the number of events which have been dropped because of a full queue */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+
+	/**
+	 * A command or state update of an item. The same instance is queued for all subscribers.
+	 */
+	static class ItemEvent {
+		final EventType type;
+		final String itemName;
+		final Type payload;
+
+		ItemEvent(EventType type, String itemName, Type payload) {
+			this.type = type;
+			this.itemName = itemName;
+			this.payload = payload;
+		}
+
+		@Override
+		public String toString() {
+			return type + " " + itemName + "=" + payload;
+		}
+	}
+
+}
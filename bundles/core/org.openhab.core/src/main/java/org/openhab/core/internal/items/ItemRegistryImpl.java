@@ -10,12 +10,20 @@ package org.openhab.core.internal.items;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
 
+import org.apache.commons.lang.StringUtils;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.GroupItem;
@@ -26,6 +34,8 @@ import org.openhab.core.items.ItemProvider;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.items.ItemRegistryChangeListener;
 import org.openhab.core.items.ItemsChangeListener;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.component.ComponentContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,18 +50,48 @@ import org.slf4j.LoggerFactory;
  * @since 0.1.0
  *
  */
-public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
+public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener, ManagedService {
 	
 	private static final Logger logger = LoggerFactory.getLogger(ItemRegistryImpl.class);
 
+	/** the naming convention every item has to comply with */
+	private static final Pattern VALID_ITEM_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]*");
+
+	/** the maximum number of compiled search patterns we keep for {@link #getItems(String)} */
+	private static final int MAX_CACHED_PATTERNS = 256;
+
+	/** the configuration key of the coalescing window of groups, which can be followed by '.' and a group name */
+	private static final String COALESCE_KEY = "coalesce";
+
 	/** if an EventPublisher service is available, we provide it to all items, so that they can communicate over the bus */
 	protected EventPublisher eventPublisher;
 	
 	/** this is our local map in which we store all our items */
 	protected Map<ItemProvider, Collection<Item>> itemMap = new ConcurrentHashMap<ItemProvider, Collection<Item>>();
 	
+	/** 
+	 * index of all registered items by their name, so that lookups do not need to scan all providers;
+	 * if several items have the same name, the one which has been registered first is indexed
+	 */
+	protected ConcurrentMap<String, Item> itemsByName = new ConcurrentHashMap<String, Item>();
+	
+	/** 
+	 * reverse index from a group name to the names of all items that declare to be a member of it;
+	 * groups do not need to exist yet, so that they can be filled with their members once they are added
+	 */
+	protected ConcurrentMap<String, Set<String>> groupMemberNames = new ConcurrentHashMap<String, Set<String>>();
+	
+	/** compiled regular expressions for the search patterns passed to {@link #getItems(String)} */
+	private final Map<String, Pattern> searchPatterns = new ConcurrentHashMap<String, Pattern>();
+	
 	/** to keep track of all item change listeners */
 	protected Collection<ItemRegistryChangeListener> listeners = new CopyOnWriteArraySet<ItemRegistryChangeListener>();
+	
+	/** the coalescing window in milliseconds of all groups, which do not have a window of their own */
+	private volatile long defaultCoalescingWindow = 0;
+	
+	/** the coalescing windows in milliseconds of single groups by their name */
+	private volatile Map<String, Long> coalescingWindows = Collections.emptyMap();
 
 	public void activate(ComponentContext componentContext) {
 	}
@@ -63,21 +103,65 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 		}
 		// then release all items
 		itemMap.clear();
+		itemsByName.clear();
+		groupMemberNames.clear();
     }
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("rawtypes")
+	public void updated(Dictionary config) throws ConfigurationException {
+		long defaultWindow = 0;
+		Map<String, Long> windows = new HashMap<String, Long>();
+		if(config!=null) {
+			Enumeration keys = config.keys();
+			while(keys.hasMoreElements()) {
+				String key = (String) keys.nextElement();
+				String value = String.valueOf(config.get(key));
+				if(key.equals(COALESCE_KEY)) {
+					defaultWindow = parseCoalescingWindow(key, value);
+				} else if(key.startsWith(COALESCE_KEY + ".")) {
+					windows.put(key.substring(COALESCE_KEY.length() + 1), parseCoalescingWindow(key, value));
+				}
+			}
+		}
+		this.defaultCoalescingWindow = defaultWindow;
+		this.coalescingWindows = windows;
+		for(Item item : itemsByName.values()) {
+			if(item instanceof GroupItem) {
+				configureGroup((GroupItem) item);
+			}
+		}
+	}
+	
+	private long parseCoalescingWindow(String key, String value) throws ConfigurationException {
+		try {
+			long window = StringUtils.isBlank(value) ? 0 : Long.parseLong(value.trim());
+			if(window < 0) {
+				throw new ConfigurationException(key, "The coalescing window must not be negative.");
+			}
+			return window;
+		} catch(NumberFormatException e) {
+			throw new ConfigurationException(key, "'" + value + "' is not a valid number of milliseconds.");
+		}
+	}
+	
+	private void configureGroup(GroupItem group) {
+		Long window = coalescingWindows.get(group.getName());
+		group.setCoalescingWindow(window != null ? window : defaultCoalescingWindow);
+	}
+
 	/* (non-Javadoc)
 	 * @see org.openhab.core.internal.items.ItemRegistry#getItem(java.lang.String)
 	 */
     @Override
 	public Item getItem(String name) throws ItemNotFoundException {
-		for(Collection<Item> items : itemMap.values()) {
-			for(Item item : items) {
-				if(item.getName().equals(name)) {
-					return item;
-				}
-			}
+		Item item = name != null ? itemsByName.get(name) : null;
+		if(item==null) {
+			throw new ItemNotFoundException(name);
 		}
-		throw new ItemNotFoundException(name);
+		return item;
 	}
 
 	/* (non-Javadoc)
@@ -116,17 +200,38 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	 */
     @Override
 	public Collection<Item> getItems(String pattern) {
-		String regex = pattern.replace("?", ".?").replace("*", ".*?");
 		Collection<Item> matchedItems = new ArrayList<Item>();
+		if(isValidItemName(pattern)) {
+			// no wildcards or other regex characters, so a simple lookup is sufficient
+			Item item = itemsByName.get(pattern);
+			if(item!=null) {
+				matchedItems.add(item);
+			}
+			return matchedItems;
+		}
+		
+		Pattern regex = getSearchPattern(pattern);
 		for(Collection<Item> items : itemMap.values()) {
 			for(Item item : items) {
-				if(item.getName().matches(regex)) {
+				if(regex.matcher(item.getName()).matches()) {
 					matchedItems.add(item);
 				}
 			}
 		}
         return matchedItems;
 	}
+	
+	private Pattern getSearchPattern(String pattern) {
+		Pattern regex = searchPatterns.get(pattern);
+		if(regex==null) {
+			regex = Pattern.compile(pattern.replace("?", ".?").replace("*", ".*?"));
+			if(searchPatterns.size() >= MAX_CACHED_PATTERNS) {
+				searchPatterns.clear();
+			}
+			searchPatterns.put(pattern, regex);
+		}
+		return regex;
+	}
 
 	public void addItemProvider(ItemProvider itemProvider) {
 		// only add this provider if it does not already exist
@@ -141,19 +246,26 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 
     @Override
 	public boolean isValidItemName(String name) {
-		return name.matches("[a-zA-Z0-9_]*");
+		return VALID_ITEM_NAME_PATTERN.matcher(name).matches();
 	}
 
 	public void removeItemProvider(ItemProvider itemProvider) {
 		if(itemMap.containsKey(itemProvider)) {
 			allItemsChanged(itemProvider, null);
 
-			for(Item item : itemMap.get(itemProvider)) {
+			Collection<Item> items = itemMap.remove(itemProvider);
+			for(Item item : items) {
 				if(item instanceof GenericItem) {
 					((GenericItem) item).dispose();
 				}
 			}
-			itemMap.remove(itemProvider);
+			Collection<String> removedNames = new HashSet<String>();
+			for(Item item : items) {
+				if(unindexItem(item)) {
+					removedNames.add(item.getName());
+				}
+			}
+			reindexShadowedItems(removedNames);
 
 			itemProvider.removeItemChangeListener(this);
 			logger.debug("Item provider '{}' has been removed.", itemProvider.getClass().getSimpleName());
@@ -189,13 +301,26 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			}
 		}
 
+		// collect all items first, so that they can be added to the list in one go
+		// instead of copying the underlying array for every single item
+		Collection<Item> newItems = new ArrayList<Item>();
 		Collection<Item> items = new CopyOnWriteArrayList<Item>();
-    	itemMap.put(provider, items);
+		Collection<Item> oldItems = itemMap.put(provider, items);
+		Collection<String> removedNames = new HashSet<String>();
+		if(oldItems!=null) {
+			for(Item oldItem : oldItems) {
+				if(unindexItem(oldItem)) {
+					removedNames.add(oldItem.getName());
+				}
+			}
+		}
 		for(Item item : provider.getItems()) {
 			if(initializeItem(item)) {
-				items.add(item);
+				newItems.add(item);
 			}
 		}
+		items.addAll(newItems);
+		reindexShadowedItems(removedNames);
 
 		for(ItemRegistryChangeListener listener : listeners) {
 			listener.allItemsChanged(oldItemNames);
@@ -224,6 +349,9 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
         items = itemMap.get(provider);
 		if(items!=null) {
 			items.remove(item);
+			if(unindexItem(item)) {
+				reindexShadowedItems(Collections.singleton(item.getName()));
+			}
 		}
 		for(ItemRegistryChangeListener listener : listeners) {
 			listener.itemRemoved(item);
@@ -255,26 +383,10 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 				genericItem.setEventPublisher(eventPublisher);
 				genericItem.initialize();
 			}
-			
 			if(item instanceof GroupItem) {
-				// fill group with its members 
-				for(Item i : getItems()) {
-					if(i.getGroupNames().contains(item.getName())) {
-						((GroupItem)item).addMember(i);
-					}
-				}
-			}
-			// add the item to all relevant groups
-			for(String groupName : item.getGroupNames()) {
-				try {
-					Item groupItem = getItem(groupName);
-					if(groupItem instanceof GroupItem) {
-						((GroupItem)groupItem).addMember(item);
-					}
-				} catch (ItemNotFoundException e) {
-					// the group might not yet be registered, let's ignore this
-				}
+				configureGroup((GroupItem) item);
 			}
+			indexItem(item);
 			return true;
 		} else {
 			logger.warn("Ignoring item '{}' as it does not comply with" +
@@ -282,4 +394,99 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			return false;
 		}
 	}
+	
+	/**
+	 * Adds the given item to the name and group membership indexes and wires it with
+	 * its groups and, if it is a group itself, with its members. Nothing is done if
+	 * the name is already taken by another item, as the first registered item wins.
+	 * 
+	 * @param item the item to index
+	 * @return true, if the item has been indexed
+	 */
+	private boolean indexItem(Item item) {
+		String name = item.getName();
+		if(itemsByName.putIfAbsent(name, item)!=null) {
+			return false;
+		}
+		if(item instanceof GroupItem) {
+			// fill group with its members 
+			Set<String> memberNames = groupMemberNames.get(name);
+			if(memberNames!=null) {
+				for(String memberName : memberNames) {
+					Item member = itemsByName.get(memberName);
+					if(member!=null && member!=item) {
+						((GroupItem)item).addMember(member);
+					}
+				}
+			}
+		}
+		// add the item to all relevant groups
+		for(String groupName : item.getGroupNames()) {
+			getGroupMemberNames(groupName).add(name);
+			Item groupItem = itemsByName.get(groupName);
+			if(groupItem instanceof GroupItem && groupItem!=item) {
+				((GroupItem)groupItem).addMember(item);
+			}
+		}
+		return true;
+	}
+	
+	private Set<String> getGroupMemberNames(String groupName) {
+		Set<String> memberNames = groupMemberNames.get(groupName);
+		if(memberNames==null) {
+			Set<String> newMemberNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+			memberNames = groupMemberNames.putIfAbsent(groupName, newMemberNames);
+			if(memberNames==null) {
+				memberNames = newMemberNames;
+			}
+		}
+		return memberNames;
+	}
+
+	/**
+	 * Removes the given item from the name and group membership indexes.
+	 * 
+	 * @param item the item to remove from the indexes
+	 * @return true, if the item was indexed and has been removed
+	 */
+	private boolean unindexItem(Item item) {
+		String name = item.getName();
+		if(itemsByName.get(name)!=item) {
+			// the name is taken by an item of another provider (or not at all)
+			return false;
+		}
+		itemsByName.remove(name);
+		for(String groupName : item.getGroupNames()) {
+			Set<String> memberNames = groupMemberNames.get(groupName);
+			if(memberNames!=null) {
+				memberNames.remove(name);
+			}
+			// a shadowed item of the same name might take its place in the group
+			Item groupItem = itemsByName.get(groupName);
+			if(groupItem instanceof GroupItem) {
+				((GroupItem)groupItem).removeMember(item);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * If several providers provide items with the same name, only one of them is
+	 * indexed. Once it has been removed, an item of another provider with the same 
+	 * name has to become visible again.
+	 * 
+	 * @param names the names of the items which have been removed from the index
+	 */
+	private void reindexShadowedItems(Collection<String> names) {
+		if(names.isEmpty()) {
+			return;
+		}
+		for(Collection<Item> items : itemMap.values()) {
+			for(Item item : items) {
+				if(names.contains(item.getName())) {
+					indexItem(item);
+				}
+			}
+		}
+	}
 }
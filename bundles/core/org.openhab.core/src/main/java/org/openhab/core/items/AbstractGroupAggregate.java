@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.core.items.IncrementalGroupFunction.Aggregate;
+
+/**
+ * Base class for aggregates, which derive a contribution (e.g. a numeric value) from
+ * the state of every member. It remembers the current contribution of each member, so
+ * that subclasses only have to add the new and remove the old contribution when the
+ * state of a member changes. Members which are contained more than once contribute
+ * once per occurrence, just like in a full calculation.
+ * 
+ * @param <C> the type of the contributions
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public abstract class AbstractGroupAggregate<C> implements Aggregate {
+
+	/** the members by identity, as the equality of items depends on their state */
+	private final Map<Item, Contribution<C>> contributions = new IdentityHashMap<Item, Contribution<C>>();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void reset(List<Item> items) {
+		contributions.clear();
+		clear();
+		for (Item item : items) {
+			Contribution<C> contribution = contributions.get(item);
+			if (contribution == null) {
+				contribution = new Contribution<C>(getContribution(item));
+				contributions.put(item, contribution);
+			} else {
+				contribution.occurrences++;
+			}
+			if (contribution.value != null) {
+				add(contribution.value);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void update(Item item) {
+		Contribution<C> contribution = contributions.get(item);
+		if (contribution == null) {
+			return;
+		}
+		C value = getContribution(item);
+		if (value == null ? contribution.value == null : value.equals(contribution.value)) {
+			return;
+		}
+		for (int i = 0; i < contribution.occurrences; i++) {
+			if (contribution.value != null) {
+				remove(contribution.value);
+			}
+			if (value != null) {
+				add(value);
+			}
+		}
+		contribution.value = value;
+	}
+
+	/**
+	 * Determines the contribution of a member to the group state.
+	 * 
+	 * @param item the member
+	 * @return the contribution of the member or <code>null</code> if it does not contribute
+	 */
+	protected abstract C getContribution(Item item);
+
+	/**
+	 * Adds a contribution to the intermediate results.
+	 * 
+	 * @param value the contribution, never <code>null</code>
+	 */
+	protected abstract void add(C value);
+
+	/**
+	 * Removes a contribution, which has been added before, from the intermediate results.
+	 * 
+	 * @param value the contribution, never <code>null</code>
+	 */
+	protected abstract void remove(C value);
+
+	/**
+	 * Discards all intermediate results.
+	 */
+	protected abstract void clear();
+
+	private static class Contribution<C> {
+		C value;
+		int occurrences = 1;
+
+		Contribution(C value) {
+			this.value = value;
+		}
+	}
+
+}
@@ -8,12 +8,9 @@
  */
 package org.openhab.core.items;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.types.Command;
@@ -33,7 +30,15 @@ abstract public class GenericItem implements Item {
 	
 	protected EventPublisher eventPublisher;
 
-	protected Set<StateChangeListener> listeners = new CopyOnWriteArraySet<StateChangeListener>(Collections.newSetFromMap(new WeakHashMap<StateChangeListener, Boolean>()));
+	private static final StateChangeListener[] NO_LISTENERS = new StateChangeListener[0];
+	
+	/** 
+	 * the registered listeners; the array is never modified but replaced on every change,
+	 * so that state updates can iterate over it without copying or locking
+	 */
+	private volatile StateChangeListener[] listeners = NO_LISTENERS;
+	
+	private final Object listenerLock = new Object();
 	
 	protected List<String> groupNames = new ArrayList<String>();
 	
@@ -102,13 +107,12 @@ abstract public class GenericItem implements Item {
 
 	private void notifyListeners(State oldState, State newState) {
 		// if nothing has changed, we send update notifications
-		Set<StateChangeListener> clonedListeners = null;
-		clonedListeners = new CopyOnWriteArraySet<StateChangeListener>(listeners);
-		for(StateChangeListener listener : clonedListeners) {
+		StateChangeListener[] currentListeners = listeners;
+		for(StateChangeListener listener : currentListeners) {
 			listener.stateUpdated(this, newState);
 		}
 		if(!oldState.equals(newState)) {
-			for(StateChangeListener listener : clonedListeners) {
+			for(StateChangeListener listener : currentListeners) {
 				listener.stateChanged(this, oldState, newState);
 			}
 		}
@@ -125,14 +129,93 @@ abstract public class GenericItem implements Item {
 	}
 
 	public void addStateChangeListener(StateChangeListener listener) {
-		synchronized(listeners) {
-			listeners.add(listener);
+		synchronized(listenerLock) {
+			if(indexOf(listener) < 0) {
+				StateChangeListener[] newListeners = new StateChangeListener[listeners.length + 1];
+				System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+				newListeners[listeners.length] = listener;
+				listeners = newListeners;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a listener, which is only weakly referenced by this item. It is removed
+	 * automatically once it has been garbage collected, so that it does not need to
+	 * be removed explicitly, e.g. by short-lived UI components.
+	 * 
+	 * @param listener the listener to add
+	 */
+	public void addWeakStateChangeListener(StateChangeListener listener) {
+		synchronized(listenerLock) {
+			if(indexOf(listener) < 0) {
+				addStateChangeListener(new WeakStateChangeListener(listener));
+			}
 		}
 	}
 	
 	public void removeStateChangeListener(StateChangeListener listener) {
-		synchronized(listeners) {
-			listeners.remove(listener);
+		synchronized(listenerLock) {
+			int index = indexOf(listener);
+			if(index >= 0) {
+				if(listeners.length == 1) {
+					listeners = NO_LISTENERS;
+				} else {
+					StateChangeListener[] newListeners = new StateChangeListener[listeners.length - 1];
+					System.arraycopy(listeners, 0, newListeners, 0, index);
+					System.arraycopy(listeners, index + 1, newListeners, index, listeners.length - index - 1);
+					listeners = newListeners;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Determines the position of a listener, which might also be weakly referenced.
+	 * 
+	 * @param listener the listener to look for
+	 * @return the index of the listener, -1 if it is not registered
+	 */
+	private int indexOf(StateChangeListener listener) {
+		StateChangeListener[] currentListeners = listeners;
+		for(int i = 0; i < currentListeners.length; i++) {
+			StateChangeListener registered = currentListeners[i];
+			if(registered instanceof WeakStateChangeListener && !(listener instanceof WeakStateChangeListener)) {
+				registered = ((WeakStateChangeListener) registered).get();
+			}
+			if(listener.equals(registered)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Forwards the notifications to a weakly referenced listener and removes itself
+	 * from the item, once the listener has been garbage collected.
+	 */
+	private static class WeakStateChangeListener extends WeakReference<StateChangeListener> implements StateChangeListener {
+		
+		WeakStateChangeListener(StateChangeListener listener) {
+			super(listener);
+		}
+		
+		public void stateChanged(Item item, State oldState, State newState) {
+			StateChangeListener listener = get();
+			if(listener != null) {
+				listener.stateChanged(item, oldState, newState);
+			} else {
+				((GenericItem) item).removeStateChangeListener(this);
+			}
+		}
+		
+		public void stateUpdated(Item item, State state) {
+			StateChangeListener listener = get();
+			if(listener != null) {
+				listener.stateUpdated(item, state);
+			} else {
+				((GenericItem) item).removeStateChangeListener(this);
+			}
 		}
 	}
 	
@@ -8,7 +8,9 @@
  */
 package org.openhab.core.items;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
@@ -48,7 +50,7 @@ abstract public interface GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Equality implements GroupFunction {
+	static class Equality implements IncrementalGroupFunction {
 
 		/**
 		 * @{inheritDoc
@@ -79,6 +81,46 @@ abstract public interface GroupFunction {
 				return null;
 			}
 		}
+
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregate createAggregate() {
+			return new AbstractGroupAggregate<State>() {
+				// the number of members per distinct state
+				private final Map<State, Integer> states = new HashMap<State, Integer>();
+
+				@Override
+				protected State getContribution(Item item) {
+					return item.getState();
+				}
+
+				@Override
+				protected void add(State state) {
+					Integer count = states.get(state);
+					states.put(state, count == null ? 1 : count + 1);
+				}
+
+				@Override
+				protected void remove(State state) {
+					Integer count = states.get(state);
+					if (count == null || count <= 1) {
+						states.remove(state);
+					} else {
+						states.put(state, count - 1);
+					}
+				}
+
+				@Override
+				protected void clear() {
+					states.clear();
+				}
+
+				public State getState() {
+					return states.size() == 1 ? states.keySet().iterator().next() : UnDefType.UNDEF;
+				}
+			};
+		}
 	}
 
 }
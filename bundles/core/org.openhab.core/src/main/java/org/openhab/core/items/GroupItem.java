@@ -13,8 +13,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.collections.ListUtils;
+import org.openhab.core.items.IncrementalGroupFunction.Aggregate;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.slf4j.Logger;
@@ -24,11 +30,43 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	
 	private static final Logger logger = LoggerFactory.getLogger(GroupItem.class);
 	
+	/** 
+	 * is incremented whenever the members of any group change, as this might change
+	 * the flattened members of the groups which contain this group as well
+	 */
+	private static final AtomicLong membershipVersion = new AtomicLong();
+	
 	protected final GenericItem baseItem;
 	
 	protected final List<Item> members;
 	
 	protected GroupFunction function;
+	
+	/** the running aggregate of the group function or <code>null</code> if it is not incremental */
+	private final Aggregate aggregate;
+	
+	/** whether the aggregate has been calculated for the current members, guarded by the state lock */
+	private boolean aggregateValid = false;
+	
+	/** 
+	 * the time in milliseconds during which member updates are collected before the 
+	 * group state is recalculated, 0 to recalculate it on every member update 
+	 */
+	private volatile long coalescingWindow = 0;
+	
+	/** the executor which publishes the coalesced states, <code>null</code> for the shared one */
+	private volatile ScheduledExecutorService coalescingExecutor;
+	
+	/** whether a recalculation has been scheduled for the end of the current window, guarded by the state lock */
+	private boolean recalculationScheduled = false;
+	
+	private final Object stateLock = new Object();
+	
+	private final AtomicLong coalescedUpdates = new AtomicLong();
+	private final AtomicLong emittedUpdates = new AtomicLong();
+	
+	/** the result of {@link #getAllMembers()} together with the membership version it is valid for */
+	private volatile AllMembers allMembers;
 
 	public GroupItem(String name) {
 		this(name, null);
@@ -43,6 +81,8 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 		members = new CopyOnWriteArrayList<Item>();
 		this.function = function;
 		this.baseItem = baseItem;
+		this.aggregate = function instanceof IncrementalGroupFunction ? 
+				((IncrementalGroupFunction) function).createAggregate() : null;
 	}
 	
 	/**
@@ -74,9 +114,23 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 * @return all members of this and all contained {@link GroupItem}s
 	 */
 	public List<Item> getAllMembers() {
-		Set<Item> allMembers = new HashSet<Item>();
-		collectMembers(allMembers, members);
-		return new ArrayList<Item>(allMembers);
+		return new ArrayList<Item>(getCachedAllMembers());
+	}
+	
+	/**
+	 * Returns the flattened members, which are only collected again if the members
+	 * of any group have changed since the last call. The returned list must not be modified.
+	 */
+	private List<Item> getCachedAllMembers() {
+		long version = membershipVersion.get();
+		AllMembers cached = allMembers;
+		if (cached == null || cached.version != version) {
+			Set<Item> allMembers = new HashSet<Item>();
+			collectMembers(allMembers, members);
+			cached = new AllMembers(version, new ArrayList<Item>(allMembers));
+			this.allMembers = cached;
+		}
+		return cached.items;
 	}
 	
 	private void collectMembers(Set<Item> allMembers, List<Item> members) {
@@ -92,6 +146,7 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 
 	public void addMember(Item item) {
 		members.add(item);
+		membersChanged();
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.addStateChangeListener(this);
@@ -100,12 +155,73 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	
 	public void removeMember(Item item) {
 		members.remove(item);
+		membersChanged();
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
 		}
 	}
 	
+	private void membersChanged() {
+		membershipVersion.incrementAndGet();
+		synchronized (stateLock) {
+			aggregateValid = false;
+		}
+	}
+	
+	/**
+	 * Returns the time during which member updates are collected, before the state
+	 * of this group is recalculated once.
+	 * 
+	 * @return the coalescing window in milliseconds, 0 if every member update 
+	 * leads to a recalculation
+	 */
+	public long getCoalescingWindow() {
+		return coalescingWindow;
+	}
+	
+	/**
+	 * Sets the time during which member updates are collected, before the state of
+	 * this group is recalculated and published to its listeners once. This avoids 
+	 * a flood of group updates if many members are updated at once, e.g. by a 
+	 * command to the group, at the expense of a delayed group state.
+	 * 
+	 * @param coalescingWindow the coalescing window in milliseconds, 0 to recalculate
+	 * the group state on every member update
+	 */
+	public void setCoalescingWindow(long coalescingWindow) {
+		if (coalescingWindow < 0) {
+			throw new IllegalArgumentException("The coalescing window must not be negative.");
+		}
+		this.coalescingWindow = coalescingWindow;
+	}
+	
+	/**
+	 * Sets the executor which publishes the coalesced group states at the end of the
+	 * window. By default, all groups share a single thread for this.
+	 * 
+	 * @param coalescingExecutor the executor to use, <code>null</code> for the shared one
+	 */
+	void setCoalescingExecutor(ScheduledExecutorService coalescingExecutor) {
+		this.coalescingExecutor = coalescingExecutor;
+	}
+	
+	/**
+	 * @return the number of member updates, which have been merged into an already
+	 * scheduled recalculation of the group state
+	 */
+	public long getCoalescedUpdateCount() {
+		return coalescedUpdates.get();
+	}
+	
+	/**
+	 * @return the number of times the group state has been recalculated and published
+	 * to the listeners of this group
+	 */
+	public long getEmittedUpdateCount() {
+		return emittedUpdates.get();
+	}
+	
 	/** 
 	 * The accepted data types of a group item is the same as of the underlying base item.
 	 * If none is defined, the intersection of all sets of accepted data types of all group
@@ -182,7 +298,7 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 */
 	@Override
 	public State getStateAs(Class<? extends State> typeClass) {
-		State newState = function.getStateAs(getAllMembers(), typeClass);
+		State newState = function.getStateAs(getCachedAllMembers(), typeClass);
 		if(newState==null && baseItem!=null) {
 			// we use the transformation method from the base item
 			baseItem.setState(state);
@@ -210,13 +326,98 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 * @{inheritDoc
 	 */
 	public void stateChanged(Item item, State oldState, State newState) {
-		setState(function.calculate(members));
+		memberStateUpdated(item);
 	}
 
 	/**
 	 * @{inheritDoc
 	 */
 	public void stateUpdated(Item item, State state) {
-		setState(function.calculate(members));
+		memberStateUpdated(item);
 	}
+	
+	/**
+	 * Recalculates the state of this group after the state of a member has been updated.
+	 * For incremental group functions only the contribution of this member is updated, 
+	 * unless the members have changed since the last calculation. If there is a
+	 * coalescing window, the new state is published at its end.
+	 * 
+	 * @param item the member whose state has been updated
+	 */
+	private void memberStateUpdated(Item item) {
+		synchronized (stateLock) {
+			if (aggregate != null) {
+				if (aggregateValid) {
+					aggregate.update(item);
+				} else {
+					aggregate.reset(members);
+					aggregateValid = true;
+				}
+			}
+			long window = coalescingWindow;
+			if (window > 0) {
+				if (recalculationScheduled) {
+					coalescedUpdates.incrementAndGet();
+				} else {
+					recalculationScheduled = true;
+					ScheduledExecutorService executor = coalescingExecutor;
+					if (executor == null) {
+						executor = CoalescingScheduler.executor;
+					}
+					executor.schedule(new Runnable() {
+						public void run() {
+							try {
+								publishState();
+							} catch (RuntimeException e) {
+								logger.error("Error while publishing the state of group '" + getName() + "'", e);
+							}
+						}
+					}, window, TimeUnit.MILLISECONDS);
+				}
+			} else {
+				publishState();
+			}
+		}
+	}
+	
+	private void publishState() {
+		synchronized (stateLock) {
+			recalculationScheduled = false;
+			emittedUpdates.incrementAndGet();
+			setState(aggregate != null ? aggregate.getState() : function.calculate(members));
+		}
+	}
+	
+	/**
+	 * Holds the thread which publishes the coalesced group states, it is only 
+	 * created when the first group uses a coalescing window.
+	 */
+	private static class CoalescingScheduler {
+		static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "GroupItem-coalescing");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		
+		static {
+			executor.setKeepAliveTime(60, TimeUnit.SECONDS);
+			executor.allowCoreThreadTimeOut(true);
+		}
+	}
+	
+	/**
+	 * The flattened members of a group for a certain membership version.
+	 */
+	private static class AllMembers {
+		final long version;
+		final List<Item> items;
+		
+		AllMembers(long version, List<Item> items) {
+			this.version = version;
+			this.items = items;
+		}
+	}
+	
 }
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import java.util.List;
+
+import org.openhab.core.types.State;
+
+/**
+ * A group function which is able to update the group state incrementally, when the
+ * state of a single member changes, instead of calculating it from the states of all
+ * members again. {@link GroupItem}s use this for all functions which support it.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface IncrementalGroupFunction extends GroupFunction {
+
+	/**
+	 * Creates the running aggregate for a single group. The aggregate must lead to the
+	 * same state as {@link #calculate(List)} for the same member states.
+	 * 
+	 * @return a new, empty aggregate
+	 */
+	public Aggregate createAggregate();
+
+	/**
+	 * Keeps the intermediate results of a group function for the members of a single group.
+	 * Implementations do not need to be thread-safe.
+	 */
+	public interface Aggregate {
+
+		/**
+		 * Discards all intermediate results and calculates them for the given members.
+		 * 
+		 * @param items the members of the group
+		 */
+		public void reset(List<Item> items);
+
+		/**
+		 * Updates the intermediate results with the current state of a member. Items
+		 * which have not been passed to {@link #reset(List)} are ignored.
+		 * 
+		 * @param item the member whose state has been updated
+		 */
+		public void update(Item item);
+
+		/**
+		 * @return the state of the group
+		 */
+		public State getState();
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.openhab.core.types.State;
+
+/**
+ * Decides whether an item accepts a state, i.e. whether the class of the state or one of
+ * its super classes is among the accepted data types of the item. As the accepted data
+ * types are defined by the item class, the decision is cached per item class and state
+ * class, so that it is made only once and not on every state update.
+ *
+ * <p>Group items without a base item are not cached, as their accepted data types depend
+ * on their members.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class StateAcceptance {
+
+	private static final ConcurrentMap<Class<?>, ConcurrentMap<Class<?>, Boolean>> acceptance =
+			new ConcurrentHashMap<Class<?>, ConcurrentMap<Class<?>, Boolean>>();
+
+	private StateAcceptance() {
+	}
+
+	/**
+	 * Checks whether the given item accepts the given state.
+	 *
+	 * @param item the item to update
+	 * @param state the new state of the item
+	 * @return <code>true</code>, if the state can be set on the item
+	 */
+	public static boolean isAccepted(Item item, State state) {
+		Item typeItem = item;
+		while (typeItem instanceof GroupItem) {
+			typeItem = ((GroupItem) typeItem).getBaseItem();
+		}
+		if (typeItem == null) {
+			return isAccepted(item.getAcceptedDataTypes(), state.getClass());
+		}
+
+		ConcurrentMap<Class<?>, Boolean> states = acceptance.get(typeItem.getClass());
+		if (states == null) {
+			states = new ConcurrentHashMap<Class<?>, Boolean>();
+			ConcurrentMap<Class<?>, Boolean> existing = acceptance.putIfAbsent(typeItem.getClass(), states);
+			if (existing != null) {
+				states = existing;
+			}
+		}
+		Boolean accepted = states.get(state.getClass());
+		if (accepted == null) {
+			accepted = isAccepted(typeItem.getAcceptedDataTypes(), state.getClass());
+			states.put(state.getClass(), accepted);
+		}
+		return accepted;
+	}
+
+	private static boolean isAccepted(List<Class<? extends State>> acceptedDataTypes, Class<?> stateClass) {
+		if (acceptedDataTypes == null) {
+			return false;
+		}
+		if (acceptedDataTypes.contains(stateClass)) {
+			return true;
+		}
+		// look for the class hierarchy
+		for (Class<? extends State> acceptedDataType : acceptedDataTypes) {
+			if (acceptedDataType.isAssignableFrom(stateClass)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
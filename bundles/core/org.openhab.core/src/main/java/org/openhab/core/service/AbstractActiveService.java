@@ -8,13 +8,15 @@
  */
 package org.openhab.core.service;
 
+import org.openhab.core.service.PollingScheduler.PollingTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * Base class for services that frequently run some action in a separate thread in the 
- * background.
+ * background. The action is scheduled at a fixed rate with the shared {@link PollingScheduler},
+ * so that the services do not need a thread of their own.
  * 
  * @author Kai Kreuzer
  * @since 0.7.0
@@ -30,13 +32,13 @@ public abstract class AbstractActiveService {
 	 * indicates that the background thread will shutdown after the current
 	 * execution cycle.
 	 */
-	protected boolean shutdown = false;
+	protected volatile boolean shutdown = false;
 	
 	/**
-	 * holds the instance of the refresh thread or is <code>null</code> if 
-	 * there is no thread active at the moment
+	 * holds the scheduled refresh task or is <code>null</code> if 
+	 * there is no task active at the moment
 	 */
-	private Thread refreshThread;
+	private volatile PollingTask refreshTask;
 	
 	
 	public AbstractActiveService() {
@@ -53,8 +55,8 @@ public abstract class AbstractActiveService {
 	}
 	
 	/**
-	 * Takes care about starting the refresh thread. It creates a new
-	 * RefreshThread if no instance exists.
+	 * Takes care about starting the refresh thread. It schedules a new
+	 * refresh task if none is active.
 	 */
 	protected void start() {
 		if (!isProperlyConfigured()) {
@@ -64,8 +66,14 @@ public abstract class AbstractActiveService {
 				
 		shutdown = false;
 		if (!isRunning()) {
-			this.refreshThread = new RefreshThread(getName(), getRefreshInterval());
-			this.refreshThread.start();
+			this.refreshTask = PollingScheduler.getInstance().schedule(getName(), new Runnable() {
+				public void run() {
+					if (!shutdown) {
+						execute();
+					}
+				}
+			}, getRefreshInterval(), getExecutionTimeout());
+			logger.info(getName() + " has been started");
 		} else {
 			logger.trace("{} is already started > calling start() changed nothing.", getName());
 		}
@@ -77,14 +85,22 @@ public abstract class AbstractActiveService {
 	 */
 	public void shutdown() {
 		this.shutdown = true;
+		PollingTask task = this.refreshTask;
+		if (task != null) {
+			task.cancel(false);
+			this.refreshTask = null;
+			logger.info(getName() + " has been shut down");
+		}
 	}
 	
 	/**
-	 * Interrupts the refresh thread immediately.
+	 * Interrupts the refresh thread immediately. A running execution is interrupted,
+	 * otherwise the next one is started right away; the service keeps running.
 	 */
 	public void interrupt() {
-		if (isRunning()) {
-			this.refreshThread.interrupt();
+		PollingTask task = this.refreshTask;
+		if (task != null) {
+			task.interrupt();
 			logger.trace("{} has been interrupted.", getName());
 		}
 	}
@@ -93,10 +109,16 @@ public abstract class AbstractActiveService {
 	 * {@inheritDoc}
 	 */
 	public boolean isRunning() {
-		if (this.refreshThread != null) {
-			return this.refreshThread.isAlive();
-		}
-		return false;
+		PollingTask task = this.refreshTask;
+		return task != null && !task.isCancelled();
+	}
+	
+	/**
+	 * @return the statistics of the refresh task or <code>null</code> if 
+	 * it is not running at the moment
+	 */
+	public PollingTask getRefreshTask() {
+		return refreshTask;
 	}
 	
 	/**
@@ -147,56 +169,13 @@ public abstract class AbstractActiveService {
 	protected abstract String getName();
 	
 	/**
-	 * Worker thread which calls the execute method frequently.
-	 *  
-	 * @author Thomas.Eichstaedt-Engelen
+	 * Returns the time after which a call of the execute method is interrupted.
+	 * Subclasses which might block in the execute method should override it.
+	 * 
+	 * @return the timeout in milliseconds, 0 for no timeout
 	 */
-	class RefreshThread extends Thread {
-		
-		private long refreshInterval;
-		
-		public RefreshThread(String name, long refreshInterval) {
-			super(name);
-			this.setDaemon(true);
-			this.refreshInterval = refreshInterval;
-			
-			// reset 'interrupted' after stopping this refresh thread ...
-			shutdown = false;
-		}
-		
-		@Override
-		public void run() {
-			logger.info(getName() + " has been started");
-			
-			while (!shutdown) {
-				try {
-					execute();
-				} catch(RuntimeException e) {
-					logger.error("Error while executing background thread " + getName(), e);
-				}
-				pause(refreshInterval);
-			}
-			
-			refreshThread = null;
-			logger.info(getName() + " has been shut down");
-		}
-		
-		/**
-		 * Pause polling for the given <code>refreshInterval</code>. Possible
-		 * {@link InterruptedException} is logged with no further action.
-		 *  
-		 * @param refreshInterval 
-		 */
-		protected void pause(long refreshInterval) {
-			
-			try {
-				Thread.sleep(refreshInterval);
-			}
-			catch (InterruptedException e) {
-				logger.debug("pausing thread " + super.getName() +" interrupted");
-			}
-		}
-
+	protected long getExecutionTimeout() {
+		return 0;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,436 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the periodic tasks of all active services and bindings on shared threads instead
+ * of a dedicated thread per service. A single thread triggers the tasks at a fixed rate,
+ * while the tasks themselves are executed by a pool of worker threads, which only grows
+ * if tasks actually run at the same time and shrinks again when they are idle.
+ *
+ * <p>A task is never executed concurrently with itself: if it is still running when it
+ * is due again, this execution is skipped and counted as an overrun. Tasks can have a
+ * timeout, after which the executing thread is interrupted. A task which ignores the
+ * interrupt is still considered running until it returns, so a hanging task never
+ * occupies more than one thread. The first execution of each
+ * task is delayed by a random jitter, so that services which are started at the same
+ * time do not poll at the same time.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class PollingScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(PollingScheduler.class);
+
+	/** the maximum delay in milliseconds of the first execution of a task */
+	private static final long MAX_JITTER = 1000;
+
+	/** the time in seconds after which idle threads are terminated */
+	private static final long KEEP_ALIVE_TIME = 60;
+
+	/** the number of overruns of a task after which another warning is logged */
+	private static final long OVERRUN_WARNING_INTERVAL = 100;
+
+	/** the shared instance, guarded by the class lock */
+	private static PollingScheduler instance;
+
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	private final ThreadPoolExecutor workers;
+
+	private final List<PollingTask> tasks = new CopyOnWriteArrayList<PollingTask>();
+
+	private final Random random = new Random();
+
+	public PollingScheduler() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("PollingScheduler"));
+		scheduler.setKeepAliveTime(KEEP_ALIVE_TIME, TimeUnit.SECONDS);
+		scheduler.allowCoreThreadTimeOut(true);
+		workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new NamedThreadFactory("PollingScheduler-worker"));
+	}
+
+	/**
+	 * @return the scheduler which is shared by all active services
+	 */
+	public static synchronized PollingScheduler getInstance() {
+		if (instance == null) {
+			instance = new PollingScheduler();
+		}
+		return instance;
+	}
+
+	/**
+	 * Stops the shared scheduler and its threads. It is created again if it is
+	 * needed after a restart of the core bundle.
+	 */
+	public static synchronized void shutdownInstance() {
+		if (instance != null) {
+			instance.shutdown();
+			instance = null;
+		}
+	}
+
+	/**
+	 * Schedules a task for periodic execution.
+	 *
+	 * @param name the name of the task, which is used for logging and as the name of
+	 * 		the executing thread
+	 * @param task the task to execute
+	 * @param interval the time in milliseconds between the starts of two executions
+	 * @param timeout the time in milliseconds after which an execution is interrupted,
+	 * 		0 for no timeout
+	 * @return the scheduled task, which can be used to cancel it
+	 */
+	public PollingTask schedule(String name, Runnable task, long interval, long timeout) {
+		interval = Math.max(interval, 1);
+		long jitter;
+		synchronized (random) {
+			jitter = (long) (random.nextDouble() * Math.min(interval, MAX_JITTER));
+		}
+		PollingTask pollingTask = new PollingTask(name, task, interval, timeout);
+		tasks.add(pollingTask);
+		pollingTask.schedule(jitter);
+		logger.debug("Scheduled '{}' every {}ms", name, interval);
+		return pollingTask;
+	}
+
+	/**
+	 * @return all scheduled tasks together with their statistics
+	 */
+	public Collection<PollingTask> getTasks() {
+		return new ArrayList<PollingTask>(tasks);
+	}
+
+	/**
+	 * Cancels all tasks and stops the threads of this scheduler.
+	 */
+	public void shutdown() {
+		for (PollingTask task : tasks) {
+			task.cancel(true);
+		}
+		scheduler.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	/**
+	 * A task which is executed periodically, together with the statistics of its executions.
+	 */
+	public class PollingTask {
+
+		private final String name;
+		private final Runnable task;
+		private final long interval;
+		private final long timeout;
+
+		private volatile ScheduledFuture<?> trigger;
+		/** the running or the last execution, <code>null</code> if the task has not been started yet */
+		private volatile Execution execution;
+		private volatile boolean cancelled = false;
+
+		private final AtomicLong executions = new AtomicLong();
+		private final AtomicLong overruns = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+		private volatile long lastStart = 0;
+		private volatile long lastDuration = 0;
+		private volatile long maxDuration = 0;
+		private volatile long lastDelay = 0;
+
+		PollingTask(String name, Runnable task, long interval, long timeout) {
+			this.name = name;
+			this.task = task;
+			this.interval = interval;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * Cancels all further executions of this task.
+		 *
+		 * @param interrupt <code>true</code> if a running execution should be interrupted,
+		 * 		otherwise it is allowed to complete
+		 */
+		public void cancel(boolean interrupt) {
+			synchronized (this) {
+				cancelled = true;
+				if (trigger != null) {
+					trigger.cancel(false);
+				}
+			}
+			Execution running = execution;
+			if (interrupt && running != null) {
+				running.interrupt(false);
+			}
+			tasks.remove(this);
+			scheduler.purge();
+		}
+
+		/**
+		 * Wakes the task up without cancelling it: a running execution is interrupted and
+		 * the next execution is started as soon as it has returned, otherwise the next 
+		 * execution is started immediately. The following executions take place at the
+		 * usual interval again.
+		 */
+		public void interrupt() {
+			Execution running = execution;
+			if (running != null && running.interrupt(true)) {
+				return;
+			}
+			restart();
+		}
+
+		/**
+		 * Starts the next execution immediately, followed by the usual interval.
+		 */
+		private synchronized void restart() {
+			if (cancelled) {
+				return;
+			}
+			trigger.cancel(false);
+			try {
+				schedule(0);
+			} catch (RejectedExecutionException e) {
+				logger.debug("'{}' is not rescheduled as the scheduler has been shut down", name);
+			}
+		}
+
+		private synchronized void schedule(long delay) {
+			trigger = scheduler.scheduleAtFixedRate(new Trigger(), delay, interval, TimeUnit.MILLISECONDS);
+		}
+
+		/** @return <code>true</code> if the task has been cancelled */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/** @return <code>true</code> if the task is executing at the moment */
+		public boolean isExecuting() {
+			Execution running = execution;
+			return running != null && !running.isCompleted();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/** @return the time in milliseconds between the starts of two executions */
+		public long getInterval() {
+			return interval;
+		}
+
+		/** @return the time in milliseconds after which an execution is interrupted, 0 for none */
+		public long getTimeout() {
+			return timeout;
+		}
+
+		/** @return the number of executions which have been started */
+		public long getExecutionCount() {
+			return executions.get();
+		}
+
+		/** @return the number of executions which have been skipped because the previous one was still running */
+		public long getOverrunCount() {
+			return overruns.get();
+		}
+
+		/** @return the number of executions which have been interrupted because they exceeded the timeout */
+		public long getTimeoutCount() {
+			return timeouts.get();
+		}
+
+		/** @return the time of the last start in milliseconds since the epoch, 0 if it has not been started yet */
+		public long getLastStart() {
+			return lastStart;
+		}
+
+		/** @return the duration of the last completed execution in milliseconds */
+		public long getLastDuration() {
+			return lastDuration;
+		}
+
+		/** @return the duration of the longest execution in milliseconds */
+		public long getMaxDuration() {
+			return maxDuration;
+		}
+
+		/** @return the time in milliseconds the last execution had to wait for a thread after it was due */
+		public long getLastDelay() {
+			return lastDelay;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: interval=%dms, executions=%d, last=%dms, max=%dms, delay=%dms, overruns=%d, timeouts=%d",
+					name, interval, getExecutionCount(), lastDuration, maxDuration, lastDelay, getOverrunCount(), getTimeoutCount());
+		}
+
+		/**
+		 * Starts an execution of the task on a worker thread, unless the previous one is still running.
+		 */
+		private class Trigger implements Runnable {
+			public void run() {
+				if (cancelled) {
+					return;
+				}
+				if (isExecuting()) {
+					long count = overruns.incrementAndGet();
+					if (count % OVERRUN_WARNING_INTERVAL == 1) {
+						logger.warn("'{}' is still running after {}ms, skipping the next execution ({} overrun(s) so far)",
+							new Object[] { name, System.currentTimeMillis() - lastStart, count });
+					}
+					return;
+				}
+				final Execution running = new Execution(System.currentTimeMillis());
+				execution = running;
+				try {
+					workers.execute(running);
+					if (timeout > 0) {
+						scheduler.schedule(new Runnable() {
+							public void run() {
+								if (running.interrupt(false)) {
+									timeouts.incrementAndGet();
+									logger.warn("'{}' did not complete within {}ms and is interrupted", name, timeout);
+								}
+							}
+						}, timeout, TimeUnit.MILLISECONDS);
+					}
+				} catch (RuntimeException e) {
+					running.complete();
+					logger.error("Could not start the execution of '" + name + "'", e);
+				}
+			}
+		}
+
+		/**
+		 * Executes the task once and records its statistics. It is only completed when
+		 * the task has returned, even if it has been interrupted before.
+		 */
+		private class Execution implements Runnable {
+			private final long due;
+
+			// the executing thread, null before the start and after the completion
+			private Thread thread;
+			private volatile boolean completed = false;
+			private boolean interrupted = false;
+			private boolean restartRequested = false;
+
+			Execution(long due) {
+				this.due = due;
+			}
+
+			boolean isCompleted() {
+				return completed;
+			}
+
+			/**
+			 * Interrupts the execution, unless it has already completed.
+			 *
+			 * @param restart <code>true</code> if the next execution should be started as 
+			 * 		soon as this one has completed
+			 * @return <code>true</code> if the execution has not completed yet
+			 */
+			synchronized boolean interrupt(boolean restart) {
+				if (completed) {
+					return false;
+				}
+				restartRequested |= restart;
+				interrupted = true;
+				if (thread != null) {
+					thread.interrupt();
+				}
+				return true;
+			}
+
+			/**
+			 * Marks the execution as completed.
+			 *
+			 * @return <code>true</code> if the next execution should be started immediately
+			 */
+			synchronized boolean complete() {
+				completed = true;
+				thread = null;
+				return restartRequested;
+			}
+
+			public void run() {
+				Thread thread = Thread.currentThread();
+				synchronized (this) {
+					this.thread = thread;
+					if (interrupted) {
+						thread.interrupt();
+					}
+				}
+				String threadName = thread.getName();
+				thread.setName(name);
+				long start = System.currentTimeMillis();
+				lastStart = start;
+				lastDelay = start - due;
+				executions.incrementAndGet();
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					logger.error("Error while executing background thread " + name, e);
+				} finally {
+					long duration = System.currentTimeMillis() - start;
+					lastDuration = duration;
+					if (duration > maxDuration) {
+						maxDuration = duration;
+					}
+					thread.setName(threadName);
+					boolean restart;
+					synchronized (this) {
+						restart = complete();
+						// clear the interrupt of a timeout, so that it does not affect the next task on this thread
+						Thread.interrupted();
+					}
+					if (restart) {
+						restart();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates numbered daemon threads.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -39,6 +39,7 @@ import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.DownsamplingHelper;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
@@ -228,6 +229,13 @@ public class RrdResource {
 
 		// Get the data from the persistence store
 		Iterable<HistoricItem> result = persistenceService.query(filter);
+
+		// reduce the data to the requested resolution (in seconds)
+		if (resolution > 0) {
+			long threshold = (timeEnd.getTime() - timeBegin.getTime()) / 1000 / resolution;
+			result = DownsamplingHelper.largestTriangleThreeBuckets(result,
+					(int) Math.max(3, Math.min(threshold, Integer.MAX_VALUE)));
+		}
 		Iterator<HistoricItem> it = result.iterator();
 
 		// Iterate through the data
@@ -270,33 +278,38 @@ public class RrdResource {
 			Map<Long, ArrayList<String>> data, String itemName,
 			ConsolFun consilidationFunction, Date timeBegin, Date timeEnd,
 			long resolution) throws IOException {
-		RrdDb rrdDb = new RrdDb(RRD_FOLDER + File.separator + itemName + ".rrd");
-		FetchRequest fetchRequest = rrdDb.createFetchRequest(
-				consilidationFunction, Util.getTimestamp(timeBegin),
-				Util.getTimestamp(timeEnd), resolution);
-		FetchData fetchData = fetchRequest.fetchData();
-		// logger.info(fetchData.toString());
-		long[] timestamps = fetchData.getTimestamps();
-		double[][] values = fetchData.getValues();
-
-		logger.debug("RRD fetch returned '{}' rows and '{}' columns",
-				fetchData.getRowCount(), fetchData.getColumnCount());
-
-		for (int row = 0; row < fetchData.getRowCount(); row++) {
-			// change to microseconds
-			long time = timestamps[row] * 1000L;
-
-			if (!data.containsKey(time)) {
-				data.put(time, new ArrayList<String>());
-			}
-			ArrayList<String> vals = data.get(time);
-			int indexOffset = vals.size();
-			for (int dsIndex = 0; dsIndex < fetchData.getColumnCount(); dsIndex++) {
-				vals.add(dsIndex + indexOffset,
-						formatDouble(values[dsIndex][row], "null", true));
+		// this bundle has its own copy of RRD4j, so it cannot share the open databases of the
+		// RRD4j persistence service; it only reads the file, which is updated by the service
+		RrdDb rrdDb = new RrdDb(RRD_FOLDER + File.separator + itemName + ".rrd", true);
+		try {
+			FetchRequest fetchRequest = rrdDb.createFetchRequest(
+					consilidationFunction, Util.getTimestamp(timeBegin),
+					Util.getTimestamp(timeEnd), resolution);
+			FetchData fetchData = fetchRequest.fetchData();
+			// logger.info(fetchData.toString());
+			long[] timestamps = fetchData.getTimestamps();
+			double[][] values = fetchData.getValues();
+
+			logger.debug("RRD fetch returned '{}' rows and '{}' columns",
+					fetchData.getRowCount(), fetchData.getColumnCount());
+
+			for (int row = 0; row < fetchData.getRowCount(); row++) {
+				// change to microseconds
+				long time = timestamps[row] * 1000L;
+
+				if (!data.containsKey(time)) {
+					data.put(time, new ArrayList<String>());
+				}
+				ArrayList<String> vals = data.get(time);
+				int indexOffset = vals.size();
+				for (int dsIndex = 0; dsIndex < fetchData.getColumnCount(); dsIndex++) {
+					vals.add(dsIndex + indexOffset,
+							formatDouble(values[dsIndex][row], "null", true));
+				}
 			}
+		} finally {
+			rrdDb.close();
 		}
-		rrdDb.close();
 
 		return data;
 	}
@@ -9,6 +9,8 @@
 package org.openhab.model.core;
 
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
 
 import org.eclipse.emf.ecore.EObject;
 
@@ -41,6 +43,19 @@ public interface ModelRepository {
 	 */
 	public boolean addOrRefreshModel(String name, InputStream inputStream);
 
+	/**
+	 * Adds several models to the repository or refreshes them if they already exist.
+	 * Models of different types are loaded in parallel and the listeners are notified
+	 * only once, after all models have been loaded. Listeners which implement
+	 * {@link ModelRepositoryBatchChangeListener} receive a single notification for
+	 * all models.
+	 * 
+	 * @param models the names of the models to add/refresh and input streams with their content
+	 * 
+	 * @return the names of all models which were successfully processed
+	 */
+	public Collection<String> addOrRefreshModels(Map<String, InputStream> models);
+
 	/**
 	 * Removes a model from the repository
 	 * 
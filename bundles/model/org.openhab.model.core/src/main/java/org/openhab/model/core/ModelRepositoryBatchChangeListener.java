@@ -0,0 +1,32 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.model.core;
+
+import java.util.Map;
+
+/**
+ * A change listener, which is notified only once about all models that have been loaded
+ * together, e.g. all model files at startup, instead of once per model. This allows
+ * listeners to do expensive work like the recalculation of all items only once.
+ * 
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface ModelRepositoryBatchChangeListener extends ModelRepositoryChangeListener {
+
+	/**
+	 * Is called instead of {@link #modelChanged(String, EventType)} after all models
+	 * of a batch have been processed.
+	 * 
+	 * @param changes the names of all changed models and the types of their changes,
+	 * in the order in which they should be processed
+	 */
+	public void modelsChanged(Map<String, EventType> changes);
+
+}
@@ -10,9 +10,20 @@ package org.openhab.model.core.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.core.runtime.ListenerList;
 import org.eclipse.emf.common.util.URI;
@@ -24,6 +35,7 @@ import org.eclipse.xtext.resource.XtextResource;
 import org.eclipse.xtext.resource.XtextResourceSet;
 import org.openhab.model.core.EventType;
 import org.openhab.model.core.ModelRepository;
+import org.openhab.model.core.ModelRepositoryBatchChangeListener;
 import org.openhab.model.core.ModelRepositoryChangeListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,24 +45,32 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
+/**
+ * The model repository keeps a separate resource set for every model type (file
+ * extension), as models do not reference models of other types. Hence models of
+ * different types can be loaded in parallel, while the models of a single type are
+ * loaded one after another.
+ * 
+ * @author Kai Kreuzer
+ */
 public class ModelRepositoryImpl implements ModelRepository {
 	
 	private static final Logger logger = LoggerFactory.getLogger(ModelRepositoryImpl.class);
-	private final ResourceSet resourceSet;
+	
+	/** the resource sets of all model types, the model type is the key */
+	private final Map<String, ResourceSet> resourceSets = new ConcurrentHashMap<String, ResourceSet>();
 	
 	private final ListenerList listeners = new ListenerList();
 
 	public ModelRepositoryImpl() {
-		XtextResourceSet xtextResourceSet = new SynchronizedXtextResourceSet();
-		xtextResourceSet.addLoadOption(XtextResource.OPTION_RESOLVE_ALL, Boolean.TRUE);
-		this.resourceSet = xtextResourceSet;
 		// don't use XMI as a default
 		Resource.Factory.Registry.INSTANCE.getExtensionToFactoryMap().remove("*");
 	}
 	
 	public EObject getModel(String name) {
+		ResourceSet resourceSet = getResourceSet(name);
 		synchronized (resourceSet) {
-	 		Resource resource = getResource(name);
+	 		Resource resource = getResource(resourceSet, name);
 			if(resource!=null) {
 				if(resource.getContents().size()>0) {
 					return resource.getContents().get(0);
@@ -68,52 +88,73 @@ public class ModelRepositoryImpl implements ModelRepository {
 	}
 
 	public boolean addOrRefreshModel(String name, InputStream inputStream) {
-		Resource resource = getResource(name);
-		if(resource==null) {
-			synchronized(resourceSet) {
-				// try again to retrieve the resource as it might have been created by now
-				resource = getResource(name);
-				if(resource==null) {
-					// seems to be a new file
-					resource = resourceSet.createResource(URI.createURI(name));
-					if(resource!=null) {
-						logger.info("Loading model '{}'", name);
-						try {
-							Map<String, String> options = new HashMap<String, String>();
-							options.put(XtextResource.OPTION_ENCODING, "UTF-8");
-							resource.load(inputStream, options);
-							notifyListeners(name, EventType.ADDED);
-							return true;
-						} catch (IOException e) {
-							logger.warn("Configuration model '" + name + "' cannot be parsed correctly!", e);
-							resourceSet.getResources().remove(resource);
-						}
-					}
+		EventType type = loadModel(name, inputStream);
+		if(type!=null) {
+			notifyListeners(Collections.singletonMap(name, type));
+			return true;
+		}
+		return false;
+	}
+
+	public Collection<String> addOrRefreshModels(Map<String, InputStream> models) {
+		long start = System.currentTimeMillis();
+		
+		// the models of each type are loaded by a separate task
+		Map<String, Map<String, InputStream>> modelsByType = new LinkedHashMap<String, Map<String, InputStream>>();
+		for(Entry<String, InputStream> model : models.entrySet()) {
+			String modelType = getModelType(model.getKey());
+			Map<String, InputStream> modelsOfType = modelsByType.get(modelType);
+			if(modelsOfType==null) {
+				modelsOfType = new LinkedHashMap<String, InputStream>();
+				modelsByType.put(modelType, modelsOfType);
+			}
+			modelsOfType.put(model.getKey(), model.getValue());
+		}
+		List<Callable<Map<String, EventType>>> tasks = new ArrayList<Callable<Map<String, EventType>>>();
+		for(final Map<String, InputStream> modelsOfType : modelsByType.values()) {
+			tasks.add(new Callable<Map<String, EventType>>() {
+				public Map<String, EventType> call() {
+					return loadModels(modelsOfType);
 				}
+			});
+		}
+		
+		// the results are merged in the order of the tasks, so that the notification does not depend on timing
+		Map<String, EventType> changes = new LinkedHashMap<String, EventType>();
+		int threads = Math.min(tasks.size(), Runtime.getRuntime().availableProcessors());
+		if(threads<=1) {
+			for(Map<String, InputStream> modelsOfType : modelsByType.values()) {
+				changes.putAll(loadModels(modelsOfType));
 			}
 		} else {
-			synchronized(resourceSet) {
-				resource.unload();
-				try {
-					logger.info("Refreshing model '{}'", name);
-					resource.load(inputStream, Collections.EMPTY_MAP);
-					notifyListeners(name, EventType.MODIFIED);
-					return true;
-				} catch (IOException e) {
-					logger.warn("Configuration model '" + name + "' cannot be parsed correctly!", e);
-					resourceSet.getResources().remove(resource);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for(Future<Map<String, EventType>> result : executor.invokeAll(tasks)) {
+					changes.putAll(result.get());
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				logger.error("Loading the configuration models failed", e.getCause());
+			} finally {
+				executor.shutdown();
 			}
 		}
-		return false;
+		if(models.size()>1) {
+			logger.info("Loaded {} of {} models in {}ms", new Object[] { changes.size(), models.size(), System.currentTimeMillis() - start });
+		}
+		
+		notifyListeners(changes);
+		return changes.keySet();
 	}
 
 	public boolean removeModel(String name) {
-		Resource resource = getResource(name);
+		ResourceSet resourceSet = getResourceSet(name);
+		Resource resource = getResource(resourceSet, name);
 		if(resource!=null) {
 			synchronized(resourceSet) {
 				// do not physically delete it, but remove it from the resource set
-				notifyListeners(name, EventType.REMOVED);
+				notifyListeners(Collections.singletonMap(name, EventType.REMOVED));
 				resourceSet.getResources().remove(resource);
 				return true;
 			}
@@ -123,6 +164,10 @@ public class ModelRepositoryImpl implements ModelRepository {
 	}
 
 	public Iterable<String> getAllModelNamesOfType(final String modelType) {
+		ResourceSet resourceSet = resourceSets.get(modelType.toLowerCase());
+		if(resourceSet==null) {
+			return Collections.emptyList();
+		}
 		synchronized(resourceSet) {
 			Iterable<Resource> matchingResources = Iterables.filter(resourceSet.getResources(), new Predicate<Resource>() {
 				public boolean apply(Resource input) {
@@ -149,14 +194,114 @@ public class ModelRepositoryImpl implements ModelRepository {
 		listeners.remove(listener);
 	}
 
-	private Resource getResource(String name) {
+	/**
+	 * Loads models of the same type one after another.
+	 * 
+	 * @return the names of all successfully loaded models and the types of their changes
+	 */
+	private Map<String, EventType> loadModels(Map<String, InputStream> models) {
+		Map<String, EventType> changes = new LinkedHashMap<String, EventType>();
+		for(Entry<String, InputStream> model : models.entrySet()) {
+			try {
+				EventType type = loadModel(model.getKey(), model.getValue());
+				if(type!=null) {
+					changes.put(model.getKey(), type);
+				}
+			} catch (RuntimeException e) {
+				// do not let a single broken model prevent the others from being loaded
+				logger.error("Configuration model '" + model.getKey() + "' cannot be loaded!", e);
+			}
+		}
+		return changes;
+	}
+
+	/**
+	 * Loads a model into the resource set of its type, without notifying the listeners.
+	 * 
+	 * @return the type of the change or <code>null</code>, if the model could not be loaded
+	 */
+	private EventType loadModel(String name, InputStream inputStream) {
+		ResourceSet resourceSet = getResourceSet(name);
+		synchronized(resourceSet) {
+			long start = System.currentTimeMillis();
+			Resource resource = getResource(resourceSet, name);
+			if(resource==null) {
+				// seems to be a new file
+				resource = resourceSet.createResource(URI.createURI(name));
+				if(resource!=null) {
+					logger.info("Loading model '{}'", name);
+					try {
+						Map<String, String> options = new HashMap<String, String>();
+						options.put(XtextResource.OPTION_ENCODING, "UTF-8");
+						resource.load(inputStream, options);
+						logger.debug("Loaded model '{}' in {}ms", name, System.currentTimeMillis() - start);
+						return EventType.ADDED;
+					} catch (IOException e) {
+						logger.warn("Configuration model '" + name + "' cannot be parsed correctly!", e);
+						resourceSet.getResources().remove(resource);
+					}
+				}
+			} else {
+				resource.unload();
+				try {
+					logger.info("Refreshing model '{}'", name);
+					resource.load(inputStream, Collections.EMPTY_MAP);
+					logger.debug("Refreshed model '{}' in {}ms", name, System.currentTimeMillis() - start);
+					return EventType.MODIFIED;
+				} catch (IOException e) {
+					logger.warn("Configuration model '" + name + "' cannot be parsed correctly!", e);
+					resourceSet.getResources().remove(resource);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the resource set for the type of the given model, which is created if necessary
+	 */
+	private ResourceSet getResourceSet(String name) {
+		String modelType = getModelType(name);
+		ResourceSet resourceSet = resourceSets.get(modelType);
+		if(resourceSet==null) {
+			synchronized(resourceSets) {
+				resourceSet = resourceSets.get(modelType);
+				if(resourceSet==null) {
+					XtextResourceSet xtextResourceSet = new SynchronizedXtextResourceSet();
+					xtextResourceSet.addLoadOption(XtextResource.OPTION_RESOLVE_ALL, Boolean.TRUE);
+					resourceSet = xtextResourceSet;
+					resourceSets.put(modelType, resourceSet);
+				}
+			}
+		}
+		return resourceSet;
+	}
+
+	private static String getModelType(String name) {
+		int index = name.lastIndexOf('.');
+		return index < 0 ? "" : name.substring(index + 1).toLowerCase();
+	}
+
+	private Resource getResource(ResourceSet resourceSet, String name) {
 		 return resourceSet.getResource(URI.createURI(name), false);
 	}
 
-	private void notifyListeners(String name, EventType type) {
+	private void notifyListeners(Map<String, EventType> changes) {
+		if(changes.isEmpty()) {
+			return;
+		}
 		for(Object listener : listeners.getListeners()) {
-			ModelRepositoryChangeListener changeListener = (ModelRepositoryChangeListener) listener;
-			changeListener.modelChanged(name, type);
+			long start = System.currentTimeMillis();
+			if(listener instanceof ModelRepositoryBatchChangeListener) {
+				((ModelRepositoryBatchChangeListener) listener).modelsChanged(changes);
+			} else {
+				ModelRepositoryChangeListener changeListener = (ModelRepositoryChangeListener) listener;
+				for(Entry<String, EventType> change : changes.entrySet()) {
+					changeListener.modelChanged(change.getKey(), change.getValue());
+				}
+			}
+			logger.debug("Notified {} about {} changed model(s) in {}ms", 
+					new Object[] { listener.getClass().getSimpleName(), changes.size(), System.currentTimeMillis() - start });
 		}
 	}
 
@@ -8,12 +8,20 @@
  */
 package org.openhab.model.core.internal.folder;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -36,6 +44,16 @@ import org.slf4j.LoggerFactory;
  * 
  * This logic is run as a separate thread, so that it can always detect changes.
  * 
+ * All files which have changed in the folders that are due for a refresh are passed
+ * to the model repository at once. This way, the models of different folders can be
+ * loaded in parallel and the listeners of the repository are notified only once
+ * after all of them have been loaded, which especially speeds up the startup.
+ * 
+ * If the file system supports change notifications, the folders are not polled, but
+ * watched by a {@link FolderWatcher}, so that changes are detected immediately. Polling
+ * remains as a fallback for file systems without notifications or if watching has been
+ * disabled. In both cases, files whose content has not changed are not reloaded.
+ * 
  * @author Kai Kreuzer
  * @since 0.3.0
  *
@@ -45,6 +63,9 @@ public class FolderObserver extends Thread implements ManagedService {
 	private static final Logger logger = LoggerFactory
 			.getLogger(FolderObserver.class);
 
+	/* the configuration key to enable or disable watching the folders instead of polling them */
+	private static final String WATCH_KEY = "watch";
+
 	/* map that lists all foldernames that should be observed and the frequency for checks in seconds */
 	private final Map<String, Integer> folderRefreshMap = new ConcurrentHashMap<String, Integer>();
 
@@ -57,6 +78,15 @@ public class FolderObserver extends Thread implements ManagedService {
 	/* map that remembers all filenames of the last check, so that it can detect file deletions */
 	private Map<String, Set<String>> lastFileNames = new ConcurrentHashMap<String, Set<String>>();
 
+	/* map that stores the hash of the content of a filename when it was last loaded */
+	private Map<String, byte[]> contentHashes = new ConcurrentHashMap<String, byte[]>();
+
+	/* the foldernames which are watched for changes instead of being polled */
+	private final Set<String> watchedFolders = new HashSet<String>();
+
+	/* the watcher of the folders, null if the file system notifications are not used */
+	private FolderWatcher watcher = null;
+
 	/* the greatest common divisor of all folder refresh rates */
 	private int gcdRefresh = 1;
 	
@@ -86,21 +116,9 @@ public class FolderObserver extends Thread implements ManagedService {
 	public void run() {
 		while(!folderRefreshMap.isEmpty()) { // keep the thread running as long as there are folders to observe
 			try {
-				for(String foldername : folderRefreshMap.keySet()) {
-					// if folder has been checked at least once and it is not time yet to refresh, skip
-					if( lastFileNames.get(foldername) != null  && 
-							(refreshCount % folderRefreshMap.get(foldername) > 0)) {										
-						logger.debug("skipping refresh of folder '{}' folderRefreshMap={}",
-								foldername, folderRefreshMap.get(foldername));
-						continue;
-					} 
-					
-					logger.debug("Refreshing folder '{}'", foldername);
-					checkFolder(foldername);
+				synchronized(FolderObserver.this) {
+					checkFolders();
 				}
-
-				// increase the counter and set it to 0, if it reaches the max value
-				refreshCount = (refreshCount + gcdRefresh) % lcmRefresh;
 			} catch(Throwable e) {
 				logger.error("An unexpected exception has occured", e);
 			}			
@@ -115,13 +133,47 @@ public class FolderObserver extends Thread implements ManagedService {
 		}
 	}
 	
-	private void checkFolder(String foldername) {
+	/**
+	 * Checks all folders which are due for a refresh and loads their changed files at once.
+	 */
+	private void checkFolders() {
+		Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+		for(String foldername : folderRefreshMap.keySet()) {
+			// if folder has been checked at least once and it is not time yet to refresh, skip
+			if( lastFileNames.get(foldername) != null  && 
+					(refreshCount % folderRefreshMap.get(foldername) > 0)) {										
+				logger.debug("skipping refresh of folder '{}' folderRefreshMap={}",
+						foldername, folderRefreshMap.get(foldername));
+				continue;
+			} 
+			
+			logger.debug("Refreshing folder '{}'", foldername);
+			checkFolder(foldername, changedFiles);
+		}
+		loadModels(changedFiles);
+
+		// increase the counter and set it to 0, if it reaches the max value
+		refreshCount = (refreshCount + gcdRefresh) % lcmRefresh;
+	}
+	
+	/**
+	 * Collects all new and modified files of a folder and removes the models of all
+	 * deleted files from the model repository.
+	 * 
+	 * @param foldername the folder to check
+	 * @param changedFiles the map to add the changed files to, by their names
+	 */
+	private void checkFolder(String foldername, Map<String, File> changedFiles) {
 		File folder = getFolder(foldername);
 		if(!folder.exists()) {
 			return;
 		}
 		String[] extensions = folderFileExtMap.get(foldername);
 		
+		// notifications do not tell reliably which files have changed, so all files of a
+		// watched folder are candidates and only those with a new content are loaded
+		boolean watched = watchedFolders.contains(foldername);
+		
 		// check current files and add or refresh them accordingly
 		Set<String> currentFileNames = new HashSet<String>();
 		for(File file : folder.listFiles()) {
@@ -136,16 +188,8 @@ public class FolderObserver extends Thread implements ManagedService {
 			currentFileNames.add(file.getName());
 			Long timeLastCheck = lastCheckedMap.get(file.getName());
 			if(timeLastCheck==null) timeLastCheck = 0L;
-			if(FileUtils.isFileNewer(file, timeLastCheck)) {
-				if(modelRepo!=null) {
-					try {
-						if(modelRepo.addOrRefreshModel(file.getName(), FileUtils.openInputStream(file))) {
-							lastCheckedMap.put(file.getName(), new Date().getTime());							
-						}
-					} catch (IOException e) {
-						logger.warn("Cannot open file '"+ file.getAbsolutePath() + "' for reading.", e);
-					}
-				}
+			if(watched || FileUtils.isFileNewer(file, timeLastCheck)) {
+				changedFiles.put(file.getName(), file);
 			}
 		}
 		
@@ -157,6 +201,7 @@ public class FolderObserver extends Thread implements ManagedService {
 					if (modelRepo != null) {
 						modelRepo.removeModel(fileName);
 						lastCheckedMap.remove(fileName);
+						contentHashes.remove(fileName);
 					}
 				}
 			}
@@ -164,6 +209,85 @@ public class FolderObserver extends Thread implements ManagedService {
 		lastFileNames.put(foldername, currentFileNames);
 	}
 
+	/**
+	 * Is called by the {@link FolderWatcher} when it has been notified about changes
+	 * in some folders.
+	 * 
+	 * @param foldernames the folders that have changed
+	 */
+	void foldersChanged(Collection<String> foldernames) {
+		synchronized(FolderObserver.this) {
+			Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+			for(String foldername : foldernames) {
+				// the configuration might have changed in the meantime
+				if(watchedFolders.contains(foldername)) {
+					logger.debug("Folder '{}' has changed", foldername);
+					checkFolder(foldername, changedFiles);
+				}
+			}
+			loadModels(changedFiles);
+		}
+	}
+
+	/**
+	 * Passes all changed files to the model repository at once. Files whose content
+	 * is the same as when they have been loaded the last time are skipped, as editors
+	 * often rewrite a file without changing it.
+	 * 
+	 * @param changedFiles the changed files by their names
+	 */
+	private void loadModels(Map<String, File> changedFiles) {
+		if(changedFiles.isEmpty() || modelRepo==null) {
+			return;
+		}
+		long checkTime = new Date().getTime();
+		Map<String, InputStream> models = new LinkedHashMap<String, InputStream>();
+		Map<String, byte[]> hashes = new HashMap<String, byte[]>();
+		for(File file : changedFiles.values()) {
+			String name = file.getName();
+			byte[] content;
+			try {
+				content = FileUtils.readFileToByteArray(file);
+			} catch (IOException e) {
+				logger.warn("Cannot open file '"+ file.getAbsolutePath() + "' for reading.", e);
+				continue;
+			}
+			byte[] hash = hash(content);
+			if(hash!=null && Arrays.equals(hash, contentHashes.get(name))) {
+				logger.debug("Content of file '{}' has not changed, skipping reload", name);
+				lastCheckedMap.put(name, checkTime);
+				continue;
+			}
+			models.put(name, new ByteArrayInputStream(content));
+			if(hash!=null) {
+				hashes.put(name, hash);
+			}
+		}
+		if(models.isEmpty()) {
+			return;
+		}
+		for(String name : modelRepo.addOrRefreshModels(models)) {
+			lastCheckedMap.put(name, checkTime);
+			if(hashes.containsKey(name)) {
+				contentHashes.put(name, hashes.get(name));
+			}
+		}
+	}
+
+	/**
+	 * Calculates the hash of the content of a file.
+	 * 
+	 * @param content the content of the file
+	 * @return the MD5 hash of the content or <code>null</code>, if it cannot be calculated
+	 */
+	private byte[] hash(byte[] content) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			return null;
+		}
+	}
+
 	private String getExtension(String filename) {
 		String fileExt = filename.substring(filename.lastIndexOf(".") + 1);
 		return fileExt;
@@ -172,64 +296,110 @@ public class FolderObserver extends Thread implements ManagedService {
 	@SuppressWarnings("rawtypes")
 	public void updated(Dictionary config) throws ConfigurationException {
 		if (config != null) {
-			// make sure to clear the caches first
-			lastFileNames.clear();
-			lastCheckedMap.clear();
-			folderFileExtMap.clear();
-			folderRefreshMap.clear();
-			
-			Enumeration keys = config.keys();
-			while (keys.hasMoreElements()) {
-				String foldername = (String) keys.nextElement();
-				if(foldername.equals("service.pid")) continue;
-				String[] values = ((String) config.get(foldername)).split(",");
-				try {
-					Integer refreshValue = Integer.valueOf(values[0]);
-					String[] fileExts = (String[]) ArrayUtils.remove(values, 0);
-					File folder = getFolder(foldername);
-					if (folder.exists() && folder.isDirectory()) {
-						folderFileExtMap.put(foldername, fileExts);
-						if (refreshValue > 0) {
-							folderRefreshMap.put(foldername, refreshValue);
-							if(!this.isAlive()) {
-								// seems we have the first folder to observe, so let's start the thread
-								this.start();
-							} else {
-								// make sure that we notify the sleeping thread and directly refresh the folders
-								synchronized (FolderObserver.this) {
-									notify();
-									checkFolder(foldername);
+			synchronized (FolderObserver.this) {
+				// make sure to clear the caches first
+				lastFileNames.clear();
+				lastCheckedMap.clear();
+				contentHashes.clear();
+				folderFileExtMap.clear();
+				folderRefreshMap.clear();
+				watchedFolders.clear();
+				
+				// stop watching the folders of the previous configuration
+				if (watcher != null) {
+					watcher.close();
+					watcher = null;
+				}
+				String watchValue = (String) config.get(WATCH_KEY);
+				if (watchValue == null || Boolean.parseBoolean(watchValue.trim())) {
+					watcher = createWatcher();
+				}
+				
+				Map<String, File> changedFiles = new LinkedHashMap<String, File>();
+				Enumeration keys = config.keys();
+				while (keys.hasMoreElements()) {
+					String foldername = (String) keys.nextElement();
+					if(foldername.equals("service.pid")) continue;
+					if(foldername.equals(WATCH_KEY)) continue;
+					String[] values = ((String) config.get(foldername)).split(",");
+					try {
+						Integer refreshValue = Integer.valueOf(values[0]);
+						String[] fileExts = (String[]) ArrayUtils.remove(values, 0);
+						File folder = getFolder(foldername);
+						if (folder.exists() && folder.isDirectory()) {
+							folderFileExtMap.put(foldername, fileExts);
+							if (refreshValue > 0) {
+								// watch the folder before checking it, so that no change gets lost in between
+								if (watcher != null && watcher.watch(foldername, folder)) {
+									watchedFolders.add(foldername);
+								} else {
+									folderRefreshMap.put(foldername, refreshValue);
 								}
+							} else {
+								// deactivate the refresh for this folder
+								folderRefreshMap.remove(foldername);
 							}
+							checkFolder(foldername, changedFiles);
 						} else {
-							// deactivate the refresh for this folder
-							folderRefreshMap.remove(foldername);
-							checkFolder(foldername);
+							logger.warn(
+									"Directory '{}' does not exist in '{}'. Please check your configuration settings!",
+									foldername, ConfigDispatcher.getConfigFolder());
 						}
-					} else {
+					} catch (NumberFormatException e) {
 						logger.warn(
-								"Directory '{}' does not exist in '{}'. Please check your configuration settings!",
-								foldername, ConfigDispatcher.getConfigFolder());
+								"Invalid value '{}' for configuration '{}'. Integer value expected!",
+								values[0], ModelCoreConstants.SERVICE_PID + ":"
+										+ foldername);
 					}
-					
-					// now update the refresh information for the thread
-					Integer[] refreshValues = folderRefreshMap.values().toArray(new Integer[0]);
-					if(refreshValues.length>0) {
-						gcdRefresh = MathUtils.gcd(refreshValues);
-						lcmRefresh = MathUtils.lcm(refreshValues);
+				}
+				
+				// load the models of all folders at once, so that the listeners are notified only once
+				loadModels(changedFiles);
+				
+				if (watcher != null) {
+					if (watchedFolders.isEmpty()) {
+						watcher.close();
+						watcher = null;
+					} else {
+						watcher.start();
 					}
-					refreshCount = 0;
-				} catch (NumberFormatException e) {
-					logger.warn(
-							"Invalid value '{}' for configuration '{}'. Integer value expected!",
-							values[0], ModelCoreConstants.SERVICE_PID + ":"
-									+ foldername);
 				}
-
+				
+				// now update the refresh information for the thread
+				Integer[] refreshValues = folderRefreshMap.values().toArray(new Integer[0]);
+				if(refreshValues.length>0) {
+					gcdRefresh = MathUtils.gcd(refreshValues);
+					lcmRefresh = MathUtils.lcm(refreshValues);
+					if(!this.isAlive()) {
+						// seems we have the first folder to observe, so let's start the thread
+						this.start();
+					} else {
+						// make sure that we notify the sleeping thread
+						notify();
+					}
+				}
+				refreshCount = 0;
 			}
 		}
 	}
 
+	/**
+	 * Creates a watcher for the folders, if the file system notifications are available.
+	 * 
+	 * @return the watcher or <code>null</code>, if the folders have to be polled
+	 */
+	private FolderWatcher createWatcher() {
+		try {
+			return new FolderWatcher(this);
+		} catch (IOException e) {
+			logger.info("File system notifications are not available, folders are polled instead: {}", e.getMessage());
+		} catch (LinkageError e) {
+			// the notifications require Java 7
+			logger.info("File system notifications are not supported by this Java runtime, folders are polled instead");
+		}
+		return null;
+	}
+
 	/**
 	 * returns the {@link File} object for a given foldername
 	 * @param foldername the foldername to get the {@link File} for
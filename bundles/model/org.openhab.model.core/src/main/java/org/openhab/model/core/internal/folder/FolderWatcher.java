@@ -0,0 +1,142 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.model.core.internal.folder;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches folders for changes through the file system notifications of a
+ * {@link WatchService} and tells the {@link FolderObserver} which folders have changed.
+ * As editors often write a file several times when saving it, the notifications are
+ * collected until the folders have been quiet for a short time.
+ *
+ * <p>This class requires Java 7, so it must only be referenced by the {@link FolderObserver}
+ * after checking that it can be loaded.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class FolderWatcher extends Thread {
+
+	private static final Logger logger = LoggerFactory.getLogger(FolderWatcher.class);
+
+	/** the time in milliseconds without further notifications after which the changes are processed */
+	private static final long QUIET_PERIOD = 500;
+
+	/** the maximum time in milliseconds for which the processing of changes is delayed */
+	private static final long MAX_DELAY = 5000;
+
+	private final FolderObserver observer;
+
+	private final WatchService watchService;
+
+	/** the names of the watched folders by their watch keys */
+	private final Map<WatchKey, String> folders = new ConcurrentHashMap<WatchKey, String>();
+
+	FolderWatcher(FolderObserver observer) throws IOException {
+		super("FolderWatcher");
+		setDaemon(true);
+		this.observer = observer;
+		this.watchService = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Starts watching a folder.
+	 *
+	 * @param foldername the name of the folder, which is passed to the observer
+	 * @param folder the folder to watch
+	 * @return <code>true</code>, if the folder is watched, <code>false</code> if the file
+	 * system does not support it and the folder has to be polled instead
+	 */
+	boolean watch(String foldername, File folder) {
+		try {
+			WatchKey key = folder.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+			folders.put(key, foldername);
+			logger.debug("Watching folder '{}' for changes", foldername);
+			return true;
+		} catch (IOException e) {
+			logger.warn("Cannot watch folder '{}' for changes, it is polled instead: {}", foldername, e.getMessage());
+		} catch (UnsupportedOperationException e) {
+			logger.warn("Cannot watch folder '{}' for changes, it is polled instead: {}", foldername, e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Stops watching all folders and terminates the thread.
+	 */
+	void close() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			logger.debug("Closing the watch service failed: {}", e.getMessage());
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				Set<String> changedFolders = new HashSet<String>();
+				collectChanges(watchService.take(), changedFolders);
+
+				// wait until the burst of notifications is over, e.g. while an editor saves a file
+				long deadline = System.currentTimeMillis() + MAX_DELAY;
+				WatchKey key;
+				while (System.currentTimeMillis() < deadline
+						&& (key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+					collectChanges(key, changedFolders);
+				}
+
+				if (!changedFolders.isEmpty()) {
+					try {
+						observer.foldersChanged(changedFolders);
+					} catch (RuntimeException e) {
+						logger.error("An unexpected exception has occured", e);
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			// the thread is stopped
+		} catch (ClosedWatchServiceException e) {
+			// the thread is stopped
+		}
+	}
+
+	private void collectChanges(WatchKey key, Set<String> changedFolders) {
+		String foldername = folders.get(key);
+		// the events themselves do not matter, as the observer checks the whole folder
+		key.pollEvents();
+		if (foldername != null) {
+			changedFolders.add(foldername);
+			if (!key.reset()) {
+				logger.warn("Folder '{}' cannot be watched anymore", foldername);
+				folders.remove(key);
+			}
+		}
+	}
+
+}
@@ -10,6 +10,7 @@ package org.openhab.model.item.internal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,7 +30,7 @@ import org.openhab.core.types.TypeParser;
 import org.openhab.model.ItemsStandaloneSetup;
 import org.openhab.model.core.EventType;
 import org.openhab.model.core.ModelRepository;
-import org.openhab.model.core.ModelRepositoryChangeListener;
+import org.openhab.model.core.ModelRepositoryBatchChangeListener;
 import org.openhab.model.item.binding.BindingConfigParseException;
 import org.openhab.model.item.binding.BindingConfigReader;
 import org.openhab.model.items.ItemModel;
@@ -48,7 +49,7 @@ import org.slf4j.LoggerFactory;
  * @author Kai Kreuzer 
  * @author Thomas.Eichstaedt-Engelen
  */
-public class GenericItemProvider implements ItemProvider, ModelRepositoryChangeListener {
+public class GenericItemProvider implements ItemProvider, ModelRepositoryBatchChangeListener {
 
 	private static final Logger logger = 
 		LoggerFactory.getLogger(GenericItemProvider.class);
@@ -385,10 +386,26 @@ public class GenericItemProvider implements ItemProvider, ModelRepositoryChangeL
 	 */
 	@Override
 	public void modelChanged(String modelName, EventType type) {
-		if (modelName.endsWith("items")) {
-
-			processBindingConfigsFromModel(modelName);
-			
+		modelsChanged(Collections.singletonMap(modelName, type));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Dispatches the binding configs of all changed item models, but fires the
+	 * {@link ItemsChangeListener}s only once, as they recalculate all items anyway.
+	 */
+	@Override
+	public void modelsChanged(Map<String, EventType> changes) {
+		boolean itemsChanged = false;
+		for (String modelName : changes.keySet()) {
+			if (modelName.endsWith("items")) {
+				processBindingConfigsFromModel(modelName);
+				itemsChanged = true;
+			}
+		}
+		
+		if (itemsChanged) {
 			for (ItemsChangeListener listener : listeners) {
 			 	listener.allItemsChanged(this, null);
 			}
@@ -8,8 +8,6 @@
  */
 package org.openhab.model.rule.internal.engine;
 
-import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
-import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.CHANGE;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.COMMAND;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.SHUTDOWN;
@@ -18,10 +16,18 @@ import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerT
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.xtext.naming.QualifiedName;
+import org.openhab.core.events.EventBus;
+import org.openhab.core.events.EventSubscriber;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -31,16 +37,17 @@ import org.openhab.core.items.StateChangeListener;
 import org.openhab.core.scriptengine.Script;
 import org.openhab.core.scriptengine.ScriptEngine;
 import org.openhab.core.scriptengine.ScriptExecutionException;
-import org.openhab.core.scriptengine.ScriptExecutionThread;
+import org.openhab.core.scriptengine.ScriptExecutionTask;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
 import org.openhab.model.core.ModelRepository;
-import org.openhab.model.core.ModelRepositoryChangeListener;
+import org.openhab.model.core.ModelRepositoryBatchChangeListener;
 import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.internal.engine.RuleExecutor.OverflowPolicy;
 import org.openhab.model.rule.rules.RuleModel;
-import org.osgi.service.event.Event;
-import org.osgi.service.event.EventHandler;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,14 +57,15 @@ import com.google.common.collect.Lists;
 /**
  * This class is the core of the openHAB rule engine.
  * It listens to changes to the rules folder, evaluates the trigger conditions of the rules and
- * schedules them for execution dependent on their triggering conditions.
+ * schedules them for execution dependent on their triggering conditions. Triggered
+ * rules are executed by a {@link RuleExecutor} on a bounded pool of threads.
  * 
  * @author Kai Kreuzer
  * @since 0.9.0
  *
  */
 @SuppressWarnings("restriction")
-public class RuleEngine implements EventHandler, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryChangeListener {
+public class RuleEngine implements EventSubscriber, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryBatchChangeListener, ManagedService {
 
 		static private final Logger logger = LoggerFactory.getLogger(RuleEngine.class);
 		
@@ -66,9 +74,20 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		private ScriptEngine scriptEngine;
 
 		private RuleTriggerManager triggerManager;
+		
+		// read by the event and timer threads, so that they see the executor of the current activation
+		private volatile RuleExecutor ruleExecutor;
+		
+		// the current configuration, which is applied to every new rule executor
+		private int poolSize = RuleExecutor.DEFAULT_POOL_SIZE;
+		private int queueSize = RuleExecutor.DEFAULT_QUEUE_SIZE;
+		private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+		private Collection<String> concurrentRules = new ArrayList<String>();
 						
 		public void activate() {
 			triggerManager = new RuleTriggerManager();
+			ruleExecutor = new RuleExecutor();
+			configureRuleExecutor();
 
 			if(!isEnabled()) {
 				logger.info("Rule engine is disabled.");
@@ -100,6 +119,63 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			executeRules(triggerManager.getRules(SHUTDOWN));
 			triggerManager.clearAll();
 			triggerManager = null;
+			// wait for the shutdown rules to finish
+			ruleExecutor.shutdown();
+			ruleExecutor = null;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@SuppressWarnings("rawtypes")
+		public synchronized void updated(Dictionary config) throws ConfigurationException {
+			if (config != null) {
+				String poolSizeString = (String) config.get("threadpool");
+				if (StringUtils.isNotBlank(poolSizeString)) {
+					poolSize = parsePositiveInt("threadpool", poolSizeString);
+				}
+				String queueSizeString = (String) config.get("queuesize");
+				if (StringUtils.isNotBlank(queueSizeString)) {
+					queueSize = parsePositiveInt("queuesize", queueSizeString);
+				}
+				String overflowString = (String) config.get("overflow");
+				if (StringUtils.isNotBlank(overflowString)) {
+					try {
+						overflowPolicy = OverflowPolicy.fromString(overflowString);
+					} catch (IllegalArgumentException e) {
+						throw new ConfigurationException("overflow", e.getMessage());
+					}
+				}
+				String concurrentString = (String) config.get("concurrent");
+				concurrentRules = new ArrayList<String>();
+				if (StringUtils.isNotBlank(concurrentString)) {
+					for (String ruleName : concurrentString.split(",")) {
+						concurrentRules.add(ruleName.trim());
+					}
+				}
+				configureRuleExecutor();
+			}
+		}
+		
+		private int parsePositiveInt(String key, String value) throws ConfigurationException {
+			try {
+				int intValue = Integer.parseInt(value.trim());
+				if (intValue > 0) {
+					return intValue;
+				}
+			} catch (NumberFormatException e) {
+				// handled below
+			}
+			throw new ConfigurationException(key, "Invalid value '" + value + "', a positive integer is expected");
+		}
+		
+		private synchronized void configureRuleExecutor() {
+			if (ruleExecutor != null) {
+				ruleExecutor.setPoolSize(poolSize);
+				ruleExecutor.setQueueSize(queueSize);
+				ruleExecutor.setOverflowPolicy(overflowPolicy);
+				ruleExecutor.setConcurrentRules(concurrentRules);
+			}
 		}
 		
 		public void setItemRegistry(ItemRegistry itemRegistry) {
@@ -130,10 +206,21 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			this.scriptEngine = null;
 		}
 
+		public void setEventBus(EventBus eventBus) {
+			eventBus.subscribe(this, EventType.COMMAND);
+		}
+
+		public void unsetEventBus(EventBus eventBus) {
+			eventBus.unsubscribe(this);
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
 		public void allItemsChanged(Collection<String> oldItemNames) {
+			if(triggerManager!=null) {
+				triggerManager.removeTriggerTables();
+			}
 			// add the current items again
 			Collection<Item> items = itemRegistry.getItems();
 			for(Item item : items) {
@@ -158,6 +245,9 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 				GenericItem genericItem = (GenericItem) item;
 				genericItem.removeStateChangeListener(this);
 			}
+			if(triggerManager!=null) {
+				triggerManager.removeTriggerTable(item.getName());
+			}
 		}
 
 		/**
@@ -166,9 +256,7 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		public void stateChanged(Item item, State oldState, State newState) {			
 			if(triggerManager!=null) {
 				Iterable<Rule> rules = triggerManager.getRules(CHANGE, item, oldState, newState);
-				RuleEvaluationContext context = new RuleEvaluationContext();
-				context.newValue(QualifiedName.create(RuleContextHelper.VAR_PREVIOUS_STATE), oldState);
-				executeRules(rules, context);
+				executeRules(rules, QualifiedName.create(RuleContextHelper.VAR_PREVIOUS_STATE), oldState);
 			}
 		}
 
@@ -187,9 +275,7 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 				try {
 					Item item = itemRegistry.getItem(itemName);
 					Iterable<Rule> rules = triggerManager.getRules(COMMAND, item, command);
-					RuleEvaluationContext context = new RuleEvaluationContext();
-					context.newValue(QualifiedName.create(RuleContextHelper.VAR_RECEIVED_COMMAND), command);
-					executeRules(rules, context);
+					executeRules(rules, QualifiedName.create(RuleContextHelper.VAR_RECEIVED_COMMAND), command);
 				} catch (ItemNotFoundException e) {
 					// ignore commands for non-existent items
 				}
@@ -206,32 +292,39 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		/**
 		 * {@inheritDoc}
 		 */
-		public void handleEvent(Event event) {  
-			String itemName = (String) event.getProperty("item");
-			
-			String topic = event.getTopic();
-			String[] topicParts = topic.split(TOPIC_SEPERATOR);
-			
-			if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
-				return; // we have received an event with an invalid topic
-			}
-			String operation = topicParts[1];
-			
-			if(operation.equals(EventType.COMMAND.toString())) {
-				Command command = (Command) event.getProperty("command");
-				if(command!=null) receiveCommand(itemName, command);
-			}
+		public void receiveUpdate(String itemName, State newState) {
+			// updates are handled through the state change listeners of the items
 		}
 
 		public void modelChanged(String modelName, org.openhab.model.core.EventType type) {
-			if (triggerManager != null) {
-				if(isEnabled() && modelName.endsWith("rules")) {
+			modelsChanged(Collections.singletonMap(modelName, type));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * Updates the trigger sets with the rules of all changed models and runs the
+		 * startup rules only once afterwards.
+		 */
+		public void modelsChanged(Map<String, org.openhab.model.core.EventType> changes) {
+			if (triggerManager != null && isEnabled()) {
+				boolean rulesAdded = false;
+				for(Entry<String, org.openhab.model.core.EventType> change : changes.entrySet()) {
+					String modelName = change.getKey();
+					org.openhab.model.core.EventType type = change.getValue();
+					if(!modelName.endsWith("rules")) {
+						continue;
+					}
 					RuleModel model = (RuleModel) modelRepository.getModel(modelName);
 	
 					// remove the rules from the trigger sets
 					if(type == org.openhab.model.core.EventType.REMOVED ||
 							type == org.openhab.model.core.EventType.MODIFIED) {
 						triggerManager.removeRuleModel(model);
+						RuleExecutor executor = ruleExecutor;
+						if(executor != null) {
+							executor.removeRuleModel(model);
+						}
 					}
 	
 					// add new and modified rules to the trigger sets
@@ -239,10 +332,13 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 							(type == org.openhab.model.core.EventType.ADDED 
 							|| type == org.openhab.model.core.EventType.MODIFIED)) {
 						triggerManager.addRuleModel(model);
-						// now execute all rules that are meant to trigger at startup
-						runStartupRules();
+						rulesAdded = true;
 					}
 				}
+				if(rulesAdded) {
+					// now execute all rules that are meant to trigger at startup
+					runStartupRules();
+				}
 			}
 		}
 
@@ -288,27 +384,35 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			return message;
 		}
 
-		protected synchronized void executeRule(Rule rule) {
+		protected void executeRule(Rule rule) {
 			executeRule(rule, new RuleEvaluationContext());
 		}
 			
-		protected synchronized void executeRule(Rule rule, RuleEvaluationContext context) {
+		protected void executeRule(Rule rule, RuleEvaluationContext context) {
 			Script script = scriptEngine.newScriptFromXExpression(rule.getScript());
 			
 			logger.debug("Executing rule '{}'", rule.getName());
 			
 			context.setGlobalContext(RuleContextHelper.getContext(rule));
 			
-			ScriptExecutionThread thread = new ScriptExecutionThread(rule.getName(), script, context);
-			thread.start();
+			ScriptExecutionTask task = new ScriptExecutionTask(rule.getName(), script, context);
+			RuleExecutor executor = ruleExecutor;
+			if (executor != null) {
+				executor.execute(rule, task);
+			}
 		}
 
-		protected synchronized void executeRules(Iterable<Rule> rules) {
-			executeRules(rules, new RuleEvaluationContext());
+		protected void executeRules(Iterable<Rule> rules) {
+			for(Rule rule : rules) {
+				executeRule(rule, new RuleEvaluationContext());
+			}
 		}
 		
-		protected synchronized void executeRules(Iterable<Rule> rules, RuleEvaluationContext context) {
+		protected void executeRules(Iterable<Rule> rules, QualifiedName variable, Object value) {
 			for(Rule rule : rules) {
+				// every rule needs a context of its own as it is executed asynchronously
+				RuleEvaluationContext context = new RuleEvaluationContext();
+				context.newValue(variable, value);
 				executeRule(rule, context);
 			}
 		}
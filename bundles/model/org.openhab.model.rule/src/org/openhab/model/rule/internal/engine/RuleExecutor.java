@@ -0,0 +1,440 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.model.rule.internal.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.core.scriptengine.ScriptExecutionTask;
+import org.openhab.model.rule.rules.Rule;
+import org.openhab.model.rule.rules.RuleModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class executes triggered rules on a bounded pool of worker threads.
+ * Every rule has its own queue, so that a rule is never executed concurrently
+ * with itself (unless this is explicitly allowed for the rule) and a burst of
+ * triggers for a single rule cannot occupy all worker threads. If the queue of
+ * a rule is full, the configured {@link OverflowPolicy} decides which execution
+ * is dropped.
+ * <p>
+ * Note that a rule occupies its worker thread for its whole execution, including
+ * any time it spends in <code>Thread::sleep</code> or waiting for I/O. Rules which
+ * wait for a long time should use timers instead, otherwise the pool size has to
+ * account for them, as they delay all other rules once every worker is taken.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class RuleExecutor {
+
+	private static final Logger logger = LoggerFactory.getLogger(RuleExecutor.class);
+
+	public static final int DEFAULT_POOL_SIZE = 10;
+
+	public static final int DEFAULT_QUEUE_SIZE = 100;
+
+	/** the number of seconds to wait for running rules on shutdown */
+	private static final int SHUTDOWN_TIMEOUT = 10;
+
+	/**
+	 * Defines what happens if a rule is triggered while its queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** the oldest queued execution is dropped in favor of the new one */
+		DROP_OLDEST,
+		/** the new execution is dropped */
+		DROP_NEWEST;
+
+		public static OverflowPolicy fromString(String value) {
+			for (OverflowPolicy policy : values()) {
+				if (policy.name().replace("_", "").equalsIgnoreCase(value.trim().replace("_", ""))) {
+					return policy;
+				}
+			}
+			throw new IllegalArgumentException("Unknown overflow policy '" + value + "'");
+		}
+	}
+
+	private final ThreadPoolExecutor executor;
+
+	// the queues are keyed by the rule object, as rules in different models may have the same name
+	private final ConcurrentMap<Rule, RuleQueue> queues = new ConcurrentHashMap<Rule, RuleQueue>();
+
+	private volatile int queueSize = DEFAULT_QUEUE_SIZE;
+
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+	private volatile Collection<String> concurrentRules = Collections.emptySet();
+
+	private volatile boolean concurrentAll = false;
+
+	public RuleExecutor() {
+		executor = new ThreadPoolExecutor(DEFAULT_POOL_SIZE, DEFAULT_POOL_SIZE,
+				60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new RuleThreadFactory());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Sets the maximum number of rules that are executed in parallel.
+	 *
+	 * @param poolSize the number of worker threads
+	 */
+	public void setPoolSize(int poolSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("The pool size must be at least 1");
+		}
+		if (poolSize > executor.getMaximumPoolSize()) {
+			executor.setMaximumPoolSize(poolSize);
+			executor.setCorePoolSize(poolSize);
+		} else {
+			executor.setCorePoolSize(poolSize);
+			executor.setMaximumPoolSize(poolSize);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of pending executions per rule.
+	 *
+	 * @param queueSize the maximum number of pending executions
+	 */
+	public void setQueueSize(int queueSize) {
+		if (queueSize < 1) {
+			throw new IllegalArgumentException("The queue size must be at least 1");
+		}
+		this.queueSize = queueSize;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Sets the names of the rules that may run concurrently with themselves.
+	 * A single "*" allows this for all rules.
+	 *
+	 * @param ruleNames the names of the rules which may run concurrently
+	 */
+	public void setConcurrentRules(Collection<String> ruleNames) {
+		this.concurrentAll = ruleNames.contains("*");
+		this.concurrentRules = new HashSet<String>(ruleNames);
+	}
+
+	/**
+	 * Queues the given task for execution in the queue of the given rule.
+	 *
+	 * @param rule the rule which is executed
+	 * @param task the task which executes the rule
+	 */
+	public void execute(Rule rule, ScriptExecutionTask task) {
+		RuleQueue queue = getQueue(rule);
+		queue.add(new QueuedTask(task));
+	}
+
+	/**
+	 * Forgets the queues of all rules of the given model as well as of all rules
+	 * which have been unloaded meanwhile. Executions which are already pending
+	 * are still carried out.
+	 *
+	 * @param model the removed or modified rule model, may be <code>null</code>
+	 */
+	public void removeRuleModel(RuleModel model) {
+		if (model != null) {
+			for (Rule rule : model.getRules()) {
+				removeQueue(rule);
+			}
+		}
+		for (Iterator<Rule> iterator = queues.keySet().iterator(); iterator.hasNext();) {
+			Rule rule = iterator.next();
+			if (rule.eIsProxy() || rule.eResource() == null) {
+				removeQueue(rule);
+			}
+		}
+	}
+
+	private void removeQueue(Rule rule) {
+		RuleQueue queue = queues.remove(rule);
+		if (queue != null && logger.isDebugEnabled()) {
+			logger.debug("{}", queue.getStatistics());
+		}
+	}
+
+	/**
+	 * Returns the current statistics of all rules, which have been executed so far.
+	 *
+	 * @return the statistics of every rule
+	 */
+	public Collection<RuleStatistics> getStatistics() {
+		Collection<RuleStatistics> statistics = new ArrayList<RuleStatistics>();
+		for (RuleQueue queue : queues.values()) {
+			statistics.add(queue.getStatistics());
+		}
+		return statistics;
+	}
+
+	/**
+	 * Stops accepting new executions and waits for the pending ones to finish.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+				logger.warn("Not all rules have finished within {} seconds, interrupting them.", SHUTDOWN_TIMEOUT);
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		if (logger.isDebugEnabled()) {
+			for (RuleStatistics statistics : getStatistics()) {
+				logger.debug("{}", statistics);
+			}
+		}
+	}
+
+	private RuleQueue getQueue(Rule rule) {
+		RuleQueue queue = queues.get(rule);
+		if (queue == null) {
+			RuleQueue newQueue = new RuleQueue(rule.getName());
+			queue = queues.putIfAbsent(rule, newQueue);
+			if (queue == null) {
+				queue = newQueue;
+			}
+		}
+		return queue;
+	}
+
+	private boolean isConcurrent(String ruleName) {
+		return concurrentAll || concurrentRules.contains(ruleName);
+	}
+
+
+	/**
+	 * A pending execution together with the time it has been triggered.
+	 */
+	private static class QueuedTask {
+		final ScriptExecutionTask task;
+		final long queuedAt;
+
+		QueuedTask(ScriptExecutionTask task) {
+			this.task = task;
+			this.queuedAt = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The queue of pending executions of a single rule. It hands its executions
+	 * to the thread pool one at a time (or as many as there are worker threads,
+	 * if the rule may run concurrently with itself).
+	 */
+	private class RuleQueue implements Runnable {
+
+		private final String ruleName;
+
+		private final LinkedList<QueuedTask> pending = new LinkedList<QueuedTask>();
+
+		private int running = 0;
+
+		private long executed = 0;
+		private long dropped = 0;
+		private int maxQueueDepth = 0;
+		private long totalWaitTime = 0;
+		private long maxWaitTime = 0;
+		private long totalExecutionTime = 0;
+		private long maxExecutionTime = 0;
+
+		RuleQueue(String ruleName) {
+			this.ruleName = ruleName;
+		}
+
+		void add(QueuedTask queuedTask) {
+			synchronized (this) {
+				if (pending.size() >= queueSize) {
+					dropped++;
+					if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+						logger.warn("Queue of rule '{}' is full, dropping the new execution.", ruleName);
+						return;
+					}
+					logger.warn("Queue of rule '{}' is full, dropping the oldest pending execution.", ruleName);
+					pending.removeFirst();
+				}
+				pending.addLast(queuedTask);
+				maxQueueDepth = Math.max(maxQueueDepth, pending.size());
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			synchronized (this) {
+				int parallelism = isConcurrent(ruleName) ? executor.getMaximumPoolSize() : 1;
+				if (pending.isEmpty() || running >= parallelism) {
+					return;
+				}
+				running++;
+			}
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				synchronized (this) {
+					running--;
+					dropped += pending.size();
+					pending.clear();
+				}
+				logger.debug("Rule engine is shutting down, rule '{}' is not executed.", ruleName);
+			}
+		}
+
+		public void run() {
+			QueuedTask queuedTask;
+			synchronized (this) {
+				queuedTask = pending.poll();
+			}
+			try {
+				if (queuedTask != null) {
+					long start = System.nanoTime();
+					queuedTask.task.run();
+					long end = System.nanoTime();
+					recordExecution(start - queuedTask.queuedAt, end - start);
+				}
+			} finally {
+				synchronized (this) {
+					running--;
+				}
+				// give the other rules a chance before continuing with the next execution of this one
+				schedule();
+			}
+		}
+
+		private synchronized void recordExecution(long waitTime, long executionTime) {
+			executed++;
+			totalWaitTime += waitTime;
+			maxWaitTime = Math.max(maxWaitTime, waitTime);
+			totalExecutionTime += executionTime;
+			maxExecutionTime = Math.max(maxExecutionTime, executionTime);
+			if (logger.isTraceEnabled()) {
+				logger.trace("Rule '{}' waited {}ms and executed in {}ms", new Object[] { ruleName,
+						TimeUnit.NANOSECONDS.toMillis(waitTime), TimeUnit.NANOSECONDS.toMillis(executionTime) });
+			}
+		}
+
+		synchronized RuleStatistics getStatistics() {
+			return new RuleStatistics(ruleName, pending.size(), maxQueueDepth, executed, dropped,
+					totalWaitTime, maxWaitTime, totalExecutionTime, maxExecutionTime);
+		}
+	}
+
+	/**
+	 * A snapshot of the execution statistics of a single rule.
+	 */
+	public static class RuleStatistics {
+
+		private final String ruleName;
+		private final int queueDepth;
+		private final int maxQueueDepth;
+		private final long executed;
+		private final long dropped;
+		private final long totalWaitTime;
+		private final long maxWaitTime;
+		private final long totalExecutionTime;
+		private final long maxExecutionTime;
+
+		RuleStatistics(String ruleName, int queueDepth, int maxQueueDepth, long executed, long dropped,
+				long totalWaitTime, long maxWaitTime, long totalExecutionTime, long maxExecutionTime) {
+			this.ruleName = ruleName;
+			this.queueDepth = queueDepth;
+			this.maxQueueDepth = maxQueueDepth;
+			this.executed = executed;
+			this.dropped = dropped;
+			this.totalWaitTime = totalWaitTime;
+			this.maxWaitTime = maxWaitTime;
+			this.totalExecutionTime = totalExecutionTime;
+			this.maxExecutionTime = maxExecutionTime;
+		}
+
+		public String getRuleName() {
+			return ruleName;
+		}
+
+		/** @return the number of currently pending executions */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/** @return the highest number of pending executions so far */
+		public int getMaxQueueDepth() {
+			return maxQueueDepth;
+		}
+
+		public long getExecutedCount() {
+			return executed;
+		}
+
+		public long getDroppedCount() {
+			return dropped;
+		}
+
+		/** @return the average time in milliseconds between triggering and execution */
+		public double getAverageWaitTime() {
+			return executed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWaitTime) / 1000.0 / executed;
+		}
+
+		/** @return the longest time in milliseconds between triggering and execution */
+		public double getMaxWaitTime() {
+			return TimeUnit.NANOSECONDS.toMicros(maxWaitTime) / 1000.0;
+		}
+
+		/** @return the average execution time in milliseconds */
+		public double getAverageExecutionTime() {
+			return executed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalExecutionTime) / 1000.0 / executed;
+		}
+
+		/** @return the longest execution time in milliseconds */
+		public double getMaxExecutionTime() {
+			return TimeUnit.NANOSECONDS.toMicros(maxExecutionTime) / 1000.0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Rule '%s': executed=%d, dropped=%d, queued=%d (max %d), " +
+					"wait=%.1fms (max %.1fms), execution=%.1fms (max %.1fms)",
+					ruleName, executed, dropped, queueDepth, maxQueueDepth,
+					getAverageWaitTime(), getMaxWaitTime(), getAverageExecutionTime(), getMaxExecutionTime());
+		}
+	}
+
+	/**
+	 * Creates named daemon threads for the rule execution, so that they can
+	 * easily be identified in thread dumps.
+	 */
+	private static class RuleThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "RuleEngine-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -17,15 +17,23 @@ import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerT
 import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
 import org.openhab.core.types.Type;
@@ -52,14 +60,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
  * This is a helper class which deals with everything about rule triggers.
  * It keeps lists of which rule must be executed for which trigger and takes
  * over the evaluation of states and trigger conditions for the rule engine.
+ * For every item, the triggers are compiled into an {@link ItemTriggerTable} with
+ * pre-parsed states and commands, so that an event can be matched without parsing.
  * 
  * @author Kai Kreuzer
  * @since 0.9.0
@@ -79,12 +87,19 @@ public class RuleTriggerManager {
 	}
 	
 	// lookup maps for different triggering conditions
-	private Map<String, Set<Rule>> updateEventTriggeredRules = Maps.newHashMap();
-	private Map<String, Set<Rule>> changedEventTriggeredRules = Maps.newHashMap();
-	private Map<String, Set<Rule>> commandEventTriggeredRules = Maps.newHashMap();
-	private List<Rule> systemStartupTriggeredRules = Lists.newArrayList();
-	private List<Rule> systemShutdownTriggeredRules = Lists.newArrayList();
-	private List<Rule> timerEventTriggeredRules = Lists.newArrayList();
+	private Map<String, Set<Rule>> updateEventTriggeredRules = new ConcurrentHashMap<String, Set<Rule>>();
+	private Map<String, Set<Rule>> changedEventTriggeredRules = new ConcurrentHashMap<String, Set<Rule>>();
+	private Map<String, Set<Rule>> commandEventTriggeredRules = new ConcurrentHashMap<String, Set<Rule>>();
+	private List<Rule> systemStartupTriggeredRules = new CopyOnWriteArrayList<Rule>();
+	private List<Rule> systemShutdownTriggeredRules = new CopyOnWriteArrayList<Rule>();
+	private List<Rule> timerEventTriggeredRules = new CopyOnWriteArrayList<Rule>();
+	
+	// the compiled triggers per item name, which are used for matching events
+	private ConcurrentMap<String, ItemTriggerTable> triggerTables = new ConcurrentHashMap<String, ItemTriggerTable>();
+	
+	// incremented after every change of the rules, so that trigger tables which have been 
+	// compiled while the rules were changed are recompiled
+	private AtomicInteger generation = new AtomicInteger();
 
 	// the scheduler used for timer events
 	private Scheduler scheduler;
@@ -154,95 +169,75 @@ public class RuleTriggerManager {
 		return internalGetRules(triggerType, item, null, command);
 	}
 
-	private Iterable<Rule> getAllRules(TriggerTypes type, String itemName) {
-		switch(type) {
-			case STARTUP:  return systemStartupTriggeredRules;
-			case SHUTDOWN: return systemShutdownTriggeredRules;
-			case UPDATE:   return updateEventTriggeredRules.get(itemName);
-			case CHANGE:   return changedEventTriggeredRules.get(itemName);
-			case COMMAND:  return commandEventTriggeredRules.get(itemName);
-			default:       return Sets.newHashSet();
-		}
-	}
-
 	private Iterable<Rule> internalGetRules(TriggerTypes triggerType, Item item, Type oldType, Type newType) {
-		List<Rule> result = Lists.newArrayList();
-		Iterable<Rule> rules = getAllRules(triggerType, item.getName());
-		if(rules==null) {
-			rules = Lists.newArrayList();
-		}
 		switch(triggerType) {
 		case STARTUP:  return systemStartupTriggeredRules;
 		case SHUTDOWN: return systemShutdownTriggeredRules;
 		case TIMER :   return timerEventTriggeredRules;
 		case UPDATE:   
 			if(newType instanceof State) {
-				State state = (State) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof UpdateEventTrigger) {
-							UpdateEventTrigger ut = (UpdateEventTrigger) t;
-							if(ut.getItem().equals(item.getName())) {
-								if(ut.getState()!=null) {
-									State triggerState = TypeParser.parseState(item.getAcceptedDataTypes(), ut.getState());
-									if(!state.equals(triggerState)) {
-										continue;
-									}
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerTable(item).getUpdateRules((State) newType);
 			}
 			break;
 		case CHANGE:
 			if(newType instanceof State && oldType instanceof State) {
-				State newState = (State) newType;
-				State oldState = (State) oldType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof ChangedEventTrigger) {
-							ChangedEventTrigger ct = (ChangedEventTrigger) t;						
-							if(ct.getItem().equals(item.getName())) {
-								if(ct.getOldState()!=null) {
-									State triggerOldState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getOldState());
-									if(!oldState.equals(triggerOldState)) {
-										continue;
-									}								
-								}
-								if(ct.getNewState()!=null) {
-									State triggerNewState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getNewState());
-									if(!newState.equals(triggerNewState)) {
-										continue;
-									}								
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerTable(item).getChangeRules((State) oldType, (State) newType);
 			}
 			break;
 		case COMMAND:  
 			if(newType instanceof Command) {
-				Command command = (Command) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof CommandEventTrigger) {
-							CommandEventTrigger ct = (CommandEventTrigger) t;
-							Command triggerCommand = TypeParser.parseCommand(item.getAcceptedCommandTypes(), ct.getCommand());
-							if(ct.getItem().equals(item.getName()) &&
-									(triggerCommand==null || command.equals(triggerCommand))) {
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getTriggerTable(item).getCommandRules((Command) newType);
 			}
 			break;
 		}
-		return result;
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Returns the compiled triggers for the given item. The table is compiled once
+	 * and reused until the rules change or the item accepts different types.
+	 * 
+	 * @param item the item to get the triggers for
+	 * @return the compiled triggers of the item
+	 */
+	private ItemTriggerTable getTriggerTable(Item item) {
+		// the generation has to be read before the rules, see rulesChanged()
+		int currentGeneration = generation.get();
+		ItemTriggerTable table = triggerTables.get(item.getName());
+		if(table==null || !table.isValidFor(item, currentGeneration)) {
+			table = new ItemTriggerTable(item, currentGeneration);
+			table.compileUpdateTriggers(updateEventTriggeredRules.get(item.getName()));
+			table.compileChangeTriggers(changedEventTriggeredRules.get(item.getName()));
+			table.compileCommandTriggers(commandEventTriggeredRules.get(item.getName()));
+			triggerTables.put(item.getName(), table);
+		}
+		return table;
+	}
+	
+	/**
+	 * Discards the compiled triggers of an item, which has been removed.
+	 * 
+	 * @param itemName the name of the removed item
+	 */
+	public void removeTriggerTable(String itemName) {
+		triggerTables.remove(itemName);
+	}
+	
+	/**
+	 * Discards the compiled triggers of all items.
+	 */
+	public void removeTriggerTables() {
+		triggerTables.clear();
+	}
+	
+	/**
+	 * Invalidates all compiled triggers after the rules have been changed. The generation
+	 * is only incremented after the change, so that a table which has been compiled 
+	 * concurrently from partially changed rules carries an outdated generation.
+	 */
+	private void rulesChanged() {
+		generation.incrementAndGet();
+		triggerTables.clear();
 	}
 
 	/**
@@ -250,7 +245,7 @@ public class RuleTriggerManager {
 	 * 
 	 * @param type the trigger type 
 	 */
-	public void clear(TriggerTypes type) {
+	public synchronized void clear(TriggerTypes type) {
 		switch(type) {
 			case STARTUP:  	systemStartupTriggeredRules.clear(); break;
 			case SHUTDOWN: 	systemShutdownTriggeredRules.clear(); break;
@@ -262,12 +257,13 @@ public class RuleTriggerManager {
 							}
 							timerEventTriggeredRules.clear(); break;
 		}
+		rulesChanged();
 	}
 
 	/**
 	 * Removes all rules from all mapping tables.
 	 */
-	public void clearAll() {
+	public synchronized void clearAll() {
 		clear(STARTUP);
 		clear(SHUTDOWN);
 		clear(UPDATE);
@@ -292,7 +288,7 @@ public class RuleTriggerManager {
 				CommandEventTrigger ceTrigger = (CommandEventTrigger) t;
 				Set<Rule> rules = commandEventTriggeredRules.get(ceTrigger.getItem());
 				if(rules==null) {
-					rules = new HashSet<Rule>();
+					rules = newRuleSet();
 					commandEventTriggeredRules.put(ceTrigger.getItem(), rules);
 				}
 				rules.add(rule);
@@ -300,7 +296,7 @@ public class RuleTriggerManager {
 				UpdateEventTrigger ueTrigger = (UpdateEventTrigger) t;
 				Set<Rule> rules = updateEventTriggeredRules.get(ueTrigger.getItem());
 				if(rules==null) {
-					rules = new HashSet<Rule>();
+					rules = newRuleSet();
 					updateEventTriggeredRules.put(ueTrigger.getItem(), rules);
 				}
 				rules.add(rule);
@@ -308,7 +304,7 @@ public class RuleTriggerManager {
 				ChangedEventTrigger ceTrigger = (ChangedEventTrigger) t;
 				Set<Rule> rules = changedEventTriggeredRules.get(ceTrigger.getItem());
 				if(rules==null) {
-					rules = new HashSet<Rule>();
+					rules = newRuleSet();
 					changedEventTriggeredRules.put(ceTrigger.getItem(), rules);
 				}
 				rules.add(rule);
@@ -321,6 +317,7 @@ public class RuleTriggerManager {
 				}
 			}
 		}
+		rulesChanged();
 	}
 		
 	/**
@@ -329,17 +326,28 @@ public class RuleTriggerManager {
 	 * @param type the trigger type for which the rule should be removed
 	 * @param rule the rule to add
 	 */
-	public void removeRule(TriggerTypes type, Rule rule) {
+	public synchronized void removeRule(TriggerTypes type, Rule rule) {
 		switch(type) {
 			case STARTUP:  	systemStartupTriggeredRules.remove(rule); break;
 			case SHUTDOWN: 	systemShutdownTriggeredRules.remove(rule); break;
-			case UPDATE:   	updateEventTriggeredRules.remove(rule); break;
-			case CHANGE:   	changedEventTriggeredRules.remove(rule); break;
-			case COMMAND:  	commandEventTriggeredRules.remove(rule); break;
+			case UPDATE:   	removeRule(updateEventTriggeredRules.values(), rule); break;
+			case CHANGE:   	removeRule(changedEventTriggeredRules.values(), rule); break;
+			case COMMAND:  	removeRule(commandEventTriggeredRules.values(), rule); break;
 			case TIMER:    	timerEventTriggeredRules.remove(rule); 
 							removeTimerRule(rule);
 							break;
 		}
+		rulesChanged();
+	}
+	
+	private void removeRule(Collection<Set<Rule>> ruleSets, Rule rule) {
+		for(Set<Rule> ruleSet : ruleSets) {
+			ruleSet.remove(rule);
+		}
+	}
+	
+	private Set<Rule> newRuleSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<Rule, Boolean>());
 	}
 	
 	/**
@@ -358,13 +366,14 @@ public class RuleTriggerManager {
 	 * 
 	 * @param ruleModel the rule model
 	 */
-	public void removeRuleModel(RuleModel ruleModel) {
+	public synchronized void removeRuleModel(RuleModel ruleModel) {
 		removeRules(UPDATE, updateEventTriggeredRules.values(), ruleModel);
 		removeRules(CHANGE, changedEventTriggeredRules.values(), ruleModel);
 		removeRules(COMMAND, commandEventTriggeredRules.values(), ruleModel);
 		removeRules(STARTUP, Collections.singletonList(systemStartupTriggeredRules), ruleModel);
 		removeRules(SHUTDOWN, Collections.singletonList(systemShutdownTriggeredRules), ruleModel);		
 		removeRules(TIMER, Collections.singletonList(timerEventTriggeredRules), ruleModel);		
+		rulesChanged();
 	}
 
 	private void removeRules(TriggerTypes type, Collection<? extends Collection<Rule>> ruleSets, RuleModel model) {
@@ -474,4 +483,234 @@ public class RuleTriggerManager {
 		}
 		return jobIdentity;
 	}
+	
+	/**
+	 * The compiled triggers of a single item. All states and commands of the triggers are
+	 * parsed once with the types accepted by the item, so that matching an event only
+	 * compares the event value with the pre-parsed values. The triggers with a condition
+	 * on the value are kept in maps keyed by the value they wait for, so that an event only
+	 * looks at the triggers for its own value. As long as none of these triggers matches
+	 * an event, the rules without a condition are returned without any allocation.
+	 */
+	static class ItemTriggerTable {
+		
+		private final String itemName;
+		private final int generation;
+		private final List<Class<? extends State>> acceptedDataTypes;
+		private final List<Class<? extends Command>> acceptedCommandTypes;
+		
+		// rules that are triggered regardless of the value
+		private List<Rule> updateRules = Collections.emptyList();
+		private List<Rule> changeRules = Collections.emptyList();
+		private List<Rule> commandRules = Collections.emptyList();
+		
+		// triggers with conditions on the value, keyed by the value they wait for
+		private Map<String, List<ValueTrigger>> updateTriggers = Collections.emptyMap();
+		private Map<String, List<ValueTrigger>> commandTriggers = Collections.emptyMap();
+		
+		// change triggers are keyed by their new value, or by their old value if they only have
+		// a condition on the old value
+		private Map<String, List<ValueTrigger>> changeToTriggers = Collections.emptyMap();
+		private Map<String, List<ValueTrigger>> changeFromTriggers = Collections.emptyMap();
+		
+		ItemTriggerTable(Item item, int generation) {
+			this.itemName = item.getName();
+			this.generation = generation;
+			this.acceptedDataTypes = item.getAcceptedDataTypes();
+			this.acceptedCommandTypes = item.getAcceptedCommandTypes();
+		}
+		
+		boolean isValidFor(Item item, int currentGeneration) {
+			return generation == currentGeneration 
+				&& sameTypes(acceptedDataTypes, item.getAcceptedDataTypes())
+				&& sameTypes(acceptedCommandTypes, item.getAcceptedCommandTypes());
+		}
+		
+		private static boolean sameTypes(List<?> types, List<?> otherTypes) {
+			return types == otherTypes || (types != null && types.equals(otherTypes));
+		}
+		
+		void compileUpdateTriggers(Set<Rule> rules) {
+			if(rules==null) return;
+			List<Rule> unconditional = new ArrayList<Rule>();
+			Map<String, List<ValueTrigger>> conditional = new HashMap<String, List<ValueTrigger>>();
+			for(Rule rule : rules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if (t instanceof UpdateEventTrigger) {
+						UpdateEventTrigger ut = (UpdateEventTrigger) t;
+						if(!isFor(ut.getItem())) continue;
+						if(ut.getState()!=null) {
+							State triggerState = parseState(ut.getState());
+							add(conditional, triggerState, new ValueTrigger(rule, ValueTrigger.ANY, triggerState));
+						} else {
+							unconditional.add(rule);
+						}
+					}
+				}
+			}
+			updateRules = Collections.unmodifiableList(unconditional);
+			updateTriggers = conditional;
+		}
+		
+		void compileChangeTriggers(Set<Rule> rules) {
+			if(rules==null) return;
+			List<Rule> unconditional = new ArrayList<Rule>();
+			Map<String, List<ValueTrigger>> conditionalTo = new HashMap<String, List<ValueTrigger>>();
+			Map<String, List<ValueTrigger>> conditionalFrom = new HashMap<String, List<ValueTrigger>>();
+			for(Rule rule : rules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if (t instanceof ChangedEventTrigger) {
+						ChangedEventTrigger ct = (ChangedEventTrigger) t;
+						if(!isFor(ct.getItem())) continue;
+						if(ct.getOldState()!=null || ct.getNewState()!=null) {
+							ValueTrigger trigger = new ValueTrigger(rule, 
+								ct.getOldState()!=null ? parseState(ct.getOldState()) : ValueTrigger.ANY,
+								ct.getNewState()!=null ? parseState(ct.getNewState()) : ValueTrigger.ANY);
+							if(trigger.newValue!=ValueTrigger.ANY) {
+								add(conditionalTo, trigger.newValue, trigger);
+							} else {
+								add(conditionalFrom, trigger.oldValue, trigger);
+							}
+						} else {
+							unconditional.add(rule);
+						}
+					}
+				}
+			}
+			changeRules = Collections.unmodifiableList(unconditional);
+			changeToTriggers = conditionalTo;
+			changeFromTriggers = conditionalFrom;
+		}
+		
+		void compileCommandTriggers(Set<Rule> rules) {
+			if(rules==null) return;
+			List<Rule> unconditional = new ArrayList<Rule>();
+			Map<String, List<ValueTrigger>> conditional = new HashMap<String, List<ValueTrigger>>();
+			for(Rule rule : rules) {
+				for(EventTrigger t : rule.getEventtrigger()) {
+					if (t instanceof CommandEventTrigger) {
+						CommandEventTrigger ct = (CommandEventTrigger) t;
+						if(!isFor(ct.getItem())) continue;
+						Command triggerCommand = acceptedCommandTypes!=null ? 
+							TypeParser.parseCommand(acceptedCommandTypes, ct.getCommand()) : null;
+						if(triggerCommand!=null) {
+							add(conditional, triggerCommand, new ValueTrigger(rule, ValueTrigger.ANY, triggerCommand));
+						} else {
+							// a missing (or invalid) command triggers the rule for all commands
+							unconditional.add(rule);
+						}
+					}
+				}
+			}
+			commandRules = Collections.unmodifiableList(unconditional);
+			commandTriggers = conditional;
+		}
+		
+		private boolean isFor(String triggerItemName) {
+			return itemName.equals(triggerItemName);
+		}
+		
+		private State parseState(String stateString) {
+			// a state which cannot be parsed never matches
+			return acceptedDataTypes!=null ? TypeParser.parseState(acceptedDataTypes, stateString) : null;
+		}
+		
+		List<Rule> getUpdateRules(State state) {
+			if(updateTriggers.isEmpty()) {
+				return updateRules;
+			}
+			return addMatches(updateRules, updateRules, updateTriggers.get(valueKey(state)), null, state);
+		}
+		
+		List<Rule> getChangeRules(State oldState, State newState) {
+			List<Rule> result = changeRules;
+			if(!changeToTriggers.isEmpty()) {
+				result = addMatches(result, changeRules, changeToTriggers.get(valueKey(newState)), oldState, newState);
+			}
+			if(!changeFromTriggers.isEmpty()) {
+				result = addMatches(result, changeRules, changeFromTriggers.get(valueKey(oldState)), oldState, newState);
+			}
+			return result;
+		}
+		
+		List<Rule> getCommandRules(Command command) {
+			if(commandTriggers.isEmpty()) {
+				return commandRules;
+			}
+			return addMatches(commandRules, commandRules, commandTriggers.get(valueKey(command)), null, command);
+		}
+		
+		/**
+		 * Adds the rules of all matching triggers to the given rules. The unconditional rules
+		 * are shared by all events, so they are only copied if a trigger matches.
+		 */
+		private static List<Rule> addMatches(List<Rule> rules, List<Rule> unconditional, 
+				List<ValueTrigger> triggers, Type oldType, Type newType) {
+			if(triggers==null) {
+				return rules;
+			}
+			List<Rule> result = rules;
+			for(ValueTrigger trigger : triggers) {
+				if(trigger.matches(oldType, newType)) {
+					if(result==unconditional) {
+						result = new ArrayList<Rule>(unconditional);
+					}
+					result.add(trigger.rule);
+				}
+			}
+			return result;
+		}
+		
+		private static void add(Map<String, List<ValueTrigger>> triggers, Object value, ValueTrigger trigger) {
+			// a value which cannot be parsed never matches
+			if(value==null) return;
+			String key = valueKey((Type) value);
+			List<ValueTrigger> list = triggers.get(key);
+			if(list==null) {
+				list = new ArrayList<ValueTrigger>();
+				triggers.put(key, list);
+			}
+			list.add(trigger);
+		}
+		
+		/**
+		 * Returns the key of a value in the trigger maps. Values which are equal have the same
+		 * key, but as different values may share a key as well, the triggers of a key are 
+		 * still matched against the value. Decimals are equal regardless of their scale, so 
+		 * their trailing zeros are removed. A percent value equals a color with the same 
+		 * brightness, so colors are keyed by their brightness.
+		 */
+		static String valueKey(Type value) {
+			if(value instanceof DecimalType) {
+				BigDecimal decimal = ((DecimalType) value).toBigDecimal();
+				// stripTrailingZeros() keeps the scale of zero values before Java 8
+				return decimal.signum()==0 ? "0" : decimal.stripTrailingZeros().toPlainString();
+			}
+			return value.toString();
+		}
+	}
+	
+	/**
+	 * A trigger of a rule with pre-parsed conditions on the old and/or new value.
+	 */
+	static class ValueTrigger {
+		
+		/** marks a value, for which the trigger has no condition */
+		static final Object ANY = new Object();
+		
+		final Rule rule;
+		final Object oldValue;
+		final Object newValue;
+		
+		ValueTrigger(Rule rule, Object oldValue, Object newValue) {
+			this.rule = rule;
+			this.oldValue = oldValue;
+			this.newValue = newValue;
+		}
+		
+		boolean matches(Type oldType, Type newType) {
+			return (oldValue==ANY || oldType.equals(oldValue))
+				&& (newValue==ANY || newType.equals(newValue));
+		}
+	}
 }
@@ -11,7 +11,10 @@ package org.openhab.model.script.internal.engine;
 import static com.google.common.collect.Iterables.filter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
@@ -32,7 +35,12 @@ import org.openhab.core.scriptengine.Script;
 import org.openhab.core.scriptengine.ScriptEngine;
 import org.openhab.core.scriptengine.ScriptExecutionException;
 import org.openhab.core.scriptengine.ScriptParsingException;
+import org.openhab.model.core.EventType;
+import org.openhab.model.core.ModelRepository;
+import org.openhab.model.core.ModelRepositoryChangeListener;
 import org.openhab.model.script.ScriptStandaloneSetup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Predicate;
 import com.google.inject.Injector;
@@ -40,16 +48,40 @@ import com.google.inject.Injector;
 /**
  * This is the implementation of a {@link ScriptEngine} which is made available as an OSGi service.
  * 
+ * Scripts which are passed as strings are parsed and validated only once: the resulting
+ * expressions are kept in a cache of limited size, in which the least recently used
+ * scripts are replaced first. As the expressions are linked to the items of the models,
+ * the cache is cleared whenever a model of the {@link ModelRepository} changes.
+ * 
  * @author Kai Kreuzer
  * @since 0.9.0
  *
  */
 @SuppressWarnings("restriction")
-public class ScriptEngineImpl implements ScriptEngine {
+public class ScriptEngineImpl implements ScriptEngine, ModelRepositoryChangeListener {
+
+	private static final Logger logger = LoggerFactory.getLogger(ScriptEngineImpl.class);
+
+	/** the maximum number of parsed scripts which are kept in the cache */
+	private static final int CACHE_SIZE = 100;
 
 	protected Injector guiceInjector;
 	protected XtextResourceSet resourceSet;
 
+	/** the parsed scripts by their content, in the order of their last use */
+	private final Map<String, XExpression> expressionCache = new LinkedHashMap<String, XExpression>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, XExpression> eldest) {
+			if (size() > CACHE_SIZE) {
+				removeResource(eldest.getValue().eResource(), false);
+				return true;
+			}
+			return false;
+		}
+	};
+
 	public ScriptEngineImpl() {}
 	
 	public void activate() {
@@ -59,16 +91,32 @@ public class ScriptEngineImpl implements ScriptEngine {
 	}
 	
 	public void deactivate() {
+		clearCache();
 		this.guiceInjector = null;
 		this.resourceSet = null;
 	}
+
+	public void setModelRepository(ModelRepository modelRepository) {
+		modelRepository.addModelRepositoryChangeListener(this);
+	}
+
+	public void unsetModelRepository(ModelRepository modelRepository) {
+		modelRepository.removeModelRepositoryChangeListener(this);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void modelChanged(String modelName, EventType type) {
+		clearCache();
+	}
 		
 	/**
 	 * {@inheritDoc}
 	 */
 	public Script newScriptFromString(String scriptAsString)
 			throws ScriptParsingException {
-		return newScriptFromXExpression(parseScriptIntoXTextEObject(scriptAsString));
+		return newScriptFromXExpression(getXExpression(scriptAsString));
 	}
 
 	/**
@@ -88,31 +136,87 @@ public class ScriptEngineImpl implements ScriptEngine {
 		return newScriptFromString(scriptAsString).execute();
 	}
 
-	private XExpression parseScriptIntoXTextEObject(String scriptAsString) throws ScriptParsingException {
-		Resource resource = resourceSet.createResource(computeUnusedUri(resourceSet)); // IS-A XtextResource
-		try {
-			resource.load(new StringInputStream(scriptAsString), resourceSet.getLoadOptions());
-		} catch (IOException e) {
-			throw new ScriptParsingException("Unexpected IOException; from close() of a String-based ByteArrayInputStream, no real I/O; how is that possible???", scriptAsString, e);
+	/**
+	 * Returns the parsed expression of a script from the cache or parses it, if it is not cached.
+	 * 
+	 * @param scriptAsString the script to parse
+	 * @return the parsed expression or <code>null</code>, if the script is empty
+	 * @throws ScriptParsingException if the script contains syntax or validation errors
+	 */
+	private synchronized XExpression getXExpression(String scriptAsString) throws ScriptParsingException {
+		XExpression expression = expressionCache.get(scriptAsString);
+		if (expression == null) {
+			expression = parseScriptIntoXTextEObject(scriptAsString);
+			if (expression != null) {
+				expressionCache.put(scriptAsString, expression);
+			}
+		} else {
+			logger.trace("Using cached expression for script '{}'", scriptAsString);
 		}
-		
-		List<Diagnostic> errors = resource.getErrors();
-		if (errors.size() != 0) {
-			throw new ScriptParsingException("Failed to parse expression (due to managed SyntaxError/s)", scriptAsString).addDiagnosticErrors(errors);
+		return expression;
+	}
+
+	/**
+	 * Removes all expressions from the cache, so that the scripts are parsed and linked again.
+	 */
+	protected synchronized void clearCache() {
+		for (XExpression expression : new ArrayList<XExpression>(expressionCache.values())) {
+			removeResource(expression.eResource(), false);
 		}
-		
-		EList<EObject> contents = resource.getContents();
+		expressionCache.clear();
+	}
 
-		if (!contents.isEmpty()) {
-			Iterable<Issue> validationErrors = getValidationErrors(contents.get(0));
-			if(!validationErrors.iterator().hasNext()) {
-				return (XExpression) contents.get(0);
+	private XExpression parseScriptIntoXTextEObject(String scriptAsString) throws ScriptParsingException {
+		Resource resource = resourceSet.createResource(computeUnusedUri(resourceSet)); // IS-A XtextResource
+		XExpression expression = null;
+		try {
+			try {
+				resource.load(new StringInputStream(scriptAsString), resourceSet.getLoadOptions());
+			} catch (IOException e) {
+				throw new ScriptParsingException("Unexpected IOException; from close() of a String-based ByteArrayInputStream, no real I/O; how is that possible???", scriptAsString, e);
+			}
+			
+			List<Diagnostic> errors = resource.getErrors();
+			if (errors.size() != 0) {
+				throw new ScriptParsingException("Failed to parse expression (due to managed SyntaxError/s)", scriptAsString).addDiagnosticErrors(errors);
+			}
+			
+			EList<EObject> contents = resource.getContents();
+	
+			if (!contents.isEmpty()) {
+				Iterable<Issue> validationErrors = getValidationErrors(contents.get(0));
+				if(!validationErrors.iterator().hasNext()) {
+					expression = (XExpression) contents.get(0);
+					return expression;
+				} else {
+					throw new ScriptParsingException("Failed to parse expression (due to managed ValidationError/s)", scriptAsString).addValidationIssues(validationErrors);
+				}
 			} else {
-				throw new ScriptParsingException("Failed to parse expression (due to managed ValidationError/s)", scriptAsString).addValidationIssues(validationErrors);
+				return null;
 			}
-		} else {
-			return null;
+		} finally {
+			// only the resources of the cached expressions are kept in the resource set
+			if (expression == null) {
+				removeResource(resource, true);
+			}
+		}
+	}
+
+	/**
+	 * Removes a synthetic resource of a script from the resource set.
+	 * 
+	 * @param resource the resource to remove
+	 * @param unload <code>true</code>, if the contents of the resource can be unloaded as well;
+	 * 		this must not be done for the expressions of cached scripts, as they might still be executed
+	 */
+	private void removeResource(Resource resource, boolean unload) {
+		if (resource == null || resourceSet == null) {
+			return;
+		}
+		if (unload) {
+			resource.unload();
 		}
+		resourceSet.getResources().remove(resource);
 	}
 
 	protected URI computeUnusedUri(ResourceSet resourceSet) {
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistentStateRestorer;
+
+/**
+ * A simple load test for the InfluxDB persistence service, which measures the points per second
+ * written one by one and in batches of different sizes, as they are handed over by the persistence
+ * manager. By default, it writes to an {@link InfluxDBStandIn} on the loopback interface, which
+ * also counts the requests and connections, so that the overhead of the client is measured. The
+ * url, user, password and database of a real InfluxDB can be given as arguments instead. It is not
+ * executed as part of the test suite, but has to be started manually through its main method.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class InfluxDBPersistenceServiceBenchmark {
+
+  private static final int SINGLE_POINTS = 1000;
+
+  private static final int POINTS = 20000;
+
+  private static final int[] BATCH_SIZES = {10, 100, 1000};
+
+  private static final int ITEMS = 20;
+
+  private static final int ITERATIONS = 3;
+
+  public static void main(String[] args) throws Exception {
+    InfluxDBStandIn standIn = null;
+    Hashtable<String, String> config = new Hashtable<String, String>();
+    if (args.length >= 3) {
+      config.put("url", args[0]);
+      config.put("user", args[1]);
+      config.put("password", args[2]);
+      if (args.length >= 4) {
+        config.put("db", args[3]);
+      }
+    } else {
+      standIn = new InfluxDBStandIn();
+      standIn.start();
+      config.put("url", standIn.getUrl());
+      config.put("password", "secret");
+    }
+
+    InfluxDBPersistenceService service = new InfluxDBPersistenceService();
+    service.setPersistentStateRestorer(new PersistentStateRestorer() {
+      public void initializeItems(String persistenceServiceName) {
+      }
+    });
+    service.updated(config);
+
+    NumberItem item = new NumberItem("Benchmark");
+    item.setState(new DecimalType(21.5));
+    for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+      reset(standIn);
+      long start = System.nanoTime();
+      for (int i = 0; i < SINGLE_POINTS; i++) {
+        service.store(item);
+      }
+      print("single points", SINGLE_POINTS, System.nanoTime() - start, standIn);
+
+      for (int batchSize : BATCH_SIZES) {
+        reset(standIn);
+        start = System.nanoTime();
+        List<PersistenceEntry> batch = new ArrayList<PersistenceEntry>();
+        for (int i = 0; i < POINTS; i++) {
+          batch.add(new PersistenceEntry(new NumberItem("Benchmark" + (i % ITEMS)), null,
+              new DecimalType(i), new Date()));
+          if (batch.size() == batchSize) {
+            service.store(batch);
+            batch.clear();
+          }
+        }
+        print("batches of " + batchSize, POINTS, System.nanoTime() - start, standIn);
+      }
+    }
+
+    service.deactivate();
+    if (standIn != null) {
+      standIn.close();
+    }
+  }
+
+  private static void reset(InfluxDBStandIn standIn) {
+    if (standIn != null) {
+      standIn.reset();
+    }
+  }
+
+  private static void print(String name, int points, long duration, InfluxDBStandIn standIn) {
+    String result = String.format("%-16s %8.0f points/s", name, points / (duration / 1e9));
+    if (standIn != null) {
+      result += String.format("  %5d requests  %6.2f ms/request  %d new connection(s)",
+          standIn.getRequests(), duration / 1e6 / standIn.getRequests(), standIn.getConnections());
+    }
+    System.out.println(result);
+  }
+
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.PersistenceEntry;
+import org.openhab.core.persistence.PersistentStateRestorer;
+import org.osgi.service.cm.ConfigurationException;
+
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class InfluxDBPersistenceServiceTest {
+
+  private InfluxDBStandIn standIn;
+
+  private InfluxDBPersistenceService service;
+
+  private Hashtable<String, String> config;
+
+  @Before
+  public void init() throws IOException, ConfigurationException {
+    standIn = new InfluxDBStandIn();
+    standIn.start();
+
+    service = new InfluxDBPersistenceService();
+    service.setPersistentStateRestorer(new PersistentStateRestorer() {
+      public void initializeItems(String persistenceServiceName) {
+      }
+    });
+    config = new Hashtable<String, String>();
+    config.put("url", standIn.getUrl());
+    config.put("password", "secret");
+    service.updated(config);
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    service.deactivate();
+    standIn.close();
+  }
+
+  @Test
+  public void testStoreBatch() {
+    standIn.reset();
+    List<PersistenceEntry> entries = new ArrayList<PersistenceEntry>();
+    for (int i = 0; i < 250; i++) {
+      entries.add(new PersistenceEntry(new NumberItem("Item" + (i % 3)), null, new DecimalType(i),
+          new Date(1000L + i)));
+    }
+
+    service.store(entries);
+
+    // all points of all items are written with a single request
+    Assert.assertEquals(1, standIn.getRequests());
+    String body = standIn.getBodies().get(0);
+    Assert.assertTrue(body.contains("\"Item0\""));
+    Assert.assertTrue(body.contains("\"Item1\""));
+    Assert.assertTrue(body.contains("\"Item2\""));
+    Assert.assertTrue(body.contains("1249"));
+  }
+
+  @Test
+  public void testConnectionIsKept() throws ConfigurationException {
+    NumberItem item = new NumberItem("Item");
+    item.setState(new DecimalType(21));
+    service.store(item);
+
+    // the keep-alive connection of the ping is used for the writes, even after a reconfiguration
+    service.updated(config);
+    service.store(item);
+    service.store(item);
+
+    Assert.assertEquals(1, standIn.getConnections());
+    Assert.assertEquals(5, standIn.getRequests());
+  }
+
+  @Test
+  public void testRetries() throws ConfigurationException {
+    config.put("retries", "2");
+    service.updated(config);
+    service.setRetryDelay(1);
+    standIn.reset();
+    standIn.setFailing(true);
+
+    NumberItem item = new NumberItem("Item");
+    item.setState(new DecimalType(21));
+    service.store(item);
+
+    // the first attempt and two retries, then the points are dropped
+    Assert.assertEquals(3, standIn.getRequests());
+  }
+
+  @Test
+  public void testNoRetries() throws ConfigurationException {
+    config.put("retries", "0");
+    service.updated(config);
+    standIn.reset();
+    standIn.setFailing(true);
+
+    NumberItem item = new NumberItem("Item");
+    item.setState(new DecimalType(21));
+    service.store(item);
+
+    Assert.assertEquals(1, standIn.getRequests());
+  }
+
+  @Test(expected = ConfigurationException.class)
+  public void testNegativeRetries() throws ConfigurationException {
+    config.put("retries", "-1");
+    service.updated(config);
+  }
+
+}
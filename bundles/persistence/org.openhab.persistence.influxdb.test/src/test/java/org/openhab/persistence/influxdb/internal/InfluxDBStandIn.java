@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal HTTP/1.1 endpoint on the loopback interface, which accepts the requests of the InfluxDB
+ * client like an InfluxDB 0.8 server, but does not store anything. It answers pings with the "ok"
+ * status and all other requests with an empty response, and it counts the requests and the
+ * accepted connections. A failing stand-in closes the connection instead of answering a request,
+ * like a database which went down.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class InfluxDBStandIn extends Thread {
+
+  private final ServerSocket server;
+
+  private final AtomicInteger connections = new AtomicInteger();
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+
+  private volatile boolean failing = false;
+
+  public InfluxDBStandIn() throws IOException {
+    super("InfluxDB stand-in");
+    setDaemon(true);
+    server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + server.getLocalPort();
+  }
+
+  /**
+   * @return the number of accepted connections
+   */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * @return the number of answered requests, including pings
+   */
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return the bodies of all requests, which have been answered so far
+   */
+  public List<String> getBodies() {
+    synchronized (bodies) {
+      return new ArrayList<String>(bodies);
+    }
+  }
+
+  /**
+   * @param failing true, if the connection is closed instead of answering the requests
+   */
+  public void setFailing(boolean failing) {
+    this.failing = failing;
+  }
+
+  public void reset() {
+    connections.set(0);
+    requests.set(0);
+    bodies.clear();
+  }
+
+  public void close() throws IOException {
+    server.close();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        connections.incrementAndGet();
+        Thread handler = new Thread("InfluxDB stand-in connection") {
+          @Override
+          public void run() {
+            try {
+              handle(socket);
+            } catch (IOException e) {
+              // the client closed the connection
+            }
+          }
+        };
+        handler.setDaemon(true);
+        handler.start();
+      }
+    } catch (IOException e) {
+      // the stand-in has been closed
+    }
+  }
+
+  private void handle(Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    OutputStream out = socket.getOutputStream();
+    String requestLine;
+    while ((requestLine = readLine(in)) != null) {
+      int length = 0;
+      String header;
+      while ((header = readLine(in)) != null && header.length() > 0) {
+        if (header.toLowerCase().startsWith("content-length:")) {
+          length = Integer.parseInt(header.substring("content-length:".length()).trim());
+        }
+      }
+      byte[] body = new byte[length];
+      in.readFully(body);
+      bodies.add(new String(body, "UTF-8"));
+      requests.incrementAndGet();
+      if (failing) {
+        socket.close();
+        return;
+      }
+
+      String response = requestLine.contains(" /ping") ? "{\"status\":\"ok\"}" : "";
+      out.write(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+          + response.length() + "\r\n\r\n" + response).getBytes("UTF-8"));
+      out.flush();
+    }
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != -1 && c != '\n') {
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return c == -1 && line.length() == 0 ? null : line.toString();
+  }
+
+}
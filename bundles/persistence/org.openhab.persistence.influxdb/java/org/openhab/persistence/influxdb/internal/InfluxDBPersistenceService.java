@@ -8,18 +8,18 @@
  */
 package org.openhab.persistence.influxdb.internal;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
-import org.influxdb.InfluxDB;
-import org.influxdb.InfluxDBFactory;
 import org.influxdb.dto.Pong;
 import org.influxdb.dto.Serie;
 import org.openhab.core.items.Item;
@@ -33,9 +33,11 @@ import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
+import org.openhab.core.persistence.BatchPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceEntry;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.PersistentStateRestorer;
 import org.openhab.core.persistence.QueryablePersistenceService;
@@ -46,7 +48,14 @@ import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import retrofit.ErrorHandler;
+import retrofit.RestAdapter;
 import retrofit.RetrofitError;
+import retrofit.client.Response;
+import retrofit.client.UrlConnectionClient;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
 
 /**
  * This is the implementation of the InfluxDB {@link PersistenceService}. It persists item values
@@ -55,6 +64,18 @@ import retrofit.RetrofitError;
  * the item. All values are stored using integers or doubles, {@link OnOffType} and
  * {@link OpenClosedType} are stored using 0 or 1.
  * 
+ * States are written in batches, which are collected by the persistence manager: all points of a
+ * batch are sent with a single request over the keep-alive connections of the client, which is
+ * reused as long as the connection settings do not change. The requests are sent by the
+ * HttpURLConnection of the JDK through Retrofit's {@link UrlConnectionClient}, see
+ * {@link #connect()}.
+ * 
+ * Batches which fail because of network errors are retried a configurable number of times with an
+ * increasing delay, 3.5s in total for the default of 3 retries. The retries take place in the
+ * writer thread of this service, so they do not count against the flush interval of the
+ * persistence manager: new states are queued meanwhile, and once the queue is full, its overflow
+ * policy applies. A batch which still fails after the last retry is dropped.
+ * 
  * The defaults for the database name, the database user and the database url are "openhab",
  * "openhab" and "http://127.0.0.1:8086".
  * 
@@ -62,7 +83,7 @@ import retrofit.RetrofitError;
  * @author Ben Jones - Upgraded influxdb-java version
  * @since 1.5.0
  */
-public class InfluxDBPersistenceService implements QueryablePersistenceService, ManagedService {
+public class InfluxDBPersistenceService implements QueryablePersistenceService, BatchPersistenceService, ManagedService {
 
   private static final String DEFAULT_URL = "http://127.0.0.1:8086";
   private static final String DEFAULT_DB = "openhab";
@@ -71,14 +92,20 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
   private static final String DIGITAL_VALUE_OFF = "0";
   private static final String DIGITAL_VALUE_ON = "1";
   private static final String VALUE_COLUMN_NAME = "value";
+  private static final String TIME_PRECISION = "ms";
+  private static final int DEFAULT_RETRIES = 3;
+  /** the default delay before the first retry, which is doubled for every further retry */
+  private static final long DEFAULT_RETRY_DELAY = 500;
   private ItemRegistry itemRegistry;
-  private InfluxDB influxDB;
+  private InfluxDBRestService influxDB;
   private static final Logger logger = LoggerFactory.getLogger(InfluxDBPersistenceService.class);
-  private static final Object TIME_COLUMN_NAME = "time";
+  private static final String TIME_COLUMN_NAME = "time";
   private String dbName;
   private String url;
   private String user;
   private String password;
+  private int retries = DEFAULT_RETRIES;
+  private long retryDelay = DEFAULT_RETRY_DELAY;
   private boolean isProperlyConfigured;
   private boolean connected;
   
@@ -109,11 +136,30 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     disconnect();
   }
 
+  /**
+   * Sets the delay before the first retry of a write, which is doubled for every further retry.
+   * 
+   * @param retryDelay the delay in milliseconds
+   */
+  void setRetryDelay(long retryDelay) {
+    this.retryDelay = retryDelay;
+  }
+
+  /**
+   * Creates the client, unless it exists already. The client of influxdb-java cannot be configured
+   * and uses OkHttp 2.0, which writes requests of more than 2kB in several parts. As OkHttp 2.0
+   * does not allow to set TCP_NODELAY on its direct connections, Nagle's algorithm holds back the
+   * rest of the request until the first part is acknowledged, which the server delays by up to
+   * 40ms (delayed ACK). The requests of influxdb-java are therefore sent by a Retrofit client of
+   * this bundle, which uses the HttpURLConnection of the JDK and is not affected.
+   */
   private void connect() {
     if (influxDB == null) {
-      // reuse an existing InfluxDB object because it has no state concerning the database
-      // connection
-      influxDB = InfluxDBFactory.connect(url, user, password);
+      // reuse an existing client because it has no state concerning the database connection
+      RestAdapter restAdapter = new RestAdapter.Builder().setEndpoint(url)
+          .setErrorHandler(new InfluxDBErrorHandler()).setClient(new UrlConnectionClient())
+          .build();
+      influxDB = restAdapter.create(InfluxDBRestService.class);
     }
     connected = true;
   }
@@ -125,7 +171,9 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
       dbStatus = false;
     } else {
       try {
+        long startTime = System.currentTimeMillis();
         Pong pong = influxDB.ping();
+        pong.setResponseTime(System.currentTimeMillis() - startTime);
         if (pong.getStatus().equalsIgnoreCase(OK_STATUS)) {
           dbStatus = true;
           logger.debug("database status is OK");
@@ -170,7 +218,14 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     if (item.getState() instanceof UnDefType) {
       return;
     }
+    store(Collections.singletonList(new PersistenceEntry(item, alias, item.getState(), new Date())));
+  }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void store(List<PersistenceEntry> entries) {
     if (!isProperlyConfigured) {
       logger.warn("Configuration for influxdb not yet loaded or broken.");
       return;
@@ -181,24 +236,69 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
       return;
     }
 
-    String realName = item.getName();
-    String name = (alias != null) ? alias : realName;
-    Object value = stateToObject(item.getState());
-    logger.trace("storing {} in influxdb {}", name, value);
+    // one serie per item with all of its points, the time is given by the time of the update
+    Map<String, Serie.Builder> builders = new LinkedHashMap<String, Serie.Builder>();
+    int count = 0;
+    for (PersistenceEntry entry : entries) {
+      if (entry.getState() instanceof UnDefType) {
+        continue;
+      }
+      String name = entry.getName();
+      Object value = stateToObject(entry.getState());
+      logger.trace("storing {} in influxdb {}", name, value);
+      Serie.Builder builder = builders.get(name);
+      if (builder == null) {
+        builder = new Serie.Builder(name).columns(TIME_COLUMN_NAME, VALUE_COLUMN_NAME);
+        builders.put(name, builder);
+      }
+      builder.values(entry.getTimestamp().getTime(), value);
+      count++;
+    }
+    if (count == 0) {
+      return;
+    }
 
-    // For now time is calculated by influxdb, may be this should be configurable?
-    Serie serie = new Serie.Builder(name)
-    		.columns(VALUE_COLUMN_NAME)
-    		.values(value)
-    		.build();
-    // serie.setColumns(new String[] {"time", VALUE_COLUMN_NAME});
-    // Object[] point = new Object[] {System.currentTimeMillis(), value};
+    Serie[] series = new Serie[builders.size()];
+    int i = 0;
+    for (Serie.Builder builder : builders.values()) {
+      series[i++] = builder.build();
+    }
+    write(series, count);
+  }
 
-    try {
-      influxDB.write(dbName, TimeUnit.MILLISECONDS, serie);
-    } catch (RuntimeException e) {
-      logger.error("storing failed with exception for item: {}", name);
-      handleDatabaseException(e);
+  /**
+   * Writes the given series with a single request. Network errors are retried with an increasing
+   * delay, all other errors, e.g. authentication errors, are not.
+   * 
+   * @param series the series to write
+   * @param count the number of points of the series
+   */
+  private void write(Serie[] series, int count) {
+    long startTime = System.currentTimeMillis();
+    long delay = retryDelay;
+    for (int attempt = 0;; attempt++) {
+      try {
+        influxDB.write(dbName, series, user, password, TIME_PRECISION);
+        logger.debug("stored {} points of {} series in {}ms", new Object[] {count, series.length,
+            System.currentTimeMillis() - startTime});
+        return;
+      } catch (RuntimeException e) {
+        if (attempt >= retries || !(e instanceof RetrofitError)
+            || !((RetrofitError) e).isNetworkError()) {
+          logger.error("storing {} points failed with exception, the points are dropped", count);
+          handleDatabaseException(e);
+          return;
+        }
+        logger.warn("storing {} points failed, retrying in {}ms", count, delay);
+      }
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        logger.error("storing {} points has been interrupted", count);
+        return;
+      }
+      delay *= 2;
     }
   }
 
@@ -217,7 +317,10 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
 
   @Override
   public void updated(Dictionary<String, ?> config) throws ConfigurationException {
-    disconnect();
+    String oldUrl = url;
+    String oldUser = user;
+    String oldPassword = password;
+    connected = false;
 
     if (config == null) {
       throw new ConfigurationException("influxdb",
@@ -248,8 +351,31 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
       logger.debug("using default db name {}", DEFAULT_DB);
     }
 
+    String retriesString = (String) config.get("retries");
+    if (StringUtils.isNotBlank(retriesString)) {
+      int configuredRetries;
+      try {
+        configuredRetries = Integer.parseInt(retriesString.trim());
+      } catch (NumberFormatException e) {
+        throw new ConfigurationException("influxdb:retries", "The number of retries '"
+            + retriesString + "' is not a valid number.");
+      }
+      if (configuredRetries < 0) {
+        throw new ConfigurationException("influxdb:retries", "The number of retries '"
+            + retriesString + "' must not be negative.");
+      }
+      retries = configuredRetries;
+    } else {
+      retries = DEFAULT_RETRIES;
+    }
+
     isProperlyConfigured = true;
 
+    // keep the client and its keep-alive connections, unless the connection settings changed
+    if (!StringUtils.equals(url, oldUrl) || !StringUtils.equals(user, oldUser)
+        || !StringUtils.equals(password, oldPassword)) {
+      influxDB = null;
+    }
     connect();
 
     // check connection; errors will only be logged, hoping the connection will work at a later time. 
@@ -275,7 +401,7 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
 
     List<HistoricItem> historicItems = new ArrayList<HistoricItem>();
 
-    StringBuffer query = new StringBuffer();
+    StringBuilder query = new StringBuilder();
     query.append("select ");
     query.append(VALUE_COLUMN_NAME);
     query.append(", ");
@@ -309,7 +435,7 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
           foundState = true;
           query.append(VALUE_COLUMN_NAME);
           query.append(" ");
-          query.append(filter.getOperator().toString());
+          query.append(getOperatorSymbol(filter.getOperator()));
           query.append(" ");
           query.append(value);
         }
@@ -346,18 +472,21 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
       query.append(" order asc");
     }
 
-    int limit = (filter.getPageNumber() + 1) * filter.getPageSize();
-    query.append(" limit " + limit);
-    logger.trace("appending limit {}", limit);
-
-    int totalEntriesAffected = ((filter.getPageNumber() + 1) * filter.getPageSize());
-    int startEntryNum = totalEntriesAffected - (totalEntriesAffected - (filter.getPageSize() * filter.getPageNumber()));
+    // InfluxDB 0.8 does not support offsets, so the rows of the previous pages are fetched as well,
+    // but they are skipped without being converted
+    long startEntryNum = (long) filter.getPageNumber() * filter.getPageSize();
+    long limit = startEntryNum + filter.getPageSize();
+    if (limit < Integer.MAX_VALUE) {
+      query.append(" limit ");
+      query.append(limit);
+      logger.trace("appending limit {}", limit);
+    }
     logger.trace("startEntryNum {}", startEntryNum);
-    
-    logger.debug("query string: {}", query.toString());
+
+    logger.debug("query string: {}", query);
     List<Serie> results = Collections.emptyList();
     try {
-      results = influxDB.query(dbName, query.toString(), TimeUnit.MILLISECONDS);
+      results = influxDB.query(dbName, query.toString(), user, password, TIME_PRECISION);
     } catch (RuntimeException e) {
       logger.error("query failed with database error");
       handleDatabaseException(e);
@@ -365,10 +494,14 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     for (Serie result : results) {
       String historicItemName = result.getName();
       logger.trace("item name {}", historicItemName);
-      int entryCount = 0;
+      long entryCount = 0;
+      int pageCount = 0;
       for (Map<String, Object> row : result.getRows()) {
-        entryCount++;
-        if (entryCount >= startEntryNum) {
+        if (pageCount >= filter.getPageSize()) {
+          break;
+        }
+        if (entryCount++ >= startEntryNum) {
+          pageCount++;
           Double rawTime = (Double) row.get(TIME_COLUMN_NAME);
           Object rawValue = row.get(VALUE_COLUMN_NAME);
           logger.trace("adding historic item {}: time {} value {}", historicItemName, rawTime,
@@ -385,6 +518,29 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     return historicItems;
   }
 
+  /**
+   * Returns the InfluxDB query operator of a {@link FilterCriteria.Operator}.
+   * 
+   * @param operator the operator of the filter
+   * @return the operator symbol to use in the query
+   */
+  private String getOperatorSymbol(FilterCriteria.Operator operator) {
+    switch (operator) {
+      case NEQ:
+        return "<>";
+      case GT:
+        return ">";
+      case LT:
+        return "<";
+      case GTE:
+        return ">=";
+      case LTE:
+        return "<=";
+      default:
+        return "=";
+    }
+  }
+
   private String getTimeFilter(Date time) {
     // for some reason we need to query using 'seconds' only
     // passing milli seconds causes no results to be returned
@@ -507,4 +663,27 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     }
   }
 
+
+  /**
+   * Turns the error responses of InfluxDB into exceptions with the message of the response, like
+   * the client of influxdb-java does. Network errors are passed on as they are.
+   */
+  private static class InfluxDBErrorHandler implements ErrorHandler {
+
+    @Override
+    public Throwable handleError(RetrofitError cause) {
+      Response response = cause.getResponse();
+      if (response != null && response.getStatus() >= 400 && response.getBody() != null) {
+        try {
+          return new RuntimeException(CharStreams.toString(new InputStreamReader(response
+              .getBody().in(), Charsets.UTF_8)));
+        } catch (IOException e) {
+          logger.debug("could not read the error response of influxdb: {}", e.getMessage());
+        }
+      }
+      return cause;
+    }
+
+  }
+
 }
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.influxdb.internal;
+
+import java.util.List;
+
+import org.influxdb.dto.Pong;
+import org.influxdb.dto.Serie;
+
+import retrofit.http.Body;
+import retrofit.http.GET;
+import retrofit.http.POST;
+import retrofit.http.Path;
+import retrofit.http.Query;
+
+/**
+ * The requests of the InfluxDB 0.8 HTTP API, which are used by the {@link InfluxDBPersistenceService}.
+ * They are the same as the ones of influxdb-java, whose client cannot be configured, so that they
+ * can be sent by a Retrofit client of this bundle.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public interface InfluxDBRestService {
+
+  @GET("/ping")
+  Pong ping();
+
+  @POST("/db/{name}/series")
+  String write(@Path("name") String database, @Body Serie[] series, @Query("u") String username,
+      @Query("p") String password, @Query("time_precision") String precision);
+
+  @GET("/db/{name}/series")
+  List<Serie> query(@Path("name") String database, @Query("q") String query,
+      @Query("u") String username, @Query("p") String password,
+      @Query("time_precision") String precision);
+
+}
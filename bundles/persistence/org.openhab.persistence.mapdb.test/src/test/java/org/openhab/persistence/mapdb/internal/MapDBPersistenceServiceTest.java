@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+import org.osgi.service.cm.ConfigurationException;
+
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class MapDBPersistenceServiceTest {
+
+	private MapDBPersistenceService service;
+
+	private DB db;
+
+	@Before
+	public void init() throws ConfigurationException {
+		db = DBMaker.newMemoryDB().make();
+		service = new MapDBPersistenceService();
+		service.open(db);
+		setRetention(30);
+	}
+
+	@After
+	public void cleanup() {
+		service.close();
+	}
+
+	@Test
+	public void testStore() {
+		NumberItem item = new NumberItem("Number");
+		for (int i = 1; i <= 100; i++) {
+			item.setState(new DecimalType(i));
+			service.store(item);
+		}
+
+		// the updates share their milliseconds, but none of them is lost
+		List<Integer> values = query(new FilterCriteria().setItemName("Number").setOrdering(Ordering.ASCENDING));
+		Assert.assertEquals(100, values.size());
+		for (int i = 1; i <= 100; i++) {
+			Assert.assertEquals(Integer.valueOf(i), values.get(i - 1));
+		}
+	}
+
+	@Test
+	public void testStore_unchangedState() {
+		NumberItem item = new NumberItem("Number");
+		for (int i : new int[] { 5, 5, 6, 6, 6, 5 }) {
+			item.setState(new DecimalType(i));
+			service.store(item);
+		}
+
+		// a state is only added if it differs from the latest one
+		Assert.assertEquals(list(5, 6, 5), query(new FilterCriteria().setItemName("Number")
+				.setOrdering(Ordering.ASCENDING)));
+	}
+
+	@Test
+	public void testStore_latestStateOnly() throws ConfigurationException {
+		setRetention(0);
+		NumberItem item = new NumberItem("Number");
+		for (int i : new int[] { 1, 2, 3, 3 }) {
+			item.setState(new DecimalType(i));
+			service.store(item);
+		}
+
+		// without a retention period, only the latest state is kept
+		Assert.assertEquals(1, MapDBPersistenceService.getHistory("Number").size());
+		Assert.assertEquals(list(3), query(new FilterCriteria().setItemName("Number")));
+	}
+
+	@Test
+	public void testPut_sameTimestamp() {
+		BTreeMap<Long, State> history = MapDBPersistenceService.getHistory("Number");
+		history.put(1001L, new DecimalType(3));
+
+		Assert.assertEquals(1000L, MapDBPersistenceService.put(history, 1000L, new DecimalType(1)));
+		Assert.assertEquals(1002L, MapDBPersistenceService.put(history, 1000L, new DecimalType(2)));
+
+		Assert.assertEquals(new DecimalType(1), history.get(1000L));
+		Assert.assertEquals(new DecimalType(3), history.get(1001L));
+		Assert.assertEquals(new DecimalType(2), history.get(1002L));
+	}
+
+	@Test
+	public void testMigrateLegacyStates() {
+		service.close();
+		db = DBMaker.newMemoryDB().make();
+		Map<String, MapDBItem> legacyMap = db.createTreeMap(MapDBPersistenceService.LEGACY_MAP_NAME)
+				.valueSerializer(new MapDBitemSerializer()).makeOrGet();
+		legacyMap.put("Number", newItem("Number", new DecimalType(21), 1000L));
+		legacyMap.put("Switch", newItem("Switch", OnOffType.ON, 2000L));
+		db.commit();
+
+		service.open(db);
+
+		Assert.assertFalse(db.exists(MapDBPersistenceService.LEGACY_MAP_NAME));
+		Assert.assertEquals(new DecimalType(21), MapDBPersistenceService.getHistory("Number").get(1000L));
+		Assert.assertEquals(OnOffType.ON, MapDBPersistenceService.getHistory("Switch").get(2000L));
+		Assert.assertEquals(1, MapDBPersistenceService.getHistory("Switch").size());
+	}
+
+	@Test
+	public void testQuery_range() {
+		fillHistory();
+		FilterCriteria filter = new FilterCriteria().setItemName("Number")
+				.setBeginDate(new Date(3000L)).setEndDate(new Date(6000L));
+
+		Assert.assertEquals(list(3, 4, 5, 6), query(filter.setOrdering(Ordering.ASCENDING)));
+		Assert.assertEquals(list(6, 5, 4, 3), query(filter.setOrdering(Ordering.DESCENDING)));
+	}
+
+	@Test
+	public void testQuery_timestamps() {
+		fillHistory();
+		FilterCriteria filter = new FilterCriteria().setItemName("Number")
+				.setBeginDate(new Date(2000L)).setEndDate(new Date(2000L));
+
+		List<HistoricItem> result = new ArrayList<HistoricItem>();
+		for (HistoricItem item : service.query(filter)) {
+			result.add(item);
+		}
+
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("Number", result.get(0).getName());
+		Assert.assertEquals(new Date(2000L), result.get(0).getTimestamp());
+		Assert.assertEquals(new DecimalType(2), result.get(0).getState());
+	}
+
+	@Test
+	public void testQuery_emptyRange() {
+		fillHistory();
+
+		Assert.assertEquals(list(), query(new FilterCriteria().setItemName("Number")
+				.setBeginDate(new Date(6000L)).setEndDate(new Date(3000L))));
+		Assert.assertEquals(list(), query(new FilterCriteria().setItemName("Unknown")));
+	}
+
+	@Test
+	public void testQuery_paging() {
+		fillHistory();
+		FilterCriteria filter = new FilterCriteria().setItemName("Number")
+				.setBeginDate(new Date(3000L)).setEndDate(new Date(8000L)).setPageSize(4);
+
+		Assert.assertEquals(list(3, 4, 5, 6), query(filter.setOrdering(Ordering.ASCENDING).setPageNumber(0)));
+		Assert.assertEquals(list(7, 8), query(filter.setOrdering(Ordering.ASCENDING).setPageNumber(1)));
+		Assert.assertEquals(list(), query(filter.setOrdering(Ordering.ASCENDING).setPageNumber(2)));
+		Assert.assertEquals(list(8, 7, 6, 5), query(filter.setOrdering(Ordering.DESCENDING).setPageNumber(0)));
+		Assert.assertEquals(list(4, 3), query(filter.setOrdering(Ordering.DESCENDING).setPageNumber(1)));
+	}
+
+	@Test
+	public void testQuery_operator() {
+		fillHistory();
+		FilterCriteria filter = new FilterCriteria().setItemName("Number").setState(new DecimalType(7))
+				.setOrdering(Ordering.ASCENDING);
+
+		Assert.assertEquals(list(7), query(filter.setOperator(Operator.EQ)));
+		Assert.assertEquals(list(1, 2, 3, 4, 5, 6, 8, 9, 10), query(filter.setOperator(Operator.NEQ)));
+		Assert.assertEquals(list(8, 9, 10), query(filter.setOperator(Operator.GT)));
+		Assert.assertEquals(list(7, 8, 9, 10), query(filter.setOperator(Operator.GTE)));
+		Assert.assertEquals(list(1, 2, 3, 4, 5, 6), query(filter.setOperator(Operator.LT)));
+		Assert.assertEquals(list(1, 2, 3, 4, 5, 6, 7), query(filter.setOperator(Operator.LTE)));
+
+		// only decimals can be compared by their order
+		Assert.assertEquals(list(), query(filter.setOperator(Operator.GT).setState(OnOffType.ON)));
+	}
+
+	@Test
+	public void testQuery_operatorAndPaging() {
+		fillHistory();
+		FilterCriteria filter = new FilterCriteria().setItemName("Number").setState(new DecimalType(4))
+				.setOperator(Operator.GT).setPageSize(2).setPageNumber(1);
+
+		Assert.assertEquals(list(7, 8), query(filter.setOrdering(Ordering.ASCENDING)));
+		Assert.assertEquals(list(8, 7), query(filter.setOrdering(Ordering.DESCENDING)));
+	}
+
+	@Test
+	public void testPrune() {
+		fillHistory();
+		BTreeMap<Long, State> other = MapDBPersistenceService.getHistory("Other");
+		other.put(500L, new DecimalType(0));
+		other.put(9000L, new DecimalType(9));
+		BTreeMap<Long, State> old = MapDBPersistenceService.getHistory("Old");
+		old.put(100L, new DecimalType(1));
+		old.put(200L, new DecimalType(2));
+
+		Assert.assertEquals(6, MapDBPersistenceService.prune(5000L));
+
+		Assert.assertEquals(list(5, 6, 7, 8, 9, 10), query(new FilterCriteria().setItemName("Number")
+				.setOrdering(Ordering.ASCENDING)));
+		Assert.assertEquals(list(9), query(new FilterCriteria().setItemName("Other")));
+		// the latest state is kept, even if it is older
+		Assert.assertEquals(list(2), query(new FilterCriteria().setItemName("Old")));
+		Assert.assertEquals(0, MapDBPersistenceService.prune(5000L));
+
+		// all but the latest states are removed without a retention period
+		Assert.assertEquals(5, MapDBPersistenceService.prune(Long.MAX_VALUE));
+		Assert.assertEquals(list(10), query(new FilterCriteria().setItemName("Number")));
+	}
+
+	/**
+	 * Stores the states 1 to 10 at the timestamps 1000 to 10000.
+	 */
+	private void fillHistory() {
+		BTreeMap<Long, State> history = MapDBPersistenceService.getHistory("Number");
+		for (int i = 1; i <= 10; i++) {
+			history.put(i * 1000L, new DecimalType(i));
+		}
+	}
+
+	private void setRetention(int days) throws ConfigurationException {
+		Hashtable<String, String> config = new Hashtable<String, String>();
+		config.put("retention", Integer.toString(days));
+		service.updated(config);
+	}
+
+	private List<Integer> query(FilterCriteria filter) {
+		List<Integer> values = new ArrayList<Integer>();
+		for (HistoricItem item : service.query(filter)) {
+			values.add(((DecimalType) item.getState()).intValue());
+		}
+		return values;
+	}
+
+	private static List<Integer> list(Integer... values) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (Integer value : values) {
+			list.add(value);
+		}
+		return list;
+	}
+
+	private static MapDBItem newItem(String name, State state, long timestamp) {
+		MapDBItem item = new MapDBItem();
+		item.setName(name);
+		item.setState(state);
+		item.setTimestamp(new Date(timestamp));
+		return item;
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Calendar;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class MapDBStateSerializerTest {
+
+	private MapDBStateSerializer serializer = new MapDBStateSerializer();
+
+	@Test
+	public void testDecimal() throws IOException {
+		assertDecimal(new BigDecimal("21.5"));
+		assertDecimal(new BigDecimal("-0.001"));
+		assertDecimal(BigDecimal.ZERO);
+		assertDecimal(BigDecimal.valueOf(Long.MAX_VALUE));
+		assertDecimal(BigDecimal.valueOf(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void testDecimal_beyondLong() throws IOException {
+		assertDecimal(new BigDecimal("123456789012345678901234567890.123456789"));
+		assertDecimal(new BigDecimal("-123456789012345678901234567890"));
+		assertDecimal(BigDecimal.valueOf(Long.MAX_VALUE).add(BigDecimal.ONE));
+		assertDecimal(BigDecimal.valueOf(Long.MIN_VALUE).subtract(BigDecimal.ONE));
+	}
+
+	@Test
+	public void testDecimal_negativeScale() throws IOException {
+		assertDecimal(new BigDecimal("1E+3"));
+		assertDecimal(new BigDecimal("-25E+10"));
+		assertDecimal(new BigDecimal("123456789012345678901234567890E+100"));
+	}
+
+	@Test
+	public void testPercent() throws IOException {
+		State state = roundTrip(new PercentType(new BigDecimal("42.50")));
+
+		Assert.assertEquals(PercentType.class, state.getClass());
+		Assert.assertEquals(new BigDecimal("42.50"), ((PercentType) state).toBigDecimal());
+	}
+
+	@Test
+	public void testHSB() throws IOException {
+		HSBType hsb = new HSBType(new DecimalType(new BigDecimal("359.9")),
+				new PercentType(new BigDecimal("12.25")), new PercentType(100));
+
+		State state = roundTrip(hsb);
+
+		Assert.assertEquals(HSBType.class, state.getClass());
+		Assert.assertEquals(new BigDecimal("359.9"), ((HSBType) state).getHue().toBigDecimal());
+		Assert.assertEquals(new BigDecimal("12.25"), ((HSBType) state).getSaturation().toBigDecimal());
+		Assert.assertEquals(new BigDecimal("100"), ((HSBType) state).getBrightness().toBigDecimal());
+	}
+
+	@Test
+	public void testDateTime() throws IOException {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(1425000000123L);
+
+		State state = roundTrip(new DateTimeType(calendar));
+
+		Assert.assertEquals(DateTimeType.class, state.getClass());
+		Assert.assertEquals(1425000000123L, ((DateTimeType) state).getCalendar().getTimeInMillis());
+	}
+
+	@Test
+	public void testBinaryStates() throws IOException {
+		Assert.assertSame(OnOffType.ON, roundTrip(OnOffType.ON));
+		Assert.assertSame(OnOffType.OFF, roundTrip(OnOffType.OFF));
+		Assert.assertSame(OpenClosedType.OPEN, roundTrip(OpenClosedType.OPEN));
+		Assert.assertSame(OpenClosedType.CLOSED, roundTrip(OpenClosedType.CLOSED));
+	}
+
+	@Test
+	public void testString() throws IOException {
+		Assert.assertEquals(new StringType("some text"), roundTrip(new StringType("some text")));
+		Assert.assertEquals(new StringType(""), roundTrip(new StringType("")));
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnknownType() throws IOException {
+		serializer.deserialize(new DataInputStream(new ByteArrayInputStream(new byte[] { 99 })), 1);
+	}
+
+	private void assertDecimal(BigDecimal value) throws IOException {
+		State state = roundTrip(new DecimalType(value));
+
+		Assert.assertEquals(DecimalType.class, state.getClass());
+		// BigDecimal.equals() compares the scale as well
+		Assert.assertEquals(value, ((DecimalType) state).toBigDecimal());
+	}
+
+	private State roundTrip(State state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		serializer.serialize(new DataOutputStream(bytes), state);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		State result = serializer.deserialize(in, bytes.size());
+		Assert.assertEquals("all bytes read", 0, in.available());
+		return result;
+	}
+
+}
@@ -9,6 +9,7 @@
 package org.openhab.persistence.mapdb.internal;
 
 import static org.quartz.JobBuilder.newJob;
+import static org.quartz.SimpleScheduleBuilder.repeatHourlyForever;
 import static org.quartz.SimpleScheduleBuilder.repeatSecondlyForever;
 import static org.quartz.TriggerBuilder.newTrigger;
 import static org.quartz.impl.matchers.GroupMatcher.jobGroupEquals;
@@ -18,10 +19,16 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
+import org.mapdb.BTreeKeySerializer;
+import org.mapdb.BTreeMap;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
@@ -29,9 +36,11 @@ import org.openhab.core.items.Item;
 import org.openhab.core.library.items.ColorItem;
 import org.openhab.core.library.items.DimmerItem;
 import org.openhab.core.library.items.RollershutterItem;
+import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.HSBType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
@@ -57,6 +66,17 @@ import org.slf4j.LoggerFactory;
  * more about MapDB please visit their <a
  * href="http://www.mapdb.org/">website</a>.
  * 
+ * <p>
+ * The states of every item are stored as a time series in a separate
+ * {@link BTreeMap} of their timestamps, so that queries only read the
+ * requested period. Changes are committed by a scheduled job, which groups all
+ * changes of the commit interval into a single transaction. Without a
+ * retention period, only the latest state of every item is kept like in
+ * previous versions. Otherwise a state is only added if it differs from the
+ * latest one, and states which are older than the retention period are
+ * removed by another job.
+ * </p>
+ * 
  * @author Jens Viebig
  * @since 1.7.0
  */
@@ -72,18 +92,32 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 
 	private static final String SCHEDULER_GROUP = "MapDB_SchedulerGroup";
 
+	/** the map which holds the latest states of previous versions */
+	static final String LEGACY_MAP_NAME = "itemStore";
+
+	private static final String HISTORY_PREFIX = "history_";
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
 	private static int commitInterval = 5;
 
 	private static boolean commitSameState = false;
 
-	private static boolean needsCommit = false;
+	/** the number of days to keep the states for, 0 only keeps the latest state */
+	private static int retention = 0;
+
+	private static volatile boolean needsCommit = false;
 
 	private static final Logger logger = LoggerFactory
 			.getLogger(MapDBPersistenceService.class);
 
 	/** holds the local instance of the MapDB database */
 	private static DB db;
-	private static Map<String, MapDBItem> map;
+
+	/** the time series of all items by their alias */
+	private static final ConcurrentMap<String, BTreeMap<Long, State>> histories = new ConcurrentHashMap<String, BTreeMap<Long, State>>();
+
+	private static final Serializer<State> stateSerializer = new MapDBStateSerializer();
 
 	public void activate() {
 		logger.debug("mapdb persistence service activated");
@@ -94,19 +128,87 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 		}
 
 		File dbFile = new File(DB_FOLDER_NAME, DB_FILE_NAME);
-		db = DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make();
-		Serializer<MapDBItem> serializer = new MapDBitemSerializer();
-		map = db.createTreeMap("itemStore").valueSerializer(serializer)
-				.makeOrGet();
+		open(DBMaker.newFileDB(dbFile).closeOnJvmShutdown().make());
 		scheduleJob();
 	}
 
 	public void deactivate() {
 		logger.debug("mapdb persistence service deactivated");
-		if (db != null) {
+		cancelAllJobs();
+		close();
+	}
+
+	/**
+	 * Opens the time series of all items in the given database and moves the
+	 * states of previous versions to them.
+	 * 
+	 * @param database
+	 *            the database to store the states in
+	 */
+	void open(DB database) {
+		db = database;
+		histories.clear();
+		for (String name : db.getAll().keySet()) {
+			if (name.startsWith(HISTORY_PREFIX)) {
+				getHistory(name.substring(HISTORY_PREFIX.length()));
+			}
+		}
+		migrateLegacyStates();
+	}
+
+	/**
+	 * Commits all pending changes and closes the database.
+	 */
+	void close() {
+		if (db != null && !db.isClosed()) {
+			db.commit();
 			db.close();
 		}
-		cancelAllJobs();
+		histories.clear();
+	}
+
+	/**
+	 * Returns the time series of an item, which is created if it does not
+	 * exist yet.
+	 * 
+	 * @param alias
+	 *            the alias of the item
+	 * @return the states of the item by their timestamps
+	 */
+	static BTreeMap<Long, State> getHistory(String alias) {
+		BTreeMap<Long, State> history = histories.get(alias);
+		if (history == null) {
+			synchronized (histories) {
+				history = histories.get(alias);
+				if (history == null) {
+					history = db.createTreeMap(HISTORY_PREFIX + alias)
+							.keySerializer(BTreeKeySerializer.ZERO_OR_POSITIVE_LONG)
+							.valueSerializer(stateSerializer).makeOrGet();
+					histories.put(alias, history);
+				}
+			}
+		}
+		return history;
+	}
+
+	/**
+	 * Previous versions only stored the latest state of every item, these
+	 * states are moved to the time series of the items.
+	 */
+	private void migrateLegacyStates() {
+		if (!db.exists(LEGACY_MAP_NAME)) {
+			return;
+		}
+		Map<String, MapDBItem> legacyMap = db.createTreeMap(LEGACY_MAP_NAME)
+				.valueSerializer(new MapDBitemSerializer()).makeOrGet();
+		for (MapDBItem item : legacyMap.values()) {
+			put(getHistory(item.getName()), item.getTimestamp().getTime(),
+					item.getState());
+		}
+		logger.debug("Migrated {} states to the time series of their items",
+				legacyMap.size());
+		db.delete(LEGACY_MAP_NAME);
+		db.commit();
 	}
 
 	@Override
@@ -131,35 +233,138 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 		logger.debug("store called for {}", alias);
 
 		State state = item.getState();
-		if (item instanceof DimmerItem || item instanceof RollershutterItem) {
-			state = item.getStateAs(PercentType.class);
-		} else if (item instanceof ColorItem) {
+		// color items are dimmer items as well, so they have to be checked first
+		if (item instanceof ColorItem) {
 			state = item.getStateAs(HSBType.class);
+		} else if (item instanceof DimmerItem
+				|| item instanceof RollershutterItem) {
+			state = item.getStateAs(PercentType.class);
 		}
-		MapDBItem mItem = new MapDBItem();
-		mItem.setName(alias);
-		mItem.setState(state);
-		mItem.setTimestamp(new Date());
-		MapDBItem oldItem = map.put(alias, mItem);
-
-		if (!commitSameState) {
-			if (oldItem != null) {
-				if (!oldItem.getState().toString().equals(state.toString())) {
-					needsCommit = true;
-				}
-			}
+		BTreeMap<Long, State> history = getHistory(alias);
+		Map.Entry<Long, State> lastEntry = history.lastEntry();
+		boolean changed = lastEntry == null
+				|| !state.equals(lastEntry.getValue());
+		if (retention <= 0) {
+			// only the latest state is kept, together with the time of its
+			// last update
+			long timestamp = put(history, System.currentTimeMillis(), state);
+			history.headMap(timestamp).clear();
+		} else if (changed) {
+			// the time series only grows when the state changes
+			put(history, System.currentTimeMillis(), state);
+		} else {
+			logger.debug("State '{}' of '{}' is unchanged", state, alias);
+			return;
+		}
+
+		// unchanged states are committed together with the next change
+		if (changed) {
+			needsCommit = true;
 		}
 		logger.debug("Stored '{}' with state '{}' in mapdb database", alias,
-				state.toString());
+				state);
+	}
+
+	/**
+	 * Adds a state to a time series. If there already is a state at the given
+	 * timestamp, e.g. as an item has been updated twice within the same
+	 * millisecond, the state is stored at the next free millisecond, so that
+	 * no state is overwritten and the order of the states is kept.
+	 * 
+	 * @param history
+	 *            the time series of the item
+	 * @param timestamp
+	 *            the time of the state in milliseconds
+	 * @param state
+	 *            the state to add
+	 * @return the timestamp the state has been stored at
+	 */
+	static long put(BTreeMap<Long, State> history, long timestamp, State state) {
+		while (history.putIfAbsent(timestamp, state) != null) {
+			timestamp++;
+		}
+		return timestamp;
 	}
 
 	@Override
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
-		HistoricItem item = map.get(filter.getItemName());
-		if (item != null) {
-			return Collections.singletonList(item);
+		String alias = filter.getItemName();
+		BTreeMap<Long, State> history = alias != null ? histories.get(alias)
+				: null;
+		if (history == null) {
+			return Collections.emptyList();
+		}
+
+		long begin = filter.getBeginDate() != null ? filter.getBeginDate()
+				.getTime() : 0;
+		long end = filter.getEndDate() != null ? filter.getEndDate().getTime()
+				: Long.MAX_VALUE;
+		if (begin > end) {
+			return Collections.emptyList();
+		}
+		NavigableMap<Long, State> range = history.subMap(begin, true, end,
+				true);
+		if (filter.getOrdering() == Ordering.DESCENDING) {
+			range = range.descendingMap();
+		}
+
+		// the states are read lazily, so that paging stops reading as soon as
+		// the page is complete
+		long skip = (long) filter.getPageNumber() * filter.getPageSize();
+		List<HistoricItem> result = new ArrayList<HistoricItem>();
+		for (Map.Entry<Long, State> entry : range.entrySet()) {
+			if (result.size() >= filter.getPageSize()) {
+				break;
+			}
+			if (!matches(entry.getValue(), filter)) {
+				continue;
+			}
+			if (skip > 0) {
+				skip--;
+				continue;
+			}
+			MapDBItem item = new MapDBItem();
+			item.setName(alias);
+			item.setState(entry.getValue());
+			item.setTimestamp(new Date(entry.getKey()));
+			result.add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * Checks a state against the operator and the state of the filter.
+	 * Decimal states can be compared by all operators, all other states only
+	 * by equality.
+	 */
+	private static boolean matches(State state, FilterCriteria filter) {
+		State filterState = filter.getState();
+		if (filterState == null) {
+			return true;
+		}
+		switch (filter.getOperator()) {
+		case EQ:
+			return state.equals(filterState);
+		case NEQ:
+			return !state.equals(filterState);
+		default:
+			if (!(state instanceof DecimalType)
+					|| !(filterState instanceof DecimalType)) {
+				return false;
+			}
+			int comparison = ((DecimalType) state)
+					.compareTo((DecimalType) filterState);
+			switch (filter.getOperator()) {
+			case GT:
+				return comparison > 0;
+			case GTE:
+				return comparison >= 0;
+			case LT:
+				return comparison < 0;
+			default:
+				return comparison <= 0;
+			}
 		}
-		return Collections.emptyList();
 	}
 
 	/**
@@ -183,6 +388,16 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 			logger.debug("Scheduled Commit-Job with interval {}sec.",
 					commitInterval);
 
+			// schedule prune-job, which does nothing without a retention
+			JobDetail pruneJob = newJob(PruneJob.class).withIdentity(
+					"Prune_History", SCHEDULER_GROUP).build();
+
+			SimpleTrigger pruneTrigger = newTrigger()
+					.withIdentity("Prune_History", SCHEDULER_GROUP)
+					.withSchedule(repeatHourlyForever()).build();
+
+			sched.scheduleJob(pruneJob, pruneTrigger);
+
 		} catch (SchedulerException e) {
 			logger.warn("Could not create Job: {}", e.getMessage());
 		}
@@ -244,6 +459,63 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 
 	}
 
+	/**
+	 * A quartz scheduler job to remove all states which are older than the
+	 * retention period, or all but the latest states without a retention
+	 * period. The removal is committed by the next commit job.
+	 * 
+	 * @author openHAB.org
+	 * @since 1.7.0
+	 */
+	@DisallowConcurrentExecution
+	public static class PruneJob implements Job {
+
+		@Override
+		public void execute(JobExecutionContext context)
+				throws JobExecutionException {
+			if (db.isClosed()) {
+				return;
+			}
+			long cutoff = retention > 0 ? System.currentTimeMillis()
+					- retention * DAY : Long.MAX_VALUE;
+			int pruned = prune(cutoff);
+			if (pruned > 0) {
+				logger.debug("Removed {} states older than {} days", pruned,
+						retention);
+			}
+		}
+
+	}
+
+	/**
+	 * Removes the states of all items, which are older than the given time.
+	 * The latest state of an item is always kept, so that it can be restored
+	 * on startup.
+	 * 
+	 * @param cutoff
+	 *            the time in milliseconds of the oldest state to keep
+	 * @return the number of removed states
+	 */
+	static int prune(long cutoff) {
+		int pruned = 0;
+		for (BTreeMap<Long, State> history : histories.values()) {
+			Map.Entry<Long, State> lastEntry = history.lastEntry();
+			if (lastEntry == null) {
+				continue;
+			}
+			Map<Long, State> expired = history.headMap(Math.min(cutoff,
+					lastEntry.getKey()));
+			if (!expired.isEmpty()) {
+				pruned += expired.size();
+				expired.clear();
+			}
+		}
+		if (pruned > 0) {
+			needsCommit = true;
+		}
+		return pruned;
+	}
+
 	@Override
 	public void updated(Dictionary<String, ?> config)
 			throws ConfigurationException {
@@ -266,6 +538,15 @@ public class MapDBPersistenceService implements QueryablePersistenceService,
 					logger.warn("couldn't parse '{}' to an integer");
 				}
 			}
+			String retentionString = (String) config.get("retention");
+			if (StringUtils.isNotBlank(retentionString)) {
+				try {
+					retention = Integer.valueOf(retentionString);
+				} catch (IllegalArgumentException iae) {
+					logger.warn("couldn't parse '{}' to an integer",
+							retentionString);
+				}
+			}
 
 		}
 	}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mapdb.internal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * Serializer for the states of the item time series. The name and the timestamp of a
+ * state are already given by its map and its key, so only the state itself is stored
+ * as a type byte followed by its value in a compact binary form: decimals as packed
+ * unscaled value and scale, dates as milliseconds and the binary states by their type
+ * byte only. All other states are stored as {@link StringType}s.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class MapDBStateSerializer implements Serializer<State>, Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final byte TYPE_STRING = 0;
+	private static final byte TYPE_DECIMAL = 1;
+	private static final byte TYPE_PERCENT = 2;
+	private static final byte TYPE_HSB = 3;
+	private static final byte TYPE_DATETIME = 4;
+	private static final byte TYPE_ON = 5;
+	private static final byte TYPE_OFF = 6;
+	private static final byte TYPE_OPEN = 7;
+	private static final byte TYPE_CLOSED = 8;
+
+	@Override
+	public void serialize(DataOutput out, State state) throws IOException {
+		if (state instanceof HSBType) {
+			HSBType hsb = (HSBType) state;
+			out.writeByte(TYPE_HSB);
+			writeDecimal(out, hsb.getHue().toBigDecimal());
+			writeDecimal(out, hsb.getSaturation().toBigDecimal());
+			writeDecimal(out, hsb.getBrightness().toBigDecimal());
+		} else if (state instanceof PercentType) {
+			out.writeByte(TYPE_PERCENT);
+			writeDecimal(out, ((PercentType) state).toBigDecimal());
+		} else if (state instanceof DecimalType) {
+			out.writeByte(TYPE_DECIMAL);
+			writeDecimal(out, ((DecimalType) state).toBigDecimal());
+		} else if (state instanceof DateTimeType) {
+			out.writeByte(TYPE_DATETIME);
+			out.writeLong(((DateTimeType) state).getCalendar().getTimeInMillis());
+		} else if (state instanceof OnOffType) {
+			out.writeByte(state == OnOffType.ON ? TYPE_ON : TYPE_OFF);
+		} else if (state instanceof OpenClosedType) {
+			out.writeByte(state == OpenClosedType.OPEN ? TYPE_OPEN : TYPE_CLOSED);
+		} else {
+			out.writeByte(TYPE_STRING);
+			out.writeUTF(state.toString());
+		}
+	}
+
+	@Override
+	public State deserialize(DataInput in, int available) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case TYPE_DECIMAL:
+				return new DecimalType(readDecimal(in));
+			case TYPE_PERCENT:
+				return new PercentType(readDecimal(in));
+			case TYPE_HSB:
+				DecimalType hue = new DecimalType(readDecimal(in));
+				PercentType saturation = new PercentType(readDecimal(in));
+				PercentType brightness = new PercentType(readDecimal(in));
+				return new HSBType(hue, saturation, brightness);
+			case TYPE_DATETIME:
+				Calendar calendar = Calendar.getInstance();
+				calendar.setTimeInMillis(in.readLong());
+				return new DateTimeType(calendar);
+			case TYPE_ON:
+				return OnOffType.ON;
+			case TYPE_OFF:
+				return OnOffType.OFF;
+			case TYPE_OPEN:
+				return OpenClosedType.OPEN;
+			case TYPE_CLOSED:
+				return OpenClosedType.CLOSED;
+			case TYPE_STRING:
+				return new StringType(in.readUTF());
+			default:
+				throw new IOException("Unknown state type " + type);
+		}
+	}
+
+	@Override
+	public int fixedSize() {
+		return -1;
+	}
+
+	/**
+	 * Writes a decimal as its scale, followed by its packed unscaled value, if this fits
+	 * into a long, which is the case for all usual states, or by its bytes otherwise.
+	 */
+	private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+		BigInteger unscaled = value.unscaledValue();
+		boolean fitsLong = unscaled.bitLength() < 64;
+		DataOutput2.packLong(out, zigZag(value.scale()) << 1 | (fitsLong ? 0 : 1));
+		if (fitsLong) {
+			DataOutput2.packLong(out, zigZag(unscaled.longValue()));
+		} else {
+			byte[] bytes = unscaled.toByteArray();
+			DataOutput2.packInt(out, bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static BigDecimal readDecimal(DataInput in) throws IOException {
+		long header = DataInput2.unpackLong(in);
+		int scale = (int) unZigZag(header >>> 1);
+		if ((header & 1) == 0) {
+			return BigDecimal.valueOf(unZigZag(DataInput2.unpackLong(in)), scale);
+		}
+		byte[] bytes = new byte[DataInput2.unpackInt(in)];
+		in.readFully(bytes);
+		return new BigDecimal(new BigInteger(bytes), scale);
+	}
+
+	/* maps signed to unsigned values, so that small negative values are packed into few bytes as well */
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
@@ -35,10 +35,12 @@ import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.BatchPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceEntry;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.PersistentStateRestorer;
 import org.openhab.core.persistence.QueryablePersistenceService;
@@ -63,7 +65,7 @@ import com.mongodb.MongoClientURI;
  * @since 1.5.0
  */
 public class MongoDBPersistenceService implements QueryablePersistenceService,
-		ManagedService {
+		BatchPersistenceService, ManagedService {
 
 	private static final String FIELD_ID = "_id";
 	private static final String FIELD_ITEM = "item";
@@ -127,10 +129,47 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 			return;
 		}
 
+		if (!checkConnection(item.getName())) {
+			return;
+		}
+
+		DBObject obj = createDBObject(item, alias, item.getState(), new Date());
+		this.mongoCollection.save(obj);
+
+		logger.debug("MongoDB save {}={}", obj.get(FIELD_ITEM), obj.get(FIELD_VALUE));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void store(List<PersistenceEntry> entries) {
+		List<DBObject> objects = new ArrayList<DBObject>(entries.size());
+		for (PersistenceEntry entry : entries) {
+			// Don't log undefined/uninitialised data
+			if (!(entry.getState() instanceof UnDefType)) {
+				objects.add(createDBObject(entry.getItem(), entry.getAlias(), entry.getState(), entry.getTimestamp()));
+			}
+		}
+		if (objects.isEmpty() || !checkConnection(entries.get(0).getItem().getName())) {
+			return;
+		}
+
+		this.mongoCollection.insert(objects);
+
+		logger.debug("MongoDB saved {} values", objects.size());
+	}
+
+	/**
+	 * Makes sure that there is a connection to the database.
+	 * 
+	 * @param itemName the name of the item to persist, used for logging
+	 * @return true, if there is a connection to the database
+	 */
+	private boolean checkConnection(String itemName) {
 		// If we've not initialised the bundle, then return
 		if (initialized == false) {
 			logger.warn("MongoDB not initialized");
-			return;
+			return false;
 		}
 
 		// Connect to mongodb server if we're not already connected
@@ -142,23 +181,24 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 		if (!isConnected()) {
 			logger.warn(
 					"mongodb: No connection to database. Can not persist item '{}'! Will retry connecting to database next time.",
-					item);
-			return;
+					itemName);
+			return false;
 		}
+		return true;
+	}
 
+	private DBObject createDBObject(Item item, String alias, State state, Date timestamp) {
 		String realName = item.getName();
 		String name = (alias != null) ? alias : realName;
-		Object value = this.convertValue(item.getState());
+		Object value = this.convertValue(state);
 
 		DBObject obj = new BasicDBObject();
 		obj.put(FIELD_ID, new ObjectId());
 		obj.put(FIELD_ITEM, name);
 		obj.put(FIELD_REALNAME, realName);
-		obj.put(FIELD_TIMESTAMP, new Date());
+		obj.put(FIELD_TIMESTAMP, timestamp);
 		obj.put(FIELD_VALUE, value);
-		this.mongoCollection.save(obj);
-
-		logger.debug("MongoDB save {}={}", name, value);
+		return obj;
 	}
 
 	private Object convertValue(State state) {
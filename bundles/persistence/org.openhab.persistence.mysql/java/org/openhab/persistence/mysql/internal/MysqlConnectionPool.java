@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mysql.internal;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small pool of database connections. Connections are opened on demand up to
+ * the configured size and each of them caches its prepared statements, so that
+ * the statements for the item tables only have to be parsed once by the server.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class MysqlConnectionPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(MysqlConnectionPool.class);
+
+	/** the maximum number of prepared statements which are cached per connection */
+	private static final int STATEMENT_CACHE_SIZE = 200;
+
+	/** the time in milliseconds after which an idle connection is validated before it is used */
+	private static final long VALIDATION_INTERVAL = 30000;
+
+	/** the time in seconds to wait for a free connection */
+	private static final long BORROW_TIMEOUT = 10;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int size;
+	private final int waitTimeout;
+
+	private final BlockingQueue<PooledConnection> idleConnections = new LinkedBlockingQueue<PooledConnection>();
+	private final AtomicInteger openConnections = new AtomicInteger();
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a new pool. No connection is opened before it is needed.
+	 *
+	 * @param url the JDBC url of the database
+	 * @param user the database user
+	 * @param password the password of the database user
+	 * @param size the maximum number of connections
+	 * @param waitTimeout the session wait_timeout in seconds, -1 to keep the server default
+	 */
+	public MysqlConnectionPool(String url, String user, String password, int size, int waitTimeout) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.size = size;
+		this.waitTimeout = waitTimeout;
+	}
+
+	/**
+	 * Takes a connection from the pool, opening a new one if all connections are in use
+	 * and the pool has not reached its maximum size yet. The connection must be handed back
+	 * with {@link #release(PooledConnection)} or {@link #invalidate(PooledConnection)}.
+	 *
+	 * @return a valid connection
+	 * @throws SQLException if no connection could be opened or none became available in time
+	 */
+	public PooledConnection borrow() throws SQLException {
+		if (closed) {
+			throw new SQLException("The connection pool has been closed.");
+		}
+		PooledConnection connection;
+		while ((connection = idleConnections.poll()) != null) {
+			if (connection.validate()) {
+				return connection;
+			}
+			invalidate(connection);
+		}
+		if (openConnections.incrementAndGet() <= size) {
+			try {
+				return open();
+			} catch (SQLException e) {
+				openConnections.decrementAndGet();
+				throw e;
+			}
+		}
+		openConnections.decrementAndGet();
+		try {
+			connection = idleConnections.poll(BORROW_TIMEOUT, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (connection == null) {
+			throw new SQLException("No database connection became available within " + BORROW_TIMEOUT + " seconds.");
+		}
+		if (!connection.validate()) {
+			invalidate(connection);
+			return borrow();
+		}
+		return connection;
+	}
+
+	private PooledConnection open() throws SQLException {
+		logger.debug("mySQL: Opening connection {} of {} to database {}", new Object[] { openConnections.get(), size, url });
+		Properties properties = new Properties();
+		properties.setProperty("user", user);
+		if (password != null) {
+			properties.setProperty("password", password);
+		}
+		// let the server parse the statements only once and send batches as multi-row inserts
+		properties.setProperty("useServerPrepStmts", "true");
+		properties.setProperty("rewriteBatchedStatements", "true");
+		Connection connection = DriverManager.getConnection(url, properties);
+		if (waitTimeout != -1) {
+			logger.debug("mySQL: Setting wait_timeout to {} seconds.", waitTimeout);
+			Statement st = connection.createStatement();
+			try {
+				st.executeUpdate("SET SESSION wait_timeout=" + waitTimeout);
+			} finally {
+				st.close();
+			}
+		}
+		return new PooledConnection(connection);
+	}
+
+	/**
+	 * Hands a connection back to the pool after it has been used successfully.
+	 *
+	 * @param connection the connection to hand back
+	 */
+	public void release(PooledConnection connection) {
+		if (closed) {
+			invalidate(connection);
+		} else {
+			connection.lastUsed = System.currentTimeMillis();
+			idleConnections.offer(connection);
+		}
+	}
+
+	/**
+	 * Closes a connection, which must not be used anymore, e.g. because of an error.
+	 *
+	 * @param connection the connection to close
+	 */
+	public void invalidate(PooledConnection connection) {
+		openConnections.decrementAndGet();
+		connection.close();
+	}
+
+	/**
+	 * Closes all idle connections. Connections, which are currently in use, are closed
+	 * when they are handed back.
+	 */
+	public void close() {
+		closed = true;
+		PooledConnection connection;
+		while ((connection = idleConnections.poll()) != null) {
+			invalidate(connection);
+		}
+		logger.debug("mySQL: Disconnected from database {}", url);
+	}
+
+	/**
+	 * A connection of the pool together with its prepared statements.
+	 */
+	public static class PooledConnection {
+
+		private final Connection connection;
+
+		private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > STATEMENT_CACHE_SIZE) {
+					closeStatement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+
+		private long lastUsed = System.currentTimeMillis();
+
+		PooledConnection(Connection connection) {
+			this.connection = connection;
+		}
+
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Returns a prepared statement for the given SQL command. The statement is cached,
+		 * so it must not be closed by the caller.
+		 *
+		 * @param sql the SQL command to prepare
+		 * @return the prepared statement
+		 * @throws SQLException if the statement cannot be prepared
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = connection.prepareStatement(sql);
+				statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		private boolean validate() {
+			if (System.currentTimeMillis() - lastUsed < VALIDATION_INTERVAL) {
+				return true;
+			}
+			try {
+				return connection.isValid(5);
+			} catch (SQLException e) {
+				return false;
+			}
+		}
+
+		private void close() {
+			for (PreparedStatement statement : statements.values()) {
+				closeStatement(statement);
+			}
+			statements.clear();
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.debug("mySQL: Failed to close connection: {}", e.getMessage());
+			}
+		}
+
+		private static void closeStatement(PreparedStatement statement) {
+			try {
+				statement.close();
+			} catch (SQLException hidden) {
+			}
+		}
+	}
+
+}
@@ -9,20 +9,24 @@
 package org.openhab.persistence.mysql.internal;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.text.SimpleDateFormat;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,15 +49,21 @@ import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.AggregatedHistoricItem;
+import org.openhab.core.persistence.Aggregation;
+import org.openhab.core.persistence.AggregationHelper;
+import org.openhab.core.persistence.BatchPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceEntry;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.PersistentStateRestorer;
-import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.osgi.service.cm.ConfigurationException;
+import org.openhab.persistence.mysql.internal.MysqlConnectionPool.PooledConnection;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,17 +89,24 @@ import org.slf4j.LoggerFactory;
  * keep the best resolution, we store as a number in SQL and convert to
  * DecimalType before persisting to MySQL.
  * 
+ * Aggregations of numeric items are calculated by the database.
+ * 
+ * The service uses a small pool of connections with prepared statements, which
+ * are cached for each item table. Queued states are written in batches.
+ * 
  * @author Henrik Sjöstrand
  * @author Thomas.Eichstaedt-Engelen
  * @author Chris Jackson
  * @since 1.1.0
  */
-public class MysqlPersistenceService implements QueryablePersistenceService, ManagedService {
+public class MysqlPersistenceService implements AggregatingPersistenceService, BatchPersistenceService, ManagedService {
 
 	private static final Pattern EXTRACT_CONFIG_PATTERN = Pattern.compile("^(.*?)\\.([0-9.a-zA-Z]+)$");
 
 	private static final Logger logger = LoggerFactory.getLogger(MysqlPersistenceService.class);
 
+	private static final int DEFAULT_POOL_SIZE = 4;
+
 	private String driverClass = "com.mysql.jdbc.Driver";
 	private String url;
 	private String user;
@@ -100,14 +117,17 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 	private PersistentStateRestorer persistentStateRestorer;
 
 	// Error counter - used to reconnect to database on error
-	private int errCnt;
+	private final AtomicInteger errCnt = new AtomicInteger();
 	private int errReconnectThreshold = 0;
 	
 	private int waitTimeout = -1;
 
-	private Connection connection = null;
+	private int poolSize = DEFAULT_POOL_SIZE;
 
-	private Map<String, String> sqlTables = new HashMap<String, String>();
+	private volatile MysqlConnectionPool pool = null;
+
+	// translation of item names to tables, read from the Items table on connecting
+	private Map<String, String> sqlTables = new ConcurrentHashMap<String, String>();
 	private Map<String, String> sqlTypes = new HashMap<String, String>();
 
 	
@@ -152,26 +172,45 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		return "mysql";
 	}
 
-	private String getTable(Item item) {
-		Statement statement = null;
-		String sqlCmd = null;
-		int rowId = 0;
-
-		String itemName = item.getName();
-
-		String tableName = sqlTables.get(itemName);
+	/**
+	 * Returns the name of the table of the given item, creating the table if necessary.
+	 * 
+	 * @param connection the connection to use
+	 * @param item the item to get the table for
+	 * @return the name of the table, <code>null</code> if it could not be created
+	 */
+	private String getTable(PooledConnection connection, Item item) {
+		String tableName = sqlTables.get(item.getName());
 
 		// Table already exists - return the name
 		if (tableName != null)
 			return tableName;
 
+		// make sure that concurrent writers do not create the table twice
+		synchronized (sqlTables) {
+			tableName = sqlTables.get(item.getName());
+			if (tableName != null)
+				return tableName;
+			return createTable(connection, item);
+		}
+	}
+
+	private String createTable(PooledConnection connection, Item item) {
+		PreparedStatement statement = null;
+		String sqlCmd = null;
+		int rowId = 0;
+		String tableName = null;
+
+		String itemName = item.getName();
+
 		// Create a new entry in the Items table. This is the translation of
 		// item name to table
 		try {
-			sqlCmd = new String("INSERT INTO Items (ItemName) VALUES ('" + itemName + "')");
+			sqlCmd = new String("INSERT INTO Items (ItemName) VALUES (?)");
 
-			statement = connection.createStatement();
-			statement.executeUpdate(sqlCmd, Statement.RETURN_GENERATED_KEYS);
+			statement = connection.getConnection().prepareStatement(sqlCmd, Statement.RETURN_GENERATED_KEYS);
+			statement.setString(1, itemName);
+			statement.executeUpdate();
 
 			ResultSet resultSet = statement.getGeneratedKeys();
 			if (resultSet != null && resultSet.next()) {
@@ -186,7 +225,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 			tableName = new String("Item" + rowId);
 			logger.debug("mySQL: new item {} is Item{}", itemName, rowId);
 		} catch (SQLException e) {
-			errCnt++;
+			errCnt.incrementAndGet();
 			logger.error("mySQL: Could not create entry for '{}' in table 'Items' with statement '{}': {}", itemName, sqlCmd, e.getMessage());
 		} finally {
 			if (statement != null) {
@@ -216,22 +255,23 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 				+ ", PRIMARY KEY(Time));");
 		logger.debug("SQL: " + sqlCmd);
 
+		Statement createStatement = null;
 		try {
-			statement = connection.createStatement();
-			statement.executeUpdate(sqlCmd);
+			createStatement = connection.getConnection().createStatement();
+			createStatement.executeUpdate(sqlCmd);
 
 			logger.debug("mySQL: Table created for item '" + itemName + "' with datatype " + mysqlType
 					+ " in SQL database.");
 			sqlTables.put(itemName, tableName);
 		} catch (Exception e) {
-			errCnt++;
+			errCnt.incrementAndGet();
 			
 			logger.error("mySQL: Could not create table for item '" + itemName + "' with statement '" + sqlCmd + "': "
 					+ e.getMessage());			
 		} finally {
-			if (statement != null) {
+			if (createStatement != null) {
 				try {
-					statement.close();
+					createStatement.close();
 				} catch (Exception hidden) {
 				}
 			}
@@ -242,14 +282,16 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		// The item needs to be removed from the index table to avoid duplicates
 		if(sqlTables.get(itemName) == null) {
 			logger.error("mySQL: Item '{}' was not added to the table - removing index", itemName);
-			sqlCmd = new String("DELETE FROM Items WHERE ItemName='" + itemName+"'");
+			sqlCmd = new String("DELETE FROM Items WHERE ItemName=?");
 			logger.debug("SQL: {}", sqlCmd);
 	
+			statement = null;
 			try {
-				statement = connection.createStatement();
-				statement.executeUpdate(sqlCmd);	
+				statement = connection.getConnection().prepareStatement(sqlCmd);
+				statement.setString(1, itemName);
+				statement.executeUpdate();	
 			} catch (Exception e) {
-				errCnt++;
+				errCnt.incrementAndGet();
 				
 				logger.error("mySQL: Could not remove index for item '" + itemName + "' with statement '" + sqlCmd + "': "
 						+ e.getMessage());			
@@ -261,6 +303,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 					}
 				}
 			}
+			return null;
 		}			
 		
 		return tableName;
@@ -279,21 +322,13 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 			return;
 
 		// Connect to mySQL server if we're not already connected 
-		if (!isConnected())
-			connectToDatabase();
+		MysqlConnectionPool pool = getPool();
 
 		// If we still didn't manage to connect, then return!
-		if (!isConnected()) {
+		if (pool == null) {
 			logger.warn(
 					"mySQL: No connection to database. Can not persist item '{}'! Will retry connecting to database when error count:{} equals errReconnectThreshold:{}",
-					item,errCnt,errReconnectThreshold);
-			return;
-		}
-
-		// Get the table name for this item
-		String tableName = getTable(item);
-		if (tableName == null) {
-			logger.error("Unable to store item '{}'.", item.getName());
+					new Object[] { item, errCnt.get(), errReconnectThreshold });
 			return;
 		}
 
@@ -313,31 +348,37 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		}
 
 		String sqlCmd = null;
-		Statement statement = null;
+		PooledConnection connection = null;
 		try {
-			statement = connection.createStatement();
-			sqlCmd = new String("INSERT INTO " + tableName + " (TIME, VALUE) VALUES(NOW(),'"
-					+ item.getState().toString() + "') ON DUPLICATE KEY UPDATE VALUE='"
-					+ item.getState().toString() + "';");
-			statement.executeUpdate(sqlCmd);
-
-			logger.debug("mySQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", item.getName(), item.getState()
-					.toString(), value, (new java.util.Date()).toString());
-			logger.debug("mySQL: {}", sqlCmd);
-
-			// Success
-			errCnt = 0;
-		} catch (Exception e) {
-			errCnt++;
+			connection = pool.borrow();
+
+			// Get the table name for this item
+			String tableName = getTable(connection, item);
+			if (tableName == null) {
+				logger.error("Unable to store item '{}'.", item.getName());
+			} else {
+				sqlCmd = getInsertCommand(tableName, "NOW()");
+				PreparedStatement statement = connection.prepare(sqlCmd);
+				statement.setString(1, item.getState().toString());
+				statement.executeUpdate();
+
+				logger.debug("mySQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", new Object[] { item.getName(),
+						item.getState().toString(), value, (new java.util.Date()).toString() });
+				logger.debug("mySQL: {}", sqlCmd);
+
+				// Success
+				errCnt.set(0);
+			}
+			pool.release(connection);
+			connection = null;
+		} catch (SQLException e) {
+			errCnt.incrementAndGet();
 
-			logger.error("mySQL: Could not store item '{}' in database with statement '{}': {}", item.getName(),
-					sqlCmd, e.getMessage());
+			logger.error("mySQL: Could not store item '{}' in database with statement '{}': {}", new Object[] {
+					item.getName(), sqlCmd, e.getMessage() });
 		} finally {
-			if (statement != null) {
-				try {
-					statement.close();
-				} catch (Exception hidden) {
-				}
+			if (connection != null) {
+				pool.invalidate(connection);
 			}
 		}
 	}
@@ -350,57 +391,150 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 	}
 
 	/**
-	 * Checks if we have a database connection
+	 * Stores the entries with one batched statement for each item table in a
+	 * single transaction.
 	 * 
-	 * @return true if connection has been established, false otherwise
+	 * @{inheritDoc
 	 */
-	private boolean isConnected() {
-		//Check if connection is valid
+	public void store(List<PersistenceEntry> entries) {
+		// If we've not initialised the bundle, then return
+		if (initialized == false)
+			return;
+
+		MysqlConnectionPool pool = getPool();
+		if (pool == null) {
+			logger.warn("mySQL: No connection to database. Can not persist {} states! Will retry connecting to database when error count:{} equals errReconnectThreshold:{}",
+					new Object[] { entries.size(), errCnt.get(), errReconnectThreshold });
+			return;
+		}
+
+		PooledConnection connection = null;
 		try {
-			if (connection!= null && !connection.isValid(5000)) {
-				errCnt++;
-				logger.error("mySQL: Connection is not valid!");
+			long timerStart = System.currentTimeMillis();
+			connection = pool.borrow();
+
+			// group the entries by their tables, keeping the order of the updates
+			Map<String, List<PersistenceEntry>> entriesByTable = new LinkedHashMap<String, List<PersistenceEntry>>();
+			int count = 0;
+			for (PersistenceEntry entry : entries) {
+				// Don't log undefined/uninitialised data
+				if (entry.getState() instanceof UnDefType)
+					continue;
+				String tableName = getTable(connection, entry.getItem());
+				if (tableName == null) {
+					logger.error("Unable to store item '{}'.", entry.getItem().getName());
+					continue;
+				}
+				List<PersistenceEntry> tableEntries = entriesByTable.get(tableName);
+				if (tableEntries == null) {
+					tableEntries = new ArrayList<PersistenceEntry>();
+					entriesByTable.put(tableName, tableEntries);
+				}
+				tableEntries.add(entry);
+				count++;
+			}
+
+			Connection jdbcConnection = connection.getConnection();
+			jdbcConnection.setAutoCommit(false);
+			try {
+				for (Map.Entry<String, List<PersistenceEntry>> tableEntries : entriesByTable.entrySet()) {
+					PreparedStatement statement = connection.prepare(getInsertCommand(tableEntries.getKey(), "?"));
+					for (PersistenceEntry entry : tableEntries.getValue()) {
+						statement.setTimestamp(1, new Timestamp(entry.getTimestamp().getTime()));
+						statement.setString(2, entry.getState().toString());
+						statement.addBatch();
+					}
+					statement.executeBatch();
+				}
+				jdbcConnection.commit();
+			} catch (SQLException e) {
+				jdbcConnection.rollback();
+				throw e;
+			} finally {
+				jdbcConnection.setAutoCommit(true);
 			}
+			pool.release(connection);
+			connection = null;
+
+			logger.debug("mySQL: Stored {} states in {} tables in {}ms", new Object[] { count, entriesByTable.size(),
+					System.currentTimeMillis() - timerStart });
+
+			// Success
+			errCnt.set(0);
 		} catch (SQLException e) {
-			errCnt++;
-			
-			logger.error("mySQL: Error while checking connection: {}", e);
+			errCnt.incrementAndGet();
+			logger.error("mySQL: Could not store {} states in database: {}", entries.size(), e.getMessage());
+		} finally {
+			if (connection != null) {
+				pool.invalidate(connection);
+			}
 		}
-		
+	}
+
+	/**
+	 * Creates the command to insert or update the value of an item at a certain time.
+	 * 
+	 * @param tableName the table of the item
+	 * @param time the SQL expression for the time
+	 * @return the command with a parameter for the value
+	 */
+	private String getInsertCommand(String tableName, String time) {
+		return "INSERT INTO " + tableName + " (TIME, VALUE) VALUES(" + time + ",?) ON DUPLICATE KEY UPDATE VALUE=VALUES(VALUE)";
+	}
+
+	/**
+	 * Checks if we have a database connection
+	 * 
+	 * @return true if connection has been established, false otherwise
+	 */
+	private boolean isConnected() {
 		// Error check. If we have 'errReconnectThreshold' errors in a row, then
 		// reconnect to the database
-		if (errReconnectThreshold != 0 && errCnt >= errReconnectThreshold) {
+		if (errReconnectThreshold != 0 && errCnt.get() >= errReconnectThreshold) {
 			logger.error("mySQL: Error count exceeded {}. Disconnecting database.", errReconnectThreshold);
 			disconnectFromDatabase();
 		}
-		return connection != null;
+		return pool != null;
+	}
+
+	/**
+	 * Returns the connection pool, connecting to the database if necessary.
+	 * 
+	 * @return the connection pool, <code>null</code> if the database is not available
+	 */
+	private MysqlConnectionPool getPool() {
+		if (!isConnected())
+			connectToDatabase();
+		return pool;
 	}
 
 	/**
 	 * Connects to the database
 	 */
-	private void connectToDatabase() {
+	private synchronized void connectToDatabase() {
+		if (pool != null)
+			return;
+
+		MysqlConnectionPool newPool = null;
+		PooledConnection connection = null;
 		try {
 			// Reset the error counter
-			errCnt = 0;
+			errCnt.set(0);
 
 			logger.debug("mySQL: Attempting to connect to database {}", url);
 			Class.forName(driverClass).newInstance();
-			connection = DriverManager.getConnection(url, user, password);
+			newPool = new MysqlConnectionPool(url, user, password, poolSize, waitTimeout);
+			connection = newPool.borrow();
 			logger.debug("mySQL: Connected to database {}", url);
 
-			Statement st = connection.createStatement();
-			int result = st.executeUpdate("SHOW TABLES LIKE 'Items'");
+			Statement st = connection.getConnection().createStatement();
+			ResultSet rs = st.executeQuery("SHOW TABLES LIKE 'Items'");
+			boolean itemsTableExists = rs.next();
+			rs.close();
 			st.close();
-			
-			if(waitTimeout != -1) {
-				logger.debug("mySQL: Setting wait_timeout to {} seconds.", waitTimeout);
-				st = connection.createStatement();
-				st.executeUpdate("SET SESSION wait_timeout="+waitTimeout);
-				st.close();
-			}
-			if (result == 0) {
-				st = connection.createStatement();
+
+			if (!itemsTableExists) {
+				st = connection.getConnection().createStatement();
 				st.executeUpdate(
 						"CREATE TABLE Items (ItemId INT NOT NULL AUTO_INCREMENT,ItemName VARCHAR(200) NOT NULL,PRIMARY KEY (ItemId));",
 						Statement.RETURN_GENERATED_KEYS);
@@ -408,34 +542,39 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 			}
 
 			// Retrieve the table array
-			st = connection.createStatement();
+			st = connection.getConnection().createStatement();
 
 			// Turn use of the cursor on.
 			st.setFetchSize(50);
-			ResultSet rs = st.executeQuery("SELECT ItemId, ItemName FROM Items");
+			rs = st.executeQuery("SELECT ItemId, ItemName FROM Items");
 			while (rs.next()) {
 				sqlTables.put(rs.getString(2), "Item" + rs.getInt(1));
 			}
 			rs.close();
 			st.close();
+
+			newPool.release(connection);
+			connection = null;
+			pool = newPool;
 		} catch (Exception e) {
 			logger.error("mySQL: Failed connecting to the SQL database using: driverClass=" + driverClass + ", url="
 					+ url + ", user=" + user + ", password=" + password, e);
+			if (connection != null) {
+				newPool.invalidate(connection);
+			}
+			if (newPool != null) {
+				newPool.close();
+			}
 		}
 	}
 
 	/**
 	 * Disconnects from the database
 	 */
-	private void disconnectFromDatabase() {
-		if (connection != null) {
-			try {
-				connection.close();
-				logger.debug("mySQL: Disconnected from database {}", url);
-			} catch (Exception e) {
-				logger.error("mySQL: Failed disconnecting from the SQL database {}", e);
-			}
-			connection = null;
+	private synchronized void disconnectFromDatabase() {
+		if (pool != null) {
+			pool.close();
+			pool = null;
 		}
 	}
 
@@ -513,6 +652,14 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 				waitTimeout = Integer.parseInt(tmpString);
 			}
 
+			tmpString = (String) config.get("poolSize");
+			if (StringUtils.isNotBlank(tmpString)) {
+				poolSize = Integer.parseInt(tmpString);
+				if (poolSize < 1) {
+					throw new ConfigurationException("mysql:poolSize", "The pool size must be at least 1");
+				}
+			}
+
 			// reconnect to the database in case the configuration has changed.
 			disconnectFromDatabase();
 			connectToDatabase();
@@ -528,41 +675,16 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 
 	@Override
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
-		if (!initialized) {
-			logger.debug("Query aborted on item {} - mySQL not initialised!", filter.getItemName());
-			return Collections.emptyList();
-		}
-
-		if (!isConnected())
-			connectToDatabase();
-
-		if (!isConnected()) {
-			logger.debug("Query aborted on item {} - mySQL not connected!", filter.getItemName());
+		if (!isQueryable(filter)) {
 			return Collections.emptyList();
 		}
-
-		SimpleDateFormat mysqlDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		MysqlConnectionPool pool = this.pool;
 
 		// Get the item name from the filter
 		// Also get the Item object so we can determine the type
-		Item item = null;
 		String itemName = filter.getItemName();
 		logger.debug("mySQL query: item is {}", itemName);
-		try {
-			if (itemRegistry != null) {
-				item = itemRegistry.getItem(itemName);
-			}
-		} catch (ItemNotFoundException e1) {
-			logger.error("Unable to get item type for {}", itemName);
-
-			// Set type to null - data will be returned as StringType
-			item = null;
-		}
-                   
-        if(item instanceof GroupItem){
-            // For Group Items is BaseItem needed to get correct Type of Value.
-            item = GroupItem.class.cast(item).getBaseItem();
-        }
+		Item item = getItem(itemName);
 
 		String table = sqlTables.get(itemName);
 		if (table == null) {
@@ -570,22 +692,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 			return Collections.emptyList();
 		}
 
-		String filterString = new String();
-
-		if (filter.getBeginDate() != null) {
-			if (filterString.isEmpty())
-				filterString += " WHERE";
-			else
-				filterString += " AND";
-			filterString += " TIME>'" + mysqlDateFormat.format(filter.getBeginDate()) + "'";
-		}
-		if (filter.getEndDate() != null) {
-			if (filterString.isEmpty())
-				filterString += " WHERE";
-			else
-				filterString += " AND";
-			filterString += " TIME<'" + mysqlDateFormat.format(filter.getEndDate().getTime()) + "'";
-		}
+		String filterString = getFilterString(filter);
 
 		if (filter.getOrdering() == Ordering.ASCENDING) {
 			filterString += " ORDER BY Time ASC";
@@ -593,70 +700,348 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 			filterString += " ORDER BY Time DESC";
 		}
 
-		if (filter.getPageSize() != 0x7fffffff)
-			filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
+		boolean paged = filter.getPageSize() != 0x7fffffff;
+		if (paged)
+			filterString += " LIMIT ?,?";
 
+		PooledConnection connection = null;
 		try {
 			long timerStart = System.currentTimeMillis();
 
-			// Retrieve the table array
-			Statement st = connection.createStatement();
-
-			String queryString = new String();
-			queryString = "SELECT Time, Value FROM " + table;
-			if (!filterString.isEmpty())
-				queryString += filterString;
-
+			String queryString = "SELECT Time, Value FROM " + table + filterString;
 			logger.debug("mySQL: " + queryString);
 
+			connection = pool.borrow();
+			PreparedStatement st = connection.prepare(queryString);
+			int index = setFilterParameters(st, filter, 1);
+			if (paged) {
+				st.setInt(index++, filter.getPageNumber() * filter.getPageSize());
+				st.setInt(index++, filter.getPageSize());
+			}
+
 			// Turn use of the cursor on.
 			st.setFetchSize(50);
 
-			ResultSet rs = st.executeQuery(queryString);
+			ResultSet rs = st.executeQuery();
 
 			long count = 0;
 			List<HistoricItem> items = new ArrayList<HistoricItem>();
-			State state;
 			while (rs.next()) {
 				count++;
 
-				if (item instanceof NumberItem)
-					state = new DecimalType(rs.getDouble(2));
-				else if (item instanceof ColorItem)
-					state = new HSBType(rs.getString(2));
-				else if (item instanceof DimmerItem)
-					state = new PercentType(rs.getInt(2));
-				else if (item instanceof SwitchItem)
-					state = OnOffType.valueOf(rs.getString(2));
-				else if (item instanceof ContactItem)
-					state = OpenClosedType.valueOf(rs.getString(2));
-				else if (item instanceof RollershutterItem)
-					state = new PercentType(rs.getInt(2));
-				else if (item instanceof DateTimeItem) {
-					Calendar calendar = Calendar.getInstance();
-					calendar.setTimeInMillis(rs.getTimestamp(2).getTime());
-					state = new DateTimeType(calendar);
-				} else
-					state = new StringType(rs.getString(2));
-
-				MysqlItem mysqlItem = new MysqlItem(itemName, state, rs.getTimestamp(1));
+				MysqlItem mysqlItem = new MysqlItem(itemName, getState(item, rs, 2), rs.getTimestamp(1));
 				items.add(mysqlItem);
 			}
 
 			rs.close();
-			st.close();
+			pool.release(connection);
+			connection = null;
 
 			long timerStop = System.currentTimeMillis();
 			logger.debug("mySQL: query returned {} rows in {}ms", count, timerStop - timerStart);
 
 			// Success
-			errCnt = 0;
+			errCnt.set(0);
 
 			return items;
 		} catch (SQLException e) {
-			errCnt++;
+			errCnt.incrementAndGet();
 			logger.error("mySQL: Error running querying : " + e.getMessage());
+		} finally {
+			if (connection != null) {
+				pool.invalidate(connection);
+			}
 		}
 		return null;
 	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public HistoricItem aggregate(FilterCriteria filter, Aggregation aggregation) {
+		String itemName = filter.getItemName();
+		Item item = getItem(itemName);
+		String table = sqlTables.get(itemName);
+		if (!isNumeric(item) || table == null || !isQueryable(filter)) {
+			return aggregateQuery(filter, aggregation);
+		}
+		MysqlConnectionPool pool = this.pool;
+
+		String queryString;
+		switch (aggregation) {
+			case MIN:
+				queryString = "SELECT Time, Value FROM " + table + getFilterString(filter) + " ORDER BY Value ASC, Time ASC LIMIT 1";
+				break;
+			case MAX:
+				queryString = "SELECT Time, Value FROM " + table + getFilterString(filter) + " ORDER BY Value DESC, Time ASC LIMIT 1";
+				break;
+			case FIRST:
+				queryString = "SELECT Time, Value FROM " + table + getFilterString(filter) + " ORDER BY Time ASC LIMIT 1";
+				break;
+			case LAST:
+				queryString = "SELECT Time, Value FROM " + table + getFilterString(filter) + " ORDER BY Time DESC LIMIT 1";
+				break;
+			default:
+				queryString = "SELECT MAX(Time), " + getAggregateFunction(aggregation) + ", COUNT(Value) FROM " + table + getFilterString(filter);
+		}
+		logger.debug("mySQL: {}", queryString);
+
+		PooledConnection connection = null;
+		try {
+			long timerStart = System.currentTimeMillis();
+			connection = pool.borrow();
+			PreparedStatement st = connection.prepare(queryString);
+			setFilterParameters(st, filter, 1);
+			ResultSet rs = st.executeQuery();
+
+			HistoricItem result = null;
+			if (rs.next()) {
+				switch (aggregation) {
+					case MIN:
+					case MAX:
+					case FIRST:
+					case LAST:
+						result = new MysqlItem(itemName, getState(item, rs, 2), rs.getTimestamp(1));
+						break;
+					default:
+						long count = rs.getLong(3);
+						Date timestamp = count > 0 ? rs.getTimestamp(1) : new Date();
+						if (count > 0 || aggregation == Aggregation.COUNT) {
+							result = new AggregatedHistoricItem(itemName, new DecimalType(rs.getDouble(2)), timestamp, count);
+						}
+				}
+			}
+			rs.close();
+			pool.release(connection);
+			connection = null;
+
+			logger.debug("mySQL: aggregation {} of item {} took {}ms",
+					new Object[] { aggregation, itemName, System.currentTimeMillis() - timerStart });
+			errCnt.set(0);
+			return result;
+		} catch (SQLException e) {
+			errCnt.incrementAndGet();
+			logger.error("mySQL: Error running aggregation query '{}': {}", queryString, e.getMessage());
+			return null;
+		} finally {
+			if (connection != null) {
+				pool.invalidate(connection);
+			}
+		}
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public Iterable<HistoricItem> aggregate(FilterCriteria filter, Aggregation aggregation, long interval) {
+		String itemName = filter.getItemName();
+		Item item = getItem(itemName);
+		String table = sqlTables.get(itemName);
+		long origin = filter.getBeginDate() != null ? filter.getBeginDate().getTime() : 0;
+		if (!isNumeric(item) || table == null || aggregation == Aggregation.FIRST || aggregation == Aggregation.LAST
+				|| !isQueryable(filter)) {
+			Iterable<HistoricItem> result = query(filter);
+			if (result == null) {
+				return Collections.emptyList();
+			}
+			return AggregationHelper.aggregate(itemName, result, aggregation, origin, interval);
+		}
+		MysqlConnectionPool pool = this.pool;
+
+		// the buckets are calculated from the UTC epoch milliseconds, so that they do not depend on the time zone
+		String queryString = "SELECT FLOOR((UNIX_TIMESTAMP(Time) * 1000 - ?) / ?) AS Bucket, "
+				+ getAggregateFunction(aggregation) + ", COUNT(Value) FROM " + table + getFilterString(filter)
+				+ " GROUP BY Bucket ORDER BY Bucket";
+		logger.debug("mySQL: {}", queryString);
+
+		PooledConnection connection = null;
+		try {
+			long timerStart = System.currentTimeMillis();
+			connection = pool.borrow();
+			PreparedStatement st = connection.prepare(queryString);
+			st.setLong(1, origin);
+			st.setLong(2, interval);
+			setFilterParameters(st, filter, 3);
+			ResultSet rs = st.executeQuery();
+
+			List<HistoricItem> items = new ArrayList<HistoricItem>();
+			while (rs.next()) {
+				Date timestamp = new Date(origin + rs.getLong(1) * interval);
+				State state = (aggregation == Aggregation.MIN || aggregation == Aggregation.MAX) ? getState(item, rs, 2)
+						: new DecimalType(rs.getDouble(2));
+				items.add(new AggregatedHistoricItem(itemName, state, timestamp, rs.getLong(3)));
+			}
+			rs.close();
+			pool.release(connection);
+			connection = null;
+
+			logger.debug("mySQL: aggregation {} of item {} returned {} intervals in {}ms",
+					new Object[] { aggregation, itemName, items.size(), System.currentTimeMillis() - timerStart });
+			errCnt.set(0);
+			return items;
+		} catch (SQLException e) {
+			errCnt.incrementAndGet();
+			logger.error("mySQL: Error running aggregation query '{}': {}", queryString, e.getMessage());
+			return Collections.emptyList();
+		} finally {
+			if (connection != null) {
+				pool.invalidate(connection);
+			}
+		}
+	}
+
+	/**
+	 * Calculates an aggregation in Java from the result of a query. This is used for items
+	 * which are not stored as numbers.
+	 */
+	private HistoricItem aggregateQuery(FilterCriteria filter, Aggregation aggregation) {
+		Iterable<HistoricItem> result = query(filter);
+		if (result == null) {
+			return null;
+		}
+		return AggregationHelper.aggregate(filter.getItemName(), result, aggregation);
+	}
+
+	private String getAggregateFunction(Aggregation aggregation) {
+		switch (aggregation) {
+			case COUNT:
+				return "COUNT(*)";
+			case MIN:
+				return "MIN(Value)";
+			case MAX:
+				return "MAX(Value)";
+			case AVG:
+				return "AVG(Value)";
+			case SUM:
+				return "SUM(Value)";
+			default:
+				throw new IllegalArgumentException("Aggregation " + aggregation + " is not available as an SQL function");
+		}
+	}
+
+	/**
+	 * Checks if the database is ready to be queried and connects to it if necessary.
+	 * 
+	 * @param filter the filter of the query, used for logging
+	 * @return true, if queries can be run
+	 */
+	private boolean isQueryable(FilterCriteria filter) {
+		if (!initialized) {
+			logger.debug("Query aborted on item {} - mySQL not initialised!", filter.getItemName());
+			return false;
+		}
+
+		if (!isConnected())
+			connectToDatabase();
+
+		if (!isConnected()) {
+			logger.debug("Query aborted on item {} - mySQL not connected!", filter.getItemName());
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the item with the given name from the item registry, so that the type
+	 * of its states can be determined. For groups, the base item is returned.
+	 * 
+	 * @param itemName the name of the item
+	 * @return the item, <code>null</code> if it does not exist
+	 */
+	private Item getItem(String itemName) {
+		Item item = null;
+		try {
+			if (itemRegistry != null) {
+				item = itemRegistry.getItem(itemName);
+			}
+		} catch (ItemNotFoundException e1) {
+			logger.error("Unable to get item type for {}", itemName);
+
+			// Set type to null - data will be returned as StringType
+			item = null;
+		}
+                   
+        if(item instanceof GroupItem){
+            // For Group Items is BaseItem needed to get correct Type of Value.
+            item = GroupItem.class.cast(item).getBaseItem();
+        }
+        return item;
+	}
+
+	/**
+	 * Checks if the states of the given item are stored as numbers.
+	 */
+	private boolean isNumeric(Item item) {
+		return item instanceof NumberItem || item instanceof DimmerItem || item instanceof RollershutterItem;
+	}
+
+	/**
+	 * Creates the WHERE clause for the dates of the given filter. The dates are
+	 * set as parameters by {@link #setFilterParameters(PreparedStatement, FilterCriteria, int)}.
+	 * 
+	 * @param filter the filter to create the clause for
+	 * @return the WHERE clause, an empty string if the filter has no dates
+	 */
+	private String getFilterString(FilterCriteria filter) {
+		String filterString = new String();
+
+		if (filter.getBeginDate() != null) {
+			if (filterString.isEmpty())
+				filterString += " WHERE";
+			else
+				filterString += " AND";
+			filterString += " TIME>?";
+		}
+		if (filter.getEndDate() != null) {
+			if (filterString.isEmpty())
+				filterString += " WHERE";
+			else
+				filterString += " AND";
+			filterString += " TIME<?";
+		}
+		return filterString;
+	}
+
+	/**
+	 * Sets the dates of the given filter as parameters of the statement.
+	 * 
+	 * @param statement the statement with a clause created by {@link #getFilterString(FilterCriteria)}
+	 * @param filter the filter to set the dates of
+	 * @param index the index of the first parameter to set
+	 * @return the index of the next parameter
+	 * @throws SQLException if the parameters cannot be set
+	 */
+	private int setFilterParameters(PreparedStatement statement, FilterCriteria filter, int index) throws SQLException {
+		if (filter.getBeginDate() != null) {
+			statement.setTimestamp(index++, new Timestamp(filter.getBeginDate().getTime()));
+		}
+		if (filter.getEndDate() != null) {
+			statement.setTimestamp(index++, new Timestamp(filter.getEndDate().getTime()));
+		}
+		return index;
+	}
+
+	/**
+	 * Converts the value in the given column of the current row to a state of the given item.
+	 */
+	private State getState(Item item, ResultSet rs, int column) throws SQLException {
+		if (item instanceof NumberItem)
+			return new DecimalType(rs.getDouble(column));
+		else if (item instanceof ColorItem)
+			return new HSBType(rs.getString(column));
+		else if (item instanceof DimmerItem)
+			return new PercentType(rs.getInt(column));
+		else if (item instanceof SwitchItem)
+			return OnOffType.valueOf(rs.getString(column));
+		else if (item instanceof ContactItem)
+			return OpenClosedType.valueOf(rs.getString(column));
+		else if (item instanceof RollershutterItem)
+			return new PercentType(rs.getInt(column));
+		else if (item instanceof DateTimeItem) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(rs.getTimestamp(column).getTime());
+			return new DateTimeType(calendar);
+		} else
+			return new StringType(rs.getString(column));
+	}
 }
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the most recently used rrd4j databases open, so that storing a value does
+ * not require to open and close the database file every time. The databases are
+ * opened with the memory-mapped NIO backend of rrd4j.
+ *
+ * <p>Every database which is requested from the pool must be released again. If the
+ * number of open databases exceeds the capacity of the pool, the least recently used
+ * databases which are not in use are closed.</p>
+ *
+ * <p>The pool does not synchronize the access to the databases, so the users of a
+ * database have to synchronize on it, if they need several operations to be atomic.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class RRD4jDatabasePool {
+
+	private static final Logger logger = LoggerFactory.getLogger(RRD4jDatabasePool.class);
+
+	/** the default maximum number of open databases */
+	public static final int DEFAULT_CAPACITY = 200;
+
+	private static final String BACKEND_FACTORY_NAME = "NIO";
+
+	/**
+	 * Creates the definition of a new database.
+	 */
+	public interface RrdDefProvider {
+
+		/**
+		 * @param name the name of the database
+		 * @param file the file of the database
+		 * @return the definition of the database
+		 */
+		RrdDef getRrdDef(String name, File file);
+	}
+
+	private final String folder;
+
+	private final RrdDefProvider rrdDefProvider;
+
+	private final RrdBackendFactory backendFactory;
+
+	private volatile int capacity = DEFAULT_CAPACITY;
+
+	/* the open databases by their names in the order of their last use */
+	private final LinkedHashMap<String, PooledDb> databases = new LinkedHashMap<String, PooledDb>(16, 0.75f, true);
+
+	/* the databases which are currently in use */
+	private final Map<RrdDb, PooledDb> usedDatabases = new IdentityHashMap<RrdDb, PooledDb>();
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * @param folder the folder of the database files
+	 * @param rrdDefProvider creates the definitions of new databases
+	 */
+	public RRD4jDatabasePool(String folder, RrdDefProvider rrdDefProvider) {
+		this.folder = folder;
+		this.rrdDefProvider = rrdDefProvider;
+		this.backendFactory = RrdBackendFactory.getFactory(BACKEND_FACTORY_NAME);
+	}
+
+	/**
+	 * Sets the maximum number of databases which are kept open.
+	 *
+	 * @param capacity the maximum number of open databases
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(capacity, 1);
+		synchronized (databases) {
+			closeEldestDatabases();
+		}
+	}
+
+	/**
+	 * Returns the database with the given name, which is created if it does not exist yet.
+	 * The database must be released by {@link #release(RrdDb)} after its use.
+	 *
+	 * @param name the name of the database
+	 * @return the database
+	 * @throws IOException if the database cannot be opened or created
+	 */
+	public RrdDb request(String name) throws IOException {
+		synchronized (databases) {
+			if (closed) {
+				throw new IOException("The rrd4j database pool has already been closed");
+			}
+			PooledDb pooledDb = databases.get(name);
+			if (pooledDb != null) {
+				hits++;
+			} else {
+				misses++;
+				pooledDb = new PooledDb(open(name));
+				databases.put(name, pooledDb);
+			}
+			pooledDb.users++;
+			usedDatabases.put(pooledDb.db, pooledDb);
+			closeEldestDatabases();
+			return pooledDb.db;
+		}
+	}
+
+	/**
+	 * Releases a database, which has been requested from the pool before.
+	 *
+	 * @param db the database to release
+	 */
+	public void release(RrdDb db) {
+		synchronized (databases) {
+			PooledDb pooledDb = usedDatabases.get(db);
+			if (pooledDb == null) {
+				logger.debug("Released rrd4j database '{}' does not belong to the pool", db.getPath());
+				return;
+			}
+			pooledDb.users--;
+			if (pooledDb.users == 0) {
+				usedDatabases.remove(db);
+				if (pooledDb.evicted) {
+					close(pooledDb.db);
+				} else {
+					closeEldestDatabases();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all databases, which are not in use. The databases in use are closed when they
+	 * are released. The pool cannot be used anymore after it has been closed.
+	 */
+	public void close() {
+		synchronized (databases) {
+			closed = true;
+			for (PooledDb pooledDb : databases.values()) {
+				pooledDb.evicted = true;
+				if (pooledDb.users == 0) {
+					close(pooledDb.db);
+				}
+			}
+			databases.clear();
+		}
+	}
+
+	/**
+	 * @return the number of open databases
+	 */
+	public int size() {
+		synchronized (databases) {
+			return databases.size();
+		}
+	}
+
+	/**
+	 * @return the number of requests of databases which have already been open
+	 */
+	public long getHitCount() {
+		synchronized (databases) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return the number of requests which required to open a database
+	 */
+	public long getMissCount() {
+		synchronized (databases) {
+			return misses;
+		}
+	}
+
+	private RrdDb open(String name) throws IOException {
+		File file = new File(folder + File.separator + name + ".rrd");
+		if (file.exists()) {
+			// recreate the RrdDb instance from the file
+			return new RrdDb(file.getAbsolutePath(), backendFactory);
+		} else {
+			File dbFolder = new File(folder);
+			if (!dbFolder.exists()) {
+				dbFolder.mkdirs();
+			}
+			// create a new database file
+			return new RrdDb(rrdDefProvider.getRrdDef(name, file), backendFactory);
+		}
+	}
+
+	private void closeEldestDatabases() {
+		// databases in use are not closed, so that there is never more than one instance per file
+		Iterator<PooledDb> iterator = databases.values().iterator();
+		while (databases.size() > capacity && iterator.hasNext()) {
+			PooledDb pooledDb = iterator.next();
+			if (pooledDb.users == 0) {
+				iterator.remove();
+				close(pooledDb.db);
+			}
+		}
+	}
+
+	private static void close(RrdDb db) {
+		try {
+			db.close();
+		} catch (IOException e) {
+			logger.debug("Error closing rrd4j database: {}", e.getMessage());
+		}
+	}
+
+	private static class PooledDb {
+		final RrdDb db;
+
+		/* the number of users which have requested the database and not released it yet */
+		int users = 0;
+
+		/* true, if the pool has been closed and the database is closed after its last use */
+		boolean evicted = false;
+
+		PooledDb(RrdDb db) {
+			this.db = db;
+		}
+	}
+
+}
@@ -15,13 +15,15 @@ import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -39,6 +41,7 @@ import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
+import org.openhab.persistence.rrd4j.internal.RRD4jDatabasePool.RrdDefProvider;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.rrd4j.ConsolFun;
@@ -70,7 +73,27 @@ public class RRD4jService implements QueryablePersistenceService, ManagedService
 
 	private static final Logger logger = LoggerFactory.getLogger(RRD4jService.class);
 
-	private Map<String,Timer> timers = new HashMap<String,Timer>();
+	/* the configuration key for the maximum number of open databases */
+	private static final String POOL_SIZE_KEY = "poolsize";
+
+	/* the number of stored values after which the statistics are logged */
+	private static final int STATISTICS_INTERVAL = 1000;
+
+	private final RRD4jDatabasePool pool = new RRD4jDatabasePool(DB_FOLDER, new RrdDefProvider() {
+		public RrdDef getRrdDef(String name, File file) {
+			return RRD4jService.this.getRrdDef(name, file);
+		}
+	});
+
+	/* the scheduler for storing values again, which could not be stored right away */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/* the pending retries by the names of their databases, which remove themselves when they are executed */
+	private final ConcurrentHashMap<String, Retry> retries = new ConcurrentHashMap<String, Retry>();
+
+	private final AtomicLong storeCount = new AtomicLong();
+
+	private final AtomicLong storeNanos = new AtomicLong();
 
 	protected ItemRegistry itemRegistry;
 
@@ -89,76 +112,106 @@ public class RRD4jService implements QueryablePersistenceService, ManagedService
 		return "rrd4j";
 	}
 
+	public void deactivate() {
+		scheduler.shutdownNow();
+		retries.clear();
+		pool.close();
+		logStatistics();
+	}
+
 	/**
 	 * @{inheritDoc}
 	 */
-	public synchronized void store(final Item item, final String alias) {
+	public void store(final Item item, final String alias) {
 		final String name = alias==null ? item.getName() : alias;
 		RrdDb db = getDB(name);
 		if(db!=null) {
-			ConsolFun function = getConsolidationFunction(db);
-			long now = System.currentTimeMillis()/1000;
-			if(function!=ConsolFun.AVERAGE) {
-				try {
-					// we store the last value again, so that the value change in the database is not interpolated, but
-					// happens right at this spot
-					if(now - 1 > db.getLastUpdateTime()) {
-						// only do it if there is not already a value
-						double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-						if(!Double.isNaN(lastValue)) {
-							Sample sample = db.createSample();
-							sample.setTime(now - 1);
-							sample.setValue(DATASOURCE_STATE, lastValue);
-							sample.update();
-							logger.debug("Stored '{}' with state '{}' in rrd4j database", name, mapToState(lastValue, item.getName()));
-						}
-					}
-				} catch (IOException e) {
-					logger.debug("Error re-storing last value: {}", e.getMessage());
+			long start = System.nanoTime();
+			try {
+				// the database is shared with all other threads, which store or query the same item
+				synchronized(db) {
+					store(db, item, name);
 				}
+			} finally {
+				pool.release(db);
+			}
+			long count = storeCount.incrementAndGet();
+			storeNanos.addAndGet(System.nanoTime() - start);
+			if(count % STATISTICS_INTERVAL == 0) {
+				logStatistics();
 			}
+		}
+	}
+
+	private void store(RrdDb db, final Item item, final String name) {
+		ConsolFun function = getConsolidationFunction(db);
+		long now = System.currentTimeMillis()/1000;
+		if(function!=ConsolFun.AVERAGE) {
 			try {
-				Sample sample = db.createSample();
-				sample.setTime(now);
-
-				DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
-				if (state!=null) {
-					double value = state.toBigDecimal().doubleValue();
-					if (db.getDatasource(DATASOURCE_STATE).getType()==DsType.COUNTER) { // counter values must be adjusted by stepsize
-						value = value * db.getRrdDef().getStep();
+				// we store the last value again, so that the value change in the database is not interpolated, but
+				// happens right at this spot
+				if(now - 1 > db.getLastUpdateTime()) {
+					// only do it if there is not already a value
+					double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+					if(!Double.isNaN(lastValue)) {
+						Sample sample = db.createSample();
+						sample.setTime(now - 1);
+						sample.setValue(DATASOURCE_STATE, lastValue);
+						sample.update();
+						logger.debug("Stored '{}' with state '{}' in rrd4j database", name, mapToState(lastValue, item.getName()));
 					}
-					sample.setValue(DATASOURCE_STATE, value);
-					sample.update();
-					logger.debug("Stored '{}' with state '{}' in rrd4j database", name, item.getState());
 				}
-			} catch (IllegalArgumentException e) {
-				if(e.getMessage().contains("at least one second step is required")) {
-
-					// we try to store the value one second later
-					TimerTask task = new TimerTask() {
-						public void run() {
-							store(item, name);
-						}
-					};
-					Timer timer = timers.get(name);
-					if(timer!=null) {
-						timer.cancel();
-						timers.remove(name);
-					}
-					timer = new Timer();
-					timers.put(name, timer);
-					timer.schedule(task, 1000);
-				} else {
-					logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+			} catch (IOException e) {
+				logger.debug("Error re-storing last value: {}", e.getMessage());
+			}
+		}
+		try {
+			Sample sample = db.createSample();
+			sample.setTime(now);
+
+			DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
+			if (state!=null) {
+				double value = state.toBigDecimal().doubleValue();
+				if (db.getDatasource(DATASOURCE_STATE).getType()==DsType.COUNTER) { // counter values must be adjusted by stepsize
+					value = value * db.getRrdDef().getStep();
 				}
-			} catch (Exception e) {
-				logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+				sample.setValue(DATASOURCE_STATE, value);
+				sample.update();
+				logger.debug("Stored '{}' with state '{}' in rrd4j database", name, item.getState());
 			}
-			try {
-				db.close();
-			} catch (IOException e) {
-				logger.debug("Error closing rrd4j database: {}", e.getMessage());
+		} catch (IllegalArgumentException e) {
+			if(e.getMessage().contains("at least one second step is required")) {
+				// we try to store the value one second later
+				scheduleRetry(item, name);
+			} else {
+				logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
 			}
+		} catch (Exception e) {
+			logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+		}
+	}
+
+	private void scheduleRetry(Item item, String name) {
+		Retry retry = new Retry(item, name);
+		Retry previous = retries.put(name, retry);
+		if(previous!=null) {
+			// only the most recent value is stored again
+			previous.cancel();
+		}
+		try {
+			retry.future = scheduler.schedule(retry, 1, TimeUnit.SECONDS);
+		} catch(RejectedExecutionException e) {
+			// this happens if the service is shut down
+			retries.remove(name, retry);
+			logger.debug("Could not persist '{}' to rrd4j database: {}", name, e.getMessage());
+		}
+	}
+
+	private void logStatistics() {
+		long count = storeCount.get();
+		if(count > 0) {
+			logger.debug("rrd4j statistics: {} values stored, average write latency {} ms, {} open databases, {} pool hits, {} pool misses",
+					new Object[] { count, storeNanos.get() / count / 1000000.0, pool.size(), pool.getHitCount(), pool.getMissCount() });
 		}
 	}
 
@@ -174,77 +227,110 @@ public class RRD4jService implements QueryablePersistenceService, ManagedService
 		String itemName = filter.getItemName();
 		RrdDb db = getDB(itemName);
 		if(db!=null) {
-			ConsolFun consolidationFunction = getConsolidationFunction(db);
-			long start = 0L;
-			long end = filter.getEndDate()==null ? System.currentTimeMillis()/1000 : filter.getEndDate().getTime()/1000;
-
 			try {
-				if(filter.getBeginDate()==null) {
-					// as rrd goes back for years and gets more and more inaccurate, we only support descending order and a single return value
-					// if there is no begin date is given - this case is required specifically for the historicState() query, which we
-					// want to support
-					if(filter.getOrdering()==Ordering.DESCENDING && filter.getPageSize()==1 && filter.getPageNumber()==0) {
-						if(filter.getEndDate()==null) {
-							// we are asked only for the most recent value!
-							double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-							if(!Double.isNaN(lastValue)) {
-								HistoricItem rrd4jItem = new RRD4jItem(itemName, mapToState(lastValue, itemName), new Date(db.getLastArchiveUpdateTime() * 1000));
-								return Collections.singletonList(rrd4jItem);
-							} else {
-								return Collections.emptyList();
-							}
+				synchronized(db) {
+					return query(db, filter);
+				}
+			} finally {
+				pool.release(db);
+			}
+		}
+		return Collections.emptyList();
+	}
+
+	private Iterable<HistoricItem> query(RrdDb db, FilterCriteria filter) {
+		String itemName = filter.getItemName();
+		ConsolFun consolidationFunction = getConsolidationFunction(db);
+		long start = 0L;
+		long end = filter.getEndDate()==null ? System.currentTimeMillis()/1000 : filter.getEndDate().getTime()/1000;
+
+		try {
+			if(filter.getBeginDate()==null) {
+				// as rrd goes back for years and gets more and more inaccurate, we only support descending order and a single return value
+				// if there is no begin date is given - this case is required specifically for the historicState() query, which we
+				// want to support
+				if(filter.getOrdering()==Ordering.DESCENDING && filter.getPageSize()==1 && filter.getPageNumber()==0) {
+					if(filter.getEndDate()==null) {
+						// we are asked only for the most recent value!
+						double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+						if(!Double.isNaN(lastValue)) {
+							HistoricItem rrd4jItem = new RRD4jItem(itemName, mapToState(lastValue, itemName), new Date(db.getLastArchiveUpdateTime() * 1000));
+							return Collections.singletonList(rrd4jItem);
 						} else {
-							start = end;
+							return Collections.emptyList();
 						}
 					} else {
-						throw new UnsupportedOperationException("rrd4j does not allow querys without a begin date, " + 
-								"unless order is descending and a single value is requested");
+						start = end;
 					}
 				} else {
-					start = filter.getBeginDate().getTime()/1000;
+					throw new UnsupportedOperationException("rrd4j does not allow querys without a begin date, " + 
+							"unless order is descending and a single value is requested");
 				}
-				FetchRequest request = db.createFetchRequest(consolidationFunction, start, end, 1);
-
-				List<HistoricItem> items = new ArrayList<HistoricItem>();
-				FetchData result = request.fetchData();
-				long ts = result.getFirstTimestamp();
-				long step = result.getRowCount() > 1 ? result.getStep() : 0;
-				for(double value : result.getValues(DATASOURCE_STATE)) {
-					if(!Double.isNaN(value)) {
-						RRD4jItem rrd4jItem = new RRD4jItem(itemName, mapToState(value, itemName), new Date(ts * 1000));
-						items.add(rrd4jItem);
-					}
-					ts += step;
+			} else {
+				start = filter.getBeginDate().getTime()/1000;
+			}
+			FetchRequest request = db.createFetchRequest(consolidationFunction, start, end, 1);
+
+			List<HistoricItem> items = new ArrayList<HistoricItem>();
+			FetchData result = request.fetchData();
+			long ts = result.getFirstTimestamp();
+			long step = result.getRowCount() > 1 ? result.getStep() : 0;
+			for(double value : result.getValues(DATASOURCE_STATE)) {
+				if(!Double.isNaN(value)) {
+					RRD4jItem rrd4jItem = new RRD4jItem(itemName, mapToState(value, itemName), new Date(ts * 1000));
+					items.add(rrd4jItem);
 				}
-				return items;
-			} catch (IOException e) {
-				logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
+				ts += step;
 			}
+			return items;
+		} catch (IOException e) {
+			logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
 		}
 		return Collections.emptyList();
 	}
 
-	protected synchronized RrdDb getDB(String alias) {
-		RrdDb db = null;
-		File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
+	/**
+	 * Fetches the values of an item from its database in the pool of open databases. The values
+	 * are consolidated by the function of the first archive and taken from the archive with the
+	 * best resolution, which covers the requested period.
+	 * 
+	 * @param itemName the name of the item
+	 * @param start the start of the period in seconds
+	 * @param end the end of the period in seconds
+	 * @return the fetched values or <code>null</code>, if there is no database for the item
+	 * @throws IOException if the database cannot be read
+	 */
+	public FetchData fetchData(String itemName, long start, long end) throws IOException {
+		// the database is not created just for being read
+		if(!new File(DB_FOLDER + File.separator + itemName + ".rrd").exists()) {
+			return null;
+		}
+		RrdDb db = pool.request(itemName);
 		try {
-			if (file.exists()) {
-				// recreate the RrdDb instance from the file
-				db = new RrdDb(file.getAbsolutePath());
-			} else {
-				File folder = new File(DB_FOLDER);
-				if(!folder.exists()) {
-					folder.mkdirs();
-				}
-				// create a new database file
-				//db = new RrdDb(getRrdDef(function, file));
-				db = new RrdDb(getRrdDef(alias, file));
+			synchronized(db) {
+				return db.createFetchRequest(getConsolidationFunction(db), start, end, 1).fetchData();
 			}
+		} finally {
+			pool.release(db);
+		}
+	}
+
+	/**
+	 * Returns the database of an item from the pool of open databases. The database
+	 * must be released to the pool after its use.
+	 * 
+	 * @param alias the name of the database
+	 * @return the database or <code>null</code>, if it cannot be opened or created
+	 */
+	protected RrdDb getDB(String alias) {
+		RrdDb db = null;
+		try {
+			db = pool.request(alias);
 		} catch (IOException e) {
-			logger.error("Could not create rrd4j database file '{}': {}", new String[] { file.getAbsolutePath(), e.getMessage() });
+			logger.error("Could not create rrd4j database file '{}': {}", new String[] { alias, e.getMessage() });
 		} catch(RejectedExecutionException e) {
 			// this happens if the system is shut down
-			logger.debug("Could not create rrd4j database file '{}': {}", new String[] { file.getAbsolutePath(), e.getMessage() });
+			logger.debug("Could not create rrd4j database file '{}': {}", new String[] { alias, e.getMessage() });
 		}
 		return db;
 	}
@@ -354,6 +440,14 @@ public class RRD4jService implements QueryablePersistenceService, ManagedService
 				continue;
 			}
 
+			if (key.equals(POOL_SIZE_KEY)) {
+				String poolSize = (String) config.get(key);
+				if (StringUtils.isNotBlank(poolSize)) {
+					pool.setCapacity(Integer.parseInt(poolSize.trim()));
+				}
+				continue;
+			}
+
 			String[] subkeys = key.split("\\.");
 			if (subkeys.length != 2) {
 				logger.debug("config '{}' should have the format 'name.configkey'", key);
@@ -399,6 +493,38 @@ public class RRD4jService implements QueryablePersistenceService, ManagedService
 		}
 	}
 
+	/**
+	 * Stores the state of an item again, which could not be stored right away. The retry
+	 * removes itself from the pending retries, when it is executed.
+	 */
+	private class Retry implements Runnable {
+		private final Item item;
+		private final String name;
+		private volatile ScheduledFuture<?> future;
+		private volatile boolean cancelled = false;
+
+		public Retry(Item item, String name) {
+			this.item = item;
+			this.name = name;
+		}
+
+		public void run() {
+			retries.remove(name, this);
+			if(!cancelled) {
+				store(item, name);
+			}
+		}
+
+		public void cancel() {
+			// the retry might not have been scheduled yet
+			cancelled = true;
+			ScheduledFuture<?> scheduled = future;
+			if(scheduled!=null) {
+				scheduled.cancel(false);
+			}
+		}
+	}
+
 	private class RrdArchiveDef {
 		public ConsolFun fcn;
 		public double xff;
@@ -11,8 +11,8 @@ package org.openhab.persistence.rrd4j.internal.charts;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
-import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -29,6 +29,7 @@ import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.persistence.PersistenceService;
 import org.openhab.io.net.http.SecureHttpContext;
 import org.openhab.persistence.rrd4j.internal.RRD4jService;
 import org.openhab.ui.chart.ChartProvider;
@@ -36,9 +37,9 @@ import org.openhab.ui.items.ItemUIRegistry;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
-import org.rrd4j.ConsolFun;
-import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.FetchData;
 import org.rrd4j.core.RrdDef;
+import org.rrd4j.data.Plottable;
 import org.rrd4j.graph.RrdGraph;
 import org.rrd4j.graph.RrdGraphDef;
 import org.slf4j.Logger;
@@ -96,6 +97,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 	
 	protected HttpService httpService;
 	protected ItemUIRegistry itemUIRegistry;
+	protected RRD4jService rrd4jService;
 
 	public void setHttpService(HttpService httpService) {
 		this.httpService = httpService;
@@ -113,6 +115,14 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 		this.itemUIRegistry = null;
 	}
 
+	public void setPersistenceService(PersistenceService persistenceService) {
+		this.rrd4jService = (RRD4jService) persistenceService;
+	}
+
+	public void unsetPersistenceService(PersistenceService persistenceService) {
+		this.rrd4jService = null;
+	}
+
 	protected void activate() {
 		try {
 			logger.debug("Starting up rrd chart servlet at " + SERVLET_NAME);
@@ -169,33 +179,39 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 	/**
 	 * Adds a line for the item to the graph definition.
 	 * The color of the line is determined by the counter, it simply picks the according index from LINECOLORS (and rolls over if necessary).
+	 * The values are read from the database of the RRD4j persistence service, which is shared with the persistence service
+	 * through its pool of open databases, so that the file is not opened a second time.
 	 * 
 	 * @param graphDef the graph definition to fill
 	 * @param item the item to add a line for
 	 * @param counter defines the number of the datasource and is used to determine the line color
+	 * @param start the start of the chart in seconds
+	 * @param end the end of the chart in seconds
 	 */
-	protected void addLine(RrdGraphDef graphDef, Item item, int counter) {
+	protected void addLine(RrdGraphDef graphDef, Item item, int counter, long start, long end) {
 		Color color = LINECOLORS[counter%LINECOLORS.length];
 		String label = itemUIRegistry.getLabel(item.getName());
-		String rrdName = RRD4jService.DB_FOLDER + File.separator + item.getName() + ".rrd";
-		ConsolFun consolFun;
 		if(label!=null && label.contains("[") && label.contains("]")) {
 			label = label.substring(0, label.indexOf('['));
 		}
+		FetchData fetchData;
 		try {
-			RrdDb db = new RrdDb(rrdName);
-			consolFun = db.getRrdDef().getArcDefs()[0].getConsolFun();
-			db.close();
+			fetchData = rrd4jService.fetchData(item.getName(), start, end);
 		} catch (IOException e) {
-			consolFun = ConsolFun.MAX;
+			logger.debug("Could not read rrd4j database of item '{}': {}", item.getName(), e.getMessage());
+			return;
+		}
+		if(fetchData==null) {
+			logger.debug("There is no rrd4j database for item '{}'", item.getName());
+			return;
 		}
 		if(item instanceof NumberItem) {
 			// we only draw a line
-			graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); //RRD4jService.getConsolidationFunction(item));
+			graphDef.datasource(Integer.toString(counter), new FetchDataPlottable(fetchData));
 			graphDef.line(Integer.toString(counter), color, label, 2);
 		} else {
 			// we draw a line and fill the area beneath it with a transparent color
-			graphDef.datasource(Integer.toString(counter), rrdName, "state", consolFun); //RRD4jService.getConsolidationFunction(item));
+			graphDef.datasource(Integer.toString(counter), new FetchDataPlottable(fetchData));
 			Color areaColor = AREACOLORS[counter%LINECOLORS.length];
 
 			graphDef.area(Integer.toString(counter), areaColor);
@@ -254,6 +270,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 		RrdGraphDef graphDef = new RrdGraphDef();
 
 		long period = (startTime.getTime() - endTime.getTime()) / 1000;
+		long end = endTime.getTime() / 1000;
 		
 		graphDef.setWidth(width);
 		graphDef.setHeight(height);
@@ -271,7 +288,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 			String[] itemNames = items.split(",");
 			for (String itemName : itemNames) {
 				Item item = itemUIRegistry.getItem(itemName);
-				addLine(graphDef, item, seriesCounter++);
+				addLine(graphDef, item, seriesCounter++, end + period, end);
 			}
 		}
 
@@ -283,7 +300,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 				if (item instanceof GroupItem) {
 					GroupItem groupItem = (GroupItem) item;
 					for (Item member : groupItem.getMembers()) {
-						addLine(graphDef, member, seriesCounter++);
+						addLine(graphDef, member, seriesCounter++, end + period, end);
 					}
 				} else {
 					throw new ItemNotFoundException("Item '" + item.getName() + "' defined in groups is not a group.");
@@ -310,4 +327,33 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 	public ImageType getChartType() {
 		return ImageType.png;
 	}
+
+	/**
+	 * Provides the values, which have been fetched from a database, to a graph. Like in the
+	 * database, each value applies to the step, which ends at its timestamp.
+	 */
+	static class FetchDataPlottable extends Plottable {
+		private final long[] timestamps;
+		private final double[] values;
+		private final long step;
+
+		FetchDataPlottable(FetchData fetchData) {
+			this.timestamps = fetchData.getTimestamps();
+			this.values = fetchData.getValues(0);
+			this.step = fetchData.getStep();
+		}
+
+		@Override
+		public double getValue(long timestamp) {
+			int index = Arrays.binarySearch(timestamps, timestamp);
+			if(index < 0) {
+				// the first row, which ends after the timestamp
+				index = -index - 1;
+				if(index == timestamps.length || timestamps[index] - step >= timestamp) {
+					return Double.NaN;
+				}
+			}
+			return values[index];
+		}
+	}
 }
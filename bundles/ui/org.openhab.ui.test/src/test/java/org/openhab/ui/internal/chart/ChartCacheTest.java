@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.ui.internal.chart.ChartCache.CachedChart;
+
+/**
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+public class ChartCacheTest {
+
+	@Test
+	public void testCaching() throws Exception {
+		ChartCache cache = new ChartCache();
+		CountingRenderer renderer = new CountingRenderer();
+
+		CachedChart chart = cache.get("D", 60000, renderer);
+		assertSame(chart, cache.get("D", 60000, renderer));
+		assertEquals(1, renderer.count.get());
+
+		// other charts and expired charts are rendered
+		cache.get("W", 60000, renderer);
+		assertEquals(2, renderer.count.get());
+		CachedChart expiring = cache.get("h", 0, renderer);
+		assertNotSame(expiring, cache.get("h", 0, renderer));
+		assertEquals(4, renderer.count.get());
+
+		// the ETag depends on the content only
+		assertEquals(chart.getETag(), cache.get("W", 60000, renderer).getETag());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFailedRendering() throws Exception {
+		new ChartCache().get("D", 60000, new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				throw new IllegalArgumentException();
+			}
+		});
+	}
+
+	@Test
+	public void testConcurrentRendering() throws Exception {
+		final ChartCache cache = new ChartCache();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final CountingRenderer renderer = new CountingRenderer() {
+			@Override
+			public byte[] call() throws Exception {
+				started.countDown();
+				finish.await();
+				return super.call();
+			}
+		};
+
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					cache.get("D", 0, renderer);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		thread.start();
+		started.await();
+
+		// the second request waits for the rendering of the first one
+		Thread waiting = new Thread() {
+			@Override
+			public void run() {
+				try {
+					cache.get("D", 0, renderer);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		waiting.start();
+		while (waiting.getState() != Thread.State.WAITING) {
+			Thread.sleep(1);
+		}
+		finish.countDown();
+		thread.join();
+		waiting.join();
+		assertEquals(1, renderer.count.get());
+	}
+
+	private static class CountingRenderer implements Callable<byte[]> {
+		final AtomicInteger count = new AtomicInteger();
+
+		public byte[] call() throws Exception {
+			count.incrementAndGet();
+			return new byte[] { 1, 2, 3 };
+		}
+	}
+
+}
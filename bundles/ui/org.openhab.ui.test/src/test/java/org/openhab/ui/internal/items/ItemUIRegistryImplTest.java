@@ -9,12 +9,15 @@
 package org.openhab.ui.internal.items;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.text.DecimalFormatSymbols;
+import java.util.Calendar;
 
 import junit.framework.Assert;
 
@@ -27,9 +30,14 @@ import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.model.sitemap.ColorArray;
+import org.openhab.model.sitemap.Frame;
 import org.openhab.model.sitemap.Sitemap;
 import org.openhab.model.sitemap.SitemapFactory;
+import org.openhab.model.sitemap.Text;
+import org.openhab.model.sitemap.VisibilityRule;
 import org.openhab.model.sitemap.Widget;
 import org.openhab.ui.items.ItemUIProvider;
 
@@ -284,6 +292,28 @@ public class ItemUIRegistryImplTest {
 		assertEquals("Label [State]", label);
 	}
 	
+	@Test
+	public void getLabel_labelWithFunctionValueWithoutItem() {
+		String testLabel = "Label [MAP(de.map):value]";
+		Widget w = mock(Widget.class);
+		when(w.getLabel()).thenReturn(testLabel);
+		String label = uiRegistry.getLabel(w);
+		assertEquals("Label [value]", label);
+	}
+	
+	@Test
+	public void getLabel_labelWithUnclosedBracket() throws ItemNotFoundException {
+		String testLabel = "Label [%s";
+		Widget w = mock(Widget.class);
+		Item item = mock(Item.class);
+		when(w.getLabel()).thenReturn(testLabel);
+		when(w.getItem()).thenReturn("Item");
+		when(registry.getItem("Item")).thenReturn(item);
+		when(item.getState()).thenReturn(new StringType("State"));
+		String label = uiRegistry.getLabel(w);
+		assertEquals("Label [%s", label);
+	}
+	
 	@Test
 	public void getLabel_groupLabelWithValue() throws ItemNotFoundException {
 		String testLabel = "Label [%d]";
@@ -306,6 +336,257 @@ public class ItemUIRegistryImplTest {
 		assertNull(w);
 	}
 	
+	@Test
+	public void getVisibility_decimalConditions() throws ItemNotFoundException {
+		DecimalType state = new DecimalType(20);
+		assertTrue(isVisible("==", null, "20", state));
+		assertFalse(isVisible("==", null, "21", state));
+		assertTrue(isVisible("!=", null, "21", state));
+		assertFalse(isVisible("!=", null, "20", state));
+		assertTrue(isVisible(">", null, "19.5", state));
+		assertFalse(isVisible(">", null, "20", state));
+		assertTrue(isVisible("<", null, "21", state));
+		assertFalse(isVisible("<", null, "20", state));
+		assertTrue(isVisible(">=", null, "20", state));
+		assertFalse(isVisible(">=", null, "21", state));
+		assertTrue(isVisible("<=", null, "20", state));
+		assertFalse(isVisible("<=", null, "19", state));
+		assertTrue(isVisible(">", "-", "25", state));
+		assertFalse(isVisible("<", "-", "25", state));
+		// a value which is not a number never matches a decimal state
+		assertFalse(isVisible("!=", null, "ON", state));
+	}
+
+	@Test
+	public void getVisibility_stringConditions() throws ItemNotFoundException {
+		assertTrue(isVisible("==", null, "ON", OnOffType.ON));
+		assertFalse(isVisible("==", null, "ON", OnOffType.OFF));
+		assertTrue(isVisible("!=", null, "ON", OnOffType.OFF));
+		assertFalse(isVisible("!=", null, "ON", OnOffType.ON));
+		assertTrue(isVisible("==", null, "\"some text\"", new StringType("some text")));
+		assertFalse(isVisible("==", null, "ON", UnDefType.UNDEF));
+	}
+
+	@Test
+	public void getVisibility_dateTimeConditions() throws ItemNotFoundException {
+		Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.HOUR, -1);
+		DateTimeType anHourAgo = new DateTimeType(calendar);
+		// date time states are compared by their age in seconds
+		assertTrue(isVisible(">", null, "600", anHourAgo));
+		assertFalse(isVisible("<", null, "600", anHourAgo));
+		assertTrue(isVisible("<", null, "7200", anHourAgo));
+	}
+
+	@Test
+	public void getVisibility_rules() throws ItemNotFoundException {
+		Text w = createWidget(createSitemap());
+		assertTrue(uiRegistry.getVisiblity(w));
+
+		Item item = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		when(item.getState()).thenReturn(OnOffType.OFF);
+		w.getVisibility().add(createVisibilityRule("Item", "==", null, "ON"));
+		w.getVisibility().add(createVisibilityRule("Item", "==", null, "OPEN"));
+		assertFalse(uiRegistry.getVisiblity(w));
+
+		// any matching rule makes the widget visible
+		when(item.getState()).thenReturn(OnOffType.ON);
+		assertTrue(uiRegistry.getVisiblity(w));
+
+		// as well as a rule with an unknown item
+		when(item.getState()).thenReturn(OnOffType.OFF);
+		when(registry.getItem("Unknown")).thenThrow(new ItemNotFoundException("Unknown"));
+		w.getVisibility().add(createVisibilityRule("Unknown", "==", null, "ON"));
+		assertTrue(uiRegistry.getVisiblity(w));
+	}
+
+	@Test
+	public void getLabelColor_staticColor() {
+		Text w = createWidget(createSitemap());
+		assertNull(uiRegistry.getLabelColor(w));
+
+		w.getLabelColor().add(createColor(null, null, null, null, "\"red\""));
+		assertEquals("#ff0000", uiRegistry.getLabelColor(w));
+		assertNull(uiRegistry.getValueColor(w));
+	}
+
+	@Test
+	public void getValueColor_conditionalColors() throws ItemNotFoundException {
+		Item item = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		Text w = createWidget(createSitemap());
+		w.setItem("Item");
+		w.getValueColor().add(createColor(null, ">", null, "25", "red"));
+		w.getValueColor().add(createColor(null, ">=", null, "15", "\"orange\""));
+		w.getValueColor().add(createColor(null, "<", "-", "10", "blue"));
+		w.getValueColor().add(createColor(null, null, null, "0", "\"#123456\""));
+
+		when(item.getState()).thenReturn(new DecimalType(30));
+		assertEquals("#ff0000", uiRegistry.getValueColor(w));
+		when(item.getState()).thenReturn(new DecimalType(15));
+		assertEquals("#ffa500", uiRegistry.getValueColor(w));
+		when(item.getState()).thenReturn(new DecimalType(-20));
+		assertEquals("#0000ff", uiRegistry.getValueColor(w));
+		// without a condition, the value has to be equal
+		when(item.getState()).thenReturn(new DecimalType(0));
+		assertEquals("#123456", uiRegistry.getValueColor(w));
+		when(item.getState()).thenReturn(new DecimalType(5));
+		assertNull(uiRegistry.getValueColor(w));
+		assertNull(uiRegistry.getLabelColor(w));
+	}
+
+	@Test
+	public void getLabelColor_colorOfOtherItem() throws ItemNotFoundException {
+		Item item = mock(Item.class);
+		Item other = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		when(registry.getItem("Other")).thenReturn(other);
+		when(item.getState()).thenReturn(new DecimalType(30));
+		Text w = createWidget(createSitemap());
+		w.setItem("Item");
+		w.getLabelColor().add(createColor("Other", "==", null, "ON", "green"));
+		w.getLabelColor().add(createColor(null, ">", null, "25", "red"));
+
+		when(other.getState()).thenReturn(OnOffType.ON);
+		assertEquals("#008000", uiRegistry.getLabelColor(w));
+		when(other.getState()).thenReturn(OnOffType.OFF);
+		assertEquals("#ff0000", uiRegistry.getLabelColor(w));
+	}
+
+	@Test
+	public void getWidgetId() {
+		Sitemap sitemap = createSitemap();
+		Frame frame = SitemapFactory.eINSTANCE.createFrame();
+		sitemap.getChildren().add(frame);
+		Text first = createWidget(sitemap);
+		Text nested = SitemapFactory.eINSTANCE.createText();
+		frame.getChildren().add(SitemapFactory.eINSTANCE.createText());
+		frame.getChildren().add(nested);
+
+		assertEquals("00", uiRegistry.getWidgetId(frame));
+		assertEquals("01", uiRegistry.getWidgetId(first));
+		assertEquals("0001", uiRegistry.getWidgetId(nested));
+		// the ids are not computed again
+		assertEquals("0001", uiRegistry.getWidgetId(nested));
+	}
+
+	@Test
+	public void getWidgetId_afterSitemapChange() {
+		Sitemap sitemap = createSitemap();
+		Frame frame = SitemapFactory.eINSTANCE.createFrame();
+		sitemap.getChildren().add(frame);
+		Text nested = SitemapFactory.eINSTANCE.createText();
+		frame.getChildren().add(nested);
+		assertEquals("0000", uiRegistry.getWidgetId(nested));
+
+		// widgets which are inserted in front of a widget change its id
+		sitemap.getChildren().add(0, SitemapFactory.eINSTANCE.createText());
+		assertEquals("0100", uiRegistry.getWidgetId(nested));
+		frame.getChildren().add(0, SitemapFactory.eINSTANCE.createText());
+		assertEquals("0101", uiRegistry.getWidgetId(nested));
+	}
+
+	@Test
+	public void getLabel_afterSitemapChange() {
+		Text w = createWidget(createSitemap());
+		w.setLabel("Label");
+		assertEquals("Label", uiRegistry.getLabel(w));
+
+		w.setLabel("Changed label");
+		assertEquals("Changed label", uiRegistry.getLabel(w));
+	}
+
+	@Test
+	public void getVisibility_afterSitemapChange() throws ItemNotFoundException {
+		Item item = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		when(item.getState()).thenReturn(new DecimalType(20));
+		Text w = createWidget(createSitemap());
+		VisibilityRule rule = createVisibilityRule("Item", ">", null, "10");
+		w.getVisibility().add(rule);
+		assertTrue(uiRegistry.getVisiblity(w));
+
+		// the compiled conditions are dropped if the rules themselves are changed
+		rule.setState("30");
+		assertFalse(uiRegistry.getVisiblity(w));
+		rule.setCondition("<");
+		assertTrue(uiRegistry.getVisiblity(w));
+		w.getVisibility().clear();
+		when(item.getState()).thenReturn(new DecimalType(40));
+		assertTrue(uiRegistry.getVisiblity(w));
+	}
+
+	@Test
+	public void getValueColor_afterSitemapChange() throws ItemNotFoundException {
+		Item item = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		when(item.getState()).thenReturn(new DecimalType(20));
+		Text w = createWidget(createSitemap());
+		w.setItem("Item");
+		ColorArray color = createColor(null, ">", null, "10", "red");
+		w.getValueColor().add(color);
+		assertEquals("#ff0000", uiRegistry.getValueColor(w));
+
+		color.setArg("blue");
+		assertEquals("#0000ff", uiRegistry.getValueColor(w));
+		color.setState("30");
+		assertNull(uiRegistry.getValueColor(w));
+	}
+
+	@Test
+	public void getLabel_reloadedSitemap() {
+		Text w = createWidget(createSitemap());
+		w.setLabel("Label");
+		assertEquals("Label", uiRegistry.getLabel(w));
+
+		// a reloaded sitemap consists of new widgets, which are compiled again
+		Text reloaded = createWidget(createSitemap());
+		reloaded.setLabel("Reloaded label");
+		assertEquals("Reloaded label", uiRegistry.getLabel(reloaded));
+		assertEquals("00", uiRegistry.getWidgetId(reloaded));
+	}
+
+	private boolean isVisible(String condition, String sign, String value, State state) throws ItemNotFoundException {
+		Item item = mock(Item.class);
+		when(registry.getItem("Item")).thenReturn(item);
+		when(item.getState()).thenReturn(state);
+		Text w = createWidget(createSitemap());
+		w.getVisibility().add(createVisibilityRule("Item", condition, sign, value));
+		return uiRegistry.getVisiblity(w);
+	}
+
+	private static Sitemap createSitemap() {
+		Sitemap sitemap = SitemapFactory.eINSTANCE.createSitemap();
+		sitemap.setName("test");
+		return sitemap;
+	}
+
+	private static Text createWidget(Sitemap sitemap) {
+		Text w = SitemapFactory.eINSTANCE.createText();
+		sitemap.getChildren().add(w);
+		return w;
+	}
+
+	private static VisibilityRule createVisibilityRule(String item, String condition, String sign, String state) {
+		VisibilityRule rule = SitemapFactory.eINSTANCE.createVisibilityRule();
+		rule.setItem(item);
+		rule.setCondition(condition);
+		rule.setSign(sign);
+		rule.setState(state);
+		return rule;
+	}
+
+	private static ColorArray createColor(String item, String condition, String sign, String state, String arg) {
+		ColorArray color = SitemapFactory.eINSTANCE.createColorArray();
+		color.setItem(item);
+		color.setCondition(condition);
+		color.setSign(sign);
+		color.setState(state);
+		color.setArg(arg);
+		return color;
+	}
+
 	@Test
 	public void testFormatDefault() {
 		Assert.assertEquals("Server [(-)]", uiRegistry.formatUndefined("Server [(%d)]"));
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.chart;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Caches encoded charts, so that charts which are requested by several clients are
+ * rendered only once. Every chart is cached for a given time, after which it is
+ * rendered again on the next request. If a chart is requested while it is rendered,
+ * the request waits for the rendering instead of rendering the chart again.
+ *
+ * <p>The number of cached charts is limited, if it is exceeded, the least recently
+ * used charts are removed first.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class ChartCache {
+
+	/** the default maximum number of cached charts */
+	static final int DEFAULT_SIZE = 50;
+
+	private volatile int maxSize = DEFAULT_SIZE;
+
+	private final Map<String, CachedChart> charts = new LinkedHashMap<String, CachedChart>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CachedChart> eldest) {
+			return size() > maxSize;
+		}
+	};
+
+	/* the charts which are currently rendered */
+	private final Map<String, FutureTask<CachedChart>> renderings = new HashMap<String, FutureTask<CachedChart>>();
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * Sets the maximum number of cached charts, 0 disables caching. Concurrent requests
+	 * of the same chart are rendered only once anyway.
+	 *
+	 * @param maxSize the maximum number of cached charts
+	 */
+	synchronized void setMaxSize(int maxSize) {
+		this.maxSize = Math.max(maxSize, 0);
+		while (charts.size() > this.maxSize) {
+			charts.remove(charts.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Returns a cached chart or renders it, if it is not cached or has expired.
+	 *
+	 * @param key the key of the chart, which must contain all parameters of the chart
+	 * @param timeToLive the time in milliseconds for which the rendered chart is cached
+	 * @param renderer renders the encoded chart
+	 * @return the chart
+	 * @throws Exception the exception of the renderer, if the chart could not be rendered
+	 */
+	CachedChart get(String key, final long timeToLive, final Callable<byte[]> renderer) throws Exception {
+		FutureTask<CachedChart> rendering;
+		boolean render = false;
+		synchronized (this) {
+			CachedChart chart = charts.get(key);
+			if (chart != null && !chart.isExpired()) {
+				hits++;
+				return chart;
+			}
+			rendering = renderings.get(key);
+			if (rendering == null) {
+				misses++;
+				rendering = new FutureTask<CachedChart>(new Callable<CachedChart>() {
+					public CachedChart call() throws Exception {
+						byte[] data = renderer.call();
+						return new CachedChart(data, System.currentTimeMillis() + timeToLive);
+					}
+				});
+				renderings.put(key, rendering);
+				render = true;
+			}
+		}
+
+		if (render) {
+			// the chart is rendered without holding the lock, all other requests of it wait for the result
+			rendering.run();
+			synchronized (this) {
+				renderings.remove(key);
+				try {
+					charts.put(key, rendering.get());
+				} catch (ExecutionException e) {
+					// failed renderings are not cached
+				}
+			}
+		}
+
+		try {
+			return rendering.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes all charts from the cache.
+	 */
+	synchronized void clear() {
+		charts.clear();
+	}
+
+	/**
+	 * @return the number of requests which have been served from the cache
+	 */
+	synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of requests which required to render the chart
+	 */
+	synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * An encoded chart together with its entity tag for conditional requests.
+	 */
+	static class CachedChart {
+		private final byte[] data;
+		private final String eTag;
+		private final long expires;
+
+		CachedChart(byte[] data, long expires) {
+			this.data = data;
+			this.eTag = createETag(data);
+			this.expires = expires;
+		}
+
+		/**
+		 * @return the encoded chart
+		 */
+		byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * @return the quoted entity tag of the chart, which is derived from its content
+		 */
+		String getETag() {
+			return eTag;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
+		}
+
+		private static String createETag(byte[] data) {
+			try {
+				byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+				return "\"" + new BigInteger(1, digest).toString(16) + "\"";
+			} catch (NoSuchAlgorithmException e) {
+				return "\"" + Integer.toHexString(Arrays.hashCode(data)) + "\"";
+			}
+		}
+	}
+
+}
@@ -10,6 +10,7 @@ package org.openhab.ui.internal.chart;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -19,6 +20,7 @@ import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import javax.imageio.ImageIO;
 import javax.servlet.ServletConfig;
@@ -30,6 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.io.net.http.SecureHttpContext;
 import org.openhab.ui.chart.ChartProvider;
+import org.openhab.ui.internal.chart.ChartCache.CachedChart;
 import org.openhab.ui.items.ItemUIRegistry;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
@@ -54,6 +57,10 @@ import org.slf4j.LoggerFactory;
  * <li>service: The persistence service name. If not supplied the first service found will be used.</li>
  * </ul>
  * 
+ * Rendered charts are cached for the time span of a pixel of the chart and identical
+ * charts, which are requested at the same time, are rendered only once. The charts are
+ * sent with an ETag, so that clients can validate their cached charts.
+ * 
  * @author Chris Jackson
  * @since 1.4.0
  * 
@@ -70,10 +77,15 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 	
 	private static final Logger logger = LoggerFactory.getLogger(ChartServlet.class);	
 
+	/* the minimum time in milliseconds for which a rendered chart is cached */
+	private static final long MIN_CACHE_TIME = 1000;
+
 	protected String providerName = "default";
 	protected Integer defaultHeight = CHART_HEIGHT;
 	protected Integer defaultWidth = CHART_WIDTH;
 	protected Double scale = 1.0;
+
+	protected final ChartCache chartCache = new ChartCache();
 	
 	// The URI of this servlet
 	public static final String SERVLET_NAME = "/chart";
@@ -150,6 +162,7 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 
 	protected void deactivate() {
 		httpService.unregister(SERVLET_NAME);
+		chartCache.clear();
 	}
 
 	@Override
@@ -233,25 +246,76 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 
 
 		// If a persistence service is specified, find the provider
-		String serviceName = req.getParameter("service");
+		final String serviceName = req.getParameter("service");
 
-		ChartProvider provider = getChartProviders().get(providerName);
+		final ChartProvider provider = getChartProviders().get(providerName);
 		if (provider == null)
 			throw new ServletException("Could not get chart provider.");
 
 		// Set the content type to that provided by the chart provider
 		res.setContentType("image/" + provider.getChartType());
+
+		// the chart cannot change visibly before the time span of a pixel has passed
+		long cacheTime = Math.max((timeEnd.getTime() - timeBegin.getTime()) / Math.max(width, 1), MIN_CACHE_TIME);
+		final String items = req.getParameter("items");
+		final String groups = req.getParameter("groups");
+		String key = providerName + "|" + serviceName + "|" + items + "|" + groups
+				+ "|" + req.getParameter("period") + "|" + req.getParameter("begin") + "|" + req.getParameter("end")
+				+ "|" + width + "x" + height;
+
+		final Date begin = timeBegin;
+		final Date end = timeEnd;
+		final int chartHeight = height;
+		final int chartWidth = width;
 		try {
-			BufferedImage chart = provider.createChart(serviceName, null, timeBegin, timeEnd, height, width,
-					req.getParameter("items"), req.getParameter("groups"));
-			ImageIO.write(chart, provider.getChartType().toString(), res.getOutputStream());
+			CachedChart chart = chartCache.get(key, cacheTime, new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					BufferedImage chart = provider.createChart(serviceName, null, begin, end, chartHeight, chartWidth,
+							items, groups);
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					ImageIO.write(chart, provider.getChartType().toString(), out);
+					return out.toByteArray();
+				}
+			});
+
+			res.setHeader("ETag", chart.getETag());
+			if (matchesETag(req.getHeader("If-None-Match"), chart.getETag())) {
+				res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+				return;
+			}
+			res.setContentLength(chart.getData().length);
+			res.getOutputStream().write(chart.getData());
 		} catch (ItemNotFoundException e) {
 			logger.info("Item not found error while generating chart: {}", e);
 		} catch (IllegalArgumentException e) {
 			logger.info("Illegal argument in chart: {}", e);
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ServletException("Error while generating chart", e);
 		}
 	}
 
+	/**
+	 * Checks whether the value of an If-None-Match header contains the given entity tag.
+	 * 
+	 * @param ifNoneMatch the value of the header or <code>null</code>
+	 * @param eTag the entity tag of the chart
+	 * @return <code>true</code>, if the client has the chart already
+	 */
+	private static boolean matchesETag(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = tag.trim();
+			if (tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Creates a {@link SecureHttpContext} which handles the security for this
 	 * servlet
@@ -312,6 +376,11 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 			if(scale < 0.5)
 				scale = 1.0;
 		}
+		if(properties.get("cacheSize") != null) {
+			chartCache.setMaxSize(Integer.parseInt((String)properties.get("cacheSize")));
+		}
+		// the defaults or the provider might have changed
+		chartCache.clear();
 	}
 
 }
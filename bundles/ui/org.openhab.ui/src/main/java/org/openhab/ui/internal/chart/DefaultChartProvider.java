@@ -28,6 +28,7 @@ import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.persistence.DownsamplingHelper;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
@@ -181,7 +182,7 @@ public class DefaultChartProvider implements ChartProvider {
 			String[] itemNames = items.split(",");
 			for (String itemName : itemNames) {
 				Item item = itemUIRegistry.getItem(itemName);
-				if(addItem(chart, persistenceService, startTime, endTime, item, seriesCounter))
+				if(addItem(chart, persistenceService, startTime, endTime, item, seriesCounter, width))
 					seriesCounter++;
 			}
 		}
@@ -194,7 +195,7 @@ public class DefaultChartProvider implements ChartProvider {
 				if (item instanceof GroupItem) {
 					GroupItem groupItem = (GroupItem) item;
 					for (Item member : groupItem.getMembers()) {
-						if(addItem(chart, persistenceService, startTime, endTime, member, seriesCounter))
+						if(addItem(chart, persistenceService, startTime, endTime, member, seriesCounter, width))
 							seriesCounter++;
 					}
 				} else {
@@ -260,7 +261,7 @@ public class DefaultChartProvider implements ChartProvider {
 	}
 
 	boolean addItem(Chart chart, QueryablePersistenceService service, Date timeBegin, Date timeEnd, Item item,
-			int seriesCounter) {
+			int seriesCounter, int width) {
 		Color color = LINECOLORS[seriesCounter % LINECOLORS.length];
 
 		// Get the item label
@@ -309,8 +310,9 @@ public class DefaultChartProvider implements ChartProvider {
 		filter.setPageSize(Integer.MAX_VALUE);
 		filter.setOrdering(Ordering.ASCENDING);
 		
-		// Get the data from the persistence store
-		result = service.query(filter);
+		// Get the data from the persistence store, but only as many values as can be displayed
+		// by the width of the chart
+		result = DownsamplingHelper.minMax(service.query(filter), timeBegin, timeEnd, Math.max(width, 1));
 		Iterator<HistoricItem> it = result.iterator();
 
 		// Iterate through the data
@@ -9,17 +9,21 @@
 package org.openhab.ui.internal.items;
 
 import java.io.File;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.emf.common.notify.Notification;
 import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -35,7 +39,6 @@ import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.library.items.RollershutterItem;
 import org.openhab.core.library.items.StringItem;
 import org.openhab.core.library.items.SwitchItem;
-import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.transform.TransformationException;
@@ -44,13 +47,11 @@ import org.openhab.core.transform.TransformationService;
 import org.openhab.core.types.State;
 import org.openhab.core.types.Type;
 import org.openhab.core.types.UnDefType;
-import org.openhab.model.sitemap.ColorArray;
 import org.openhab.model.sitemap.Group;
 import org.openhab.model.sitemap.LinkableWidget;
 import org.openhab.model.sitemap.Sitemap;
 import org.openhab.model.sitemap.SitemapFactory;
 import org.openhab.model.sitemap.Slider;
-import org.openhab.model.sitemap.VisibilityRule;
 import org.openhab.model.sitemap.Widget;
 import org.openhab.ui.internal.UIActivator;
 import org.openhab.ui.items.ItemUIProvider;
@@ -80,9 +81,6 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	/* the image location inside the installation folder */
 	protected static final String IMAGE_LOCATION = "./webapps/images/";
 
-	/* RegEx to extract and parse a function String <code>'\[(.*?)\((.*)\):(.*)\]'</code> */
-	protected static final Pattern EXTRACT_TRANSFORMFUNCTION_PATTERN = Pattern.compile("\\[(.*?)\\((.*)\\):(.*)\\]");
-	
 	/* RegEx to identify format patterns. See java.util.Formatter#formatSpecifier (without the '%' at the very end). */
 	protected static final String IDENTIFY_FORMAT_PATTERN_PATTERN = "%(\\d+\\$)?([-#+ 0,(\\<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z])";
 
@@ -90,6 +88,16 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 
 	protected ItemRegistry itemRegistry;
 
+	/* the maximum number of parsed labels which are cached */
+	private static final int MAX_LABEL_PATTERNS = 10000;
+
+	/* the parsed labels by their text */
+	private final Map<String, LabelPattern> labelPatterns = new ConcurrentHashMap<String, LabelPattern>();
+
+	/* the compiled widgets of the sitemaps, which are dropped together with the widgets when a sitemap is reloaded */
+	private final Map<Widget, WidgetRenderPlan> renderPlans =
+			Collections.synchronizedMap(new WeakHashMap<Widget, WidgetRenderPlan>());
+
 	public ItemUIRegistryImpl() {}
 
 	public void setItemRegistry(ItemRegistry itemRegistry) {
@@ -219,18 +227,21 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	 * {@inheritDoc}
 	 */
 	public String getLabel(Widget w) {
-		String label = getLabelFromWidget(w);
+		LabelPattern labelPattern = getRenderPlan(w).getLabelPattern();
+		if(labelPattern==null) {
+			labelPattern = getLabelPattern(getLabelFromWidget(w));
+		}
+		if(!labelPattern.hasValue()) {
+			return labelPattern.getText();
+		}
 		
 		// now insert the value, if the state is a string or decimal value and there is some formatting pattern defined in the label 
 		// (i.e. it contains at least a %)
 		String itemName = w.getItem();
-		if(itemName!=null && label.contains("[")) {
-			
-			int indexOpenBracket = label.indexOf("[");
-			int indexCloseBracket = label.indexOf("]");
+		String formatPattern = labelPattern.getFormatPattern();
+		if(itemName!=null) {
 			
 			State state = null;
-			String formatPattern = label.substring(indexOpenBracket + 1, indexCloseBracket);
 			try {
 				Item item = getItem(itemName);
 				// TODO: TEE: we should find a more generic solution here! When
@@ -238,7 +249,7 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 				// and will cause an 'java.util.IllegalFormatConversionException:
 				// d != java.lang.String' later on when trying to format a String
 				// as %d (number).
-				if (label.contains("%d")) {
+				if (labelPattern.isNumberRequested()) {
 					// a number is requested
 					state = item.getState();
 					if(!(state instanceof DecimalType)) {
@@ -252,7 +263,7 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 			}
 
 			if (state==null || state instanceof UnDefType) {
-				formatPattern = formatUndefined(formatPattern);
+				formatPattern = labelPattern.getUndefinedValue();
 			} else if (state instanceof Type) {
 				// The following exception handling has been added to work around a Java bug with formatting
 				// numbers. See http://bugs.sun.com/view_bug.do?bug_id=6476425
@@ -268,13 +279,32 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 					formatPattern = new String("Err");
 				}
 			}
-
-			label = label.substring(0, indexOpenBracket + 1) + formatPattern + label.substring(indexCloseBracket);
 		}
 		
-		label = transform(label);
+		if(labelPattern.getTransformationType()!=null) {
+			formatPattern = transform(labelPattern.getTransformationType(), labelPattern.getTransformationFunction(), formatPattern);
+		}
 		
-		return label;
+		return labelPattern.getPrefix() + formatPattern + labelPattern.getSuffix();
+	}
+
+	/**
+	 * Returns the parsed form of a label, which is cached for all further renderings of the label.
+	 * 
+	 * @param label the label to parse
+	 * @return the parsed label
+	 */
+	private LabelPattern getLabelPattern(String label) {
+		LabelPattern labelPattern = labelPatterns.get(label);
+		if(labelPattern==null) {
+			if(labelPatterns.size() >= MAX_LABEL_PATTERNS) {
+				// labels might be created dynamically by the providers, so do not let the cache grow forever
+				labelPatterns.clear();
+			}
+			labelPattern = LabelPattern.parse(label);
+			labelPatterns.put(label, labelPattern);
+		}
+		return labelPattern;
 	}
 
 	private String getLabelFromWidget(Widget w) {
@@ -304,48 +334,28 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	 * @return a formatted String with dashes ("-") as value replacement
 	 */
 	protected String formatUndefined(String formatPattern) {
-		String undefinedFormatPattern = 
-			formatPattern.replaceAll(IDENTIFY_FORMAT_PATTERN_PATTERN, "%1\\$s");
-		try {
-			return String.format(undefinedFormatPattern, "-");
-		} catch (Exception e) {
-			logger.warn(
-					"Exception while formatting undefined value [sourcePattern={}, targetPattern={}, {}]",
-					formatPattern, undefinedFormatPattern, e);
-			return "Err";
-		}
+		return LabelPattern.formatUndefined(formatPattern);
 	}
 	
 	/*
-	 * check if there is a status value being displayed on the right side of the
-	 * label (the right side is signified by being enclosed in square brackets [].
-	 * If so, check if the value starts with the call to a transformation service 
-	 * (e.g. "[MAP(en.map):%s]") and execute the transformation in this case.
+	 * execute the transformation service which is called by the status value being displayed
+	 * on the right side of the label (e.g. "[MAP(en.map):%s]"). The value is returned unchanged,
+	 * if the transformation is not possible.
 	 */
-	private String transform(String label) {
-		if(label.contains("[") && label.endsWith("]")) {
-			Matcher matcher = EXTRACT_TRANSFORMFUNCTION_PATTERN.matcher(label);
-			if(matcher.find()) {
-				String type = matcher.group(1);
-				String pattern = matcher.group(2);
-				String value = matcher.group(3);
-				TransformationService transformation = 
-					TransformationHelper.getTransformationService(UIActivator.getContext(), type);
-				if(transformation!=null) {
-					try {
-						label = label.substring(0, label.indexOf("[")+1) + transformation.transform(pattern, value) + "]";
-					} catch (TransformationException e) {
-						logger.error("transformation throws exception [transformation="
-								+ transformation + ", value=" + value + "]", e);
-						label = label.substring(0, label.indexOf("[")+1) + value + "]";
-					}
-				} else {
-					logger.warn("couldn't transform value in label because transformationService of type '{}' is unavailable", type);
-					label = label.substring(0, label.indexOf("[")+1) + value + "]";
-				}
+	private String transform(String type, String pattern, String value) {
+		TransformationService transformation = 
+			TransformationHelper.getTransformationService(UIActivator.getContext(), type);
+		if(transformation!=null) {
+			try {
+				return transformation.transform(pattern, value);
+			} catch (TransformationException e) {
+				logger.error("transformation throws exception [transformation="
+						+ transformation + ", value=" + value + "]", e);
 			}
+		} else {
+			logger.warn("couldn't transform value in label because transformationService of type '{}' is unavailable", type);
 		}
-		return label;
+		return value;
 	}
 	
 	/**
@@ -606,6 +616,68 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	 * {@inheritDoc}
 	 */
 	public String getWidgetId(Widget w) {
+		return getRenderPlan(w).getId();
+	}
+
+	/**
+	 * Returns the compiled form of a widget. The widgets of the sitemaps are compiled only
+	 * once, while dynamically created widgets, which are not part of a sitemap, are compiled
+	 * on every call. The compiled widgets are discarded as soon as their sitemap is changed.
+	 * 
+	 * @param w the widget
+	 * @return the compiled widget
+	 */
+	private WidgetRenderPlan getRenderPlan(Widget w) {
+		if(w.eContainer()==null) {
+			return compileWidget(w);
+		}
+		WidgetRenderPlan plan = renderPlans.get(w);
+		if(plan==null) {
+			watchSitemap(w);
+			plan = compileWidget(w);
+			renderPlans.put(w, plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Makes sure that the compiled widgets are discarded, if the sitemap of the given widget
+	 * is changed in place. A reloaded sitemap consists of new widgets anyway.
+	 */
+	private void watchSitemap(Widget w) {
+		EObject sitemap = EcoreUtil.getRootContainer(w);
+		synchronized(sitemap) {
+			if(EcoreUtil.getExistingAdapter(sitemap, this)==null) {
+				sitemap.eAdapters().add(new SitemapChangeListener());
+			}
+		}
+	}
+
+	/**
+	 * Discards all compiled widgets on any change of a sitemap or of its contents.
+	 */
+	private class SitemapChangeListener extends EContentAdapter {
+		@Override
+		public void notifyChanged(Notification notification) {
+			super.notifyChanged(notification);
+			if(!notification.isTouch()) {
+				renderPlans.clear();
+			}
+		}
+
+		@Override
+		public boolean isAdapterForType(Object type) {
+			return type==ItemUIRegistryImpl.this;
+		}
+	}
+
+	private WidgetRenderPlan compileWidget(Widget w) {
+		// labels which are provided for the items are not compiled, as they might change with the items
+		LabelPattern labelPattern = w.getLabel()!=null ? getLabelPattern(w.getLabel()) : null;
+		return new WidgetRenderPlan(w, computeWidgetId(w), labelPattern);
+	}
+
+	private String computeWidgetId(Widget w) {
 		String id = "";
 		while(w.eContainer() instanceof Widget) {
 			Widget parent = (Widget) w.eContainer();
@@ -631,196 +703,45 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Returns the argument of the first color definition, which matches either the given
+	 * state or the state of the item of the definition.
 	 */
-	private boolean matchStateToValue(State state, String value, String matchCondition) {
-		// Check if the value is equal to the supplied value
-		boolean matched = false;
-
-		// Remove quotes - this occurs in some instances where multiple types
-		// are defined in the xtext definitions
-		if (value.startsWith("\"") && value.endsWith("\""))
-			value = value.substring(1, value.length() - 1);
+	private String processColorDefinition(State state, List<RenderCondition> colorList) {
+		for (RenderCondition color : colorList) {
+			// Use a local state variable in case it gets overridden below
+			State cmpState = state;
 
-		// Convert the condition string into enum
-		Condition condition = Condition.EQUAL;
-		if (matchCondition != null)
-			condition = Condition.fromString(matchCondition);
-
-		if (DecimalType.class.isInstance(state)) {
-			try {
-				switch (condition) {
-				case EQUAL:
-					if (Double.parseDouble(state.toString()) == Double.parseDouble(value))
-						matched = true;
-					break;
-				case LTE:
-					if (Double.parseDouble(state.toString()) <= Double.parseDouble(value))
-						matched = true;
-					break;
-				case GTE:
-					if (Double.parseDouble(state.toString()) >= Double.parseDouble(value))
-						matched = true;
-					break;
-				case GREATER:
-					if (Double.parseDouble(state.toString()) > Double.parseDouble(value))
-						matched = true;
-					break;
-				case LESS:
-					if (Double.parseDouble(state.toString()) < Double.parseDouble(value))
-						matched = true;
-					break;
-				case NOT:
-				case NOTEQUAL:
-					if (Double.parseDouble(state.toString()) != Double.parseDouble(value))
-						matched = true;
-					break;
+			// If there's an item defined here, get it's state
+			if(color.getItemName() != null) {
+				try {
+					cmpState = itemRegistry.getItem(color.getItemName()).getState();
+				} catch (ItemNotFoundException e) {
+					logger.warn("Cannot retrieve color item {} for widget", color.getItemName());
 				}
-			} catch (NumberFormatException e) {
-				logger.debug("matchStateToValue: Decimal format exception: " + e);
 			}
-		} else if (state instanceof DateTimeType) {
-			Calendar val = ((DateTimeType) state).getCalendar();
-			Calendar now = Calendar.getInstance();
-			long secsDif = (now.getTimeInMillis() - val.getTimeInMillis()) / 1000;
 
-			try {
-				switch (condition) {
-				case EQUAL:
-					if (secsDif == Integer.parseInt(value))
-						matched = true;
-					break;
-				case LTE:
-					if (secsDif <= Integer.parseInt(value))
-						matched = true;
-					break;
-				case GTE:
-					if (secsDif >= Integer.parseInt(value))
-						matched = true;
-					break;
-				case GREATER:
-					if (secsDif > Integer.parseInt(value))
-						matched = true;
-					break;
-				case LESS:
-					if (secsDif < Integer.parseInt(value))
-						matched = true;
-					break;
-				case NOT:
-				case NOTEQUAL:
-					if (secsDif != Integer.parseInt(value))
-						matched = true;
-					break;
-				}
-			} catch (NumberFormatException e) {
-				logger.debug("matchStateToValue: Decimal format exception: " + e);
+			if(color.matches(cmpState)) {
+				// We have the color for this value - break!
+				return color.getArg();
 			}
-		} else {
-			// Strings only allow = and !=
-			switch (condition) {
-			case NOT:
-			case NOTEQUAL:
-				if (!value.equals(state.toString()))
-					matched = true;
-				break;
-			default:
-				if (value.equals(state.toString()))
-					matched = true;
-				break;
-			}
-		}
-
-		return matched;
-	}
-
-	/**
-	 * {@inheritDoc}
-	 */
-	private String processColorDefinition(State state, List<ColorArray> colorList) {
-		// Sanity check
-		if(colorList == null) {
-			return null;
-		}
-		if(colorList.size() == 0) {
-			return null;
 		}
-
-		String colorString = null;
-
-		// Check for the "arg". If it doesn't exist, assume there's just an
-		// static colour
-		if(colorList.size() == 1 && colorList.get(0).getState() == null) {
-			colorString = colorList.get(0).getArg();
-		}
-		else {
-			// Loop through all elements looking for the definition associated
-			// with the supplied value
-			for (ColorArray color : colorList) {
-				// Use a local state variable in case it gets overridden below
-				State cmpState = state;
-
-				if(color.getState() == null) {
-					logger.error("Error parsing color");
-					continue;
-				}
-
-				// If there's an item defined here, get it's state
-				if(color.getItem() != null) {
-					// Try and find the item to test.
-					// If it's not found, return visible
-					Item item;
-					try {
-						item = itemRegistry.getItem(color.getItem());
-
-						// Get the item state
-						cmpState = item.getState();
-					} catch (ItemNotFoundException e) {
-						logger.warn("Cannot retrieve color item {} for widget", color.getItem());
-					}
-				}
-
-				// Handle the sign
-				String value;
-				if(color.getSign() != null)
-					value = color.getSign() + color.getState();
-				else
-					value = color.getState();
-
-				if (matchStateToValue(cmpState, value, color.getCondition()) == true) {
-					// We have the color for this value - break!
-					colorString = color.getArg();
-					break;
-				}
-			}
-		}
-
-		// Remove quotes off the colour - if they exist
-		if(colorString == null)
-			return null;
-
-		if(colorString.startsWith("\"") && colorString.endsWith("\""))
-			colorString = colorString.substring(1, colorString.length()-1);
-		
-		// Check if the color is a "standard" color - if so, we convert to the CSS ("#xxxxxx") format
-		OpenhabColors stdColor = OpenhabColors.fromString(colorString);
-		if(stdColor != null)
-			colorString = stdColor.toString();
-
-		return colorString;
+		return null;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public String getLabelColor(Widget w) {
-		return processColorDefinition(getState(w), w.getLabelColor());
+		List<RenderCondition> colors = getRenderPlan(w).getLabelColors();
+		return colors.isEmpty() ? null : processColorDefinition(getState(w), colors);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public String getValueColor(Widget w) {
-		return processColorDefinition(getState(w), w.getValueColor());
+		List<RenderCondition> colors = getRenderPlan(w).getValueColors();
+		return colors.isEmpty() ? null : processColorDefinition(getState(w), colors);
 	}
 
 	/**
@@ -828,43 +749,26 @@ public class ItemUIRegistryImpl implements ItemUIRegistry {
 	 */
 	public boolean getVisiblity(Widget w) {
 		// Default to visible if parameters not set
-		List<VisibilityRule> ruleList = w.getVisibility();
-		if(ruleList == null)
-			return true;
-		if(ruleList.size() == 0)
+		WidgetRenderPlan plan = getRenderPlan(w);
+		if(!plan.isVisibilityRestricted())
 			return true;
 
 		logger.debug("Checking visiblity for widget '{}'.", w.getLabel());
 
-		for (VisibilityRule rule : w.getVisibility()) {
-			if(rule.getItem() == null)
-				continue;
-			if(rule.getState() == null)
-				continue;
-			
+		for (RenderCondition rule : plan.getVisibilityRules()) {
 			// Try and find the item to test.
 			// If it's not found, return visible
 			Item item;
 			try {
-				item = itemRegistry.getItem(rule.getItem());
+				item = itemRegistry.getItem(rule.getItemName());
 			} catch (ItemNotFoundException e) {
-				logger.error("Cannot retrieve visibility item {} for widget {}", rule.getItem(), w.eClass().getInstanceTypeName());
+				logger.error("Cannot retrieve visibility item {} for widget {}", rule.getItemName(), w.eClass().getInstanceTypeName());
 
 				// Default to visible!
 				return true;
 			}
 
-			// Get the item state
-			State state = item.getState();
-
-			// Handle the sign
-			String value;
-			if(rule.getSign() != null)
-				value = rule.getSign() + rule.getState();
-			else
-				value = rule.getState();
-
-			if (matchStateToValue(state, value, rule.getCondition()) == true) {
+			if (rule.matches(item.getState())) {
 				// We have the name for this value!
 				return true;
 			}
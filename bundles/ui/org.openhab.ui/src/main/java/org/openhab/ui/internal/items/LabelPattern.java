@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.items;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The parsed form of a widget label, which might contain a value in square brackets,
+ * e.g. <code>"Temperature [%.1f °C]"</code>. The value consists of a format pattern for
+ * the state of the item and might start with the call of a transformation service, e.g.
+ * <code>"Window [MAP(window.map):%s]"</code>.
+ *
+ * <p>As the labels are rendered over and over again, they are parsed only once, so that
+ * rendering a label only needs to format the state and to call the transformation. The
+ * value which is displayed for undefined states is prepared during parsing as well.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class LabelPattern {
+
+	private final static Logger logger = LoggerFactory.getLogger(LabelPattern.class);
+
+	/* RegEx to parse the call of a transformation service in the value of a label */
+	private static final Pattern TRANSFORMATION_PATTERN = Pattern.compile("(.*?)\\((.*)\\):(.*)");
+
+	/* RegEx to identify format patterns, see {@link ItemUIRegistryImpl#IDENTIFY_FORMAT_PATTERN_PATTERN} */
+	private static final Pattern IDENTIFY_FORMAT_PATTERN = Pattern.compile(ItemUIRegistryImpl.IDENTIFY_FORMAT_PATTERN_PATTERN);
+
+	/* the whole label */
+	private final String text;
+
+	/* the label up to and including the opening bracket */
+	private final String prefix;
+
+	/* the label from the closing bracket */
+	private final String suffix;
+
+	/* the format pattern of the value or null, if the label does not contain a value */
+	private final String formatPattern;
+
+	/* the type of the transformation service or null, if the value is not transformed */
+	private final String transformationType;
+
+	/* the function which is passed to the transformation service */
+	private final String transformationFunction;
+
+	/* true, if the label requests a number, i.e. contains "%d" */
+	private final boolean numberRequested;
+
+	/* the value to display, if the state is undefined */
+	private final String undefinedValue;
+
+	private LabelPattern(String text, String prefix, String suffix, String formatPattern,
+			String transformationType, String transformationFunction) {
+		this.text = text;
+		this.prefix = prefix;
+		this.suffix = suffix;
+		this.formatPattern = formatPattern;
+		this.transformationType = transformationType;
+		this.transformationFunction = transformationFunction;
+		this.numberRequested = text.contains("%d");
+		this.undefinedValue = formatPattern != null ? formatUndefined(formatPattern) : null;
+	}
+
+	/**
+	 * Parses a label.
+	 *
+	 * @param label the label to parse
+	 * @return the parsed label
+	 */
+	static LabelPattern parse(String label) {
+		int indexOpenBracket = label.indexOf("[");
+		int indexCloseBracket = label.indexOf("]");
+		if (indexOpenBracket < 0 || indexCloseBracket < indexOpenBracket) {
+			return new LabelPattern(label, label, "", null, null, null);
+		}
+
+		String prefix = label.substring(0, indexOpenBracket + 1);
+		String suffix = label.substring(indexCloseBracket);
+		String value = label.substring(indexOpenBracket + 1, indexCloseBracket);
+
+		// a transformation is only called if the value is at the very end of the label
+		if (indexCloseBracket == label.length() - 1) {
+			Matcher matcher = TRANSFORMATION_PATTERN.matcher(value);
+			if (matcher.matches()) {
+				return new LabelPattern(label, prefix, suffix, matcher.group(3), matcher.group(1), matcher.group(2));
+			}
+		}
+		return new LabelPattern(label, prefix, suffix, value, null, null);
+	}
+
+	/**
+	 * Takes the given <code>formatPattern</code> and replaces it with a analog
+	 * String-based pattern to replace all value Occurrences with a dash ("-")
+	 * 
+	 * @param formatPattern the original pattern which will be replaces by a
+	 * String pattern.
+	 * @return a formatted String with dashes ("-") as value replacement
+	 */
+	static String formatUndefined(String formatPattern) {
+		String undefinedFormatPattern = 
+			IDENTIFY_FORMAT_PATTERN.matcher(formatPattern).replaceAll("%1\\$s");
+		try {
+			return String.format(undefinedFormatPattern, "-");
+		} catch (Exception e) {
+			logger.warn(
+					"Exception while formatting undefined value [sourcePattern={}, targetPattern={}, {}]",
+					new Object[] { formatPattern, undefinedFormatPattern, e });
+			return "Err";
+		}
+	}
+
+	/**
+	 * @return the whole label
+	 */
+	String getText() {
+		return text;
+	}
+
+	/**
+	 * @return <code>true</code>, if the label contains a value in square brackets
+	 */
+	boolean hasValue() {
+		return formatPattern != null;
+	}
+
+	/**
+	 * @return the label up to and including the opening bracket of the value
+	 */
+	String getPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * @return the label from the closing bracket of the value
+	 */
+	String getSuffix() {
+		return suffix;
+	}
+
+	/**
+	 * @return the format pattern of the value or <code>null</code>, if the label does not contain a value
+	 */
+	String getFormatPattern() {
+		return formatPattern;
+	}
+
+	/**
+	 * @return <code>true</code>, if the label requests a number, i.e. contains "%d"
+	 */
+	boolean isNumberRequested() {
+		return numberRequested;
+	}
+
+	/**
+	 * @return the value to display if the state is undefined, i.e. the format pattern with dashes
+	 * 		instead of the values
+	 */
+	String getUndefinedValue() {
+		return undefinedValue;
+	}
+
+	/**
+	 * @return the type of the transformation service or <code>null</code>, if the value is not transformed
+	 */
+	String getTransformationType() {
+		return transformationType;
+	}
+
+	/**
+	 * @return the function which is passed to the transformation service, e.g. the name of a map file
+	 */
+	String getTransformationFunction() {
+		return transformationFunction;
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.items;
+
+import java.util.Calendar;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.types.State;
+import org.openhab.ui.internal.items.ItemUIRegistryImpl.Condition;
+
+/**
+ * A condition of a visibility rule or of a color definition of a widget, e.g.
+ * <code>Temperature>25</code>. The value of the condition is parsed only once into
+ * the types it is compared with, so that checking the condition for a state does not
+ * need to parse any strings.
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class RenderCondition {
+
+	/* the item whose state is checked or null, if the state of the widget is checked */
+	private final String itemName;
+
+	private final Condition condition;
+
+	/* the value to compare string states with */
+	private final String value;
+
+	/* the value to compare decimal states with or null, if it is not a number */
+	private final Double decimalValue;
+
+	/* the number of seconds to compare the age of date time states with or null, if it is not an integer */
+	private final Integer secondsValue;
+
+	/* the argument of the condition, e.g. the color to use if the condition matches */
+	private final String arg;
+
+	/* true, if the condition matches any state, e.g. for a static color */
+	private final boolean unconditional;
+
+	/**
+	 * @param itemName the item whose state is checked or <code>null</code> for the state of the widget
+	 * @param condition the comparison operator or <code>null</code> for equality
+	 * @param sign the sign of the value or <code>null</code>
+	 * @param value the value to compare the state with
+	 * @param arg the argument of the condition or <code>null</code>
+	 */
+	RenderCondition(String itemName, String condition, String sign, String value, String arg) {
+		this.itemName = itemName;
+		Condition parsedCondition = condition != null ? Condition.fromString(condition) : Condition.EQUAL;
+		this.condition = parsedCondition != null ? parsedCondition : Condition.EQUAL;
+		this.value = unquote(sign != null ? sign + value : value);
+		this.decimalValue = parseDouble(this.value);
+		this.secondsValue = parseInteger(this.value);
+		this.arg = arg;
+		this.unconditional = false;
+	}
+
+	private RenderCondition(String arg) {
+		this.itemName = null;
+		this.condition = Condition.EQUAL;
+		this.value = "";
+		this.decimalValue = null;
+		this.secondsValue = null;
+		this.arg = arg;
+		this.unconditional = true;
+	}
+
+	/**
+	 * Creates a condition which matches any state, e.g. for a static color.
+	 *
+	 * @param arg the argument of the condition
+	 * @return the condition
+	 */
+	static RenderCondition unconditional(String arg) {
+		return new RenderCondition(arg);
+	}
+
+	/**
+	 * @return the item whose state is checked or <code>null</code>, if the state of the widget is checked
+	 */
+	String getItemName() {
+		return itemName;
+	}
+
+	/**
+	 * @return the argument of the condition, e.g. the color to use if the condition matches
+	 */
+	String getArg() {
+		return arg;
+	}
+
+	/**
+	 * Checks the condition for a state. Decimal states are compared numerically, date time
+	 * states by their age in seconds and all other states by their string representation.
+	 *
+	 * @param state the state to check
+	 * @return <code>true</code>, if the state matches the condition
+	 */
+	boolean matches(State state) {
+		if (unconditional) {
+			return true;
+		}
+		if (state == null) {
+			return false;
+		}
+		if (state instanceof DecimalType) {
+			if (decimalValue == null) {
+				return false;
+			}
+			double stateValue = ((DecimalType) state).doubleValue();
+			double threshold = decimalValue.doubleValue();
+			return matches(stateValue < threshold ? -1 : (stateValue > threshold ? 1 : 0));
+		} else if (state instanceof DateTimeType) {
+			if (secondsValue == null) {
+				return false;
+			}
+			Calendar val = ((DateTimeType) state).getCalendar();
+			long secsDif = (System.currentTimeMillis() - val.getTimeInMillis()) / 1000;
+			long threshold = secondsValue.longValue();
+			return matches(secsDif < threshold ? -1 : (secsDif > threshold ? 1 : 0));
+		} else {
+			// Strings only allow = and !=
+			boolean equal = value.equals(state.toString());
+			return (condition == Condition.NOT || condition == Condition.NOTEQUAL) ? !equal : equal;
+		}
+	}
+
+	private boolean matches(int comparison) {
+		switch (condition) {
+		case LTE:
+			return comparison <= 0;
+		case GTE:
+			return comparison >= 0;
+		case GREATER:
+			return comparison > 0;
+		case LESS:
+			return comparison < 0;
+		case NOT:
+		case NOTEQUAL:
+			return comparison != 0;
+		default:
+			return comparison == 0;
+		}
+	}
+
+	/**
+	 * Removes quotes - this occurs in some instances where multiple types
+	 * are defined in the xtext definitions
+	 */
+	static String unquote(String value) {
+		if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	private static Double parseDouble(String value) {
+		try {
+			return Double.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static Integer parseInteger(String value) {
+		try {
+			return Integer.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+}
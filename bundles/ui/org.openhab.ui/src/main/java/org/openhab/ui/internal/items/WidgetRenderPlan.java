@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.items;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openhab.model.sitemap.ColorArray;
+import org.openhab.model.sitemap.VisibilityRule;
+import org.openhab.model.sitemap.Widget;
+import org.openhab.ui.internal.items.ItemUIRegistryImpl.OpenhabColors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The compiled form of a sitemap widget, which contains everything that is needed
+ * to render the widget and which does not depend on the states of the items: the
+ * widget id, the parsed label and the parsed conditions of the visibility rules and
+ * of the color definitions.
+ *
+ * <p>The items themselves are not resolved, but looked up by their names on every
+ * rendering, as the items might be reloaded independently of the sitemap.</p>
+ *
+ * @author openHAB.org
+ * @since 1.7.0
+ */
+class WidgetRenderPlan {
+
+	private final static Logger logger = LoggerFactory.getLogger(WidgetRenderPlan.class);
+
+	private final String id;
+
+	/* the parsed label of the widget or null, if the label is provided for the item */
+	private final LabelPattern labelPattern;
+
+	/* true, if the widget has visibility rules at all */
+	private final boolean visibilityRestricted;
+
+	private final List<RenderCondition> visibilityRules;
+
+	private final List<RenderCondition> labelColors;
+
+	private final List<RenderCondition> valueColors;
+
+	/**
+	 * @param w the widget to compile
+	 * @param id the id of the widget
+	 * @param labelPattern the parsed label of the widget or <code>null</code>, if the
+	 * 		widget does not define a label itself
+	 */
+	WidgetRenderPlan(Widget w, String id, LabelPattern labelPattern) {
+		this.id = id;
+		this.labelPattern = labelPattern;
+		this.visibilityRestricted = w.getVisibility() != null && !w.getVisibility().isEmpty();
+		this.visibilityRules = compileVisibilityRules(w.getVisibility());
+		this.labelColors = compileColors(w.getLabelColor());
+		this.valueColors = compileColors(w.getValueColor());
+	}
+
+	/**
+	 * @return the id of the widget
+	 */
+	String getId() {
+		return id;
+	}
+
+	/**
+	 * @return the parsed label of the widget or <code>null</code>, if the widget
+	 * 		does not define a label itself
+	 */
+	LabelPattern getLabelPattern() {
+		return labelPattern;
+	}
+
+	/**
+	 * @return <code>true</code>, if the widget has visibility rules, i.e. it is
+	 * 		not always visible
+	 */
+	boolean isVisibilityRestricted() {
+		return visibilityRestricted;
+	}
+
+	/**
+	 * @return the valid visibility rules, whose args are not used
+	 */
+	List<RenderCondition> getVisibilityRules() {
+		return visibilityRules;
+	}
+
+	/**
+	 * @return the label colors, whose args are CSS colors
+	 */
+	List<RenderCondition> getLabelColors() {
+		return labelColors;
+	}
+
+	/**
+	 * @return the value colors, whose args are CSS colors
+	 */
+	List<RenderCondition> getValueColors() {
+		return valueColors;
+	}
+
+	private static List<RenderCondition> compileVisibilityRules(List<VisibilityRule> ruleList) {
+		if (ruleList == null || ruleList.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<RenderCondition> rules = new ArrayList<RenderCondition>(ruleList.size());
+		for (VisibilityRule rule : ruleList) {
+			if (rule.getItem() == null || rule.getState() == null) {
+				continue;
+			}
+			rules.add(new RenderCondition(rule.getItem(), rule.getCondition(), rule.getSign(), rule.getState(), null));
+		}
+		return rules;
+	}
+
+	private static List<RenderCondition> compileColors(List<ColorArray> colorList) {
+		if (colorList == null || colorList.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// if there is no state, there's just a static colour
+		if (colorList.size() == 1 && colorList.get(0).getState() == null) {
+			return Collections.singletonList(RenderCondition.unconditional(toCssColor(colorList.get(0).getArg())));
+		}
+
+		List<RenderCondition> colors = new ArrayList<RenderCondition>(colorList.size());
+		for (ColorArray color : colorList) {
+			if (color.getState() == null) {
+				logger.error("Error parsing color");
+				continue;
+			}
+			colors.add(new RenderCondition(color.getItem(), color.getCondition(), color.getSign(), color.getState(),
+					toCssColor(color.getArg())));
+		}
+		return colors;
+	}
+
+	private static String toCssColor(String colorString) {
+		if (colorString == null) {
+			return null;
+		}
+
+		// Remove quotes off the colour - if they exist
+		colorString = RenderCondition.unquote(colorString);
+
+		// Check if the color is a "standard" color - if so, we convert to the CSS ("#xxxxxx") format
+		OpenhabColors stdColor = OpenhabColors.fromString(colorString);
+		return stdColor != null ? stdColor.toString() : colorString;
+	}
+
+}